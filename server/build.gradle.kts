@@ -53,6 +53,31 @@ dependencies {
     testCompile("com.google.code.gson:gson:2.8.0")
 }
 
+val sourceSets = the<JavaPluginConvention>().sourceSets
+val mainSourceSet = sourceSets.getByName("main")
+
+// Micro-benchmarks, run with the "jmh" task.
+val jmhSourceSet = sourceSets.create("jmh")
+jmhSourceSet.compileClasspath += mainSourceSet.output + mainSourceSet.compileClasspath
+jmhSourceSet.runtimeClasspath += mainSourceSet.output + mainSourceSet.runtimeClasspath +
+        configurations.getByName("provided")
+
+dependencies {
+    "jmhCompile"("org.openjdk.jmh:jmh-core:1.19")
+    "jmhCompile"("org.openjdk.jmh:jmh-generator-annprocess:1.19")
+}
+
+task<JavaExec>("jmh") {
+    group = "Verification"
+    description = "Runs the micro-benchmarks."
+
+    classpath = jmhSourceSet.runtimeClasspath
+    main = "org.openjdk.jmh.Main"
+    if (project.hasProperty("jmh.includes")) {
+        args(project.properties["jmh.includes"])
+    }
+}
+
 val jar = tasks.getByPath("jar") as Jar
 
 jar.baseName = "docker-cloud-server"
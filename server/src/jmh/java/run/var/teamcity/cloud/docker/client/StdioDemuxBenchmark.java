@@ -0,0 +1,99 @@
+package run.var.teamcity.cloud.docker.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Demultiplexing throughput of Docker stdio streams.
+ * <p>
+ * Each invocation processes a {@value #PAYLOAD_SIZE} bytes payload (frame headers excluded), the throughput in MB/s
+ * is therefore {@code ops/s * PAYLOAD_SIZE / 2^20}. Small frame sizes are typical of interactive build logs, where
+ * every line is flushed as its own frame.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StdioDemuxBenchmark {
+
+    private final static int PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+    @Param({"16", "128", "8192"})
+    public int frameSize;
+
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        int frameCount = PAYLOAD_SIZE / frameSize;
+        content = new byte[frameCount * (StdioFrameReader.STREAM_HEADER_SIZE + frameSize)];
+        Random rnd = new Random(42);
+        int pos = 0;
+        for (int i = 0; i < frameCount; i++) {
+            // Stream type: unsigned little-endian integer.
+            content[pos] = (byte) (i % 2 == 0 ? StdioType.STDOUT.streamType() : StdioType.STDERR.streamType());
+            // Frame length: unsigned big-endian integer.
+            content[pos + 4] = (byte) (frameSize >>> 24);
+            content[pos + 5] = (byte) (frameSize >>> 16);
+            content[pos + 6] = (byte) (frameSize >>> 8);
+            content[pos + 7] = (byte) frameSize;
+            pos += StdioFrameReader.STREAM_HEADER_SIZE;
+            for (int j = 0; j < frameSize; j++) {
+                content[pos++] = (byte) ('a' + rnd.nextInt(26));
+            }
+        }
+    }
+
+    @Benchmark
+    public long frameReader() throws IOException {
+        StdioFrameReader reader = newHandler().frameReader();
+        long checksum = 0;
+        while (reader.next()) {
+            checksum += reader.getLength() + reader.getBuffer()[reader.getOffset()];
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long streamFragments() throws IOException {
+        MultiplexedStreamHandler handler = newHandler();
+        byte[] buffer = new byte[StdioFrameReader.DEFAULT_BUFFER_SIZE];
+        long checksum = 0;
+        StdioInputStream fragment;
+        while ((fragment = handler.getNextStreamFragment()) != null) {
+            int n;
+            while ((n = fragment.read(buffer)) != -1) {
+                checksum += n + buffer[0];
+            }
+            fragment.close();
+        }
+        return checksum;
+    }
+
+    private MultiplexedStreamHandler newHandler() {
+        return new MultiplexedStreamHandler(() -> {}, new ByteArrayInputStream(content), new OutputStream() {
+            @Override
+            public void write(int b) {
+                // Not used.
+            }
+        });
+    }
+}
@@ -7,9 +7,13 @@ import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.Node;
 
 import javax.annotation.Nonnull;
+import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.List;
 
 import static com.intellij.openapi.util.text.StringUtil.isNotEmpty;
 
@@ -47,6 +51,7 @@ public abstract class AbstractDockerImageConfigParser implements DockerImageConf
             boolean pullOnCreate = admin.getAsBoolean("PullOnCreate", false);
             boolean deleteOnExit = admin.getAsBoolean("RmOnExit", false);
             boolean useOfficialTCAgentImage = admin.getAsBoolean("UseOfficialTCAgentImage", false);
+            boolean captureLogs = admin.getAsBoolean("CaptureLogs", false);
 
             Integer agentPoolId = null;
             for (CloudImageParameters imageParameter : imagesParameters) {
@@ -58,8 +63,46 @@ public abstract class AbstractDockerImageConfigParser implements DockerImageConf
 
             DockerRegistryCredentials dockerRegistryCredentials =  registryAuthentication(admin);
 
-            return new DockerImageConfig(profileName, agentHolderSpec, pullOnCreate, deleteOnExit,
-                    useOfficialTCAgentImage, dockerRegistryCredentials, admin.getAsInt("MaxInstanceCount", -1), agentPoolId);
+            ComputeResources resources = retrieveResources(agentHolderSpec);
+
+            // Single-use agents are recycled after their first build.
+            int recycleAfterBuilds = admin.getAsInt("RecycleAfterBuilds", 0);
+            if (admin.getAsBoolean("SingleUse", false)) {
+                if (recycleAfterBuilds != 0) {
+                    throw new IllegalArgumentException("Single use and recycling after a build count are exclusive.");
+                }
+                recycleAfterBuilds = 1;
+            }
+            RecyclingPolicy recyclingPolicy = new RecyclingPolicy(recycleAfterBuilds,
+                    Duration.ofMinutes(admin.getAsInt("RecycleAfterMinutes", 0)),
+                    getLong(admin, "RecycleAboveMemoryMiB") * 1024 * 1024);
+
+            List<CacheVolume> cacheVolumes = new ArrayList<>();
+            for (Node cacheVolume : admin.getArray("CacheVolumes", Node.EMPTY_ARRAY).getArrayValues()) {
+                cacheVolumes.add(new CacheVolume(cacheVolume.getAsString("Name"), cacheVolume.getAsString("Target")));
+            }
+            if (!cacheVolumes.isEmpty() && !supportsCacheVolumes()) {
+                throw new IllegalArgumentException("Cache volumes are not supported.");
+            }
+
+            boolean spreadPlacement = admin.getAsBoolean("SpreadPlacement", false);
+            if (spreadPlacement && !supportsSpreadPlacement()) {
+                throw new IllegalArgumentException("Placement spreading is not supported.");
+            }
+
+            return DockerImageConfig.newBuilder(profileName, agentHolderSpec).
+                    pullOnCreate(pullOnCreate).
+                    rmOnExit(deleteOnExit).
+                    useOfficialTCAgentImage(useOfficialTCAgentImage).
+                    registryCredentials(dockerRegistryCredentials).
+                    maxInstanceCount(admin.getAsInt("MaxInstanceCount", -1)).
+                    agentPoolId(agentPoolId).
+                    captureLogs(captureLogs).
+                    resources(resources).
+                    recyclingPolicy(recyclingPolicy).
+                    cacheVolumes(cacheVolumes).
+                    spreadPlacement(spreadPlacement).
+                    build();
         } catch (Exception e) {
             throw new IllegalArgumentException("Failed to parse image JSON definition:\n" + node, e);
         }
@@ -90,4 +133,15 @@ public abstract class AbstractDockerImageConfigParser implements DockerImageConf
 
     @Nonnull
     protected abstract Node retrieveLabelsMap(@Nonnull Node agentHolderSpec);
+
+    @Nonnull
+    protected abstract ComputeResources retrieveResources(@Nonnull Node agentHolderSpec);
+
+    protected abstract boolean supportsCacheVolumes();
+
+    protected abstract boolean supportsSpreadPlacement();
+
+    static long getLong(Node node, String fieldName) {
+        return node.getAsBigInt(fieldName, BigInteger.ZERO).longValueExact();
+    }
 }
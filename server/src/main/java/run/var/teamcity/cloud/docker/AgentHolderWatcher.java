@@ -0,0 +1,349 @@
+package run.var.teamcity.cloud.docker;
+
+import com.intellij.openapi.diagnostic.Logger;
+import run.var.teamcity.cloud.docker.client.DockerClientConfig;
+import run.var.teamcity.cloud.docker.client.DockerClientException;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Plugin-wide watcher of the agent holders, shared by all the cloud clients targeting the same Docker endpoint.
+ * <p>
+ * Instead of having each cloud client list its own agent holders on every synchronization, the watcher lists all
+ * the agent holders carrying the plugin {@linkplain DockerCloudUtils#CLIENT_ID_LABEL client id label} at once, and
+ * dispatches them to the registered clients by client UUID. A listing is reused by all the clients of an endpoint
+ * until it gets older than the maximal age requested by the caller, and concurrent requests for a new listing are
+ * coalesced. The load on a daemon resulting from synchronizations therefore depends on the number of endpoints, and
+ * no longer on the number of cloud profiles.
+ * </p>
+ * <p>
+ * A listing may predate the latest changes performed by a client. Each listing is therefore timestamped with the
+ * time at which it was requested to the daemon, allowing clients to ignore instances that changed in the meantime.
+ * </p>
+ * <p>
+ * The watcher also holds the {@link CpusetAllocator} of each endpoint, such that the cpusets of all the clients
+ * targeting a daemon are allocated from the same pool. The allocator is reconciled with every new listing. Likewise,
+ * the {@link CacheVolumePool} of an endpoint is shared, such that the volume sizes of a daemon are refreshed at most
+ * once per period, whatever the number of clients.
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ */
+public class AgentHolderWatcher {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(AgentHolderWatcher.class);
+
+    private final static AgentHolderWatcher DEFAULT = new AgentHolderWatcher();
+
+    private final LockHandler lock = LockHandler.newReentrantLock("AgentHolderWatcher");
+    private final Map<String, Endpoint> endpoints = new HashMap<>();
+    private final Duration volumeSizeRefreshPeriod;
+
+    /**
+     * Creates a new watcher.
+     */
+    public AgentHolderWatcher() {
+        this(CacheVolumePool.DEFAULT_SIZE_REFRESH_PERIOD);
+    }
+
+    /**
+     * Creates a new watcher with the given size refresh period for the cache volume pools.
+     *
+     * @param volumeSizeRefreshPeriod the minimal delay between two refreshes of the cache volume sizes
+     *
+     * @throws NullPointerException if {@code volumeSizeRefreshPeriod} is {@code null}
+     */
+    AgentHolderWatcher(@Nonnull Duration volumeSizeRefreshPeriod) {
+        this.volumeSizeRefreshPeriod = DockerCloudUtils.requireNonNull(volumeSizeRefreshPeriod,
+                "Volume size refresh period cannot be null.");
+    }
+
+    /**
+     * Gets the watcher instance shared by the plugin.
+     *
+     * @return the shared watcher
+     */
+    @Nonnull
+    public static AgentHolderWatcher getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a cloud client to this watcher. The returned registration must be closed when the client is
+     * disposed.
+     *
+     * @param cloudSupport the client cloud support
+     * @param clientConfig the client Docker configuration
+     * @param clientUuid   the client UUID
+     *
+     * @return the client registration
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    @Nonnull
+    public Registration register(@Nonnull DockerCloudSupport cloudSupport, @Nonnull DockerClientConfig clientConfig,
+                                 @Nonnull UUID clientUuid) {
+        DockerCloudUtils.requireNonNull(cloudSupport, "Cloud support cannot be null.");
+        DockerCloudUtils.requireNonNull(clientConfig, "Client configuration cannot be null.");
+        DockerCloudUtils.requireNonNull(clientUuid, "Client UUID cannot be null.");
+
+        // Docker and Swarm agent holders are of a different nature, and cannot be listed together.
+        String key = cloudSupport.code() + " " + clientConfig.getInstanceURI();
+
+        Endpoint endpoint = lock.call(() -> {
+            Endpoint existing = endpoints.computeIfAbsent(key,
+                    k -> new Endpoint(k, new CacheVolumePool(volumeSizeRefreshPeriod)));
+            existing.refCount++;
+            return existing;
+        });
+
+        return new Registration(endpoint, clientUuid.toString());
+    }
+
+    /**
+     * Gets the number of endpoints with at least one registered client.
+     *
+     * @return the number of watched endpoints
+     */
+    public int getEndpointCount() {
+        return lock.call(endpoints::size);
+    }
+
+    private Snapshot fetch(Endpoint endpoint, DockerClientFacade facade, Duration maxAge) {
+        long requestTime = System.nanoTime();
+
+        boolean[] fetcher = {false};
+        CompletableFuture<Snapshot> future = lock.call(() -> {
+            Snapshot last = endpoint.last;
+            if (last != null && requestTime - last.nanoTime <= maxAge.toNanos()) {
+                return CompletableFuture.completedFuture(last);
+            }
+            if (endpoint.pending == null) {
+                endpoint.pending = new CompletableFuture<>();
+                fetcher[0] = true;
+            }
+            return endpoint.pending;
+        });
+
+        if (fetcher[0]) {
+            Snapshot snapshot;
+            try {
+                long listingTime = System.nanoTime();
+                snapshot = new Snapshot(listingTime, facade.listAgentHolders(DockerCloudUtils.CLIENT_ID_LABEL, ""));
+                LOG.debug("Listed agent holders for endpoint " + endpoint.key + ".");
+                CpusetAllocator cpusetAllocator = lock.call(() -> {
+                    endpoint.last = snapshot;
+                    return endpoint.cpusetAllocator;
+                });
+                if (cpusetAllocator != null) {
+                    cpusetAllocator.reconcile(snapshot.getAllAgentHolders(), snapshot.nanoTime);
+                }
+            } catch (Throwable e) {
+                // Waiting clients must never be left pending, whatever the failure.
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                lock.run(() -> endpoint.pending = null);
+            }
+            future.complete(snapshot);
+            return snapshot;
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A cloud client registration.
+     */
+    public class Registration implements AutoCloseable {
+
+        private final Endpoint endpoint;
+        private final String clientId;
+        private boolean closed = false;
+
+        private Registration(Endpoint endpoint, String clientId) {
+            this.endpoint = endpoint;
+            this.clientId = clientId;
+        }
+
+        /**
+         * Lists the agent holders of the registered client. The listing of the endpoint is reused if it is not older
+         * than the given age. Otherwise, a new listing will be performed using the given facade, unless a listing is
+         * already in progress.
+         *
+         * @param facade the facade to be used to list the agent holders
+         * @param maxAge the maximal age of a reused listing
+         *
+         * @return the agent holders listing
+         *
+         * @throws NullPointerException if any argument is {@code null}
+         * @throws IllegalStateException if this registration is closed
+         * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+         * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+         */
+        @Nonnull
+        public Listing listAgentHolders(@Nonnull DockerClientFacade facade, @Nonnull Duration maxAge) {
+            DockerCloudUtils.requireNonNull(facade, "Client facade cannot be null.");
+            DockerCloudUtils.requireNonNull(maxAge, "Maximal age cannot be null.");
+            lock.run(() -> {
+                if (closed) {
+                    throw new IllegalStateException("Registration is closed.");
+                }
+            });
+
+            Snapshot snapshot = fetch(endpoint, facade, maxAge);
+            return new Listing(snapshot.nanoTime, snapshot.agentHolders.getOrDefault(clientId,
+                    Collections.emptyList()));
+        }
+
+        /**
+         * Gets the cpuset allocator of the endpoint, shared by all its clients. The allocator is created on first
+         * request, and is then reconciled with each new listing of the endpoint.
+         *
+         * @param cpuCount the number of CPUs of the daemon host, only used if the allocator must be created
+         *
+         * @return the cpuset allocator
+         *
+         * @throws IllegalArgumentException if {@code cpuCount} is negative
+         */
+        @Nonnull
+        public CpusetAllocator getCpusetAllocator(int cpuCount) {
+            boolean[] created = {false};
+            CpusetAllocator allocator = lock.call(() -> {
+                if (endpoint.cpusetAllocator == null) {
+                    endpoint.cpusetAllocator = new CpusetAllocator(cpuCount);
+                    created[0] = true;
+                }
+                return endpoint.cpusetAllocator;
+            });
+            if (created[0]) {
+                LOG.info("Cpuset allocator created for endpoint " + endpoint.key + " (" + cpuCount + " CPUs).");
+                Snapshot last = lock.call(() -> endpoint.last);
+                if (last != null) {
+                    allocator.reconcile(last.getAllAgentHolders(), last.nanoTime);
+                }
+            }
+            return allocator;
+        }
+
+        /**
+         * Gets the cache volume pool of the endpoint, shared by all its clients.
+         *
+         * @return the cache volume pool
+         */
+        @Nonnull
+        public CacheVolumePool getCacheVolumePool() {
+            return endpoint.cacheVolumePool;
+        }
+
+        /**
+         * Closes this registration. The endpoint will no longer be watched once all its clients have been
+         * unregistered. Has no effect if the registration is already closed.
+         */
+        @Override
+        public void close() {
+            lock.run(() -> {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                endpoint.refCount--;
+                if (endpoint.refCount == 0) {
+                    endpoints.remove(endpoint.key, endpoint);
+                }
+            });
+        }
+    }
+
+    /**
+     * The agent holders of a client, as listed at a given time.
+     */
+    public static class Listing {
+
+        private final long nanoTime;
+        private final List<AgentHolderInfo> agentHolders;
+
+        Listing(long nanoTime, List<AgentHolderInfo> agentHolders) {
+            this.nanoTime = nanoTime;
+            this.agentHolders = agentHolders;
+        }
+
+        /**
+         * Gets the {@link System#nanoTime()} value at which the listing was requested to the daemon. Changes
+         * performed after this time may not be reflected in the listing.
+         *
+         * @return the listing time
+         */
+        public long getNanoTime() {
+            return nanoTime;
+        }
+
+        /**
+         * Gets the listed agent holders.
+         *
+         * @return the immutable list of agent holders
+         */
+        @Nonnull
+        public List<AgentHolderInfo> getAgentHolders() {
+            return agentHolders;
+        }
+    }
+
+    private static class Snapshot {
+        final long nanoTime;
+        final Map<String, List<AgentHolderInfo>> agentHolders;
+
+        Snapshot(long nanoTime, List<AgentHolderInfo> agentHolders) {
+            this.nanoTime = nanoTime;
+            Map<String, List<AgentHolderInfo>> byClient = new HashMap<>();
+            for (AgentHolderInfo agentHolder : agentHolders) {
+                String clientId = agentHolder.getLabels().get(DockerCloudUtils.CLIENT_ID_LABEL);
+                if (clientId != null) {
+                    byClient.computeIfAbsent(clientId, id -> new ArrayList<>()).add(agentHolder);
+                }
+            }
+            byClient.replaceAll((clientId, list) -> Collections.unmodifiableList(list));
+            this.agentHolders = byClient;
+        }
+
+        List<AgentHolderInfo> getAllAgentHolders() {
+            List<AgentHolderInfo> all = new ArrayList<>();
+            agentHolders.values().forEach(all::addAll);
+            return all;
+        }
+    }
+
+    private static class Endpoint {
+        final String key;
+        int refCount = 0;
+        Snapshot last;
+        CompletableFuture<Snapshot> pending;
+        CpusetAllocator cpusetAllocator;
+        final CacheVolumePool cacheVolumePool;
+
+        Endpoint(String key, CacheVolumePool cacheVolumePool) {
+            this.key = key;
+            this.cacheVolumePool = cacheVolumePool;
+        }
+    }
+}
@@ -0,0 +1,845 @@
+package run.var.teamcity.cloud.docker;
+
+import com.intellij.openapi.diagnostic.Logger;
+import run.var.teamcity.cloud.docker.client.StdioFrameReader;
+import run.var.teamcity.cloud.docker.util.DirectRingBuffer;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.EscapeSequenceFilter;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+import run.var.teamcity.cloud.docker.util.NamedThreadFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Continuous capture of agent holder logs.
+ * <p>
+ * Each captured agent holder has its logs followed from a dedicated thread. VT100 escape sequences are stripped, and
+ * the remaining output is retained in a fixed-size off-heap {@link DirectRingBuffer ring}. Rings are spilled as
+ * compressed segment files in the store directory when the agent holder terminates, or when the ring is evicted to
+ * make room for another capture. The logs of an agent holder are therefore still available once it has been
+ * destroyed, and can be retrieved without involving the Docker daemon. Segment files are read through memory-mapped
+ * access.
+ * </p>
+ * <p>
+ * Two global caps apply:
+ * </p>
+ * <ul>
+ *     <li>the memory cap, bounding the number of rings allocated at any time. When all rings are in use, the ring of
+ *     the capture with the least recent output is spilled and reassigned.</li>
+ *     <li>the disk cap, bounding the total size of the segment files. When exceeded, the oldest segments of the least
+ *     recently accessed agent holders are deleted first. The segment that was just written is never deleted, the cap
+ *     may therefore be exceeded by at most one segment.</li>
+ * </ul>
+ * <p>
+ * Since rings are bounded, only the tail of the output emitted between two spills is retained: a marker is inserted
+ * in place of the dropped bytes.
+ * </p>
+ * <p>
+ * The number of capture threads is bounded as well. Captures in excess are queued, and will retrieve the output
+ * emitted in the meantime once started.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class AgentLogStore {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(AgentLogStore.class);
+
+    /**
+     * Default capacity of a capture ring in bytes.
+     */
+    public final static int DEFAULT_RING_CAPACITY = 256 * 1024;
+
+    /**
+     * Default memory cap in bytes.
+     */
+    public final static long DEFAULT_MEMORY_CAP = 32L * 1024 * 1024;
+
+    /**
+     * Default disk cap in bytes.
+     */
+    public final static long DEFAULT_DISK_CAP = 512L * 1024 * 1024;
+
+    /**
+     * Default maximum number of concurrent captures. Matches the size of the connection pool dedicated to log
+     * captures on each daemon.
+     */
+    public final static int DEFAULT_MAX_CAPTURES = DockerEndpoint.LOG_CAPTURE_POOL_SIZE;
+
+    private final static Pattern AGENT_HOLDER_ID_PTN = Pattern.compile("[a-zA-Z0-9][a-zA-Z0-9_.-]*");
+    private final static Pattern SEGMENT_NAME_PTN = Pattern.compile("(\\d{8})\\.log\\.gz");
+    private final static String TMP_SUFFIX = ".tmp";
+
+    private final LockHandler lock = LockHandler.newReentrantLock();
+
+    private final Path directory;
+    private final int ringCapacity;
+    private final int maxRings;
+    private final long diskCap;
+    private final ExecutorService executor;
+
+    // The following fields are guarded by the store lock.
+    private final Map<String, Archive> archives = new HashMap<>();
+    private final Map<String, Capture> captures = new HashMap<>();
+    private final Set<Capture> ringHolders = new HashSet<>();
+    private final Deque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private int allocatedRings = 0;
+    private long diskUsage = 0;
+    private long accessCounter = 0;
+    private boolean disposed = false;
+
+    /**
+     * Creates a new store using the default caps.
+     *
+     * @param directory the store directory
+     *
+     * @throws NullPointerException if {@code directory} is {@code null}
+     */
+    public AgentLogStore(@Nonnull Path directory) {
+        this(directory, DEFAULT_RING_CAPACITY, DEFAULT_MEMORY_CAP, DEFAULT_DISK_CAP, DEFAULT_MAX_CAPTURES);
+    }
+
+    /**
+     * Creates a new store using the default maximum number of concurrent captures. Segments already present in the
+     * store directory will be loaded.
+     *
+     * @param directory    the store directory
+     * @param ringCapacity the capacity of a capture ring in bytes
+     * @param memoryCap    the memory cap in bytes, at least one ring will always be allowed
+     * @param diskCap      the disk cap in bytes
+     *
+     * @throws NullPointerException     if {@code directory} is {@code null}
+     * @throws IllegalArgumentException if {@code ringCapacity}, {@code memoryCap} or {@code diskCap} are not strictly
+     *                                  positive
+     */
+    public AgentLogStore(@Nonnull Path directory, int ringCapacity, long memoryCap, long diskCap) {
+        this(directory, ringCapacity, memoryCap, diskCap, DEFAULT_MAX_CAPTURES);
+    }
+
+    /**
+     * Creates a new store. Segments already present in the store directory will be loaded.
+     *
+     * @param directory    the store directory
+     * @param ringCapacity the capacity of a capture ring in bytes
+     * @param memoryCap    the memory cap in bytes, at least one ring will always be allowed
+     * @param diskCap      the disk cap in bytes
+     * @param maxCaptures  the maximum number of concurrent captures, captures in excess are queued
+     *
+     * @throws NullPointerException     if {@code directory} is {@code null}
+     * @throws IllegalArgumentException if {@code ringCapacity}, {@code memoryCap}, {@code diskCap} or
+     *                                  {@code maxCaptures} are not strictly positive
+     */
+    public AgentLogStore(@Nonnull Path directory, int ringCapacity, long memoryCap, long diskCap, int maxCaptures) {
+        DockerCloudUtils.requireNonNull(directory, "Directory cannot be null.");
+        if (ringCapacity < 1) {
+            throw new IllegalArgumentException("Ring capacity must be strictly positive: " + ringCapacity);
+        }
+        if (memoryCap < 1) {
+            throw new IllegalArgumentException("Memory cap must be strictly positive: " + memoryCap);
+        }
+        if (diskCap < 1) {
+            throw new IllegalArgumentException("Disk cap must be strictly positive: " + diskCap);
+        }
+        if (maxCaptures < 1) {
+            throw new IllegalArgumentException("Maximum number of captures must be strictly positive: " +
+                    maxCaptures);
+        }
+        this.directory = directory;
+        this.ringCapacity = ringCapacity;
+        this.maxRings = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryCap / ringCapacity));
+        this.diskCap = diskCap;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxCaptures, maxCaptures, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("AgentLogCapture", true));
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+
+        loadArchives();
+    }
+
+    /**
+     * Starts capturing the logs of the given agent holder. The capture will last until the agent holder terminates,
+     * and the logs emitted in the meantime will be appended to the ones previously captured for the same agent holder
+     * (if any). This method has no effect if the agent holder is already being captured.
+     *
+     * @param agentHolderId the agent holder id
+     * @param clientFacade  the client facade to retrieve the logs, the log stream will be held for the whole capture:
+     *                      the facade should not apply any read timeout
+     * @param since         the instant from which the logs must be captured (may be {@code null})
+     *
+     * @return {@code true} if a new capture was started
+     *
+     * @throws NullPointerException     if {@code agentHolderId} or {@code clientFacade} are {@code null}
+     * @throws IllegalArgumentException if {@code agentHolderId} is not a valid Docker identifier
+     * @throws IllegalStateException    if this store has been disposed
+     */
+    public boolean capture(@Nonnull String agentHolderId, @Nonnull DockerClientFacade clientFacade,
+                           @Nullable Instant since) {
+        checkAgentHolderId(agentHolderId);
+        DockerCloudUtils.requireNonNull(clientFacade, "Client facade cannot be null.");
+
+        Capture capture = lock.call(() -> {
+            if (disposed) {
+                throw new IllegalStateException("Log store has been disposed.");
+            }
+            if (captures.containsKey(agentHolderId)) {
+                return null;
+            }
+            Capture newCapture = new Capture(agentHolderId);
+            captures.put(agentHolderId, newCapture);
+            return newCapture;
+        });
+
+        if (capture == null) {
+            LOG.debug("Logs of " + agentHolderId + " are already being captured.");
+            return false;
+        }
+
+        LOG.info("Starting log capture of " + agentHolderId + ".");
+        executor.submit(() -> capture.run(clientFacade, since));
+        return true;
+    }
+
+    /**
+     * Checks if the logs of the given agent holder are currently being captured.
+     *
+     * @param agentHolderId the agent holder id
+     *
+     * @return {@code true} if the logs are being captured
+     *
+     * @throws NullPointerException if {@code agentHolderId} is {@code null}
+     */
+    public boolean isCapturing(@Nonnull String agentHolderId) {
+        DockerCloudUtils.requireNonNull(agentHolderId, "Agent holder id cannot be null.");
+        return lock.call(() -> captures.containsKey(agentHolderId));
+    }
+
+    /**
+     * Gets the ids of all agent holders for which logs are available, from the most recently accessed one.
+     *
+     * @return the list of agent holder ids
+     */
+    @Nonnull
+    public List<String> getAgentHolderIds() {
+        return lock.call(() -> {
+            List<Archive> sorted = new ArrayList<>(archives.values());
+            sorted.sort(Comparator.comparingLong((Archive archive) -> archive.lastAccess).reversed());
+            List<String> ids = new ArrayList<>(sorted.size() + captures.size());
+            for (Archive archive : sorted) {
+                ids.add(archive.agentHolderId);
+            }
+            for (String agentHolderId : captures.keySet()) {
+                if (!archives.containsKey(agentHolderId)) {
+                    ids.add(0, agentHolderId);
+                }
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Writes all the captured logs of the given agent holder, including the output not yet spilled to disk. The
+     * Docker daemon is not involved.
+     *
+     * @param agentHolderId the agent holder id
+     * @param out           the output stream
+     *
+     * @return {@code true} if logs are known for this agent holder, {@code false} otherwise
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IOException          if writing to the output stream or reading a segment failed
+     */
+    public boolean writeLogs(@Nonnull String agentHolderId, @Nonnull OutputStream out) throws IOException {
+        DockerCloudUtils.requireNonNull(agentHolderId, "Agent holder id cannot be null.");
+        DockerCloudUtils.requireNonNull(out, "Output stream cannot be null.");
+
+        Capture capture = lock.call(() -> captures.get(agentHolderId));
+
+        List<Path> segments;
+        List<byte[]> tail;
+        if (capture != null) {
+            // Lock the capture to prevent concurrent spills: segments, content being spilled and ring content are
+            // then consistent.
+            capture.captureLock.lock();
+            try {
+                segments = listSegments(agentHolderId);
+                tail = new ArrayList<>(capture.pendingSpills);
+                tail.add(capture.snapshot());
+            } finally {
+                capture.captureLock.unlock();
+            }
+        } else {
+            segments = listSegments(agentHolderId);
+            tail = null;
+        }
+
+        if (segments == null && capture == null) {
+            return false;
+        }
+
+        if (segments != null) {
+            for (Path segment : segments) {
+                readSegment(segment, out);
+            }
+        }
+
+        if (tail != null) {
+            for (byte[] content : tail) {
+                out.write(content);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the total size of the segment files.
+     *
+     * @return the total size in bytes
+     */
+    public long getDiskUsage() {
+        return lock.call(() -> diskUsage);
+    }
+
+    /**
+     * Gets the number of rings currently assigned to a capture.
+     *
+     * @return the number of rings in use
+     */
+    public int getRingsInUse() {
+        return lock.call(ringHolders::size);
+    }
+
+    /**
+     * Disposes this store. Ongoing captures are stopped and their rings spilled to disk. Captured logs remain
+     * readable.
+     */
+    public void dispose() {
+        List<Capture> activeCaptures = lock.call(() -> {
+            disposed = true;
+            return new ArrayList<>(captures.values());
+        });
+
+        activeCaptures.forEach(Capture::cancel);
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warn("Log captures did not terminate in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Path> listSegments(String agentHolderId) {
+        return lock.call(() -> {
+            Archive archive = archives.get(agentHolderId);
+            if (archive == null) {
+                return null;
+            }
+            archive.lastAccess = ++accessCounter;
+            List<Path> paths = new ArrayList<>(archive.segments.size());
+            for (Segment segment : archive.segments) {
+                paths.add(segment.path);
+            }
+            return paths;
+        });
+    }
+
+    private void readSegment(Path segment, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try (InputStream in = new GZIPInputStream(new ByteBufferInputStream(mapped))) {
+                byte[] buffer = new byte[8 * 1024];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Segment was concurrently evicted.
+            LOG.debug("Segment " + segment + " evicted while reading.");
+        }
+    }
+
+    private ByteBuffer acquireBuffer(Capture requester) {
+        while (true) {
+            Capture victim;
+            lock.lock();
+            try {
+                ByteBuffer buffer = freeBuffers.poll();
+                if (buffer == null && allocatedRings < maxRings) {
+                    buffer = ByteBuffer.allocateDirect(ringCapacity);
+                    allocatedRings++;
+                }
+                if (buffer != null) {
+                    ringHolders.add(requester);
+                    return buffer;
+                }
+
+                // All rings are in use: select the one with the least recent output.
+                victim = null;
+                for (Capture holder : ringHolders) {
+                    if (victim == null || holder.lastAppend < victim.lastAppend) {
+                        victim = holder;
+                    }
+                }
+                if (victim != null) {
+                    ringHolders.remove(victim);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (victim == null) {
+                // Rings are being reassigned concurrently.
+                Thread.yield();
+                continue;
+            }
+
+            LOG.debug("Evicting log ring of " + victim.agentHolderId + " for " + requester.agentHolderId + ".");
+            ByteBuffer buffer = victim.evict();
+            if (buffer != null) {
+                lock.run(() -> ringHolders.add(requester));
+                return buffer;
+            }
+            // The victim released its ring concurrently, try again.
+        }
+    }
+
+    private void releaseBuffer(Capture capture, @Nullable ByteBuffer buffer) {
+        lock.run(() -> {
+            ringHolders.remove(capture);
+            if (buffer != null) {
+                freeBuffers.push(buffer);
+            }
+            captures.remove(capture.agentHolderId, capture);
+        });
+    }
+
+    private Path nextSegmentPath(String agentHolderId) throws IOException {
+        Path archiveDir = directory.resolve(agentHolderId);
+        Files.createDirectories(archiveDir);
+        return lock.call(() -> {
+            Archive archive = archives.computeIfAbsent(agentHolderId, id -> new Archive(id, archiveDir));
+            return archiveDir.resolve(String.format("%08d.log.gz", archive.nextSeq++));
+        });
+    }
+
+    // Returns the files evicted to enforce the disk cap, to be deleted once the locks are released.
+    private List<Path> registerSegment(String agentHolderId, Path path, long size) {
+        return lock.call(() -> {
+            Archive archive = archives.get(agentHolderId);
+            if (archive == null) {
+                // Archive was evicted in the meantime.
+                archive = new Archive(agentHolderId, path.getParent());
+                archives.put(agentHolderId, archive);
+            }
+            Segment segment = new Segment(path, size);
+            archive.segments.add(segment);
+            archive.lastAccess = ++accessCounter;
+            diskUsage += size;
+            return enforceDiskCap(segment);
+        });
+    }
+
+    private List<Path> enforceDiskCap(Segment keep) {
+        assert lock.isHeldByCurrentThread();
+
+        List<Path> evictedPaths = new ArrayList<>();
+        while (diskUsage > diskCap) {
+            Archive lru = null;
+            for (Archive archive : archives.values()) {
+                if (archive.segments.isEmpty() || archive.segments.get(0) == keep) {
+                    continue;
+                }
+                if (lru == null || archive.lastAccess < lru.lastAccess) {
+                    lru = archive;
+                }
+            }
+            if (lru == null) {
+                break;
+            }
+
+            Segment evicted = lru.segments.remove(0);
+            diskUsage -= evicted.size;
+            evictedPaths.add(evicted.path);
+            LOG.info("Disk cap exceeded, evicted log segment " + evicted.path + ".");
+
+            if (lru.segments.isEmpty() && !captures.containsKey(lru.agentHolderId)) {
+                archives.remove(lru.agentHolderId);
+                evictedPaths.add(lru.dir);
+            }
+        }
+        return evictedPaths;
+    }
+
+    private void loadArchives() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            LOG.error("Failed to create log store directory: " + directory, e);
+            return;
+        }
+
+        List<Archive> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                String agentHolderId = dir.getFileName().toString();
+                if (!AGENT_HOLDER_ID_PTN.matcher(agentHolderId).matches()) {
+                    continue;
+                }
+                Archive archive = new Archive(agentHolderId, dir);
+                long lastModified = 0;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                    for (Path file : files) {
+                        String fileName = file.getFileName().toString();
+                        Matcher matcher = SEGMENT_NAME_PTN.matcher(fileName);
+                        if (matcher.matches()) {
+                            int seq = Integer.parseInt(matcher.group(1));
+                            long size = Files.size(file);
+                            archive.segments.add(new Segment(file, size, seq));
+                            archive.nextSeq = Math.max(archive.nextSeq, seq + 1);
+                            lastModified = Math.max(lastModified, Files.getLastModifiedTime(file).toMillis());
+                        } else if (fileName.endsWith(TMP_SUFFIX)) {
+                            // Leftover from an interrupted spill.
+                            deleteQuietly(file);
+                        }
+                    }
+                }
+                if (!archive.segments.isEmpty()) {
+                    archive.segments.sort(Comparator.comparingInt(segment -> segment.seq));
+                    archive.lastAccess = lastModified;
+                    loaded.add(archive);
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to load captured logs from: " + directory, e);
+        }
+
+        // Access ordering is preserved across restarts using the segments timestamp.
+        loaded.sort(Comparator.comparingLong(archive -> archive.lastAccess));
+
+        List<Path> evictedPaths = lock.call(() -> {
+            for (Archive archive : loaded) {
+                archive.lastAccess = ++accessCounter;
+                archives.put(archive.agentHolderId, archive);
+                for (Segment segment : archive.segments) {
+                    diskUsage += segment.size;
+                }
+            }
+            return enforceDiskCap(null);
+        });
+        evictedPaths.forEach(AgentLogStore::deleteQuietly);
+
+        if (!loaded.isEmpty()) {
+            LOG.info("Loaded captured logs of " + loaded.size() + " agent holders (" + getDiskUsage() + " bytes).");
+        }
+    }
+
+    private static void checkAgentHolderId(String agentHolderId) {
+        DockerCloudUtils.requireNonNull(agentHolderId, "Agent holder id cannot be null.");
+        if (!AGENT_HOLDER_ID_PTN.matcher(agentHolderId).matches()) {
+            throw new IllegalArgumentException("Invalid agent holder id: " + agentHolderId);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete " + path + ".", e);
+        }
+    }
+
+    private static byte[] droppedMarker(long droppedBytes) {
+        return ("[... " + droppedBytes + " bytes dropped ...]\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An ongoing capture.
+     */
+    private class Capture {
+
+        private final String agentHolderId;
+
+        private final LockHandler captureLock = LockHandler.newReentrantLock();
+
+        // Only accessed from the capture thread. Escape sequences are stripped before the output reaches the ring.
+        private final OutputStream filter = new EscapeSequenceFilter(new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(@Nonnull byte[] b, int off, int len) {
+                append(b, off, len);
+            }
+        });
+
+        // Serializes the segment writes of this capture.
+        private final LockHandler spillLock = LockHandler.newReentrantLock();
+
+        // Guarded by the capture lock.
+        private DirectRingBuffer ring;
+        // Content taken from the ring but not yet written to a segment, from the oldest.
+        private final Deque<byte[]> pendingSpills = new ArrayDeque<>();
+
+        private volatile long lastAppend;
+        private volatile StreamHandler streamHandler;
+        private volatile boolean cancelled = false;
+
+        Capture(String agentHolderId) {
+            this.agentHolderId = agentHolderId;
+        }
+
+        void run(DockerClientFacade clientFacade, Instant since) {
+            if (cancelled) {
+                // Cancelled while queued.
+                finish();
+                return;
+            }
+            try (StreamHandler handler = clientFacade.followLogs(agentHolderId, since)) {
+                streamHandler = handler;
+                if (cancelled) {
+                    return;
+                }
+                StdioFrameReader frameReader = handler.frameReader();
+                while (frameReader.next()) {
+                    filter.write(frameReader.getBuffer(), frameReader.getOffset(), frameReader.getLength());
+                }
+                LOG.info("Log capture of " + agentHolderId + " completed.");
+            } catch (Exception e) {
+                if (cancelled) {
+                    LOG.debug("Log capture of " + agentHolderId + " cancelled.", e);
+                } else {
+                    LOG.warn("Log capture of " + agentHolderId + " aborted.", e);
+                }
+            } finally {
+                finish();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            StreamHandler handler = streamHandler;
+            if (handler != null) {
+                // Will unblock the capture thread.
+                handler.close();
+            }
+        }
+
+        private void append(byte[] b, int off, int len) {
+            if (len == 0) {
+                return;
+            }
+
+            lastAppend = System.nanoTime();
+
+            while (true) {
+                boolean appended = captureLock.call(() -> {
+                    if (ring == null) {
+                        return false;
+                    }
+                    ring.append(b, off, len);
+                    return true;
+                });
+                if (appended) {
+                    return;
+                }
+                // Must not hold the capture lock while acquiring a buffer: another capture may have to be evicted.
+                ByteBuffer buffer = acquireBuffer(this);
+                captureLock.run(() -> ring = new DirectRingBuffer(buffer));
+            }
+        }
+
+        byte[] snapshot() {
+            assert captureLock.isHeldByCurrentThread();
+            if (ring == null) {
+                return new byte[0];
+            }
+            byte[] content = ring.toByteArray();
+            long dropped = ring.getDroppedBytes();
+            if (dropped == 0) {
+                return content;
+            }
+            byte[] marker = droppedMarker(dropped);
+            byte[] snapshot = new byte[marker.length + content.length];
+            System.arraycopy(marker, 0, snapshot, 0, marker.length);
+            System.arraycopy(content, 0, snapshot, marker.length, content.length);
+            return snapshot;
+        }
+
+        ByteBuffer evict() {
+            ByteBuffer buffer = captureLock.call(this::takeRing);
+            if (buffer != null) {
+                writePendingSpills();
+            }
+            return buffer;
+        }
+
+        private void finish() {
+            ByteBuffer buffer = captureLock.call(this::takeRing);
+            writePendingSpills();
+            releaseBuffer(this, buffer);
+        }
+
+        // Moves the ring content to the pending spills and releases the ring. The segment is written afterward
+        // without holding the capture lock, appending to a new ring or reading the logs are therefore not blocked by
+        // the disk I/O.
+        private ByteBuffer takeRing() {
+            assert captureLock.isHeldByCurrentThread();
+
+            if (ring == null) {
+                return null;
+            }
+            if (ring.size() > 0) {
+                pendingSpills.add(snapshot());
+            }
+            ByteBuffer buffer = ring.release();
+            ring = null;
+            return buffer;
+        }
+
+        private void writePendingSpills() {
+            // Segments are written in order, whichever thread took the ring content.
+            spillLock.run(() -> {
+                byte[] content;
+                while ((content = captureLock.call(pendingSpills::peek)) != null) {
+                    writeSegment(content);
+                }
+            });
+        }
+
+        private void writeSegment(byte[] content) {
+            Path tmp = null;
+            List<Path> evictedPaths = Collections.emptyList();
+            try {
+                Path target = nextSegmentPath(agentHolderId);
+                tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                    out.write(content);
+                }
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                long size = Files.size(target);
+                // The content must move atomically from the pending spills to the segments for readers.
+                evictedPaths = captureLock.call(() -> {
+                    pendingSpills.poll();
+                    return registerSegment(agentHolderId, target, size);
+                });
+            } catch (IOException e) {
+                LOG.error("Failed to spill logs of " + agentHolderId + ", " + content.length + " bytes lost.", e);
+                captureLock.run(pendingSpills::poll);
+                if (tmp != null) {
+                    deleteQuietly(tmp);
+                }
+            }
+            evictedPaths.forEach(AgentLogStore::deleteQuietly);
+        }
+    }
+
+    /**
+     * The segments of an agent holder.
+     */
+    private static class Archive {
+        final String agentHolderId;
+        final Path dir;
+        final List<Segment> segments = new ArrayList<>();
+        int nextSeq = 0;
+        long lastAccess = 0;
+
+        Archive(String agentHolderId, Path dir) {
+            this.agentHolderId = agentHolderId;
+            this.dir = dir;
+        }
+    }
+
+    /**
+     * A compressed segment file.
+     */
+    private static class Segment {
+        final Path path;
+        final long size;
+        final int seq;
+
+        Segment(Path path, long size) {
+            this(path, size, -1);
+        }
+
+        Segment(Path path, long size, int seq) {
+            this.path = path;
+            this.size = size;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Input stream reading from a byte buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
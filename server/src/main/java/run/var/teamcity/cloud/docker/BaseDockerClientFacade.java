@@ -1,12 +1,24 @@
 package run.var.teamcity.cloud.docker;
 
 import run.var.teamcity.cloud.docker.client.DockerClient;
-import run.var.teamcity.cloud.docker.client.StdioInputStream;
+import run.var.teamcity.cloud.docker.client.NotFoundException;
+import run.var.teamcity.cloud.docker.client.StdioFrameReader;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.EditableNode;
+import run.var.teamcity.cloud.docker.util.LogTail;
+import run.var.teamcity.cloud.docker.util.Node;
+import run.var.teamcity.cloud.docker.util.NodeProcessingException;
+
+import javax.annotation.Nonnull;
 
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 abstract class BaseDockerClientFacade implements DockerClientFacade {
 
@@ -35,17 +47,109 @@ abstract class BaseDockerClientFacade implements DockerClientFacade {
     }
 
     final CharSequence demuxLogs(StreamHandler streamHandler) {
-        StringBuilder sb = new StringBuilder(5 * 1024);
+        LogTail logTail = new LogTail();
 
-        StdioInputStream streamFragment;
-        try {
-            while ((streamFragment = streamHandler.getNextStreamFragment()) != null) {
-                sb.append(DockerCloudUtils.readUTF8String(streamFragment));
+        try (StreamHandler handler = streamHandler) {
+            StdioFrameReader frameReader = handler.frameReader();
+            while (frameReader.next()) {
+                logTail.append(frameReader.getBuffer(), frameReader.getOffset(), frameReader.getLength());
             }
         } catch (IOException e) {
-            throw new DockerClientFacadeException("Failed to fetch logs.");
+            throw new DockerClientFacadeException("Failed to fetch logs.", e);
+        }
+        return logTail.toString();
+    }
+
+    @Nonnull
+    @Override
+    public DaemonResources getDaemonResources() {
+        Node info = client.getInfo();
+        try {
+            return new DaemonResources(info.getAsInt("NCPU"), info.getAsLong("MemTotal"));
+        } catch (NodeProcessingException | IllegalArgumentException e) {
+            throw new DockerClientFacadeException("Failed to process daemon info.", e);
+        }
+    }
+
+    /**
+     * Fetches a resource usage statistics sample of the given container.
+     *
+     * @param containerId the container id
+     *
+     * @return the statistics sample, or an empty optional if the container does not exist
+     */
+    final Optional<ContainerStats> fetchContainerStats(String containerId) {
+        assert containerId != null;
+
+        Node stats;
+        try {
+            stats = client.getStats(containerId);
+        } catch (NotFoundException e) {
+            return Optional.empty();
+        }
+        long nanoTime = System.nanoTime();
+        try {
+            return Optional.of(ContainerStats.fromNode(stats, nanoTime));
+        } catch (NodeProcessingException | IllegalArgumentException e) {
+            throw new DockerClientFacadeException("Failed to process container statistics.", e);
+        }
+    }
+
+    @Override
+    public void createVolume(@Nonnull String name, @Nonnull Map<String, String> labels) {
+        DockerCloudUtils.requireNonNull(name, "Volume name cannot be null.");
+        DockerCloudUtils.requireNonNull(labels, "Volume labels cannot be null.");
+
+        EditableNode volumeSpec = Node.EMPTY_OBJECT.editNode().put("Name", name);
+        applyLabels(volumeSpec, labels);
+
+        client.createVolume(volumeSpec.saveNode());
+    }
+
+    @Nonnull
+    @Override
+    public List<VolumeInfo> listVolumes(@Nonnull String labelFilter, @Nonnull String valueFilter) {
+        DockerCloudUtils.requireNonNull(labelFilter, "Label filter key cannot be null.");
+        DockerCloudUtils.requireNonNull(valueFilter, "Label filter value cannot be null.");
+
+        Node volumesNode = client.listVolumesWithLabel(Collections.singletonMap(labelFilter, valueFilter));
+        try {
+            List<Node> volumeNodes = volumesNode.getArray("Volumes", Node.EMPTY_ARRAY).getArrayValues();
+            if (volumeNodes.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            // Volume sizes are only computed by the daemon when querying its disk usage.
+            Map<String, Long> sizes = new HashMap<>();
+            for (Node volumeNode : client.getDiskUsage().getArray("Volumes", Node.EMPTY_ARRAY).getArrayValues()) {
+                long size = volumeNode.getObject("UsageData", Node.EMPTY_OBJECT).
+                        getAsBigInt("Size", BigInteger.valueOf(-1)).longValue();
+                sizes.put(volumeNode.getAsString("Name"), size);
+            }
+
+            List<VolumeInfo> volumes = new ArrayList<>(volumeNodes.size());
+            for (Node volumeNode : volumeNodes) {
+                String name = volumeNode.getAsString("Name");
+                Map<String, String> labels = new HashMap<>();
+                volumeNode.getObject("Labels", Node.EMPTY_OBJECT).getObjectValues().
+                        forEach((key, value) -> labels.put(key, value.isNull() ? "" : value.getAsString()));
+                volumes.add(new VolumeInfo(name, labels, sizes.getOrDefault(name, -1L)));
+            }
+            return volumes;
+        } catch (NodeProcessingException e) {
+            throw new DockerClientFacadeException("Failed to list volumes.", e);
+        }
+    }
+
+    @Override
+    public boolean removeVolume(@Nonnull String name) {
+        DockerCloudUtils.requireNonNull(name, "Volume name cannot be null.");
+        try {
+            client.removeVolume(name, false);
+        } catch (NotFoundException e) {
+            return false;
         }
-        return sb;
+        return true;
     }
 
     /**
@@ -0,0 +1,89 @@
+package run.var.teamcity.cloud.docker;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import javax.annotation.Nonnull;
+import java.util.regex.Pattern;
+
+/**
+ * Definition of a dependency cache volume mounted into the agent holders of an image.
+ * <p>
+ * Each running agent holder gets its own volume for a given cache definition: volumes are pooled and handed over from
+ * one agent holder to the next one once released, such that the cache content is reused without ever being written
+ * concurrently.
+ * </p>
+ * <p>
+ * Instances of this class are immutable.
+ * </p>
+ */
+public class CacheVolume {
+
+    private final static Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9][a-zA-Z0-9_.-]*");
+
+    private final String name;
+    private final String target;
+
+    /**
+     * Creates a new cache volume definition.
+     *
+     * @param name   the cache name, unique for a given image
+     * @param target the mount point of the cache in the agent holder
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code name} is not a valid cache name, or if {@code target} is empty
+     */
+    public CacheVolume(@Nonnull String name, @Nonnull String target) {
+        DockerCloudUtils.requireNonNull(name, "Cache name cannot be null.");
+        DockerCloudUtils.requireNonNull(target, "Cache target cannot be null.");
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid cache name: " + name);
+        }
+        if (target.trim().isEmpty()) {
+            throw new IllegalArgumentException("Cache target cannot be empty.");
+        }
+        this.name = name;
+        this.target = target;
+    }
+
+    /**
+     * Gets the cache name.
+     *
+     * @return the cache name
+     */
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the mount point of the cache in the agent holder.
+     *
+     * @return the cache mount point
+     */
+    @Nonnull
+    public String getTarget() {
+        return target;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CacheVolume)) {
+            return false;
+        }
+        CacheVolume other = (CacheVolume) obj;
+        return name.equals(other.name) && target.equals(other.target);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode() * 31 + target.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name + ":" + target;
+    }
+}
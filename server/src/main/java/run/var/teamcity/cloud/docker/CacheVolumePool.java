@@ -0,0 +1,310 @@
+package run.var.teamcity.cloud.docker;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Pool of the cache volumes of a single Docker daemon host.
+ * <p>
+ * A cache volume is identified by its name, and holds the content of a cache identified by its key. Several volumes
+ * may hold the same cache, such that concurrently running agent holders never share a volume. Each volume is either
+ * in use by a single instance, or free to be handed over to the next instance needing the same cache, the most
+ * recently used volume being preferred. Free volumes are evicted in least recently used order when the disk space used
+ * by the volumes of a cloud client exceeds its budget.
+ * </p>
+ * <p>
+ * An evicted volume remains registered until its removal from the daemon is {@linkplain #removed(String) confirmed}.
+ * If the removal {@linkplain #removalFailed(String) failed}, the volume is free again, and will be evicted anew by the
+ * next eviction.
+ * </p>
+ * <p>
+ * The volume sizes are only computed by the daemon when querying its whole disk usage, which may be expensive. Size
+ * refreshes are therefore {@linkplain #claimSizeRefresh() throttled}, eviction relying on the last known sizes in the
+ * meantime.
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ */
+public class CacheVolumePool {
+
+    /**
+     * Default minimal delay between two refreshes of the volume sizes.
+     */
+    public static final Duration DEFAULT_SIZE_REFRESH_PERIOD = Duration.ofMinutes(1);
+
+    private final Duration sizeRefreshPeriod;
+
+    private final LockHandler lock = LockHandler.newReentrantLock();
+
+    private final Map<String, Entry> volumes = new HashMap<>();
+
+    // Logical clock ordering the volume uses.
+    private long useSequence = 0;
+
+    private boolean sizesRefreshed = false;
+    private long lastSizeRefresh;
+
+    /**
+     * Creates a new pool, using the {@linkplain #DEFAULT_SIZE_REFRESH_PERIOD default size refresh period}.
+     */
+    public CacheVolumePool() {
+        this(DEFAULT_SIZE_REFRESH_PERIOD);
+    }
+
+    /**
+     * Creates a new pool.
+     *
+     * @param sizeRefreshPeriod the minimal delay between two refreshes of the volume sizes
+     *
+     * @throws NullPointerException if {@code sizeRefreshPeriod} is {@code null}
+     * @throws IllegalArgumentException if {@code sizeRefreshPeriod} is negative
+     */
+    public CacheVolumePool(@Nonnull Duration sizeRefreshPeriod) {
+        DockerCloudUtils.requireNonNull(sizeRefreshPeriod, "Size refresh period cannot be null.");
+        if (sizeRefreshPeriod.isNegative()) {
+            throw new IllegalArgumentException("Size refresh period cannot be negative: " + sizeRefreshPeriod);
+        }
+        this.sizeRefreshPeriod = sizeRefreshPeriod;
+    }
+
+    /**
+     * Acquires a free volume holding the given cache for the given instance.
+     *
+     * @param cacheKey     the cache key
+     * @param instanceUuid the instance UUID
+     *
+     * @return the name of the acquired volume, or an empty optional if no free volume holds this cache
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    @Nonnull
+    public Optional<String> acquire(@Nonnull String cacheKey, @Nonnull UUID instanceUuid) {
+        DockerCloudUtils.requireNonNull(cacheKey, "Cache key cannot be null.");
+        DockerCloudUtils.requireNonNull(instanceUuid, "Instance UUID cannot be null.");
+        return lock.call(() -> {
+            Optional<Map.Entry<String, Entry>> mostRecentlyUsed = volumes.entrySet().stream().
+                    filter(entry -> entry.getValue().isFree() && entry.getValue().cacheKey.equals(cacheKey)).
+                    max(Comparator.comparingLong(entry -> entry.getValue().lastUse));
+            mostRecentlyUsed.ifPresent(entry -> entry.getValue().instanceUuid = instanceUuid);
+            return mostRecentlyUsed.map(Map.Entry::getKey);
+        });
+    }
+
+    /**
+     * Registers a newly created volume, in use by the given instance.
+     *
+     * @param volumeName   the volume name
+     * @param cacheKey     the cache key
+     * @param instanceUuid the instance UUID
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if the volume is already registered
+     */
+    public void register(@Nonnull String volumeName, @Nonnull String cacheKey, @Nonnull UUID instanceUuid) {
+        DockerCloudUtils.requireNonNull(volumeName, "Volume name cannot be null.");
+        DockerCloudUtils.requireNonNull(cacheKey, "Cache key cannot be null.");
+        DockerCloudUtils.requireNonNull(instanceUuid, "Instance UUID cannot be null.");
+        lock.run(() -> {
+            if (volumes.containsKey(volumeName)) {
+                throw new IllegalArgumentException("Volume already registered: " + volumeName);
+            }
+            Entry entry = new Entry(cacheKey);
+            entry.instanceUuid = instanceUuid;
+            entry.lastUse = ++useSequence;
+            volumes.put(volumeName, entry);
+        });
+    }
+
+    /**
+     * Restores a free volume found on the daemon host, for example after a server restart. Restored volumes are
+     * considered as less recently used than any other volume. Has no effect if the volume is already registered.
+     *
+     * @param volumeName the volume name
+     * @param cacheKey   the cache key
+     * @param sizeBytes  the volume size in bytes, negative if unknown
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void restore(@Nonnull String volumeName, @Nonnull String cacheKey, long sizeBytes) {
+        DockerCloudUtils.requireNonNull(volumeName, "Volume name cannot be null.");
+        DockerCloudUtils.requireNonNull(cacheKey, "Cache key cannot be null.");
+        lock.run(() -> volumes.computeIfAbsent(volumeName, name -> new Entry(cacheKey)).
+                sizeBytes = Math.max(0, sizeBytes));
+    }
+
+    /**
+     * Releases the volumes in use by the given instance, such that they can be handed over to other instances.
+     *
+     * @param instanceUuid the instance UUID
+     *
+     * @throws NullPointerException if {@code instanceUuid} is {@code null}
+     */
+    public void release(@Nonnull UUID instanceUuid) {
+        DockerCloudUtils.requireNonNull(instanceUuid, "Instance UUID cannot be null.");
+        lock.run(() -> {
+            for (Entry entry : volumes.values()) {
+                if (instanceUuid.equals(entry.instanceUuid)) {
+                    entry.instanceUuid = null;
+                    entry.lastUse = ++useSequence;
+                }
+            }
+        });
+    }
+
+    /**
+     * Updates the known size of a volume. Has no effect if the volume is not registered.
+     *
+     * @param volumeName the volume name
+     * @param sizeBytes  the volume size in bytes, negative if unknown
+     *
+     * @throws NullPointerException if {@code volumeName} is {@code null}
+     */
+    public void updateSize(@Nonnull String volumeName, long sizeBytes) {
+        DockerCloudUtils.requireNonNull(volumeName, "Volume name cannot be null.");
+        lock.run(() -> {
+            Entry entry = volumes.get(volumeName);
+            if (entry != null && sizeBytes >= 0) {
+                entry.sizeBytes = sizeBytes;
+            }
+        });
+    }
+
+    /**
+     * Claims the next refresh of the volume sizes. A refresh can be claimed at most once per refresh period, such
+     * that concurrent evictions do not all query the daemon disk usage. The caller for which this method returns
+     * {@code true} is expected to {@linkplain #updateSize(String, long) update} the volume sizes.
+     *
+     * @return {@code true} if the caller must refresh the volume sizes
+     */
+    public boolean claimSizeRefresh() {
+        return lock.call(() -> {
+            long now = System.nanoTime();
+            if (sizesRefreshed && now - lastSizeRefresh < sizeRefreshPeriod.toNanos()) {
+                return false;
+            }
+            sizesRefreshed = true;
+            lastSizeRefresh = now;
+            return true;
+        });
+    }
+
+    /**
+     * Gets the names of all registered volumes.
+     *
+     * @return the list of volume names
+     */
+    @Nonnull
+    public List<String> getVolumeNames() {
+        return lock.call(() -> new ArrayList<>(volumes.keySet()));
+    }
+
+    /**
+     * Gets the disk space used by all registered volumes, as last known.
+     *
+     * @return the total size in bytes
+     */
+    public long getTotalSize() {
+        return lock.call(() -> volumes.values().stream().mapToLong(entry -> entry.sizeBytes).sum());
+    }
+
+    /**
+     * Selects the free volumes to be evicted for the disk space used by the volumes whose cache key starts with the
+     * given prefix to fit in the given budget, in least recently used order. Volumes in use are never evicted, and the
+     * budget may therefore still be exceeded after eviction. Evicted volumes can no longer be acquired, and must be
+     * removed from the daemon by the caller, which must then report the outcome of the removal.
+     *
+     * @param cacheKeyPrefix the prefix of the cache keys to which the budget applies
+     * @param budgetBytes    the disk space budget in bytes
+     *
+     * @return the names of the evicted volumes
+     *
+     * @throws NullPointerException if {@code cacheKeyPrefix} is {@code null}
+     * @throws IllegalArgumentException if {@code budgetBytes} is negative
+     */
+    @Nonnull
+    public List<String> evict(@Nonnull String cacheKeyPrefix, long budgetBytes) {
+        DockerCloudUtils.requireNonNull(cacheKeyPrefix, "Cache key prefix cannot be null.");
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("Budget cannot be negative: " + budgetBytes);
+        }
+        return lock.call(() -> {
+            // Volumes already being evicted are not accounted for.
+            long totalSize = volumes.values().stream().
+                    filter(entry -> !entry.evicting && entry.cacheKey.startsWith(cacheKeyPrefix)).
+                    mapToLong(entry -> entry.sizeBytes).sum();
+            List<Map.Entry<String, Entry>> candidates = volumes.entrySet().stream().
+                    filter(entry -> entry.getValue().isFree() && entry.getValue().cacheKey.startsWith(cacheKeyPrefix)).
+                    sorted(Comparator.comparingLong(entry -> entry.getValue().lastUse)).
+                    collect(Collectors.toList());
+            List<String> evicted = new ArrayList<>();
+            for (Map.Entry<String, Entry> candidate : candidates) {
+                if (totalSize <= budgetBytes) {
+                    break;
+                }
+                totalSize -= candidate.getValue().sizeBytes;
+                candidate.getValue().evicting = true;
+                evicted.add(candidate.getKey());
+            }
+            return evicted;
+        });
+    }
+
+    /**
+     * Confirms the removal of an evicted volume from the daemon, such that it is no longer part of the pool. Has no
+     * effect if the volume is not registered.
+     *
+     * @param volumeName the volume name
+     *
+     * @throws NullPointerException if {@code volumeName} is {@code null}
+     */
+    public void removed(@Nonnull String volumeName) {
+        DockerCloudUtils.requireNonNull(volumeName, "Volume name cannot be null.");
+        lock.run(() -> volumes.remove(volumeName));
+    }
+
+    /**
+     * Reports the failed removal of an evicted volume. The volume is free again, and will be evicted anew by the next
+     * eviction. Has no effect if the volume is not registered.
+     *
+     * @param volumeName the volume name
+     *
+     * @throws NullPointerException if {@code volumeName} is {@code null}
+     */
+    public void removalFailed(@Nonnull String volumeName) {
+        DockerCloudUtils.requireNonNull(volumeName, "Volume name cannot be null.");
+        lock.run(() -> {
+            Entry entry = volumes.get(volumeName);
+            if (entry != null) {
+                entry.evicting = false;
+            }
+        });
+    }
+
+    private static class Entry {
+        final String cacheKey;
+        UUID instanceUuid;
+        boolean evicting;
+        long lastUse;
+        long sizeBytes;
+
+        Entry(String cacheKey) {
+            this.cacheKey = cacheKey;
+        }
+
+        boolean isFree() {
+            return instanceUuid == null && !evicting;
+        }
+    }
+}
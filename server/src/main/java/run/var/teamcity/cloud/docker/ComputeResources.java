@@ -0,0 +1,164 @@
+package run.var.teamcity.cloud.docker;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An amount of CPU and memory, either requested by an agent holder or granted to a cloud profile. A zero amount
+ * stands for an unspecified request, or an unlimited budget.
+ * <p>
+ * Instances of this class are immutable.
+ * </p>
+ */
+public class ComputeResources {
+
+    /**
+     * Number of nano CPUs in a CPU.
+     */
+    public static final long NANO_CPUS_PER_CPU = 1_000_000_000L;
+
+    /**
+     * Weight of a full CPU, when expressed as CPU shares.
+     */
+    public static final long CPU_SHARES_PER_CPU = 1024;
+
+    /**
+     * No resources.
+     */
+    public static final ComputeResources NONE = new ComputeResources(0, 0);
+
+    private final long nanoCpus;
+    private final long memoryBytes;
+
+    /**
+     * Creates a new resources set.
+     *
+     * @param nanoCpus    the amount of CPU in billionths of CPU
+     * @param memoryBytes the amount of memory in bytes
+     *
+     * @throws IllegalArgumentException if any argument is negative
+     */
+    public ComputeResources(long nanoCpus, long memoryBytes) {
+        if (nanoCpus < 0) {
+            throw new IllegalArgumentException("CPU amount cannot be negative: " + nanoCpus);
+        }
+        if (memoryBytes < 0) {
+            throw new IllegalArgumentException("Memory amount cannot be negative: " + memoryBytes);
+        }
+        this.nanoCpus = nanoCpus;
+        this.memoryBytes = memoryBytes;
+    }
+
+    /**
+     * Gets the amount of CPU.
+     *
+     * @return the amount of CPU in billionths of CPU
+     */
+    public long getNanoCpus() {
+        return nanoCpus;
+    }
+
+    /**
+     * Gets the amount of memory.
+     *
+     * @return the amount of memory in bytes
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Checks if neither CPU nor memory are specified.
+     *
+     * @return {@code true} if both amounts are zero
+     */
+    public boolean isNone() {
+        return nanoCpus == 0 && memoryBytes == 0;
+    }
+
+    /**
+     * Adds the given resources to this one.
+     *
+     * @param resources the resources to be added
+     *
+     * @return the resources sum
+     *
+     * @throws NullPointerException if {@code resources} is {@code null}
+     */
+    @Nonnull
+    public ComputeResources plus(@Nonnull ComputeResources resources) {
+        DockerCloudUtils.requireNonNull(resources, "Resources cannot be null.");
+        return new ComputeResources(nanoCpus + resources.nanoCpus, memoryBytes + resources.memoryBytes);
+    }
+
+    /**
+     * Multiplies this resources by the given factor.
+     *
+     * @param factor the multiplication factor
+     *
+     * @return the multiplied resources
+     *
+     * @throws IllegalArgumentException if {@code factor} is negative
+     */
+    @Nonnull
+    public ComputeResources times(int factor) {
+        if (factor < 0) {
+            throw new IllegalArgumentException("Factor cannot be negative: " + factor);
+        }
+        return new ComputeResources(nanoCpus * factor, memoryBytes * factor);
+    }
+
+    /**
+     * Checks if this resources fit within the given budget. Unlimited budget dimensions are ignored.
+     *
+     * @param budget the budget
+     *
+     * @return {@code true} if this resources do not exceed the budget
+     *
+     * @throws NullPointerException if {@code budget} is {@code null}
+     */
+    public boolean fitsIn(@Nonnull ComputeResources budget) {
+        DockerCloudUtils.requireNonNull(budget, "Budget cannot be null.");
+        return (budget.nanoCpus == 0 || nanoCpus <= budget.nanoCpus) &&
+                (budget.memoryBytes == 0 || memoryBytes <= budget.memoryBytes);
+    }
+
+    /**
+     * Gets the total resources of a daemon host.
+     *
+     * @param daemonResources the daemon resources
+     *
+     * @return the corresponding compute resources
+     *
+     * @throws NullPointerException if {@code daemonResources} is {@code null}
+     */
+    @Nonnull
+    public static ComputeResources of(@Nonnull DaemonResources daemonResources) {
+        DockerCloudUtils.requireNonNull(daemonResources, "Daemon resources cannot be null.");
+        return new ComputeResources(daemonResources.getCpuCount() * NANO_CPUS_PER_CPU,
+                daemonResources.getMemoryBytes());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ComputeResources)) {
+            return false;
+        }
+        ComputeResources other = (ComputeResources) obj;
+        return nanoCpus == other.nanoCpus && memoryBytes == other.memoryBytes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(nanoCpus) * 31 + Long.hashCode(memoryBytes);
+    }
+
+    @Override
+    public String toString() {
+        return nanoCpus + " nano CPUs, " + memoryBytes + " bytes";
+    }
+}
@@ -0,0 +1,200 @@
+package run.var.teamcity.cloud.docker;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.Node;
+import run.var.teamcity.cloud.docker.util.NodeProcessingException;
+
+import javax.annotation.Nonnull;
+import java.math.BigInteger;
+
+/**
+ * A resource usage statistics sample of an agent holder container, as reported by the daemon. Except for the memory
+ * usage, all values are cumulative counters since the container start.
+ * <p>
+ * Instances of this class are immutable.
+ * </p>
+ */
+public class ContainerStats {
+
+    private final long nanoTime;
+    private final long cpuUsageNanos;
+    private final long systemCpuUsageNanos;
+    private final long preCpuUsageNanos;
+    private final long preSystemCpuUsageNanos;
+    private final int onlineCpus;
+    private final long periods;
+    private final long throttledPeriods;
+    private final long memoryUsageBytes;
+    private final long blockIoBytes;
+    private final long networkBytes;
+
+    /**
+     * Creates a new statistics sample.
+     *
+     * @param nanoTime               the {@link System#nanoTime() time} at which the sample was collected
+     * @param cpuUsageNanos          the total CPU time consumed by the container
+     * @param systemCpuUsageNanos    the total CPU time consumed by the host
+     * @param preCpuUsageNanos       the total CPU time consumed by the container at the previous daemon sample
+     * @param preSystemCpuUsageNanos the total CPU time consumed by the host at the previous daemon sample
+     * @param onlineCpus             the number of CPUs available to the container
+     * @param periods                the number of elapsed CFS enforcement periods
+     * @param throttledPeriods       the number of CFS enforcement periods during which the container was throttled
+     * @param memoryUsageBytes       the memory currently used by the container, excluding the page cache
+     * @param blockIoBytes           the number of bytes read from and written to block devices
+     * @param networkBytes           the number of bytes received and sent over all network interfaces
+     *
+     * @throws IllegalArgumentException if any counter is negative
+     */
+    public ContainerStats(long nanoTime, long cpuUsageNanos, long systemCpuUsageNanos, long preCpuUsageNanos,
+                          long preSystemCpuUsageNanos, int onlineCpus, long periods, long throttledPeriods,
+                          long memoryUsageBytes, long blockIoBytes, long networkBytes) {
+        if (cpuUsageNanos < 0 || systemCpuUsageNanos < 0 || preCpuUsageNanos < 0 || preSystemCpuUsageNanos < 0 ||
+                onlineCpus < 0 || periods < 0 || throttledPeriods < 0 || memoryUsageBytes < 0 || blockIoBytes < 0 ||
+                networkBytes < 0) {
+            throw new IllegalArgumentException("Statistics counters cannot be negative.");
+        }
+        this.nanoTime = nanoTime;
+        this.cpuUsageNanos = cpuUsageNanos;
+        this.systemCpuUsageNanos = systemCpuUsageNanos;
+        this.preCpuUsageNanos = preCpuUsageNanos;
+        this.preSystemCpuUsageNanos = preSystemCpuUsageNanos;
+        this.onlineCpus = onlineCpus;
+        this.periods = periods;
+        this.throttledPeriods = throttledPeriods;
+        this.memoryUsageBytes = memoryUsageBytes;
+        this.blockIoBytes = blockIoBytes;
+        this.networkBytes = networkBytes;
+    }
+
+    /**
+     * Gets the {@link System#nanoTime() time} at which this sample was collected.
+     *
+     * @return the collection time
+     */
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * Gets the CPU usage between the two last daemon samples.
+     *
+     * @return the CPU usage as a number of fully used CPUs, or {@link Double#NaN} if not available
+     */
+    public double getCpuUsage() {
+        long cpuDelta = cpuUsageNanos - preCpuUsageNanos;
+        long systemDelta = systemCpuUsageNanos - preSystemCpuUsageNanos;
+        if (preSystemCpuUsageNanos == 0 || systemDelta <= 0 || cpuDelta < 0) {
+            return Double.NaN;
+        }
+        return (double) cpuDelta / systemDelta * onlineCpus;
+    }
+
+    /**
+     * Gets the number of elapsed CFS enforcement periods.
+     *
+     * @return the number of periods
+     */
+    public long getPeriods() {
+        return periods;
+    }
+
+    /**
+     * Gets the number of CFS enforcement periods during which the container was throttled.
+     *
+     * @return the number of throttled periods
+     */
+    public long getThrottledPeriods() {
+        return throttledPeriods;
+    }
+
+    /**
+     * Gets the memory currently used by the container, excluding the page cache.
+     *
+     * @return the memory usage in bytes
+     */
+    public long getMemoryUsageBytes() {
+        return memoryUsageBytes;
+    }
+
+    /**
+     * Gets the number of bytes read from and written to block devices.
+     *
+     * @return the block I/O byte count
+     */
+    public long getBlockIoBytes() {
+        return blockIoBytes;
+    }
+
+    /**
+     * Gets the number of bytes received and sent over all network interfaces.
+     *
+     * @return the network I/O byte count
+     */
+    public long getNetworkBytes() {
+        return networkBytes;
+    }
+
+    /**
+     * Creates a statistics sample from the daemon response.
+     *
+     * @param stats    the statistics node, as returned by the {@code /containers/{id}/stats} endpoint
+     * @param nanoTime the {@link System#nanoTime() time} at which the sample was collected
+     *
+     * @return the statistics sample
+     *
+     * @throws NullPointerException if {@code stats} is {@code null}
+     * @throws NodeProcessingException if the statistics node is malformed
+     * @throws IllegalArgumentException if any counter is negative
+     */
+    @Nonnull
+    public static ContainerStats fromNode(@Nonnull Node stats, long nanoTime) {
+        DockerCloudUtils.requireNonNull(stats, "Statistics node cannot be null.");
+
+        Node cpuStats = stats.getObject("cpu_stats", Node.EMPTY_OBJECT);
+        Node preCpuStats = stats.getObject("precpu_stats", Node.EMPTY_OBJECT);
+        Node throttlingData = cpuStats.getObject("throttling_data", Node.EMPTY_OBJECT);
+
+        Node cpuUsage = cpuStats.getObject("cpu_usage", Node.EMPTY_OBJECT);
+        int onlineCpus = cpuStats.getAsInt("online_cpus", 0);
+        if (onlineCpus == 0) {
+            // Older daemons only report per-CPU usage.
+            onlineCpus = Math.max(1, cpuUsage.getArray("percpu_usage", Node.EMPTY_ARRAY).getArrayValues().size());
+        }
+
+        Node memoryStats = stats.getObject("memory_stats", Node.EMPTY_OBJECT);
+        Node memoryDetails = memoryStats.getObject("stats", Node.EMPTY_OBJECT);
+        // The page cache can be reclaimed and is not accounted: it is reported as "inactive_file" with cgroup v2, and
+        // as "cache" with cgroup v1.
+        long cacheBytes = getLong(memoryDetails, "inactive_file");
+        if (cacheBytes == 0) {
+            cacheBytes = getLong(memoryDetails, "cache");
+        }
+        long memoryUsage = Math.max(0, getLong(memoryStats, "usage") - cacheBytes);
+
+        long blockIoBytes = 0;
+        for (Node entry : stats.getObject("blkio_stats", Node.EMPTY_OBJECT).
+                getArray("io_service_bytes_recursive", Node.EMPTY_ARRAY).getArrayValues()) {
+            String op = entry.getAsString("op", "");
+            if (op.equalsIgnoreCase("read") || op.equalsIgnoreCase("write")) {
+                blockIoBytes += getLong(entry, "value");
+            }
+        }
+
+        long networkBytes = 0;
+        for (Node network : stats.getObject("networks", Node.EMPTY_OBJECT).getObjectValues().values()) {
+            networkBytes += getLong(network, "rx_bytes") + getLong(network, "tx_bytes");
+        }
+
+        return new ContainerStats(nanoTime, getLong(cpuUsage, "total_usage"),
+                getLong(cpuStats, "system_cpu_usage"),
+                getLong(preCpuStats.getObject("cpu_usage", Node.EMPTY_OBJECT), "total_usage"),
+                getLong(preCpuStats, "system_cpu_usage"), onlineCpus, getLong(throttlingData, "periods"),
+                getLong(throttlingData, "throttled_periods"), memoryUsage, blockIoBytes, networkBytes);
+    }
+
+    private static long getLong(Node node, String fieldName) {
+        BigInteger value = node.getAsBigInt(fieldName, BigInteger.ZERO);
+        // Counters are unsigned 64 bits integers, that are not expected to overflow a signed long in practice.
+        return value.bitLength() < Long.SIZE ? value.longValue() : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,352 @@
+package run.var.teamcity.cloud.docker;
+
+import com.intellij.openapi.diagnostic.Logger;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+
+import javax.annotation.Nonnull;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Allocator of disjoint cpusets on a single Docker daemon host.
+ * <p>
+ * The host CPUs are partitioned into fixed-width cpusets according to a {@link CpusetLayout}. When several NUMA nodes
+ * are declared, the CPUs are assumed to be evenly and contiguously distributed among them: cpusets never span two
+ * nodes, and are bound to the memory of their node. New cpusets are taken from the node with the most free cpusets,
+ * such that the load is balanced across nodes. CPUs that do not fit in a full cpuset are left unused.
+ * </p>
+ * <p>
+ * A single allocator is shared by all the cloud clients targeting the same daemon (see
+ * {@link AgentHolderWatcher.Registration#getCpusetAllocator(int)}). Allocations are therefore tracked CPU by CPU, and
+ * clients using different layouts will never be allocated overlapping cpusets. The cpusets of the agent holders are
+ * also recorded as a {@linkplain DockerCloudUtils#CPUSET_LABEL label}, allowing the allocator to
+ * {@linkplain #reconcile(Collection, long) adopt} the cpusets of agent holders it did not allocate itself (typically,
+ * agent holders created before a server restart).
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ */
+public class CpusetAllocator {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(CpusetAllocator.class);
+
+    private final LockHandler lock = LockHandler.newReentrantLock();
+
+    private final int cpuCount;
+
+    // Guarded by lock.
+    private final Map<UUID, Allocation> allocations = new HashMap<>();
+    // Release time of the recently released cpusets, in System.nanoTime() units.
+    private final Map<UUID, Long> releases = new HashMap<>();
+
+    /**
+     * Creates a new allocator.
+     *
+     * @param cpuCount the number of CPUs of the daemon host
+     *
+     * @throws IllegalArgumentException if {@code cpuCount} is negative
+     */
+    public CpusetAllocator(int cpuCount) {
+        if (cpuCount < 0) {
+            throw new IllegalArgumentException("CPU count cannot be negative: " + cpuCount);
+        }
+        this.cpuCount = cpuCount;
+    }
+
+    /**
+     * Gets the total number of cpusets on the host for the given layout.
+     *
+     * @param layout the cpusets layout
+     *
+     * @return the number of cpusets
+     *
+     * @throws NullPointerException if {@code layout} is {@code null}
+     * @throws IllegalArgumentException if the layout is not enabled
+     */
+    public int getCapacity(@Nonnull CpusetLayout layout) {
+        Partition partition = new Partition(layout);
+        return partition.nodeCount * partition.slotsPerNode;
+    }
+
+    /**
+     * Gets the number of cpusets of the given layout that can still be allocated.
+     *
+     * @param layout the cpusets layout
+     *
+     * @return the number of free cpusets
+     *
+     * @throws NullPointerException if {@code layout} is {@code null}
+     * @throws IllegalArgumentException if the layout is not enabled
+     */
+    public int getFreeCount(@Nonnull CpusetLayout layout) {
+        Partition partition = new Partition(layout);
+        return lock.call(() -> {
+            BitSet usedCpus = usedCpus();
+            int freeCount = 0;
+            for (int node = 0; node < partition.nodeCount; node++) {
+                freeCount += partition.freeSlotCount(node, usedCpus);
+            }
+            return freeCount;
+        });
+    }
+
+    /**
+     * Allocates a cpuset of the given layout to the given instance. If a cpuset is already allocated to this instance,
+     * it will be returned.
+     *
+     * @param instanceUuid the instance UUID
+     * @param layout       the cpusets layout
+     *
+     * @return the allocated cpuset, or an empty optional if no cpuset of this layout is free
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if the layout is not enabled
+     */
+    @Nonnull
+    public Optional<Cpuset> allocate(@Nonnull UUID instanceUuid, @Nonnull CpusetLayout layout) {
+        DockerCloudUtils.requireNonNull(instanceUuid, "Instance UUID cannot be null.");
+        Partition partition = new Partition(layout);
+        return lock.call(() -> {
+            Allocation allocation = allocations.get(instanceUuid);
+            if (allocation != null) {
+                // The instance is now explicitly owned, and will be released as such.
+                allocation.adopted = false;
+                return Optional.of(partition.toCpuset(allocation.cpus));
+            }
+
+            BitSet usedCpus = usedCpus();
+            int bestNode = -1;
+            int bestFreeCount = 0;
+            for (int node = 0; node < partition.nodeCount; node++) {
+                int freeCount = partition.freeSlotCount(node, usedCpus);
+                if (freeCount > bestFreeCount) {
+                    bestNode = node;
+                    bestFreeCount = freeCount;
+                }
+            }
+            if (bestNode == -1) {
+                return Optional.empty();
+            }
+            for (int slot = 0; slot < partition.slotsPerNode; slot++) {
+                BitSet cpus = partition.slotCpus(bestNode, slot);
+                if (!cpus.intersects(usedCpus)) {
+                    allocations.put(instanceUuid, new Allocation(cpus, false));
+                    return Optional.of(partition.toCpuset(cpus));
+                }
+            }
+            throw new AssertionError("No free slot found on node " + bestNode + ".");
+        });
+    }
+
+    /**
+     * Releases the cpuset allocated to the given instance, if any.
+     *
+     * @param instanceUuid the instance UUID
+     *
+     * @throws NullPointerException if {@code instanceUuid} is {@code null}
+     */
+    public void release(@Nonnull UUID instanceUuid) {
+        DockerCloudUtils.requireNonNull(instanceUuid, "Instance UUID cannot be null.");
+        long releaseTime = System.nanoTime();
+        lock.run(() -> {
+            if (allocations.remove(instanceUuid) != null) {
+                releases.put(instanceUuid, releaseTime);
+            }
+        });
+    }
+
+    /**
+     * Reconciles the allocations with the cpusets of the agent holders existing on the daemon. The cpusets of agent
+     * holders unknown to this allocator are adopted, and the adopted cpusets of agent holders that no longer exist are
+     * freed. Cpusets allocated through {@link #allocate(UUID, CpusetLayout)} are not affected: they must be
+     * explicitly released. Cpusets released after the listing was requested are not adopted again.
+     *
+     * @param agentHolders all the agent holders of the daemon
+     * @param listingTime  the {@link System#nanoTime()} value at which the agent holders were listed
+     *
+     * @throws NullPointerException if {@code agentHolders} is {@code null}
+     */
+    public void reconcile(@Nonnull Collection<AgentHolderInfo> agentHolders, long listingTime) {
+        DockerCloudUtils.requireNonNull(agentHolders, "Agent holders cannot be null.");
+
+        Map<UUID, BitSet> observed = new HashMap<>();
+        for (AgentHolderInfo agentHolder : agentHolders) {
+            Map<String, String> labels = agentHolder.getLabels();
+            String cpusLabel = labels.get(DockerCloudUtils.CPUSET_LABEL);
+            if (cpusLabel == null) {
+                continue;
+            }
+            UUID instanceUuid = DockerCloudUtils.tryParseAsUUID(labels.get(DockerCloudUtils.INSTANCE_ID_LABEL));
+            BitSet cpus = parseCpus(cpusLabel);
+            if (instanceUuid == null || cpus == null) {
+                LOG.warn("Ignoring invalid cpuset labels of agent holder " + agentHolder.getId() + ": " + labels);
+                continue;
+            }
+            observed.put(instanceUuid, cpus);
+        }
+
+        lock.run(() -> {
+            Iterator<Map.Entry<UUID, Allocation>> itr = allocations.entrySet().iterator();
+            while (itr.hasNext()) {
+                Map.Entry<UUID, Allocation> entry = itr.next();
+                if (entry.getValue().adopted && !observed.containsKey(entry.getKey())) {
+                    LOG.debug("Agent holder of instance " + entry.getKey() + " is gone, freeing its cpuset.");
+                    itr.remove();
+                }
+            }
+            // The listing is up to date regarding older releases.
+            releases.values().removeIf(releaseTime -> releaseTime - listingTime < 0);
+            observed.forEach((instanceUuid, cpus) -> {
+                if (!allocations.containsKey(instanceUuid) && !releases.containsKey(instanceUuid)) {
+                    LOG.debug("Adopting cpuset " + cpus + " of instance " + instanceUuid + ".");
+                    allocations.put(instanceUuid, new Allocation(cpus, true));
+                }
+            });
+        });
+    }
+
+    private BitSet usedCpus() {
+        assert lock.isHeldByCurrentThread();
+        BitSet usedCpus = new BitSet(cpuCount);
+        allocations.values().forEach(allocation -> usedCpus.or(allocation.cpus));
+        return usedCpus;
+    }
+
+    // Parses a CPU list in the HostConfig.CpusetCpus format (e.g. "0-3,8").
+    private static BitSet parseCpus(String cpusList) {
+        BitSet cpus = new BitSet();
+        try {
+            for (String range : cpusList.split(",")) {
+                int sepIndex = range.indexOf('-');
+                int first = Integer.parseInt(range.substring(0, sepIndex != -1 ? sepIndex : range.length()).trim());
+                int last = sepIndex != -1 ? Integer.parseInt(range.substring(sepIndex + 1).trim()) : first;
+                if (first < 0 || last < first) {
+                    return null;
+                }
+                cpus.set(first, last + 1);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return cpus.isEmpty() ? null : cpus;
+    }
+
+    /**
+     * Partitioning of the host CPUs according to a layout.
+     */
+    private class Partition {
+        final int width;
+        final int nodeCount;
+        final int cpusPerNode;
+        final int slotsPerNode;
+
+        Partition(CpusetLayout layout) {
+            DockerCloudUtils.requireNonNull(layout, "Cpuset layout cannot be null.");
+            if (!layout.isEnabled()) {
+                throw new IllegalArgumentException("Cpuset allocation is not enabled.");
+            }
+            width = layout.getWidth();
+            nodeCount = Math.max(1, Math.min(layout.getNumaNodeCount(), cpuCount));
+            cpusPerNode = cpuCount / nodeCount;
+            slotsPerNode = cpusPerNode / width;
+        }
+
+        BitSet slotCpus(int node, int slot) {
+            int firstCpu = node * cpusPerNode + slot * width;
+            BitSet cpus = new BitSet(cpuCount);
+            cpus.set(firstCpu, firstCpu + width);
+            return cpus;
+        }
+
+        int freeSlotCount(int node, BitSet usedCpus) {
+            int freeCount = 0;
+            for (int slot = 0; slot < slotsPerNode; slot++) {
+                if (!slotCpus(node, slot).intersects(usedCpus)) {
+                    freeCount++;
+                }
+            }
+            return freeCount;
+        }
+
+        Cpuset toCpuset(BitSet cpus) {
+            StringBuilder cpusList = new StringBuilder();
+            int first = cpus.nextSetBit(0);
+            while (first != -1) {
+                int last = cpus.nextClearBit(first) - 1;
+                if (cpusList.length() > 0) {
+                    cpusList.append(',');
+                }
+                cpusList.append(first);
+                if (last > first) {
+                    cpusList.append('-').append(last);
+                }
+                first = cpus.nextSetBit(last + 1);
+            }
+            String mems = null;
+            if (nodeCount > 1 && cpusPerNode > 0) {
+                mems = String.valueOf(Math.min(nodeCount - 1, cpus.nextSetBit(0) / cpusPerNode));
+            }
+            return new Cpuset(cpusList.toString(), mems);
+        }
+    }
+
+    private static class Allocation {
+        final BitSet cpus;
+        boolean adopted;
+
+        Allocation(BitSet cpus, boolean adopted) {
+            this.cpus = cpus;
+            this.adopted = adopted;
+        }
+    }
+
+    /**
+     * An allocated cpuset.
+     * <p>
+     * Instances of this class are immutable.
+     * </p>
+     */
+    public static class Cpuset {
+        private final String cpus;
+        private final String mems;
+
+        Cpuset(String cpus, String mems) {
+            assert cpus != null;
+            this.cpus = cpus;
+            this.mems = mems;
+        }
+
+        /**
+         * Gets the CPUs of this cpuset, in the {@code HostConfig.CpusetCpus} format.
+         *
+         * @return the CPUs list
+         */
+        @Nonnull
+        public String getCpus() {
+            return cpus;
+        }
+
+        /**
+         * Gets the memory nodes of this cpuset, in the {@code HostConfig.CpusetMems} format. Only available on NUMA
+         * hosts.
+         *
+         * @return the memory nodes list, if any
+         */
+        @Nonnull
+        public Optional<String> getMems() {
+            return Optional.ofNullable(mems);
+        }
+
+        @Override
+        public String toString() {
+            return "cpus: " + cpus + (mems != null ? ", mems: " + mems : "");
+        }
+    }
+}
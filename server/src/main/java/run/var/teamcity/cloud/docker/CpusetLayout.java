@@ -0,0 +1,89 @@
+package run.var.teamcity.cloud.docker;
+
+/**
+ * Layout of the cpusets allocated to the agent holders of a cloud profile: each agent holder is pinned to a disjoint
+ * set of CPUs of a fixed width.
+ * <p>
+ * Instances of this class are immutable.
+ * </p>
+ */
+public class CpusetLayout {
+
+    /**
+     * No cpuset allocation.
+     */
+    public static final CpusetLayout NONE = new CpusetLayout(0, 1);
+
+    private final int width;
+    private final int numaNodeCount;
+
+    /**
+     * Creates a new layout.
+     *
+     * @param width         the number of CPUs of each cpuset, {@code 0} to disable the allocation
+     * @param numaNodeCount the number of NUMA nodes of the daemon hosts, CPUs being evenly and contiguously
+     *                      distributed among them
+     *
+     * @throws IllegalArgumentException if {@code width} is negative, or if {@code numaNodeCount} is not strictly
+     * positive
+     */
+    public CpusetLayout(int width, int numaNodeCount) {
+        if (width < 0) {
+            throw new IllegalArgumentException("Cpuset width cannot be negative: " + width);
+        }
+        if (numaNodeCount < 1) {
+            throw new IllegalArgumentException("At least one NUMA node is required: " + numaNodeCount);
+        }
+        this.width = width;
+        this.numaNodeCount = numaNodeCount;
+    }
+
+    /**
+     * Gets the number of CPUs of each cpuset.
+     *
+     * @return the cpuset width, {@code 0} if the allocation is disabled
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the number of NUMA nodes of the daemon hosts.
+     *
+     * @return the NUMA node count
+     */
+    public int getNumaNodeCount() {
+        return numaNodeCount;
+    }
+
+    /**
+     * Checks if cpusets must be allocated.
+     *
+     * @return {@code true} if the allocation is enabled
+     */
+    public boolean isEnabled() {
+        return width != 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CpusetLayout)) {
+            return false;
+        }
+        CpusetLayout other = (CpusetLayout) obj;
+        return width == other.width && numaNodeCount == other.numaNodeCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return width * 31 + numaNodeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "width: " + width + ", NUMA nodes: " + numaNodeCount;
+    }
+}
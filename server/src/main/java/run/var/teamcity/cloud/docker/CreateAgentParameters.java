@@ -28,6 +28,9 @@ public class CreateAgentParameters {
     private PullStrategy pullStrategy = PullStrategy.NO_PULL;
     private DockerRegistryCredentials registryCredentials = DockerRegistryCredentials.ANONYMOUS;
     private PullStatusListener pullStatusListener = PullStatusListener.NOOP;
+    private CpusetAllocator.Cpuset cpuset = null;
+    private Map<String, String> volumes = new LinkedHashMap<>();
+    private boolean spreadPlacement = false;
 
     private CreateAgentParameters(Node agentHolderSpec) {
         assert agentHolderSpec != null;
@@ -106,6 +109,35 @@ public class CreateAgentParameters {
         return pullStatusListener;
     }
 
+    /**
+     * Gets the cpuset to which the agent holder must be pinned, if any.
+     *
+     * @return the cpuset if any
+     */
+    @Nonnull
+    public Optional<CpusetAllocator.Cpuset> getCpuset() {
+        return Optional.ofNullable(cpuset);
+    }
+
+    /**
+     * The named volumes to be mounted in the agent holder, mapped to their mount point.
+     *
+     * @return the volumes to be mounted
+     */
+    @Nonnull
+    public Map<String, String> getVolumes() {
+        return volumes;
+    }
+
+    /**
+     * Placement spreading flag. When {@code true}, the agent holder must be placed on the least loaded eligible node.
+     *
+     * @return {@code true} if the agent holder placement is spread according to the nodes load
+     */
+    public boolean isSpreadPlacement() {
+        return spreadPlacement;
+    }
+
     /**
      * Adds a new label mapping for the agent holder.
      *
@@ -142,6 +174,50 @@ public class CreateAgentParameters {
         return this;
     }
 
+    /**
+     * Pins the agent holder to the given cpuset, overriding the cpuset from the agent holder specification.
+     *
+     * @param cpuset the cpuset
+     *
+     * @return this instance for chained invocation
+     *
+     * @throws NullPointerException if {@code cpuset} is {@code null}
+     */
+    public CreateAgentParameters cpuset(@Nonnull CpusetAllocator.Cpuset cpuset) {
+        this.cpuset = requireNonNull(cpuset, "Cpuset cannot be null.");
+        return this;
+    }
+
+    /**
+     * Mounts a named volume in the agent holder.
+     *
+     * @param name the volume name
+     * @param target the mount point in the agent holder
+     *
+     * @return this instance for chained invocation
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public CreateAgentParameters volume(@Nonnull String name, @Nonnull String target) {
+        requireNonNull(name, "Volume name cannot be null.");
+        requireNonNull(target, "Volume target cannot be null.");
+
+        volumes.put(name, target);
+        return this;
+    }
+
+    /**
+     * Sets the placement spreading flag.
+     *
+     * @param spreadPlacement {@code true} if the agent holder must be placed on the least loaded eligible node
+     *
+     * @return this instance for chained invocation
+     */
+    public CreateAgentParameters spreadPlacement(boolean spreadPlacement) {
+        this.spreadPlacement = spreadPlacement;
+        return this;
+    }
+
     /**
      * Overrides the image name from the agent holder specification.
      *
@@ -238,7 +314,8 @@ public class CreateAgentParameters {
 
         createAgentParameters.
                 pullStrategy(pullStrategy).
-                registryCredentials(imageConfig.getRegistryCredentials());
+                registryCredentials(imageConfig.getRegistryCredentials()).
+                spreadPlacement(imageConfig.isSpreadPlacement());
 
         if (imageConfig.isUseOfficialTCAgentImage()) {
             createAgentParameters.imageName(resolver.resolve());
@@ -0,0 +1,55 @@
+package run.var.teamcity.cloud.docker;
+
+/**
+ * Resources of a Docker daemon host, as reported by the daemon.
+ * <p>
+ * Instances of this class are immutable.
+ * </p>
+ */
+public class DaemonResources {
+
+    private final int cpuCount;
+    private final long memoryBytes;
+
+    /**
+     * Creates a new resources set.
+     *
+     * @param cpuCount    the number of CPUs on the daemon host
+     * @param memoryBytes the total memory of the daemon host, in bytes
+     *
+     * @throws IllegalArgumentException if any argument is negative
+     */
+    public DaemonResources(int cpuCount, long memoryBytes) {
+        if (cpuCount < 0) {
+            throw new IllegalArgumentException("CPU count cannot be negative: " + cpuCount);
+        }
+        if (memoryBytes < 0) {
+            throw new IllegalArgumentException("Memory cannot be negative: " + memoryBytes);
+        }
+        this.cpuCount = cpuCount;
+        this.memoryBytes = memoryBytes;
+    }
+
+    /**
+     * Gets the number of CPUs on the daemon host.
+     *
+     * @return the CPU count
+     */
+    public int getCpuCount() {
+        return cpuCount;
+    }
+
+    /**
+     * Gets the total memory of the daemon host.
+     *
+     * @return the memory size in bytes
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    @Override
+    public String toString() {
+        return cpuCount + " CPUs, " + memoryBytes + " bytes";
+    }
+}
@@ -17,6 +17,7 @@ import run.var.teamcity.cloud.docker.util.NodeStream;
 import run.var.teamcity.cloud.docker.util.Stopwatch;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.time.Duration;
@@ -24,6 +25,7 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -49,6 +51,10 @@ public class DefaultDockerClientFacade extends BaseDockerClientFacade {
     public NewAgentHolderInfo createAgent(@Nonnull CreateAgentParameters createAgentParameters) {
         DockerCloudUtils.requireNonNull(createAgentParameters, "Agent creation parameters cannot be null.");
 
+        if (createAgentParameters.isSpreadPlacement()) {
+            throw new DockerClientFacadeException("Placement spreading is only supported in swarm mode.");
+        }
+
         try {
             Node agentHolderSpec = createAgentParameters.getAgentHolderSpec();
 
@@ -75,6 +81,17 @@ public class DefaultDockerClientFacade extends BaseDockerClientFacade {
 
             applyLabels(editableContainerSpec, createAgentParameters.getLabels());
 
+            createAgentParameters.getCpuset().ifPresent(cpuset -> {
+                EditableNode hostConfig = editableContainerSpec.getOrCreateObject("HostConfig");
+                hostConfig.put("CpusetCpus", cpuset.getCpus());
+                cpuset.getMems().ifPresent(mems -> hostConfig.put("CpusetMems", mems));
+            });
+
+            if (!createAgentParameters.getVolumes().isEmpty()) {
+                EditableNode binds = editableContainerSpec.getOrCreateObject("HostConfig").getOrCreateArray("Binds");
+                createAgentParameters.getVolumes().forEach((name, target) -> binds.add(name + ":" + target));
+            }
+
             Node containerNode = client.createContainer(editableContainerSpec.saveNode(), null);
 
             String id = containerNode.getAsString("Id");
@@ -240,9 +257,14 @@ public class DefaultDockerClientFacade extends BaseDockerClientFacade {
     @Nonnull
     @Override
     public CharSequence getLogs(@Nonnull String containerId) {
-        StreamHandler streamHandler = client.streamLogs(containerId, 10000, StdioType.all(), false,
-                                                        !hasTty(containerId));
-        return demuxLogs(streamHandler);
+        return demuxLogs(fetchLogs(containerId, 10000, null, null));
+    }
+
+    @Nonnull
+    @Override
+    public StreamHandler fetchLogs(@Nonnull String containerId, int lineCount, @Nullable Instant since,
+                                   @Nullable Instant until) {
+        return client.streamLogs(containerId, lineCount, StdioType.all(), false, !hasTty(containerId), since, until);
     }
 
     @Nonnull
@@ -251,6 +273,19 @@ public class DefaultDockerClientFacade extends BaseDockerClientFacade {
         return client.streamLogs(containerId, 10000, StdioType.all(), true, !hasTty(containerId));
     }
 
+    @Nonnull
+    @Override
+    public StreamHandler followLogs(@Nonnull String containerId, @Nullable Instant since) {
+        return client.streamLogs(containerId, -1, StdioType.all(), true, !hasTty(containerId), since, null);
+    }
+
+    @Nonnull
+    @Override
+    public Optional<ContainerStats> getAgentHolderStats(@Nonnull String containerId) {
+        DockerCloudUtils.requireNonNull(containerId, "Container ID cannot be null.");
+        return fetchContainerStats(containerId);
+    }
+
     @Override
     public boolean supportQueryingLogs() {
         return true;
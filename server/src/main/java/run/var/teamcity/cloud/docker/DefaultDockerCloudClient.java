@@ -18,6 +18,7 @@ import jetbrains.buildServer.serverSide.BuildServerAdapter;
 import jetbrains.buildServer.serverSide.BuildServerListener;
 import jetbrains.buildServer.serverSide.SBuildAgent;
 import jetbrains.buildServer.serverSide.SBuildServer;
+import jetbrains.buildServer.serverSide.SRunningBuild;
 import jetbrains.buildServer.serverSide.impl.AgentNameGenerator;
 import org.jetbrains.annotations.NotNull;
 import run.var.teamcity.cloud.docker.client.DockerClient;
@@ -33,22 +34,48 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * A Docker {@link CloudClient}.
+ * <p>
+ * A client may target several Docker daemons, each one being handled as a distinct {@link DockerEndpoint}. New
+ * instances are placed on the available endpoint with the most headroom, and remain bound to it afterward.
+ * </p>
+ * <p>
+ * The queries continuously issued by the TeamCity server (images and instances lookup, instance status, start
+ * eligibility) are served from immutable or volatile state, without acquiring the client lock. This lock is only used
+ * to serialize state transitions, such that querying threads never queue behind a sync or a start task.
+ * </p>
  */
 public class DefaultDockerCloudClient extends BuildServerAdapter implements DockerCloudClient {
 
     private final Logger LOG = DockerCloudUtils.getLogger(DefaultDockerCloudClient.class);
 
+    /**
+     * Statuses of the instances consuming resources on their endpoint.
+     */
+    private final static Set<InstanceStatus> ACTIVE_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            InstanceStatus.SCHEDULED_TO_START, InstanceStatus.STARTING, InstanceStatus.RUNNING,
+            InstanceStatus.RESTARTING, InstanceStatus.SCHEDULED_TO_STOP, InstanceStatus.STOPPING));
+
+    /**
+     * Delay for the task of a started agent holder to be resolved through the agent holder listings, after which the
+     * instance is considered as failed.
+     */
+    private final static Duration TASK_RESOLUTION_TIMEOUT = Duration.ofMinutes(1);
+
     /**
      * Type of this cloud client.
      */
@@ -59,13 +86,19 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
      */
     private final UUID uuid;
 
+    /**
+     * Client UUID, as published in the agent environment.
+     */
+    private final String uuidStr;
+
     /**
      * Asynchronous task scheduler.
      */
     private final DockerTaskScheduler taskScheduler;
 
     /**
-     * Lock to synchronize the mutable state of this class.
+     * Lock to serialize the modifications of the mutable state of this class. Reading this state does not require
+     * locking.
      */
     private final LockHandler lock = LockHandler.newReentrantLock();
 
@@ -77,7 +110,7 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
     /**
      * Holds the error status for this instance.
      */
-    private CloudErrorInfo errorInfo;
+    private volatile CloudErrorInfo errorInfo;
 
     /**
      * Cloud state handler. Used to report cloud instance related events.
@@ -87,7 +120,7 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
     /**
      * Timestamp of the last sync with Docker. Initially {@code null}.
      */
-    private Instant lastDockerSyncTime = null;
+    private volatile Instant lastDockerSyncTime = null;
 
     private enum State {
         /**
@@ -107,28 +140,83 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
     /**
      * Client state.
      */
-    private State state = State.CREATED;
+    private volatile State state = State.CREATED;
 
     /**
-     * Map of cloud images indexed with their UUID.
+     * Immutable map of cloud images indexed with their UUID.
      */
-    private final Map<UUID, DockerImage> images = new HashMap<>();
+    private final Map<UUID, DockerImage> images;
+
+    /**
+     * Immutable map of cloud images indexed with their id.
+     */
+    private final Map<String, DockerImage> imagesById;
 
     // IMPORTANT: access to the TeamCity API must be as much as possible be performed without locking the cloud client
     // to prevent dead-locks.
     private final SBuildServer buildServer;
     private final BuildAgentManager agentMgr;
 
-    private final DockerClientConfig dockerClientConfig;
-
     /**
-     * The Docker client facade.
+     * Immutable list of the Docker endpoints, starting with the primary one.
      */
-    private volatile DockerClientFacade clientFacade;
+    private final List<DockerEndpoint> endpoints;
 
     private final URL serverURL;
     private final DockerImageNameResolver resolver;
 
+    /**
+     * Resources that can be allocated to the agents, zero amounts standing for no limit.
+     */
+    private final ComputeResources resourceBudget;
+
+    /**
+     * Layout of the cpusets allocated to the agents.
+     */
+    private final CpusetLayout cpusetLayout;
+
+    /**
+     * Disk space that can be used by the cache volumes of each daemon host, zero standing for no limit.
+     */
+    private final long cacheDiskBudgetBytes;
+
+    /**
+     * Flag indicating that at least one image mounts cache volumes.
+     */
+    private final boolean usingCacheVolumes;
+
+    /**
+     * Endpoints for which the existing cache volumes have been restored into their pool.
+     */
+    private final Set<DockerEndpoint> cacheVolumesRestored = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Resource usage sampler, {@code null} if the collection is disabled.
+     */
+    private final ResourceUsageSampler usageSampler;
+
+    /**
+     * Store of the captured agent holder logs.
+     */
+    private final AgentLogStore logStore;
+
+    /**
+     * Index of the instances bound to a registered agent, by agent id. Permits to match registered agents without
+     * inspecting their parameters.
+     */
+    private final Map<Integer, DockerInstance> instancesByAgentId = new ConcurrentHashMap<>();
+
+    /**
+     * Unregistered agents started by this client, by agent id. Maintained through the build server listener, such
+     * that the synchronization does not need to scan the unregistered agents of the whole server.
+     */
+    private final Map<Integer, SBuildAgent> unregisteredAgents = new ConcurrentHashMap<>();
+
+    /**
+     * Flag indicating that the agents already unregistered when this client was created have been collected.
+     */
+    private volatile boolean unregisteredAgentsCollected = false;
+
     /**
      * Our agent name generator extension UUID.
      */
@@ -139,32 +227,46 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
      */
     private final BuildServerListener buildServerListener;
 
+    /**
+     * Maximal age of a shared agent holders listing.
+     */
+    private final Duration listingMaxAge;
+
     DefaultDockerCloudClient(@Nonnull DockerCloudClientConfig clientConfig,
                              @Nonnull final List<DockerImageConfig> imageConfigs,
                              @Nonnull final DockerImageNameResolver resolver,
                              @Nonnull CloudState cloudState,
-                             @Nonnull final SBuildServer buildServer) {
+                             @Nonnull final SBuildServer buildServer,
+                             @Nonnull AgentLogStore logStore,
+                             @Nonnull AgentHolderWatcher watcher) {
         DockerCloudUtils.requireNonNull(clientConfig, "Docker client configuration cannot be null.");
         DockerCloudUtils.requireNonNull(imageConfigs, "List of images cannot be null.");
         DockerCloudUtils.requireNonNull(resolver, "Image name resolver cannot be null.");
         DockerCloudUtils.requireNonNull(cloudState, "Cloud state cannot be null.");
         DockerCloudUtils.requireNonNull(buildServer, "Build server cannot be null.");
+        DockerCloudUtils.requireNonNull(logStore, "Log store cannot be null.");
+        DockerCloudUtils.requireNonNull(watcher, "Agent holder watcher cannot be null.");
 
         if (imageConfigs.isEmpty()) {
             throw new IllegalArgumentException("At least one image must be provided.");
         }
         this.cloudSupport = clientConfig.getCloudSupport();
         this.uuid = clientConfig.getUuid();
+        this.uuidStr = uuid.toString();
         this.resolver = resolver;
         this.cloudState = cloudState;
         this.agentMgr = buildServer.getBuildAgentManager();
         this.serverURL = clientConfig.getServerURL();
+        this.resourceBudget = clientConfig.getResourceBudget();
+        this.cpusetLayout = clientConfig.getCpusetLayout();
+        this.cacheDiskBudgetBytes = clientConfig.getCacheDiskBudgetBytes();
         this.buildServer = buildServer;
-
+        this.logStore = logStore;
 
         buildServerListener = new BuildServerAdapter() {
             @Override
             public void agentRegistered(@NotNull SBuildAgent agent, long currentlyRunningBuildId) {
+                unregisteredAgents.remove(agent.getId());
                 // Simple mechanism to prevent an externally started Docker service or container to be
                 // misidentified as genuine cloud instance.
                 DockerInstance instance = findInstanceByAgent(agent);
@@ -173,33 +275,76 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
                     if (agentRuntimeUuid != null) {
                         instance.registerAgentRuntimeUuid(agentRuntimeUuid);
                     }
+                    instancesByAgentId.put(agent.getId(), instance);
                 }
             }
 
             @Override
             public void agentUnregistered(@NotNull SBuildAgent agent) {
-                    DockerInstance instance = findInstanceByAgent(agent);
+                DockerInstance instance = findInstanceByAgent(agent);
+                instancesByAgentId.remove(agent.getId());
                 if (instance != null) {
                     UUID agentRuntimeUuid = readAgentRuntimeUuid(agent);
                     if (agentRuntimeUuid != null) {
                         instance.unregisterAgentRuntimeUUid(agentRuntimeUuid);
                     }
                 }
+                if (instance != null || isOwnAgent(agent)) {
+                    unregisteredAgents.put(agent.getId(), agent);
+                }
+            }
+
+            @Override
+            public void agentRemoved(@NotNull SBuildAgent agent) {
+                unregisteredAgents.remove(agent.getId());
+            }
+
+            @Override
+            public void buildFinished(@NotNull SRunningBuild build) {
+                SBuildAgent agent = build.getAgent();
+                DockerInstance instance = findInstanceByAgent(agent);
+                if (instance != null) {
+                    instance.notifyBuildCompleted();
+                    recycleIfRequired(instance, agent, build);
+                }
             }
         };
 
         buildServer.addListener(buildServerListener);
 
-        taskScheduler = new DockerTaskScheduler(clientConfig.getDockerClientConfig().getConnectionPoolSize(),
-                clientConfig.isUsingDaemonThreads(), clientConfig.getTaskTimeout());
+        int connectionPoolSize = 0;
+        for (DockerClientConfig dockerClientConfig : clientConfig.getDockerClientConfigs()) {
+            connectionPoolSize += dockerClientConfig.getConnectionPoolSize();
+        }
+        taskScheduler = new DockerTaskScheduler(connectionPoolSize, clientConfig.isUsingDaemonThreads(),
+                clientConfig.getTaskTimeout());
 
+        Map<UUID, DockerImage> images = new LinkedHashMap<>();
+        Map<String, DockerImage> imagesById = new HashMap<>();
         for (DockerImageConfig imageConfig : imageConfigs) {
             DockerImage image = new DockerImage(DefaultDockerCloudClient.this, imageConfig);
             images.put(image.getUuid(), image);
+            imagesById.putIfAbsent(image.getId(), image);
         }
+        this.images = Collections.unmodifiableMap(images);
+        this.imagesById = Collections.unmodifiableMap(imagesById);
+        this.usingCacheVolumes = this.images.values().stream().
+                anyMatch(image -> !image.getConfig().getCacheVolumes().isEmpty());
         LOG.info(images.size() + " image definitions loaded: " + images);
 
-        this.dockerClientConfig = clientConfig.getDockerClientConfig();
+        Duration statsSamplingRate = clientConfig.getStatsSamplingRate();
+        usageSampler = statsSamplingRate.isZero() ? null : new ResourceUsageSampler(this.images.values(),
+                cloudSupport, statsSamplingRate, clientConfig.isUsingDaemonThreads());
+
+        // Listings are reused for up to half a sync period: the load on the daemon is bounded to two listings per
+        // endpoint and period regardless of the number of clients, while a client never reuses its own listing.
+        this.listingMaxAge = clientConfig.getDockerSyncRate().dividedBy(2);
+        List<DockerEndpoint> endpoints = new ArrayList<>();
+        for (DockerClientConfig dockerClientConfig : clientConfig.getDockerClientConfigs()) {
+            endpoints.add(new DockerEndpoint(dockerClientConfig, watcher.register(cloudSupport, dockerClientConfig,
+                    uuid)));
+        }
+        this.endpoints = Collections.unmodifiableList(endpoints);
 
         // Register our agent name generator.
         buildServer.registerExtension(AgentNameGenerator.class, agentNameGeneratorUuid.toString(), sBuildAgent -> {
@@ -224,13 +369,16 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
         state = State.READY;
 
         taskScheduler.scheduleClientTask(new SyncWithDockerTask(clientConfig.getDockerSyncRate()));
+
+        if (usageSampler != null) {
+            usageSampler.start();
+        }
     }
 
     @Nullable
     private UUID readAgentRuntimeUuid(AgentDescription agentDescription) {
-        String agentDescriptionRuntimeUuidStr = agentDescription.getConfigurationParameters().get("run.var.teamcity" +
-                ".cloud.docker" +
-                ".agent_runtime_id");
+        String agentDescriptionRuntimeUuidStr = agentDescription.getConfigurationParameters().get(DockerCloudUtils
+                .AGENT_RUNTIME_ID_AGENT_CONF);
 
         if (agentDescriptionRuntimeUuidStr == null) {
             return null;
@@ -270,25 +418,36 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
 
     @Override
     public boolean isInitialized() {
-        return lock.call(() -> state != State.CREATED);
+        return state != State.CREATED;
     }
 
     @Nullable
     @Override
     public DockerImage findImageById(@Nonnull String id) throws CloudException {
-        return lock.call(() -> {
-            for (DockerImage img : images.values()) {
-                if (img.getId().equals(id)) {
-                    return img;
-                }
-            }
-            return null;
-        });
+        return imagesById.get(id);
     }
 
     @Nullable
     @Override
     public DockerInstance findInstanceByAgent(@Nonnull AgentDescription agent) {
+        // This method is invoked for every agent known to the server: rejecting agents that are not managed by this
+        // client must be cheap.
+        if (agent instanceof SBuildAgent) {
+            int agentId = ((SBuildAgent) agent).getId();
+            DockerInstance instance = instancesByAgentId.get(agentId);
+            if (instance != null) {
+                if (instance.getImage().findInstanceById(instance.getUuid()) == instance) {
+                    return instance;
+                }
+                // Instance was discarded in the meantime.
+                instancesByAgentId.remove(agentId, instance);
+            }
+        }
+
+        if (!isOwnAgent(agent)) {
+            return null;
+        }
+
         DockerInstance instance = findMatchingInstance(agent);
         if (instance != null) {
             UUID agentRuntimeUuidDescr = readAgentRuntimeUuid(agent);
@@ -309,13 +468,10 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
 
         if (instanceId != null) {
             UUID imageId = DockerCloudUtils.getImageId(agent);
-            return lock.call(() -> {
-                DockerImage image = imageId != null ? images.get(imageId) : null;
-                if (image != null) {
-                    return image.findInstanceById(instanceId);
-                }
-                return null;
-            });
+            DockerImage image = imageId != null ? images.get(imageId) : null;
+            if (image != null) {
+                return image.findInstanceById(instanceId);
+            }
         }
 
         return null;
@@ -324,7 +480,7 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
     @Nonnull
     @Override
     public Collection<DockerImage> getImages() throws CloudException {
-        return lock.call(() -> Collections.unmodifiableCollection(images.values()));
+        return images.values();
     }
 
     @Nullable
@@ -335,14 +491,14 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
 
     @Override
     public boolean canStartNewInstance(@Nonnull CloudImage image) {
-        return lock.call(() -> {
-            if (errorInfo != null) {
-                LOG.debug("Cloud client in error state, cannot start new instance.");
-                // The cloud client is currently in an error status. Wait for it to be cleared.
-                return false;
-            }
-            return clientFacade != null && state == State.READY && ((DockerImage) image).canStartNewInstance();
-        });
+        if (errorInfo != null) {
+            LOG.debug("Cloud client in error state, cannot start new instance.");
+            // The cloud client is currently in an error status. Wait for it to be cleared.
+            return false;
+        }
+        DockerImage dockerImage = (DockerImage) image;
+        return state == State.READY && hasAvailableEndpoint() && dockerImage.canStartNewInstance() &&
+                fitsInBudget(dockerImage) && hasFreeCpuset();
     }
 
     @Nullable
@@ -381,8 +537,15 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
                 throw new QuotaException("Cannot start new instance.");
             }
 
+            if ((!resourceBudget.isNone() || cpusetLayout.isEnabled()) && selectEndpoint(dockerImage) == null) {
+                throw new QuotaException("No Docker daemon has enough resources left for image " + dockerImage +
+                        ".");
+            }
+
             for (DockerInstance existingInstance : dockerImage.getInstances()) {
-                if (existingInstance.getStatus() == InstanceStatus.STOPPED) {
+                // Stopped containers can only be reused on their own endpoint.
+                if (existingInstance.getStatus() == InstanceStatus.STOPPED &&
+                        existingInstance.getEndpoint().map(DockerEndpoint::isAvailable).orElse(true)) {
                     instanceToStart = existingInstance;
                     break;
                 }
@@ -417,9 +580,39 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
                             checkReady();
                             instance.updateStartedTime();
                             instance.setStatus(InstanceStatus.STARTING);
+                            if (!instance.getEndpoint().isPresent()) {
+                                // Placement is performed while locked, such that concurrent starts account for
+                                // each other.
+                                DockerEndpoint endpoint = placeInstance(dockerImage, instance);
+                                if (endpoint == null) {
+                                    throw new CloudException("No Docker daemon available.");
+                                }
+                                LOG.info("Placing instance " + instance.getUuid() + " on " + endpoint + ".");
+                                instance.placeOnEndpoint(endpoint);
+                            }
                             return instance.getAgentHolderId();
                         });
 
+                        try {
+                            startAgentHolder(instance, existingAgentHolderId);
+                        } catch (Exception e) {
+                            if (!instance.getAgentHolderId().isPresent()) {
+                                // No agent holder is holding the allocations, they can be released right away.
+                                lock.runInterruptibly(() -> releaseAllocations(instance));
+                            }
+                            throw e;
+                        }
+                    }
+
+                    private void startAgentHolder(DockerInstance instance, Optional<String> existingAgentHolderId)
+                            throws Exception {
+
+                        DockerEndpoint endpoint = instance.getEndpoint().get();
+                        DockerClientFacade clientFacade = endpoint.getClientFacade();
+
+                        String agentHolderId;
+                        // Logs from a previous run of a reused container were already captured.
+                        Instant logsSince = null;
                         if (!existingAgentHolderId.isPresent()) {
                             String serverAddress = serverURL != null ? serverURL.toString() : tag.getServerAddress();
 
@@ -429,20 +622,53 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
                             prepareLabelsMap(createAgentParameters, instance);
                             prepareEnvMap(createAgentParameters, instance, serverAddress, tag);
 
+                            if (cpusetLayout.isEnabled()) {
+                                // Returns the cpuset reserved when placing the instance.
+                                CpusetAllocator.Cpuset cpuset = endpoint.getCpusetAllocator().
+                                        flatMap(allocator -> allocator.allocate(instance.getUuid(), cpusetLayout)).
+                                        orElseThrow(() -> new CloudException("No free cpuset on " + endpoint + "."));
+                                LOG.info("Allocated cpuset (" + cpuset + ") to instance " + instance.getUuid() + ".");
+                                // Allows the daemon allocator to be rebuilt from the agent holder labels.
+                                createAgentParameters.cpuset(cpuset).
+                                        label(DockerCloudUtils.CPUSET_LABEL, cpuset.getCpus());
+                            }
+
+                            for (CacheVolume cacheVolume : dockerImage.getConfig().getCacheVolumes()) {
+                                createAgentParameters.volume(acquireCacheVolume(endpoint, instance, cacheVolume),
+                                        cacheVolume.getTarget());
+                            }
+
                             NewAgentHolderInfo agentHolder = clientFacade.createAgent(createAgentParameters);
 
                             instance.bindWithAgentHolder(agentHolder);
 
-                            String agentHolderId = agentHolder.getId();
+                            agentHolderId = agentHolder.getId();
+                            // The task may not be scheduled yet, it will then be resolved by the Docker sync.
                             String taskId = clientFacade.startAgent(agentHolderId);
-                            instance.setTaskId(taskId);
+                            if (taskId != null) {
+                                instance.setTaskId(taskId);
+                            }
 
                             LOG.info("New container " + agentHolderId + " created.");
                         } else {
                             LOG.info("Reusing existing container: " + existingAgentHolderId);
-                            clientFacade.startAgent(existingAgentHolderId.get());
+                            agentHolderId = existingAgentHolderId.get();
+                            logsSince = Instant.now();
+                            clientFacade.startAgent(agentHolderId);
+                        }
+
+                        if (dockerImage.getConfig().isCaptureLogs()) {
+                            try {
+                                logStore.capture(agentHolderId, endpoint.getLogCaptureFacade(cloudSupport),
+                                        logsSince);
+                            } catch (Exception e) {
+                                // Not critical for the agent.
+                                LOG.warn("Failed to start log capture for " + agentHolderId + ".", e);
+                            }
                         }
 
+                        endpoint.markWarm(dockerImage);
+
                         scheduleDockerSync();
 
                         instance.setStatus(InstanceStatus.RUNNING);
@@ -472,10 +698,11 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
                 });
 
                 Optional<String> agentHolderId = dockerInstance.getAgentHolderId();
+                Optional<DockerEndpoint> endpoint = dockerInstance.getEndpoint();
 
-                if (agentHolderId.isPresent()) {
-                    clientFacade.restartAgent(agentHolderId.get());
-                    lock.runInterruptibly(() -> dockerInstance.setStatus(InstanceStatus.RUNNING));
+                if (agentHolderId.isPresent() && endpoint.isPresent()) {
+                    endpoint.get().getClientFacade().restartAgent(agentHolderId.get());
+                    dockerInstance.setStatus(InstanceStatus.RUNNING);
                 } else {
                     LOG.warn("No agent holder associated with instance " + instance + ". Ignoring restart request.");
                 }
@@ -486,7 +713,7 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
     @Override
     public void terminateInstance(@Nonnull final CloudInstance instance) {
         LOG.info("Request for terminating instance: " + instance);
-        terminateInstance(instance, false);
+        terminateInstance(instance, false, false);
     }
 
     @Override
@@ -509,43 +736,64 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
 
         buildServer.unregisterExtension(AgentNameGenerator.class, agentNameGeneratorUuid.toString());
 
+        if (usageSampler != null) {
+            usageSampler.shutdown();
+        }
+
+        instancesByAgentId.clear();
+        unregisteredAgents.clear();
+
         LOG.info("Starting disposal of client.");
         for (DockerImage image : getImages()) {
             for (DockerInstance instance : image.getInstances()) {
                 // Terminate the instance but do not bother notify server. If the cloud client is disposed as part of
                 // the shutdown process, it would raise an exception anyway.
-                terminateInstance(instance, true);
+                terminateInstance(instance, true, false);
             }
         }
-        taskScheduler.shutdown();
+        taskScheduler.shutdown(() -> endpoints.forEach(DockerEndpoint::close));
     }
 
-    private void terminateInstance(@Nonnull final CloudInstance instance, final boolean clientDisposed) {
+    private void terminateInstance(@Nonnull final CloudInstance instance, final boolean clientDisposed,
+                                   final boolean discardContainer) {
         assert instance != null;
-        LOG.info("Scheduling cloud instance termination: " + instance + " (client disposed: " + clientDisposed + ").");
+        LOG.info("Scheduling cloud instance termination: " + instance + " (client disposed: " + clientDisposed +
+                ", discard container: " + discardContainer + ").");
         final DockerInstance dockerInstance = ((DockerInstance) instance);
         taskScheduler.scheduleInstanceTask(
                 new DockerInstanceTask("Disposal of container", dockerInstance, InstanceStatus.SCHEDULED_TO_STOP) {
                     @Override
                     protected void callInternal() throws Exception {
-                        lock.runInterruptibly(() -> dockerInstance.setStatus(InstanceStatus.STOPPING));
+                        dockerInstance.setStatus(InstanceStatus.STOPPING);
                         Optional<String> agentHolderId = dockerInstance.getAgentHolderId();
+                        Optional<DockerEndpoint> endpoint = dockerInstance.getEndpoint();
 
                         boolean containerAvailable;
-                        if (agentHolderId.isPresent()) {
-                            boolean rmContainer = clientDisposed || dockerInstance.getImage().getConfig().isRmOnExit();
-                            containerAvailable = terminateContainer(agentHolderId.get(), clientDisposed, rmContainer);
+                        if (agentHolderId.isPresent() && endpoint.isPresent()) {
+                            // Stopped containers would keep their cpuset and cache volumes once released, and cannot
+                            // be reused.
+                            boolean rmContainer = clientDisposed || discardContainer || cpusetLayout.isEnabled() ||
+                                    !dockerInstance.getImage().getConfig().getCacheVolumes().isEmpty() ||
+                                    dockerInstance.getImage().getConfig().isRmOnExit();
+                            containerAvailable = terminateContainer(endpoint.get(), agentHolderId.get(),
+                                    clientDisposed, rmContainer);
                         } else {
                             containerAvailable = false;
                         }
 
                         lock.runInterruptibly(() -> {
+                            releaseAllocations(dockerInstance);
                             dockerInstance.setStatus(InstanceStatus.STOPPED);
                             if (!containerAvailable) {
                                 dockerInstance.getImage().clearInstanceId(dockerInstance.getUuid());
                             }
                         });
 
+                        if (!clientDisposed && endpoint.isPresent() &&
+                                !dockerInstance.getImage().getConfig().getCacheVolumes().isEmpty()) {
+                            evictCacheVolumes(endpoint.get());
+                        }
+
                         if (!clientDisposed) {
                             cloudState.registerTerminatedInstance(dockerInstance.getImageId(),
                                     dockerInstance.getInstanceId());
@@ -554,8 +802,54 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
                 });
     }
 
-    private boolean terminateContainer(String containerId, boolean clientDisposed, boolean rmContainer) {
-        assert containerId != null;
+    /**
+     * Recycles an instance if required by its image recycling policy. The instance agent is first disabled such that
+     * no new build can be assigned to it. It is then terminated as soon as it is idle, and its container discarded. A
+     * replacement instance will be started through the regular cloud server demand.
+     * <p>
+     * Must not be invoked while holding the lock, since the agent state is queried.
+     * </p>
+     *
+     * @param instance      the instance
+     * @param agent         the instance agent
+     * @param finishedBuild the build that has just finished on this agent, if any
+     */
+    private void recycleIfRequired(DockerInstance instance, SBuildAgent agent, @Nullable SRunningBuild finishedBuild) {
+        assert !lock.isHeldByCurrentThread();
+
+        RecyclingPolicy policy = instance.getImage().getConfig().getRecyclingPolicy();
+        if (policy.isNone() || instance.getStatus() != InstanceStatus.RUNNING) {
+            return;
+        }
+
+        Duration age = Duration.between(instance.getStartedTime().toInstant(), Instant.now());
+        Optional<String> reason = policy.checkLimits(instance.getCompletedBuildCount(), age,
+                instance.getUsageStats().getLatest(ResourceUsageStats.Metric.MEMORY));
+        if (!reason.isPresent()) {
+            return;
+        }
+
+        if (agent.isEnabled()) {
+            agent.setEnabled(false, null, "Agent scheduled for recycling: " + reason.get() + ".");
+        }
+
+        // The finished build may still be reported as running while the server listeners are notified.
+        SRunningBuild runningBuild = agent.getRunningBuild();
+        if (runningBuild != null && (finishedBuild == null ||
+                runningBuild.getBuildId() != finishedBuild.getBuildId())) {
+            // The agent remains disabled, and will be recycled once its current build is finished.
+            return;
+        }
+
+        if (instance.markRecycled()) {
+            LOG.info("Recycling instance " + instance.getUuid() + ": " + reason.get() + ".");
+            terminateInstance(instance, false, true);
+        }
+    }
+
+    private boolean terminateContainer(DockerEndpoint endpoint, String containerId, boolean clientDisposed,
+                                       boolean rmContainer) {
+        assert endpoint != null && containerId != null;
         assert !clientDisposed || rmContainer;
 
         // No stop timeout (timeout = 0s) will be observed If the whole cloud client was stopped. This is to
@@ -565,7 +859,263 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
 
         Duration timeout = clientDisposed ? Duration.ZERO : DockerClient.DEFAULT_TIMEOUT;
 
-        return clientFacade.terminateAgentContainer(containerId, timeout, rmContainer);
+        return endpoint.getClientFacade().terminateAgentContainer(containerId, timeout, rmContainer);
+    }
+
+    private boolean hasAvailableEndpoint() {
+        for (DockerEndpoint endpoint : endpoints) {
+            if (endpoint.isAvailable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a cpuset can be allocated on any available endpoint, when cpusets are allocated.
+     */
+    private boolean hasFreeCpuset() {
+        if (!cpusetLayout.isEnabled()) {
+            return true;
+        }
+        for (DockerEndpoint endpoint : endpoints) {
+            if (endpoint.isAvailable() && endpoint.getCpusetAllocator().
+                    map(allocator -> allocator.getFreeCount(cpusetLayout) > 0).orElse(false)) {
+                return true;
+            }
+        }
+        LOG.debug("All cpusets are allocated, cannot start new instance.");
+        return false;
+    }
+
+    /**
+     * Releases the cpuset and cache volumes allocated to the given instance, if any.
+     */
+    private void releaseAllocations(DockerInstance instance) {
+        if (cpusetLayout.isEnabled()) {
+            instance.getEndpoint().flatMap(DockerEndpoint::getCpusetAllocator).
+                    ifPresent(allocator -> allocator.release(instance.getUuid()));
+        }
+        instance.getEndpoint().map(DockerEndpoint::getCacheVolumePool).
+                ifPresent(pool -> pool.release(instance.getUuid()));
+    }
+
+    /**
+     * Gets the key of a cache. Cache volume pools are shared by all the clients targeting a daemon, the key is
+     * therefore scoped to this client.
+     */
+    private String getCacheKey(DockerImage image, CacheVolume cacheVolume) {
+        return uuidStr + "/" + image.getConfig().getProfileName() + "/" + cacheVolume.getName();
+    }
+
+    /**
+     * Acquires a volume holding the given cache for the given instance, creating a new one if no free volume is
+     * available on the endpoint.
+     * <p>
+     * Must not be invoked while holding the lock, since the volume may be created.
+     * </p>
+     */
+    private String acquireCacheVolume(DockerEndpoint endpoint, DockerInstance instance, CacheVolume cacheVolume) {
+        assert !lock.isHeldByCurrentThread();
+
+        CacheVolumePool pool = endpoint.getCacheVolumePool();
+        String cacheKey = getCacheKey(instance.getImage(), cacheVolume);
+        Optional<String> volumeName = pool.acquire(cacheKey, instance.getUuid());
+        if (volumeName.isPresent()) {
+            LOG.info("Reusing cache volume " + volumeName.get() + " for instance " + instance.getUuid() + ".");
+            return volumeName.get();
+        }
+
+        String newVolumeName = "teamcity-cache-" + cacheVolume.getName() + "-" + UUID.randomUUID();
+        Map<String, String> labels = new HashMap<>();
+        labels.put(DockerCloudUtils.CLIENT_ID_LABEL, uuidStr);
+        labels.put(DockerCloudUtils.CACHE_KEY_LABEL, cacheKey);
+        endpoint.getClientFacade().createVolume(newVolumeName, labels);
+        pool.register(newVolumeName, cacheKey, instance.getUuid());
+        LOG.info("Created cache volume " + newVolumeName + " for instance " + instance.getUuid() + ".");
+        return newVolumeName;
+    }
+
+    /**
+     * Restores the cache volumes created on the given endpoint by a previous incarnation of this client. Performed
+     * once per endpoint, until successful.
+     * <p>
+     * Must not be invoked while holding the lock.
+     * </p>
+     */
+    private void restoreCacheVolumes(DockerEndpoint endpoint) {
+        assert !lock.isHeldByCurrentThread();
+
+        if (!usingCacheVolumes || !cacheVolumesRestored.add(endpoint)) {
+            return;
+        }
+
+        CacheVolumePool pool = endpoint.getCacheVolumePool();
+        try {
+            for (VolumeInfo volume : endpoint.getClientFacade().listVolumes(DockerCloudUtils.CLIENT_ID_LABEL,
+                    uuidStr)) {
+                String cacheKey = volume.getLabels().get(DockerCloudUtils.CACHE_KEY_LABEL);
+                if (cacheKey != null) {
+                    pool.restore(volume.getName(), cacheKey, volume.getSizeBytes());
+                }
+            }
+        } catch (Exception e) {
+            cacheVolumesRestored.remove(endpoint);
+            LOG.warn("Failed to restore cache volumes from " + endpoint + ".", e);
+            return;
+        }
+
+        evictCacheVolumes(endpoint);
+    }
+
+    /**
+     * Removes the least recently used free cache volumes of the given endpoint, until the disk space used by the cache
+     * volumes of this client fits in the budget. Has no effect if no budget is set. The pool of the endpoint is shared
+     * with the other clients targeting the same daemon, each of them having its own budget: only the volumes of this
+     * client are accounted for and evicted, and the volume sizes are only refreshed when the pool allows it. Volumes
+     * that could not be removed remain in the pool, and will be evicted again on the next call.
+     * <p>
+     * Must not be invoked while holding the lock.
+     * </p>
+     */
+    private void evictCacheVolumes(DockerEndpoint endpoint) {
+        assert !lock.isHeldByCurrentThread();
+
+        if (cacheDiskBudgetBytes == 0) {
+            return;
+        }
+
+        CacheVolumePool pool = endpoint.getCacheVolumePool();
+        DockerClientFacade clientFacade = endpoint.getClientFacade();
+        if (pool.claimSizeRefresh()) {
+            try {
+                for (VolumeInfo volume : clientFacade.listVolumes(DockerCloudUtils.CACHE_KEY_LABEL, "")) {
+                    pool.updateSize(volume.getName(), volume.getSizeBytes());
+                }
+            } catch (Exception e) {
+                LOG.warn("Failed to query cache volume sizes from " + endpoint + ", using last known sizes.", e);
+            }
+        }
+
+        // Cache keys are scoped to this client, see getCacheKey().
+        for (String volumeName : pool.evict(uuidStr + "/", cacheDiskBudgetBytes)) {
+            LOG.info("Evicting cache volume " + volumeName + " from " + endpoint + ".");
+            try {
+                clientFacade.removeVolume(volumeName);
+                pool.removed(volumeName);
+            } catch (Exception e) {
+                LOG.warn("Failed to remove cache volume " + volumeName + ", will retry on next eviction.", e);
+                pool.removalFailed(volumeName);
+            }
+        }
+    }
+
+    /**
+     * Checks if starting a new instance of the given image would keep the allocated resources within the profile
+     * budget. The resources of all instances that are not stopped are accounted, as declared by their image.
+     */
+    private boolean fitsInBudget(DockerImage image) {
+        if (resourceBudget.isNone()) {
+            return true;
+        }
+        ComputeResources allocated = image.getConfig().getResources();
+        for (DockerImage otherImage : images.values()) {
+            allocated = allocated.plus(otherImage.getConfig().getResources().times(otherImage.getUsedInstanceCount()));
+        }
+        if (!allocated.fitsIn(resourceBudget)) {
+            LOG.debug("Resource budget exhausted (" + resourceBudget + "), cannot start new instance of " + image +
+                    ".");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Selects the endpoint for a new instance of the given image. When a resource budget is set, endpoints whose
+     * host would be overcommitted by the new instance are excluded. When cpusets are allocated, endpoints without any
+     * free cpuset are excluded.
+     */
+    @Nullable
+    private DockerEndpoint selectEndpoint(DockerImage image) {
+        return selectEndpoint(image, Collections.emptySet());
+    }
+
+    /**
+     * Selects the endpoint of the given instance. When cpusets are allocated, a cpuset is reserved to the instance on
+     * the selected endpoint. The allocator of an endpoint is shared with the other clients of the daemon: a cpuset
+     * deemed free during the selection may have been allocated in the meantime, the next best endpoint is then
+     * selected instead.
+     */
+    @Nullable
+    private DockerEndpoint placeInstance(DockerImage image, DockerInstance instance) {
+        assert lock.isHeldByCurrentThread();
+        Set<DockerEndpoint> excluded = new HashSet<>();
+        while (true) {
+            DockerEndpoint endpoint = selectEndpoint(image, excluded);
+            if (endpoint == null || !cpusetLayout.isEnabled() || endpoint.getCpusetAllocator().
+                    flatMap(allocator -> allocator.allocate(instance.getUuid(), cpusetLayout)).isPresent()) {
+                return endpoint;
+            }
+            LOG.debug("Cpuset allocated concurrently on " + endpoint + ", selecting another endpoint.");
+            excluded.add(endpoint);
+        }
+    }
+
+    @Nullable
+    private DockerEndpoint selectEndpoint(DockerImage image, Set<DockerEndpoint> excluded) {
+        assert lock.isHeldByCurrentThread();
+        List<DockerEndpoint> candidates = new ArrayList<>(endpoints);
+        candidates.removeAll(excluded);
+        if (!resourceBudget.isNone()) {
+            Map<DockerEndpoint, ComputeResources> allocatedResources = allocatedResources();
+            ComputeResources demand = image.getConfig().getResources();
+            candidates = new ArrayList<>(endpoints.size());
+            for (DockerEndpoint endpoint : endpoints) {
+                Optional<DaemonResources> daemonResources = endpoint.getResources();
+                if (daemonResources.isPresent() && allocatedResources.getOrDefault(endpoint, ComputeResources.NONE).
+                        plus(demand).fitsIn(ComputeResources.of(daemonResources.get()))) {
+                    candidates.add(endpoint);
+                }
+            }
+        }
+        if (cpusetLayout.isEnabled()) {
+            List<DockerEndpoint> withFreeCpuset = new ArrayList<>(candidates.size());
+            for (DockerEndpoint endpoint : candidates) {
+                if (endpoint.getCpusetAllocator().
+                        map(allocator -> allocator.getFreeCount(cpusetLayout) > 0).orElse(false)) {
+                    withFreeCpuset.add(endpoint);
+                }
+            }
+            candidates = withFreeCpuset;
+        }
+        return EndpointPlacement.select(candidates, countActiveInstances(), image);
+    }
+
+    private Map<DockerEndpoint, ComputeResources> allocatedResources() {
+        Map<DockerEndpoint, ComputeResources> allocated = new HashMap<>();
+        for (DockerImage image : images.values()) {
+            ComputeResources resources = image.getConfig().getResources();
+            for (DockerInstance instance : image.getInstances()) {
+                Optional<DockerEndpoint> endpoint = instance.getEndpoint();
+                if (endpoint.isPresent() && ACTIVE_STATUSES.contains(instance.getStatus())) {
+                    allocated.merge(endpoint.get(), resources, ComputeResources::plus);
+                }
+            }
+        }
+        return allocated;
+    }
+
+    private Map<DockerEndpoint, Integer> countActiveInstances() {
+        Map<DockerEndpoint, Integer> counts = new HashMap<>();
+        for (DockerImage image : images.values()) {
+            for (DockerInstance instance : image.getInstances()) {
+                Optional<DockerEndpoint> endpoint = instance.getEndpoint();
+                if (endpoint.isPresent() && ACTIVE_STATUSES.contains(instance.getStatus())) {
+                    counts.merge(endpoint.get(), 1, Integer::sum);
+                }
+            }
+        }
+        return counts;
     }
 
     private void scheduleDockerSync() {
@@ -586,7 +1136,7 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
      * @return the timestamp of the last Docker sync or -1
      */
     public Optional<Instant> getLastDockerSyncTime() {
-        return Optional.ofNullable(lock.call(() -> lastDockerSyncTime));
+        return Optional.ofNullable(lastDockerSyncTime);
     }
 
     private void prepareLabelsMap(CreateAgentParameters createAgentParameters, DockerInstance instance) {
@@ -673,19 +1223,44 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
 
             LOG.debug("Syncing with Docker instance now.");
 
-            // Creates the Docker client upon first sync. We do this here to benefit from the retry mechanism if
-            // the API negotiation fails.
-            if (clientFacade == null) {
-                clientFacade = cloudSupport.createClientFacade(dockerClientConfig);
-                LOG.info("Docker client instantiated.");
+            // Step 1, query the whole list of containers associated with this cloud client on each endpoint. The
+            // listings are shared with the other clients of the same daemons, and may therefore be slightly outdated.
+            // A failing endpoint does not prevent the other ones to be synchronized.
+            Map<DockerEndpoint, AgentHolderWatcher.Listing> listings = new LinkedHashMap<>();
+            Exception lastFailure = null;
+            for (DockerEndpoint endpoint : endpoints) {
+                try {
+                    // Creates the Docker client upon first sync. We do this here to benefit from the retry mechanism
+                    // if the API negotiation fails.
+                    endpoint.connect(cloudSupport);
+                    listings.put(endpoint, endpoint.listAgentHolders(listingMaxAge));
+                    endpoint.clearFailure();
+                } catch (Exception e) {
+                    LOG.warn("Failed to sync with Docker endpoint " + endpoint + ".", e);
+                    endpoint.notifyFailure("Failed to sync with Docker endpoint " + endpoint + ".", e);
+                    lastFailure = e;
+                }
             }
 
-            // Step 1, query the whole list of containers associated with this cloud client.
-            List<AgentHolderInfo> agentHolders = clientFacade.listAgentHolders(DockerCloudUtils.CLIENT_ID_LABEL, uuid
-                    .toString());
+            if (listings.isEmpty()) {
+                assert lastFailure != null;
+                throw lastFailure;
+            }
 
-            List<SBuildAgent> unregisteredAgents = agentMgr.getUnregisteredAgents();
-            List<String> orphanedAgentHolders = new ArrayList<>();
+            listings.keySet().forEach(DefaultDockerCloudClient.this::restoreCacheVolumes);
+
+            if (!unregisteredAgentsCollected) {
+                // Agents unregistered before this client was created are only known to the agent manager. Later
+                // unregistrations are tracked by our build server listener.
+                for (SBuildAgent agent : agentMgr.getUnregisteredAgents()) {
+                    if (isOwnAgent(agent)) {
+                        unregisteredAgents.putIfAbsent(agent.getId(), agent);
+                    }
+                }
+                unregisteredAgentsCollected = true;
+            }
+
+            Map<DockerEndpoint, List<String>> orphanedAgentHolders = new LinkedHashMap<>();
             List<SBuildAgent> obsoleteAgents = new ArrayList<>();
 
             lock.runInterruptibly(() -> {
@@ -703,95 +1278,142 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
 
                     // Step 2: pro-actively discard unregistered agent that are no longer referenced, they are lost
                     // to us.
-                    for (SBuildAgent agent : unregisteredAgents) {
-                        if (uuid.equals(DockerCloudUtils.getClientId(agent))) {
-                            UUID instanceId = DockerCloudUtils.getInstanceId(agent);
-                            boolean discardAgent = false;
-                            if (instanceId == null) {
-                                LOG.warn("No instance UUID associated with cloud agent " + agent + ".");
-                                discardAgent = true;
-                            } else if (!instances.containsKey(instanceId)) {
-                                LOG.info("Discarding orphan agent: " + agent);
-                                discardAgent = true;
-                            }
-                            if (discardAgent) {
-                                obsoleteAgents.add(agent);
-                            }
+                    for (SBuildAgent agent : unregisteredAgents.values()) {
+                        UUID instanceId = DockerCloudUtils.getInstanceId(agent);
+                        boolean discardAgent = false;
+                        if (instanceId == null) {
+                            LOG.warn("No instance UUID associated with cloud agent " + agent + ".");
+                            discardAgent = true;
+                        } else if (!instances.containsKey(instanceId)) {
+                            LOG.info("Discarding orphan agent: " + agent);
+                            discardAgent = true;
+                        }
+                        if (discardAgent && unregisteredAgents.remove(agent.getId(), agent)) {
+                            obsoleteAgents.add(agent);
                         }
                     }
 
-                    LOG.debug("Found " + agentHolders.size() + " containers to be synced: " + agentHolders);
-
                     // Step 3: remove all instance in an error status.
+                    Set<UUID> deferredInstances = new HashSet<>();
                     Iterator<DockerInstance> itr = instances.values().iterator();
                     while (itr.hasNext()) {
                         DockerInstance instance = itr.next();
                         InstanceStatus status = instance.getStatus();
+                        Optional<DockerEndpoint> endpoint = instance.getEndpoint();
+                        AgentHolderWatcher.Listing listing = endpoint.map(listings::get).orElse(null);
                         if (status == InstanceStatus.ERROR || status == InstanceStatus.ERROR_CANNOT_STOP) {
                             Optional<String> agentHolderId = instance.getAgentHolderId();
                             instance.getImage().clearInstanceId(instance.getUuid());
-                            agentHolderId.ifPresent(orphanedAgentHolders::add);
+                            releaseAllocations(instance);
+                            if (agentHolderId.isPresent() && endpoint.isPresent()) {
+                                orphanedAgentHolders.computeIfAbsent(endpoint.get(), key -> new ArrayList<>()).
+                                        add(agentHolderId.get());
+                            }
                             itr.remove();
 
                         } else if (status == InstanceStatus.UNKNOWN || status == InstanceStatus.SCHEDULED_TO_START
                                 || status == InstanceStatus.STARTING) {
                             // Instance is currently starting, container may not be available yet, skip sync.
                             itr.remove();
+                        } else if (listing == null) {
+                            // Endpoint could not be synchronized, the instance state is unknown. Defer its sync.
+                            deferredInstances.add(instance.getUuid());
+                        } else if (instance.getLastTransitionNanos() - listing.getNanoTime() > 0) {
+                            // Instance status changed after the listing was requested, the listing may not reflect
+                            // it. Defer its sync.
+                            deferredInstances.add(instance.getUuid());
                         }
                     }
 
                     Set<UUID> spottedInstances = new HashSet<>(instances.size());
 
                     // Step 4, gather orphaned agent holder
-                    for (AgentHolderInfo agentHolder : agentHolders) {
-                        UUID instanceUuid = DockerCloudUtils.tryParseAsUUID(agentHolder.getLabels().
-                                get(DockerCloudUtils.INSTANCE_ID_LABEL));
-                        if (instanceUuid == null) {
-                            continue;
-                        }
+                    for (Map.Entry<DockerEndpoint, AgentHolderWatcher.Listing> listingEntry : listings.entrySet()) {
+                        DockerEndpoint endpoint = listingEntry.getKey();
+                        List<AgentHolderInfo> agentHolders = listingEntry.getValue().getAgentHolders();
+
+                        LOG.debug("Found " + agentHolders.size() + " containers to be synced on " + endpoint + ": " +
+                                agentHolders);
+
+                        for (AgentHolderInfo agentHolder : agentHolders) {
+                            UUID instanceUuid = DockerCloudUtils.tryParseAsUUID(agentHolder.getLabels().
+                                    get(DockerCloudUtils.INSTANCE_ID_LABEL));
+                            if (instanceUuid == null) {
+                                continue;
+                            }
 
-                        String agentHolderId = agentHolder.getId();
+                            String agentHolderId = agentHolder.getId();
 
-                        DockerInstance instance = instances.get(instanceUuid);
-                        if (instance == null) {
-                            LOG.warn("Schedule removal of agent holder " + agentHolderId + " with unknown instance id " +
-                                            instanceUuid + ".");
-                            orphanedAgentHolders.add(agentHolderId);
-                            continue;
-                        }
+                            DockerInstance instance = instances.get(instanceUuid);
+                            if (instance == null || instance.getEndpoint().orElse(null) != endpoint) {
+                                LOG.warn("Schedule removal of agent holder " + agentHolderId + " on " + endpoint +
+                                        " with unknown instance id " + instanceUuid + ".");
+                                orphanedAgentHolders.computeIfAbsent(endpoint, key -> new ArrayList<>()).
+                                        add(agentHolderId);
+                                continue;
+                            }
 
-                        if (!agentHolderId.equals(instance.getAgentHolderId().orElse(null)) || !agentHolder
-                                .getTaskId().equals(instance.getTaskId().orElse(null))) {
-                            continue;
-                        }
+                            if (deferredInstances.contains(instanceUuid)) {
+                                continue;
+                            }
 
-                        instance.setAgentHolderInfo(agentHolder);
+                            if (!agentHolderId.equals(instance.getAgentHolderId().orElse(null))) {
+                                continue;
+                            }
 
-                        spottedInstances.add(instanceUuid);
+                            Optional<String> taskId = instance.getTaskId();
+                            if (!taskId.isPresent()) {
+                                if (!agentHolder.isRunning()) {
+                                    continue;
+                                }
+                                // The task was not scheduled yet when the agent holder was started.
+                                LOG.debug("Resolved task " + agentHolder.getTaskId() + " for instance " +
+                                        instanceUuid + ".");
+                                instance.setTaskId(agentHolder.getTaskId());
+                            } else if (!agentHolder.getTaskId().equals(taskId.get())) {
+                                continue;
+                            }
 
-                        InstanceStatus instanceStatus = instance.getStatus();
+                            instance.setAgentHolderInfo(agentHolder);
 
-                        if (agentHolder.isRunning() && instanceStatus == InstanceStatus.STOPPED) {
-                            LOG.warn("Agent holder " + agentHolder.getId() + " for instance " + instanceUuid +
-                                    " was started externally.");
-                            continue;
-                        }
+                            spottedInstances.add(instanceUuid);
 
-                        if (!agentHolder.isRunning() && instanceStatus == InstanceStatus.RUNNING) {
-                            LOG.error("Agent holder " + agentHolderId + " exited prematurely.");
-                            cloudState.registerTerminatedInstance(instance.getImageId(), instance.getInstanceId());
-                            instance.notifyFailure("Container or service exited prematurely.", null);
+                            InstanceStatus instanceStatus = instance.getStatus();
+
+                            if (agentHolder.isRunning() && instanceStatus == InstanceStatus.STOPPED) {
+                                LOG.warn("Agent holder " + agentHolder.getId() + " for instance " + instanceUuid +
+                                        " was started externally.");
+                                continue;
+                            }
+
+                            if (!agentHolder.isRunning() && instanceStatus == InstanceStatus.RUNNING) {
+                                LOG.error("Agent holder " + agentHolderId + " exited prematurely.");
+                                cloudState.registerTerminatedInstance(instance.getImageId(), instance.getInstanceId());
+                                instance.notifyFailure("Container or service exited prematurely.", null);
+                            }
                         }
                     }
 
                     instances.keySet().removeAll(spottedInstances);
+                    instances.keySet().removeAll(deferredInstances);
 
                     // Step 5, process orphaned instances.
                     if (!instances.isEmpty()) {
                         for (DockerInstance instance : instances.values()) {
                             if (instance.getStatus() == InstanceStatus.RUNNING) {
+                                String failureMsg = "Container was destroyed.";
+                                if (!instance.getTaskId().isPresent()) {
+                                    Duration elapsed = Duration.between(instance.getStartedTime().toInstant(),
+                                            Instant.now());
+                                    if (elapsed.compareTo(TASK_RESOLUTION_TIMEOUT) < 0) {
+                                        // Task not scheduled yet.
+                                        continue;
+                                    }
+                                    failureMsg = "No task scheduled for agent holder after " +
+                                            TASK_RESOLUTION_TIMEOUT.getSeconds() + " seconds.";
+                                }
                                 cloudState.registerTerminatedInstance(instance.getImageId(), instance.getInstanceId());
-                                instance.notifyFailure("Container was destroyed.", null);
+                                instance.notifyFailure(failureMsg, null);
                                 instance.setAgentHolderInfo(null);
                             }
                         }
@@ -814,27 +1436,69 @@ public class DefaultDockerCloudClient extends BuildServerAdapter implements Dock
                 }
             });
 
-            obsoleteAgents.forEach(agent -> {
+            // Age and memory usage limits are not bound to build completions, and are therefore checked on each
+            // sync.
+            for (Map.Entry<Integer, DockerInstance> entry : instancesByAgentId.entrySet()) {
+                DockerInstance instance = entry.getValue();
+                if (!instance.getImage().getConfig().getRecyclingPolicy().isNone()) {
+                    SBuildAgent agent = agentMgr.findAgentById(entry.getKey(), false);
+                    if (agent != null) {
+                        recycleIfRequired(instance, agent, null);
+                    }
+                }
+            }
+
+            if (!obsoleteAgents.isEmpty()) {
+                // Removing agents may be slow on large servers, do not hold the synchronization for it.
                 try {
-                    agentMgr.removeAgent(agent, null);
-                } catch (AgentCannotBeRemovedException e) {
-                    LOG.warn("Failed to remove unregistered agent.", e);
+                    taskScheduler.scheduleClientTask(new RemoveObsoleteAgentsTask(obsoleteAgents));
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Client is being disposed, obsolete agents will not be removed.");
                 }
-            });
+            }
 
             if (!orphanedAgentHolders.isEmpty()) {
                 LOG.info("The following orphaned containers will be removed: " + orphanedAgentHolders);
             }
-            for (String orphanedContainer : orphanedAgentHolders) {
+            orphanedAgentHolders.forEach((endpoint, orphanedContainers) -> {
+                for (String orphanedContainer : orphanedContainers) {
+                    try {
+                        terminateContainer(endpoint, orphanedContainer, false, true);
+                    } catch (Exception e) {
+                        LOG.error("Failed to remove container.", e);
+                    }
+                }
+            });
+        }
+    }
+
+    private class RemoveObsoleteAgentsTask extends DockerClientTask {
+
+        private final List<SBuildAgent> agents;
+
+        RemoveObsoleteAgentsTask(List<SBuildAgent> agents) {
+            super("Removal of obsolete agents", DefaultDockerCloudClient.this);
+            this.agents = agents;
+        }
+
+        @Override
+        protected void callInternal() {
+            // Agents failing to be removed are no longer tracked. They will be considered again if they are ever
+            // re-registered and unregistered.
+            for (SBuildAgent agent : agents) {
                 try {
-                    terminateContainer(orphanedContainer, false, true);
-                } catch (Exception e) {
-                    LOG.error("Failed to remove container.", e);
+                    agentMgr.removeAgent(agent, null);
+                } catch (AgentCannotBeRemovedException e) {
+                    LOG.warn("Failed to remove unregistered agent.", e);
                 }
             }
         }
     }
 
+    private boolean isOwnAgent(AgentDescription agent) {
+        return uuidStr.equals(DockerCloudUtils.getEnvParameter(agent, DockerCloudUtils.ENV_CLIENT_ID));
+    }
+
     private void checkReady() {
         assert lock.isHeldByCurrentThread();
         if (state != State.READY) {
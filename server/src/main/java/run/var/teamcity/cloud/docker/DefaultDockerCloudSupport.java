@@ -2,7 +2,7 @@ package run.var.teamcity.cloud.docker;
 
 import run.var.teamcity.cloud.docker.client.DockerClient;
 import run.var.teamcity.cloud.docker.client.DockerClientConfig;
-import run.var.teamcity.cloud.docker.client.DockerClientFactory;
+import run.var.teamcity.cloud.docker.client.DockerClientCache;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.Resources;
 
@@ -86,6 +86,6 @@ public enum DefaultDockerCloudSupport implements DockerCloudSupport {
     }
 
     private static DockerClient createClient(DockerClientConfig clientConfig) {
-        return DockerClientFactory.getDefault().createClientWithAPINegotiation(clientConfig);
+        return DockerClientCache.getDefault().acquire(clientConfig);
     }
 }
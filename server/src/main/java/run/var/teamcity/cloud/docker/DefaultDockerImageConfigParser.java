@@ -24,4 +24,28 @@ public class DefaultDockerImageConfigParser extends AbstractDockerImageConfigPar
     protected Node retrieveLabelsMap(@Nonnull Node agentHolderSpec) {
         return agentHolderSpec.getObject("Labels", Node.EMPTY_OBJECT);
     }
+
+    @Nonnull
+    @Override
+    protected ComputeResources retrieveResources(@Nonnull Node agentHolderSpec) {
+        Node hostConfig = agentHolderSpec.getObject("HostConfig", Node.EMPTY_OBJECT);
+        long nanoCpus = getLong(hostConfig, "NanoCpus");
+        if (nanoCpus == 0) {
+            // CPU shares are only a relative weight, the default weight standing for a full CPU.
+            nanoCpus = getLong(hostConfig, "CpuShares") * ComputeResources.NANO_CPUS_PER_CPU /
+                    ComputeResources.CPU_SHARES_PER_CPU;
+        }
+        return new ComputeResources(nanoCpus, getLong(hostConfig, "Memory"));
+    }
+
+    @Override
+    protected boolean supportsCacheVolumes() {
+        return true;
+    }
+
+    @Override
+    protected boolean supportsSpreadPlacement() {
+        // Containers are always created on the daemon host.
+        return false;
+    }
 }
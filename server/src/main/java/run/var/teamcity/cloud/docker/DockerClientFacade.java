@@ -4,8 +4,12 @@ import run.var.teamcity.cloud.docker.client.DockerClient;
 import run.var.teamcity.cloud.docker.client.DockerClientException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * Facade to manage dockerized agent instances. Instances of this class can be obtained using
@@ -42,34 +46,42 @@ public interface DockerClientFacade extends AutoCloseable {
     NewAgentHolderInfo createAgent(@Nonnull CreateAgentParameters createParameters);
 
     /**
-     * Starts the agent owned by the given agent holder id.
+     * Starts the agent owned by the given agent holder id. This method does not wait for the agent holder task to be
+     * scheduled: if the task is not known yet, it must be resolved from subsequent agent holder listings.
      *
      * @param agentHolderId the agent holder id
      *
+     * @return the agent holder task id, or {@code null} if not known yet
+     *
      * @throws NullPointerException if the {@code agentHolderId} is {@code null}
      * @throws DockerClientException if an error occurred while interacting with the Docker daemon
      * @throws DockerClientFacadeException if an error occurred while processing the creation parameters or the daemon
      * response
      */
+    @Nullable
     String startAgent(@Nonnull String agentHolderId);
 
     /**
-     * Restarts the agent owned by the given agent holder id.
+     * Restarts the agent owned by the given agent holder id. As for {@link #startAgent(String)}, this method does not
+     * wait for the new agent holder task to be scheduled.
      *
      * @param agentHolderId the agent holder id
      *
+     * @return the new agent holder task id, or {@code null} if not known yet
+     *
      * @throws NullPointerException if the {@code agentHolderId} is {@code null}
      * @throws DockerClientException if an error occurred while interacting with the Docker daemon
      * @throws DockerClientFacadeException if an error occurred while processing the creation parameters or the daemon
      * response
      */
+    @Nullable
     String restartAgent(@Nonnull String agentHolderId);
 
     /**
      * Lists the agent filtered with the given label key and value.
      *
      * @param labelFilter the label key
-     * @param valueFilter the label value
+     * @param valueFilter the label value, or an empty string to match any value
      *
      * @return the list of agent holders with the given label set
      *
@@ -98,7 +110,8 @@ public interface DockerClientFacade extends AutoCloseable {
     boolean terminateAgentContainer(@Nonnull String agentHolderId, @Nonnull Duration timeout, boolean removeContainer);
 
     /**
-     * Retrieves the logs for the give agent holder.
+     * Retrieves the logs for the give agent holder. Terminal escape sequences are stripped from the logs, and only
+     * their tail is retained when they are too large.
      *
      * @param agentHolderId the agent container id
      *
@@ -112,6 +125,26 @@ public interface DockerClientFacade extends AutoCloseable {
     @Nonnull
     CharSequence getLogs(@Nonnull String agentHolderId);
 
+    /**
+     * Fetches the logs for the given agent holder within a time range, without following them. The logs are streamed
+     * from the daemon as they are consumed.
+     *
+     * @param agentHolderId the agent container id
+     * @param lineCount the maximal number of lines to fetch (counting from the end), or {@code -1} for all lines
+     * @param since only fetch the logs emitted from this instant (may be {@code null})
+     * @param until only fetch the logs emitted before this instant (may be {@code null})
+     *
+     * @return the stream handler to fetch the agent holder logs
+     *
+     * @throws NullPointerException if {@code agentHolderId} is {@code null}
+     * @throws IllegalArgumentException if {@code lineCount} is invalid, or if {@code until} is before {@code since}
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+     */
+    @Nonnull
+    StreamHandler fetchLogs(@Nonnull String agentHolderId, int lineCount, @Nullable Instant since,
+                            @Nullable Instant until);
+
     /**
      * Stream the logs for the given agent holder.
      *
@@ -127,6 +160,23 @@ public interface DockerClientFacade extends AutoCloseable {
     @Nonnull
     StreamHandler streamLogs(@Nonnull String agentHolderId);
 
+    /**
+     * Follows the whole logs for the given agent holder. Unlike {@link #streamLogs(String)}, no tail limit is
+     * applied: the stream will start with all the logs emitted since the given instant, and will then end once the
+     * agent holder terminates.
+     *
+     * @param agentHolderId the agent container id
+     * @param since only fetch the logs emitted from this instant (may be {@code null})
+     *
+     * @return the stream handler to fetch the agent holder logs
+     *
+     * @throws NullPointerException if {@code agentHolderId} is {@code null}
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+     */
+    @Nonnull
+    StreamHandler followLogs(@Nonnull String agentHolderId, @Nullable Instant since);
+
     /**
      * Checks if the daemon supports querying the agent holder logs.
      *
@@ -134,6 +184,71 @@ public interface DockerClientFacade extends AutoCloseable {
      */
     boolean supportQueryingLogs();
 
+    /**
+     * Gets the resources of the daemon host.
+     *
+     * @return the daemon resources
+     *
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+     */
+    @Nonnull
+    DaemonResources getDaemonResources();
+
+    /**
+     * Gets a resource usage statistics sample for the given agent holder. Statistics are only available for running
+     * agent holders whose container is managed by the daemon itself.
+     *
+     * @param agentHolderId the agent holder id
+     *
+     * @return the statistics sample, if available
+     *
+     * @throws NullPointerException if {@code agentHolderId} is {@code null}
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+     */
+    @Nonnull
+    Optional<ContainerStats> getAgentHolderStats(@Nonnull String agentHolderId);
+
+    /**
+     * Creates a named volume on the daemon host.
+     *
+     * @param name the volume name
+     * @param labels the volume labels
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+     */
+    void createVolume(@Nonnull String name, @Nonnull Map<String, String> labels);
+
+    /**
+     * Lists the volumes having the given label, including the disk space they use.
+     *
+     * @param labelFilter the label key
+     * @param valueFilter the label value, an empty value matching any label value
+     *
+     * @return the list of volumes
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+     */
+    @Nonnull
+    List<VolumeInfo> listVolumes(@Nonnull String labelFilter, @Nonnull String valueFilter);
+
+    /**
+     * Removes a named volume. The volume will not be removed if still in use by a container.
+     *
+     * @param name the volume name
+     *
+     * @return {@code true} if the volume was removed, {@code false} if it did not exist anymore
+     *
+     * @throws NullPointerException if {@code name} is {@code null}
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     */
+    boolean removeVolume(@Nonnull String name);
+
     /**
      * Closes the facade and the underlying Docker client. This method has no effect if the Docker client is already
      * closed.
@@ -7,6 +7,8 @@ import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -14,26 +16,38 @@ import java.net.URL;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
  * Configuration of a {@link DockerCloudClient}. Could be instantiated directly, or from a cloud parameter map.
  * The wrapped Docker client config will use the currently supported API version.
+ * <p>
+ * A configuration targets a primary Docker daemon, and optionally additional daemons among which new instances will
+ * be spread.
+ * </p>
  */
 public class DockerCloudClientConfig {
 
     static final Duration DEFAULT_DOCKER_SYNC_RATE = Duration.ofSeconds(30);
     static final Duration DEFAULT_TASK_TIMEOUT_MILLIS = Duration.ofMinutes(10);
+    static final Duration DEFAULT_STATS_SAMPLING_RATE = Duration.ofMinutes(1);
 
     private final DockerCloudSupport cloudType;
     private final UUID uuid;
-    private final DockerClientConfig dockerClientConfig;
+    private final List<DockerClientConfig> dockerClientConfigs;
     private final boolean usingDaemonThreads;
     private final Duration dockerSyncRate;
     private final Duration taskTimeout;
     private final URL serverURL;
+    private final ComputeResources resourceBudget;
+    private final Duration statsSamplingRate;
+    private final CpusetLayout cpusetLayout;
+    private final long cacheDiskBudgetBytes;
 
     /**
      * Creates a new configuration instance.
@@ -68,22 +82,69 @@ public class DockerCloudClientConfig {
     public DockerCloudClientConfig(@Nonnull DockerCloudSupport cloudType, @Nonnull UUID uuid, @Nonnull DockerClientConfig
             dockerClientConfig, boolean usingDaemonThreads, Duration dockerSyncRate, Duration taskTimeout,
             @Nullable URL serverURL) {
-        DockerCloudUtils.requireNonNull(cloudType, "Cloud profile type cannot be null.");
-        DockerCloudUtils.requireNonNull(uuid, "Client UUID cannot be null.");
-        DockerCloudUtils.requireNonNull(dockerClientConfig, "Docker client configuration cannot be null.");
-        if (dockerSyncRate.getSeconds() < 2) {
+        this(newBuilder(cloudType, uuid, dockerClientConfig).
+                usingDaemonThreads(usingDaemonThreads).
+                dockerSyncRate(dockerSyncRate).
+                taskTimeout(taskTimeout).
+                serverURL(serverURL));
+    }
+
+    private DockerCloudClientConfig(Builder builder) {
+        List<DockerClientConfig> dockerClientConfigs = new ArrayList<>(builder.additionalDockerClientConfigs.size()
+                + 1);
+        dockerClientConfigs.add(builder.dockerClientConfig);
+        Set<URI> instanceURIs = new HashSet<>();
+        instanceURIs.add(builder.dockerClientConfig.getInstanceURI());
+        for (DockerClientConfig additionalConfig : builder.additionalDockerClientConfigs) {
+            if (!instanceURIs.add(additionalConfig.getInstanceURI())) {
+                throw new IllegalArgumentException("Duplicated Docker instance URI: " +
+                        additionalConfig.getInstanceURI());
+            }
+            dockerClientConfigs.add(additionalConfig);
+        }
+        if (builder.dockerSyncRate.getSeconds() < 2) {
             throw new IllegalArgumentException("Docker sync rate must be of at least 2 seconds.");
         }
-        if (taskTimeout.getSeconds() < 10) {
+        if (builder.taskTimeout.getSeconds() < 10) {
             throw new IllegalArgumentException("Task timeout must be of at least 10 seconds.");
         }
-        this.cloudType = cloudType;
-        this.uuid = uuid;
-        this.dockerClientConfig = dockerClientConfig;
-        this.usingDaemonThreads = usingDaemonThreads;
-        this.dockerSyncRate = dockerSyncRate;
-        this.taskTimeout = taskTimeout;
-        this.serverURL = serverURL;
+        if (!builder.statsSamplingRate.isZero() && builder.statsSamplingRate.getSeconds() < 2) {
+            throw new IllegalArgumentException("Statistics sampling rate must be zero or of at least 2 seconds.");
+        }
+        if (builder.cacheDiskBudgetBytes < 0) {
+            throw new IllegalArgumentException("Cache disk budget cannot be negative: " +
+                    builder.cacheDiskBudgetBytes);
+        }
+        this.cloudType = builder.cloudType;
+        this.uuid = builder.uuid;
+        this.dockerClientConfigs = Collections.unmodifiableList(dockerClientConfigs);
+        this.usingDaemonThreads = builder.usingDaemonThreads;
+        this.dockerSyncRate = builder.dockerSyncRate;
+        this.taskTimeout = builder.taskTimeout;
+        this.serverURL = builder.serverURL;
+        this.resourceBudget = builder.resourceBudget;
+        this.statsSamplingRate = builder.statsSamplingRate;
+        this.cpusetLayout = builder.cpusetLayout;
+        this.cacheDiskBudgetBytes = builder.cacheDiskBudgetBytes;
+    }
+
+    /**
+     * Creates a new configuration builder. Unless specified otherwise, the built configuration targets a single Docker
+     * daemon, uses daemon threads, the default synchronization rate, task timeout and statistics sampling rate, the
+     * default server URL, and has no resource budget, cpuset allocation, or cache disk budget.
+     *
+     * @param cloudType          the Docker profile cloud type
+     * @param uuid               the cloud client UUID
+     * @param dockerClientConfig the primary Docker client configuration
+     *
+     * @return the new builder
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    @Nonnull
+    public static Builder newBuilder(@Nonnull DockerCloudSupport cloudType, @Nonnull UUID uuid,
+                                     @Nonnull DockerClientConfig dockerClientConfig) {
+        return new Builder(cloudType, uuid, dockerClientConfig);
     }
 
     /**
@@ -106,13 +167,23 @@ public class DockerCloudClientConfig {
     }
 
     /**
-     * Gets the Docker client configuration.
+     * Gets the configuration of the primary Docker daemon.
      *
      * @return the Docker client configuration
      */
     @Nonnull
     public DockerClientConfig getDockerClientConfig() {
-        return dockerClientConfig;
+        return dockerClientConfigs.get(0);
+    }
+
+    /**
+     * Gets the configurations of all the targeted Docker daemons, starting with the primary one.
+     *
+     * @return the immutable list of Docker client configurations
+     */
+    @Nonnull
+    public List<DockerClientConfig> getDockerClientConfigs() {
+        return dockerClientConfigs;
     }
 
     /**
@@ -154,6 +225,46 @@ public class DockerCloudClientConfig {
         return serverURL;
     }
 
+    /**
+     * Gets the resources that can be allocated to the agents of this profile. Zero amounts stand for no limit.
+     *
+     * @return the resource budget
+     */
+    @Nonnull
+    public ComputeResources getResourceBudget() {
+        return resourceBudget;
+    }
+
+    /**
+     * Gets the rate at which the agents resource usage is collected.
+     *
+     * @return the sampling rate, zero if the collection is disabled
+     */
+    @Nonnull
+    public Duration getStatsSamplingRate() {
+        return statsSamplingRate;
+    }
+
+    /**
+     * Gets the layout of the cpusets allocated to the agents.
+     *
+     * @return the cpuset layout
+     */
+    @Nonnull
+    public CpusetLayout getCpusetLayout() {
+        return cpusetLayout;
+    }
+
+    /**
+     * Gets the disk space available to the cache volumes on each Docker host. Least recently used cache volumes are
+     * evicted when exceeded.
+     *
+     * @return the cache disk budget in bytes, {@code 0} for no limit
+     */
+    public long getCacheDiskBudgetBytes() {
+        return cacheDiskBudgetBytes;
+    }
+
     /**
      * Load the configuration from the Teamcity properties map.
      *
@@ -217,7 +328,9 @@ public class DockerCloudClientConfig {
                             DockerCloudUtils.DOCKER_API_TARGET_VERSION).usingTls(usingTls);
                     if (cloudSupport != null) {
                         try {
-                            cloudSupport.createClientFacade(dockerConfig);
+                            // Validate the configuration. The created client will be retained for a while in the
+                            // shared client cache.
+                            cloudSupport.createClientFacade(dockerConfig).close();
                         } catch (IllegalArgumentException e) {
                             invalidProperties.add(new InvalidProperty(DockerCloudUtils.INSTANCE_URI, e.getMessage()));
                         }
@@ -228,6 +341,46 @@ public class DockerCloudClientConfig {
             }
         }
 
+        List<DockerClientConfig> additionalConfigs = new ArrayList<>();
+        String additionalURIsStr = properties.get(DockerCloudUtils.ADDITIONAL_INSTANCE_URIS);
+        if (!StringUtil.isEmptyOrSpaces(additionalURIsStr)) {
+            Set<URI> instanceURIs = new HashSet<>();
+            if (instanceURI != null) {
+                instanceURIs.add(instanceURI);
+            }
+            for (String line : StringUtil.splitByLines(additionalURIsStr)) {
+                String additionalURIStr = line.trim();
+                if (additionalURIStr.isEmpty()) {
+                    continue;
+                }
+                URI additionalURI;
+                try {
+                    additionalURI = new URI(additionalURIStr);
+                } catch (URISyntaxException e) {
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.ADDITIONAL_INSTANCE_URIS,
+                            "Not a valid URI: " + additionalURIStr));
+                    continue;
+                }
+                if (!instanceURIs.add(additionalURI)) {
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.ADDITIONAL_INSTANCE_URIS,
+                            "Duplicated Docker instance: " + additionalURIStr));
+                    continue;
+                }
+                DockerClientConfig additionalConfig = new DockerClientConfig(additionalURI,
+                        DockerCloudUtils.DOCKER_API_TARGET_VERSION).usingTls(usingTls);
+                if (cloudSupport != null) {
+                    try {
+                        cloudSupport.createClientFacade(additionalConfig).close();
+                    } catch (IllegalArgumentException e) {
+                        invalidProperties.add(new InvalidProperty(DockerCloudUtils.ADDITIONAL_INSTANCE_URIS,
+                                e.getMessage()));
+                        continue;
+                    }
+                }
+                additionalConfigs.add(additionalConfig);
+            }
+        }
+
         URL serverURL = null;
 
         String serverURLStr = properties.get(DockerCloudUtils.SERVER_URL_PARAM);
@@ -240,6 +393,111 @@ public class DockerCloudClientConfig {
             }
         }
 
+        long nanoCpusBudget = 0;
+        String cpuBudgetStr = properties.get(DockerCloudUtils.CPU_BUDGET_PARAM);
+        if (!StringUtil.isEmptyOrSpaces(cpuBudgetStr)) {
+            try {
+                BigDecimal cpuBudget = new BigDecimal(cpuBudgetStr.trim());
+                if (cpuBudget.signum() <= 0) {
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.CPU_BUDGET_PARAM,
+                            "CPU budget must be strictly positive."));
+                } else {
+                    nanoCpusBudget = cpuBudget.multiply(BigDecimal.valueOf(ComputeResources.NANO_CPUS_PER_CPU)).
+                            setScale(0, RoundingMode.DOWN).longValueExact();
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                invalidProperties.add(new InvalidProperty(DockerCloudUtils.CPU_BUDGET_PARAM,
+                        "Not a valid CPU count."));
+            }
+        }
+
+        long memoryBudget = 0;
+        String memoryBudgetStr = properties.get(DockerCloudUtils.MEMORY_BUDGET_PARAM);
+        if (!StringUtil.isEmptyOrSpaces(memoryBudgetStr)) {
+            try {
+                long memoryBudgetMiB = Long.parseLong(memoryBudgetStr.trim());
+                if (memoryBudgetMiB <= 0) {
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.MEMORY_BUDGET_PARAM,
+                            "Memory budget must be strictly positive."));
+                } else {
+                    memoryBudget = Math.multiplyExact(memoryBudgetMiB, 1024L * 1024);
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                invalidProperties.add(new InvalidProperty(DockerCloudUtils.MEMORY_BUDGET_PARAM,
+                        "Not a valid memory size."));
+            }
+        }
+
+        Duration statsSamplingRate = DEFAULT_STATS_SAMPLING_RATE;
+        String statsSamplingRateStr = properties.get(DockerCloudUtils.STATS_SAMPLING_RATE_PARAM);
+        if (!StringUtil.isEmptyOrSpaces(statsSamplingRateStr)) {
+            try {
+                long statsSamplingRateSec = Long.parseLong(statsSamplingRateStr.trim());
+                if (statsSamplingRateSec != 0 && statsSamplingRateSec < 2) {
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.STATS_SAMPLING_RATE_PARAM,
+                            "Sampling rate must be zero or of at least 2 seconds."));
+                } else {
+                    statsSamplingRate = Duration.ofSeconds(statsSamplingRateSec);
+                }
+            } catch (NumberFormatException e) {
+                invalidProperties.add(new InvalidProperty(DockerCloudUtils.STATS_SAMPLING_RATE_PARAM,
+                        "Not a valid number of seconds."));
+            }
+        }
+
+        CpusetLayout cpusetLayout = CpusetLayout.NONE;
+        String cpusetWidthStr = properties.get(DockerCloudUtils.CPUSET_WIDTH_PARAM);
+        if (!StringUtil.isEmptyOrSpaces(cpusetWidthStr)) {
+            int numaNodeCount = 1;
+            String numaNodesStr = properties.get(DockerCloudUtils.CPUSET_NUMA_NODES_PARAM);
+            if (!StringUtil.isEmptyOrSpaces(numaNodesStr)) {
+                try {
+                    numaNodeCount = Integer.parseInt(numaNodesStr.trim());
+                    if (numaNodeCount < 1) {
+                        invalidProperties.add(new InvalidProperty(DockerCloudUtils.CPUSET_NUMA_NODES_PARAM,
+                                "At least one NUMA node is required."));
+                        numaNodeCount = 1;
+                    }
+                } catch (NumberFormatException e) {
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.CPUSET_NUMA_NODES_PARAM,
+                            "Not a valid number of NUMA nodes."));
+                }
+            }
+            try {
+                int cpusetWidth = Integer.parseInt(cpusetWidthStr.trim());
+                if (cpusetWidth < 1) {
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.CPUSET_WIDTH_PARAM,
+                            "Cpuset width must be strictly positive."));
+                } else if (cloudSupport == DefaultDockerCloudSupport.SWARM) {
+                    // Swarm services cannot be pinned to CPUs.
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.CPUSET_WIDTH_PARAM,
+                            "Cpusets cannot be allocated to Swarm services."));
+                } else {
+                    cpusetLayout = new CpusetLayout(cpusetWidth, numaNodeCount);
+                }
+            } catch (NumberFormatException e) {
+                invalidProperties.add(new InvalidProperty(DockerCloudUtils.CPUSET_WIDTH_PARAM,
+                        "Not a valid number of CPUs."));
+            }
+        }
+
+        long cacheDiskBudget = 0;
+        String cacheDiskBudgetStr = properties.get(DockerCloudUtils.CACHE_DISK_BUDGET_PARAM);
+        if (!StringUtil.isEmptyOrSpaces(cacheDiskBudgetStr)) {
+            try {
+                long cacheDiskBudgetMiB = Long.parseLong(cacheDiskBudgetStr.trim());
+                if (cacheDiskBudgetMiB <= 0) {
+                    invalidProperties.add(new InvalidProperty(DockerCloudUtils.CACHE_DISK_BUDGET_PARAM,
+                            "Cache disk budget must be strictly positive."));
+                } else {
+                    cacheDiskBudget = Math.multiplyExact(cacheDiskBudgetMiB, 1024L * 1024);
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                invalidProperties.add(new InvalidProperty(DockerCloudUtils.CACHE_DISK_BUDGET_PARAM,
+                        "Not a valid disk size."));
+            }
+        }
+
         if (!invalidProperties.isEmpty()) {
             throw new DockerCloudClientConfigException(invalidProperties);
         }
@@ -249,7 +507,14 @@ public class DockerCloudClientConfig {
         DockerClientConfig dockerClientConfig =
                 new DockerClientConfig(instanceURI, DockerCloudUtils.DOCKER_API_TARGET_VERSION).usingTls(usingTls);
 
-        return new DockerCloudClientConfig(cloudSupport, clientUuid, dockerClientConfig, true, serverURL);
+        return newBuilder(cloudSupport, clientUuid, dockerClientConfig).
+                additionalDockerClientConfigs(additionalConfigs).
+                serverURL(serverURL).
+                resourceBudget(new ComputeResources(nanoCpusBudget, memoryBudget)).
+                statsSamplingRate(statsSamplingRate).
+                cpusetLayout(cpusetLayout).
+                cacheDiskBudgetBytes(cacheDiskBudget).
+                build();
     }
 
     private static boolean optionalFlag(String key, Map<String, String> properties) {
@@ -276,4 +541,180 @@ public class DockerCloudClientConfig {
         }
         return value.trim();
     }
+
+    /**
+     * Builder of {@link DockerCloudClientConfig} instances.
+     */
+    public static class Builder {
+
+        private final DockerCloudSupport cloudType;
+        private final UUID uuid;
+        private final DockerClientConfig dockerClientConfig;
+        private List<DockerClientConfig> additionalDockerClientConfigs = Collections.emptyList();
+        private boolean usingDaemonThreads = true;
+        private Duration dockerSyncRate = DEFAULT_DOCKER_SYNC_RATE;
+        private Duration taskTimeout = DEFAULT_TASK_TIMEOUT_MILLIS;
+        private URL serverURL;
+        private ComputeResources resourceBudget = ComputeResources.NONE;
+        private Duration statsSamplingRate = DEFAULT_STATS_SAMPLING_RATE;
+        private CpusetLayout cpusetLayout = CpusetLayout.NONE;
+        private long cacheDiskBudgetBytes = 0;
+
+        private Builder(DockerCloudSupport cloudType, UUID uuid, DockerClientConfig dockerClientConfig) {
+            this.cloudType = DockerCloudUtils.requireNonNull(cloudType, "Cloud profile type cannot be null.");
+            this.uuid = DockerCloudUtils.requireNonNull(uuid, "Client UUID cannot be null.");
+            this.dockerClientConfig = DockerCloudUtils.requireNonNull(dockerClientConfig,
+                    "Docker client configuration cannot be null.");
+        }
+
+        /**
+         * Sets the configurations of the additional Docker daemons among which new instances will be spread.
+         *
+         * @param additionalDockerClientConfigs the additional Docker client configurations
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code additionalDockerClientConfigs} is {@code null} or contains a
+         * {@code null} configuration
+         */
+        @Nonnull
+        public Builder additionalDockerClientConfigs(@Nonnull List<DockerClientConfig> additionalDockerClientConfigs) {
+            DockerCloudUtils.requireNonNull(additionalDockerClientConfigs,
+                    "Additional Docker client configurations cannot be null.");
+            for (DockerClientConfig additionalConfig : additionalDockerClientConfigs) {
+                DockerCloudUtils.requireNonNull(additionalConfig, "Docker client configuration cannot be null.");
+            }
+            this.additionalDockerClientConfigs = new ArrayList<>(additionalDockerClientConfigs);
+            return this;
+        }
+
+        /**
+         * Sets whether the client must use daemon threads to manage containers.
+         *
+         * @param usingDaemonThreads {@code true} if daemon threads must be used
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder usingDaemonThreads(boolean usingDaemonThreads) {
+            this.usingDaemonThreads = usingDaemonThreads;
+            return this;
+        }
+
+        /**
+         * Sets the rate at which the client is synchronized with the Docker daemons. Must be of at least 2 seconds.
+         *
+         * @param dockerSyncRate the synchronization rate
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code dockerSyncRate} is {@code null}
+         */
+        @Nonnull
+        public Builder dockerSyncRate(@Nonnull Duration dockerSyncRate) {
+            this.dockerSyncRate = DockerCloudUtils.requireNonNull(dockerSyncRate, "Docker sync rate cannot be null.");
+            return this;
+        }
+
+        /**
+         * Sets the maximal duration of a cloud related operation. Must be of at least 10 seconds.
+         *
+         * @param taskTimeout the task timeout
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code taskTimeout} is {@code null}
+         */
+        @Nonnull
+        public Builder taskTimeout(@Nonnull Duration taskTimeout) {
+            this.taskTimeout = DockerCloudUtils.requireNonNull(taskTimeout, "Task timeout cannot be null.");
+            return this;
+        }
+
+        /**
+         * Sets the server URL to be configured on the agents.
+         *
+         * @param serverURL the server URL, {@code null} to use the default server URL
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder serverURL(@Nullable URL serverURL) {
+            this.serverURL = serverURL;
+            return this;
+        }
+
+        /**
+         * Sets the resources that can be allocated to the agents.
+         *
+         * @param resourceBudget the resource budget, zero amounts standing for no limit
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code resourceBudget} is {@code null}
+         */
+        @Nonnull
+        public Builder resourceBudget(@Nonnull ComputeResources resourceBudget) {
+            this.resourceBudget = DockerCloudUtils.requireNonNull(resourceBudget, "Resource budget cannot be null.");
+            return this;
+        }
+
+        /**
+         * Sets the rate at which the agents resource usage is collected. Must be zero or of at least 2 seconds.
+         *
+         * @param statsSamplingRate the sampling rate, zero to disable the collection
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code statsSamplingRate} is {@code null}
+         */
+        @Nonnull
+        public Builder statsSamplingRate(@Nonnull Duration statsSamplingRate) {
+            this.statsSamplingRate = DockerCloudUtils.requireNonNull(statsSamplingRate,
+                    "Statistics sampling rate cannot be null.");
+            return this;
+        }
+
+        /**
+         * Sets the layout of the cpusets allocated to the agents.
+         *
+         * @param cpusetLayout the cpuset layout
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code cpusetLayout} is {@code null}
+         */
+        @Nonnull
+        public Builder cpusetLayout(@Nonnull CpusetLayout cpusetLayout) {
+            this.cpusetLayout = DockerCloudUtils.requireNonNull(cpusetLayout, "Cpuset layout cannot be null.");
+            return this;
+        }
+
+        /**
+         * Sets the disk space available to the cache volumes on each Docker host. Must not be negative.
+         *
+         * @param cacheDiskBudgetBytes the cache disk budget in bytes, zero standing for no limit
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder cacheDiskBudgetBytes(long cacheDiskBudgetBytes) {
+            this.cacheDiskBudgetBytes = cacheDiskBudgetBytes;
+            return this;
+        }
+
+        /**
+         * Builds the configuration.
+         *
+         * @return the new configuration
+         *
+         * @throws IllegalArgumentException if the Docker sync rate is below 2 seconds, if the task timeout is below
+         * 10 seconds, if the sampling rate is neither zero nor of at least 2 seconds, if the cache disk budget is
+         * negative, or if several configurations target the same daemon URI
+         */
+        @Nonnull
+        public DockerCloudClientConfig build() {
+            return new DockerCloudClientConfig(this);
+        }
+    }
 }
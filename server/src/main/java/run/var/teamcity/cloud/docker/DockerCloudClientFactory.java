@@ -9,6 +9,7 @@ import jetbrains.buildServer.serverSide.AgentDescription;
 import jetbrains.buildServer.serverSide.SBuildServer;
 import jetbrains.buildServer.web.openapi.PluginDescriptor;
 import org.jetbrains.annotations.NotNull;
+import run.var.teamcity.cloud.docker.client.DockerClientConfig;
 import run.var.teamcity.cloud.docker.client.DockerRegistryClientFactory;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.OfficialAgentImageResolver;
@@ -30,16 +31,19 @@ public class DockerCloudClientFactory implements CloudClientFactory {
     private final DockerCloudSupportRegistry cloudSupportRegistry;
     private final String editProfileUrl;
     private final SBuildServer buildServer;
+    private final AgentLogStore logStore;
 
     public DockerCloudClientFactory(
             @Nonnull DockerCloudSupport cloudSupport,
             @Nonnull DockerCloudSupportRegistry cloudSupportRegistry,
             @Nonnull final SBuildServer buildServer,
-            @Nonnull final PluginDescriptor pluginDescriptor) {
+            @Nonnull final PluginDescriptor pluginDescriptor,
+            @Nonnull AgentLogStore logStore) {
         this.cloudSupport = cloudSupport;
         this.cloudSupportRegistry = cloudSupportRegistry;
         this.editProfileUrl = pluginDescriptor.getPluginResourcesPath(cloudSupport.resources().text("cloud.settingsPath"));
         this.buildServer = buildServer;
+        this.logStore = logStore;
     }
 
     @Nonnull
@@ -68,12 +72,13 @@ public class DockerCloudClientFactory implements CloudClientFactory {
                 properties);
 
         final int threadPoolSize = Math.min(imageConfigs.size() * 2, Runtime.getRuntime().availableProcessors() + 1);
-        clientConfig.getDockerClientConfig()
-                .connectionPoolSize(threadPoolSize);
+        for (DockerClientConfig dockerClientConfig : clientConfig.getDockerClientConfigs()) {
+            dockerClientConfig.connectionPoolSize(threadPoolSize);
+        }
 
         return new DefaultDockerCloudClient(clientConfig, imageConfigs,
                 OfficialAgentImageResolver.forCurrentServer(DockerRegistryClientFactory.getDefault()), state,
-                buildServer);
+                buildServer, logStore, AgentHolderWatcher.getDefault());
     }
 
     @Nonnull
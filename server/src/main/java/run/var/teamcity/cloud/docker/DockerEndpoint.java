@@ -0,0 +1,333 @@
+package run.var.teamcity.cloud.docker;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.clouds.CloudErrorInfo;
+import run.var.teamcity.cloud.docker.client.DockerClientConfig;
+import run.var.teamcity.cloud.docker.client.DockerClientException;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Docker daemon endpoint of a cloud client.
+ * <p>
+ * Each endpoint has its own client facade, created upon first synchronization, and its own health state: an endpoint
+ * is available for placing new instances once connected, and as long as its last synchronization succeeded. The
+ * endpoint also keeps track of the images for which an instance was already started on the daemon, since starting
+ * them again is expected to be cheaper.
+ * </p>
+ * <p>
+ * Log captures follow the agent holders for their whole lifetime. They are therefore run on a dedicated client
+ * facade, with its own connections and without read timeout, such that they neither starve the endpoint facade nor
+ * get interrupted when an agent stays quiet. Resource usage sampling issues many slow requests in a row, and also has
+ * its own facade for the same reason.
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ */
+public class DockerEndpoint implements DockerCloudErrorHandler {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(DockerEndpoint.class);
+
+    /**
+     * Size of the connection pool dedicated to log captures. Connections are only opened when required: captures in
+     * excess will wait for a connection to be released without affecting the other operations.
+     */
+    static final int LOG_CAPTURE_POOL_SIZE = 64;
+
+    /**
+     * Size of the connection pool dedicated to resource usage sampling.
+     */
+    static final int SAMPLING_POOL_SIZE = ResourceUsageSampler.FETCH_PARALLELISM;
+
+    private final DockerClientConfig clientConfig;
+    private final AgentHolderWatcher.Registration watcherRegistration;
+    private final Set<UUID> warmImages = ConcurrentHashMap.newKeySet();
+    private final LockHandler lock = LockHandler.newReentrantLock();
+
+    private volatile DockerClientFacade clientFacade;
+    private volatile DaemonResources resources;
+    private volatile CloudErrorInfo errorInfo;
+
+    // Guarded by the endpoint lock.
+    private DockerClientFacade logCaptureFacade;
+    private DockerClientFacade samplingFacade;
+    private boolean closed = false;
+
+    /**
+     * Creates a new endpoint.
+     *
+     * @param clientConfig        the Docker client configuration
+     * @param watcherRegistration the registration providing the endpoint agent holders
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    DockerEndpoint(@Nonnull DockerClientConfig clientConfig,
+                   @Nonnull AgentHolderWatcher.Registration watcherRegistration) {
+        this.clientConfig = DockerCloudUtils.requireNonNull(clientConfig, "Client configuration cannot be null.");
+        this.watcherRegistration = DockerCloudUtils.requireNonNull(watcherRegistration,
+                "Watcher registration cannot be null.");
+    }
+
+    /**
+     * Gets the daemon URI.
+     *
+     * @return the daemon URI
+     */
+    @Nonnull
+    public URI getInstanceURI() {
+        return clientConfig.getInstanceURI();
+    }
+
+    /**
+     * Connects to the daemon, if not already done, and fetches its resources.
+     *
+     * @param cloudSupport the cloud support to be used to create the client facade
+     *
+     * @throws NullPointerException if {@code cloudSupport} is {@code null}
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+     */
+    void connect(@Nonnull DockerCloudSupport cloudSupport) {
+        DockerCloudUtils.requireNonNull(cloudSupport, "Cloud support cannot be null.");
+        if (clientFacade != null) {
+            return;
+        }
+        DockerClientFacade facade = cloudSupport.createClientFacade(clientConfig);
+        try {
+            resources = facade.getDaemonResources();
+        } catch (RuntimeException e) {
+            facade.close();
+            throw e;
+        }
+        clientFacade = facade;
+        LOG.info("Docker client instantiated for " + getInstanceURI() + " (" + resources + ").");
+    }
+
+    /**
+     * Gets the client facade of this endpoint.
+     *
+     * @return the client facade
+     *
+     * @throws IllegalStateException if the endpoint is not connected yet
+     */
+    @Nonnull
+    DockerClientFacade getClientFacade() {
+        DockerClientFacade facade = clientFacade;
+        if (facade == null) {
+            throw new IllegalStateException("Endpoint " + getInstanceURI() + " is not connected yet.");
+        }
+        return facade;
+    }
+
+    /**
+     * Gets the client facade dedicated to log captures, creating it if required.
+     *
+     * @param cloudSupport the cloud support to be used to create the client facade
+     *
+     * @return the log capture client facade
+     *
+     * @throws NullPointerException if {@code cloudSupport} is {@code null}
+     * @throws IllegalStateException if the endpoint has been closed
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     */
+    @Nonnull
+    DockerClientFacade getLogCaptureFacade(@Nonnull DockerCloudSupport cloudSupport) {
+        DockerCloudUtils.requireNonNull(cloudSupport, "Cloud support cannot be null.");
+        return lock.call(() -> {
+            if (closed) {
+                throw new IllegalStateException("Endpoint " + getInstanceURI() + " has been closed.");
+            }
+            if (logCaptureFacade == null) {
+                logCaptureFacade = cloudSupport.createClientFacade(dedicatedConfig(LOG_CAPTURE_POOL_SIZE,
+                        Duration.ZERO));
+            }
+            return logCaptureFacade;
+        });
+    }
+
+    /**
+     * Gets the client facade dedicated to resource usage sampling, creating it if required.
+     *
+     * @param cloudSupport the cloud support to be used to create the client facade
+     *
+     * @return the sampling client facade
+     *
+     * @throws NullPointerException if {@code cloudSupport} is {@code null}
+     * @throws IllegalStateException if the endpoint has been closed
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     */
+    @Nonnull
+    DockerClientFacade getSamplingFacade(@Nonnull DockerCloudSupport cloudSupport) {
+        DockerCloudUtils.requireNonNull(cloudSupport, "Cloud support cannot be null.");
+        return lock.call(() -> {
+            if (closed) {
+                throw new IllegalStateException("Endpoint " + getInstanceURI() + " has been closed.");
+            }
+            if (samplingFacade == null) {
+                samplingFacade = cloudSupport.createClientFacade(dedicatedConfig(SAMPLING_POOL_SIZE,
+                        clientConfig.getTransferTimeout()));
+            }
+            return samplingFacade;
+        });
+    }
+
+    private DockerClientConfig dedicatedConfig(int connectionPoolSize, Duration transferTimeout) {
+        return new DockerClientConfig(clientConfig.getInstanceURI(), clientConfig.getApiVersion())
+                .usingTls(clientConfig.isUsingTLS())
+                .verifyingHostname(clientConfig.isVerifyingHostname())
+                .connectionPoolSize(connectionPoolSize)
+                .connectTimeout(clientConfig.getConnectTimeout())
+                .transferTimeout(transferTimeout);
+    }
+
+    /**
+     * Lists the agent holders of the cloud client on this endpoint.
+     *
+     * @param maxAge the maximal age of a reused listing
+     *
+     * @return the agent holders listing
+     *
+     * @throws NullPointerException if {@code maxAge} is {@code null}
+     * @throws IllegalStateException if the endpoint is not connected yet
+     * @throws DockerClientException if an error occurred while interacting with the Docker daemon
+     * @throws DockerClientFacadeException if an error occurred while processing the daemon response
+     */
+    @Nonnull
+    AgentHolderWatcher.Listing listAgentHolders(@Nonnull Duration maxAge) {
+        return watcherRegistration.listAgentHolders(getClientFacade(), maxAge);
+    }
+
+    /**
+     * Gets the cpuset allocator of the daemon, shared by all the clients targeting it. Only available once
+     * connected.
+     *
+     * @return the cpuset allocator if any
+     */
+    @Nonnull
+    Optional<CpusetAllocator> getCpusetAllocator() {
+        return getResources().map(daemonResources ->
+                watcherRegistration.getCpusetAllocator(daemonResources.getCpuCount()));
+    }
+
+    /**
+     * Gets the cache volume pool of the daemon, shared by all the clients targeting it.
+     *
+     * @return the cache volume pool
+     */
+    @Nonnull
+    CacheVolumePool getCacheVolumePool() {
+        return watcherRegistration.getCacheVolumePool();
+    }
+
+    /**
+     * Gets the daemon resources. Only available once connected.
+     *
+     * @return the daemon resources if any
+     */
+    @Nonnull
+    public Optional<DaemonResources> getResources() {
+        return Optional.ofNullable(resources);
+    }
+
+    /**
+     * Checks if new instances can be placed on this endpoint.
+     *
+     * @return {@code true} if the endpoint is connected and healthy
+     */
+    public boolean isAvailable() {
+        return clientFacade != null && errorInfo == null;
+    }
+
+    /**
+     * Gets the error info of the last failed synchronization, if it was not followed by a successful one.
+     *
+     * @return the error info or {@code null}
+     */
+    @Nullable
+    public CloudErrorInfo getErrorInfo() {
+        return errorInfo;
+    }
+
+    @Override
+    public void notifyFailure(@Nonnull String msg, @Nullable Throwable throwable) {
+        DockerCloudUtils.requireNonNull(msg, "Message cannot be null.");
+        errorInfo = throwable != null ? new CloudErrorInfo(msg, msg, throwable) : new CloudErrorInfo(msg, msg);
+    }
+
+    /**
+     * Marks this endpoint as healthy.
+     */
+    void clearFailure() {
+        if (errorInfo != null) {
+            LOG.info("Endpoint " + getInstanceURI() + " recovered from error: " + errorInfo);
+            errorInfo = null;
+        }
+    }
+
+    /**
+     * Records that an instance of the given image was started on this endpoint.
+     *
+     * @param image the started image
+     *
+     * @throws NullPointerException if {@code image} is {@code null}
+     */
+    void markWarm(@Nonnull DockerImage image) {
+        DockerCloudUtils.requireNonNull(image, "Image cannot be null.");
+        warmImages.add(image.getUuid());
+    }
+
+    /**
+     * Checks if an instance of the given image was already started on this endpoint.
+     *
+     * @param image the image
+     *
+     * @return {@code true} if the image is warm on this endpoint
+     *
+     * @throws NullPointerException if {@code image} is {@code null}
+     */
+    boolean isWarm(@Nonnull DockerImage image) {
+        DockerCloudUtils.requireNonNull(image, "Image cannot be null.");
+        return warmImages.contains(image.getUuid());
+    }
+
+    /**
+     * Releases the resources associated with this endpoint.
+     */
+    void close() {
+        watcherRegistration.close();
+        DockerClientFacade facade = clientFacade;
+        if (facade != null) {
+            // Release our lease on the shared Docker client.
+            facade.close();
+        }
+        List<DockerClientFacade> dedicatedFacades = lock.call(() -> {
+            closed = true;
+            List<DockerClientFacade> facades = new ArrayList<>(2);
+            if (logCaptureFacade != null) {
+                facades.add(logCaptureFacade);
+            }
+            if (samplingFacade != null) {
+                facades.add(samplingFacade);
+            }
+            return facades;
+        });
+        dedicatedFacades.forEach(DockerClientFacade::close);
+    }
+
+    @Override
+    public String toString() {
+        return getInstanceURI().toString();
+    }
+}
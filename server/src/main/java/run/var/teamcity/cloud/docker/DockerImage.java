@@ -5,18 +5,30 @@ import jetbrains.buildServer.clouds.CloudErrorInfo;
 import jetbrains.buildServer.clouds.CloudImage;
 import jetbrains.buildServer.clouds.InstanceStatus;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
-import run.var.teamcity.cloud.docker.util.LockHandler;
+import run.var.teamcity.cloud.docker.util.StampedLockHandler;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * A Docker {@link CloudImage}.
+ * <p>
+ * The registered instances are published as an immutable snapshot, replaced on each registration change. Querying
+ * the instances of this image therefore never requires locking.
+ * </p>
+ * <p>
+ * The number of registered instances in each status is also maintained on each status transition, such that quota
+ * checks do not need to inspect the instances. Reads spanning several counters are performed optimistically, and
+ * are only retried under lock if a transition was accounted concurrently.
+ * </p>
  */
 public class DockerImage implements CloudImage {
 
@@ -26,10 +38,21 @@ public class DockerImage implements CloudImage {
     private final UUID uuid = UUID.randomUUID();
     private final DockerImageConfig config;
 
-    // This lock ensure a thread-safe usage of all the variables below.
-    private final LockHandler lock = LockHandler.newReentrantLock();
+    // This lock serializes the modifications of the variables below. Reading them does not require locking, unless a
+    // consistent view of several counters is required.
+    private final StampedLockHandler lock = StampedLockHandler.newStampedLock("DockerImage");
 
-    private final Map<UUID, DockerInstance> instances = new ConcurrentHashMap<>();
+    // Immutable snapshot of the registered instances, replaced on each modification.
+    private volatile Map<UUID, DockerInstance> instances = Collections.emptyMap();
+
+    // Status of each registered instance, as accounted in the status counters.
+    private final Map<UUID, InstanceStatus> countedStatuses = new HashMap<>();
+
+    // Number of registered instances for each status, indexed by ordinal.
+    private final AtomicIntegerArray statusCounters = new AtomicIntegerArray(InstanceStatus.values().length);
+
+    // Aggregated resource usage of all the instances of this image.
+    private final ResourceUsageStats usageStats = new ResourceUsageStats();
 
     DockerImage(DefaultDockerCloudClient cloudClient, DockerImageConfig config) {
         this.cloudClient = cloudClient;
@@ -59,7 +82,7 @@ public class DockerImage implements CloudImage {
     @Nonnull
     @Override
     public String getName() {
-        return lock.call(config::getProfileName);
+        return config.getProfileName();
     }
 
     /**
@@ -75,7 +98,7 @@ public class DockerImage implements CloudImage {
     @Nonnull
     @Override
     public Collection<DockerInstance> getInstances() {
-        return lock.call(() -> Collections.unmodifiableCollection(instances.values()));
+        return instances.values();
     }
 
     @Nullable
@@ -102,7 +125,7 @@ public class DockerImage implements CloudImage {
     @Nullable
     DockerInstance findInstanceById(@Nonnull UUID id) {
         DockerCloudUtils.requireNonNull(id, "UUID cannot be null.");
-        return lock.call(() -> instances.get(id));
+        return instances.get(id);
     }
 
     @Nullable
@@ -117,6 +140,16 @@ public class DockerImage implements CloudImage {
         return null;
     }
 
+    /**
+     * Gets the aggregated resource usage statistics of all the instances of this image.
+     *
+     * @return the resource usage statistics
+     */
+    @Nonnull
+    public ResourceUsageStats getUsageStats() {
+        return usageStats;
+    }
+
     /**
      * Creates and register a new cloud instance.
      *
@@ -126,7 +159,15 @@ public class DockerImage implements CloudImage {
     DockerInstance createInstance() {
         DockerInstance instance = new DockerInstance(this);
 
-        lock.run(() -> instances.put(instance.getUuid(), instance));
+        lock.write().run(() -> {
+            Map<UUID, DockerInstance> newInstances = new LinkedHashMap<>(instances);
+            newInstances.put(instance.getUuid(), instance);
+            instances = Collections.unmodifiableMap(newInstances);
+
+            InstanceStatus status = instance.getStatus();
+            countedStatuses.put(instance.getUuid(), status);
+            statusCounters.incrementAndGet(status.ordinal());
+        });
 
         return instance;
     }
@@ -137,22 +178,86 @@ public class DockerImage implements CloudImage {
      * @return {@code true} if new instances can be created for this image, {@code false} otherwise.
      */
     public boolean canStartNewInstance() {
-        return lock.call(() -> {
-            int maxInstanceCount = config.getMaxInstanceCount();
-            int usedInstance = 0;
-            for (DockerInstance instance : instances.values()) {
-                InstanceStatus status = instance.getStatus();
-                if (status == InstanceStatus.ERROR) {
-                    // At least one instance is in an error state. Wait until the error state is cleared or the
-                    // instance disposed.
-                    LOG.debug(this + ": at least one instance in error state, cannot start new instance.");
-                    return false;
-                } else if (status != InstanceStatus.STOPPED) {
-                    usedInstance++;
+        if (getInstanceCount(InstanceStatus.ERROR) > 0) {
+            // At least one instance is in an error state. Wait until the error state is cleared or the
+            // instance disposed.
+            LOG.debug(this + ": at least one instance in error state, cannot start new instance.");
+            return false;
+        }
+
+        int maxInstanceCount = config.getMaxInstanceCount();
+        if (maxInstanceCount == -1) {
+            return true;
+        }
+
+        return getUsedInstanceCount() < maxInstanceCount;
+    }
+
+    /**
+     * Gets the number of registered instances that may hold resources, that is, which are not stopped.
+     *
+     * @return the number of used instances
+     */
+    public int getUsedInstanceCount() {
+        return lock.callOptimistic(() -> {
+            int count = 0;
+            for (int i = 0; i < statusCounters.length(); i++) {
+                if (i != InstanceStatus.STOPPED.ordinal()) {
+                    count += statusCounters.get(i);
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Gets the number of registered instances with the given status.
+     *
+     * @param status the instance status
+     *
+     * @return the number of registered instances with the given status
+     *
+     * @throws NullPointerException if {@code status} is {@code null}
+     */
+    public int getInstanceCount(@Nonnull InstanceStatus status) {
+        DockerCloudUtils.requireNonNull(status, "Instance status cannot be null.");
+        return statusCounters.get(status.ordinal());
+    }
+
+    /**
+     * Gets the number of registered instances for each status. Status without any instance are omitted.
+     *
+     * @return the number of registered instances by status
+     */
+    @Nonnull
+    public Map<InstanceStatus, Integer> getInstanceCountByStatus() {
+        return lock.callOptimistic(() -> {
+            Map<InstanceStatus, Integer> counts = new EnumMap<>(InstanceStatus.class);
+            for (InstanceStatus status : InstanceStatus.values()) {
+                int count = statusCounters.get(status.ordinal());
+                if (count > 0) {
+                    counts.put(status, count);
                 }
             }
+            return counts;
+        });
+    }
 
-            return maxInstanceCount == -1 || usedInstance < maxInstanceCount;
+    /**
+     * Accounts for a status transition of the given instance. Must be invoked after each transition. Concurrent
+     * notifications may be received in any order: the counters are always updated using the latest instance status.
+     * Has no effect if the instance is not registered.
+     *
+     * @param instance the instance
+     */
+    void statusChanged(@Nonnull DockerInstance instance) {
+        lock.write().run(() -> {
+            InstanceStatus status = instance.getStatus();
+            InstanceStatus previousStatus = countedStatuses.replace(instance.getUuid(), status);
+            if (previousStatus != null && previousStatus != status) {
+                statusCounters.decrementAndGet(previousStatus.ordinal());
+                statusCounters.incrementAndGet(status.ordinal());
+            }
         });
     }
 
@@ -172,6 +277,15 @@ public class DockerImage implements CloudImage {
     void clearInstanceId(@Nonnull UUID id) {
         DockerCloudUtils.requireNonNull(id, "UUID cannot be null.");
 
-        lock.run(() -> instances.remove(id));
+        lock.write().run(() -> {
+            if (!instances.containsKey(id)) {
+                return;
+            }
+            Map<UUID, DockerInstance> newInstances = new LinkedHashMap<>(instances);
+            newInstances.remove(id);
+            instances = Collections.unmodifiableMap(newInstances);
+
+            statusCounters.decrementAndGet(countedStatuses.remove(id).ordinal());
+        });
     }
 }
@@ -31,28 +31,68 @@ public class DockerImageConfig {
     private final boolean pullOnCreate;
     private final boolean rmOnExit;
     private final boolean useOfficialTCAgentImage;
+    private final boolean captureLogs;
     private final int maxInstanceCount;
     private final Integer agentPoolId;
     private final DockerRegistryCredentials registryCredentials;
+    private final ComputeResources resources;
+    private final RecyclingPolicy recyclingPolicy;
+    private final List<CacheVolume> cacheVolumes;
+    private final boolean spreadPlacement;
 
     public DockerImageConfig(@Nonnull String profileName, @Nonnull Node agentHolderSpec, boolean pullOnCreate,
                              boolean rmOnExit, boolean useOfficialTCAgentImage,
                              @Nonnull DockerRegistryCredentials registryCredentials, int maxInstanceCount,
                              @Nullable Integer agentPoolId) {
-        DockerCloudUtils.requireNonNull(profileName, "Profile name cannot be null.");
-        DockerCloudUtils.requireNonNull(registryCredentials, "Registry credentials cannot be null.");
-        DockerCloudUtils.requireNonNull(agentHolderSpec, "Agent holder specification cannot be null.");
-        if (maxInstanceCount < 1) {
+        this(newBuilder(profileName, agentHolderSpec).
+                pullOnCreate(pullOnCreate).
+                rmOnExit(rmOnExit).
+                useOfficialTCAgentImage(useOfficialTCAgentImage).
+                registryCredentials(registryCredentials).
+                maxInstanceCount(maxInstanceCount).
+                agentPoolId(agentPoolId));
+    }
+
+    private DockerImageConfig(Builder builder) {
+        if (builder.maxInstanceCount < 1) {
             throw new IllegalArgumentException("At least 1 instance must be allowed.");
         }
-        this.profileName = profileName;
-        this.agentHolderSpec = agentHolderSpec;
-        this.pullOnCreate = pullOnCreate;
-        this.rmOnExit = rmOnExit;
-        this.useOfficialTCAgentImage = useOfficialTCAgentImage;
-        this.maxInstanceCount = maxInstanceCount;
-        this.agentPoolId = agentPoolId;
-        this.registryCredentials = registryCredentials;
+        Set<String> cacheNames = new HashSet<>();
+        for (CacheVolume cacheVolume : builder.cacheVolumes) {
+            if (!cacheNames.add(cacheVolume.getName())) {
+                throw new IllegalArgumentException("Duplicated cache name: " + cacheVolume.getName());
+            }
+        }
+        this.profileName = builder.profileName;
+        this.agentHolderSpec = builder.agentHolderSpec;
+        this.pullOnCreate = builder.pullOnCreate;
+        this.rmOnExit = builder.rmOnExit;
+        this.useOfficialTCAgentImage = builder.useOfficialTCAgentImage;
+        this.maxInstanceCount = builder.maxInstanceCount;
+        this.agentPoolId = builder.agentPoolId;
+        this.registryCredentials = builder.registryCredentials;
+        this.captureLogs = builder.captureLogs;
+        this.resources = builder.resources;
+        this.recyclingPolicy = builder.recyclingPolicy;
+        this.cacheVolumes = Collections.unmodifiableList(new ArrayList<>(builder.cacheVolumes));
+        this.spreadPlacement = builder.spreadPlacement;
+    }
+
+    /**
+     * Creates a new image configuration builder. Unless specified otherwise, the built configuration allows a single
+     * instance, uses anonymous registry credentials, has no agent pool, requests no resources, never recycles its
+     * agent holders, mounts no cache volume, and has all its flags unset.
+     *
+     * @param profileName     the image profile name
+     * @param agentHolderSpec the agent holder specification
+     *
+     * @return the new builder
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    @Nonnull
+    public static Builder newBuilder(@Nonnull String profileName, @Nonnull Node agentHolderSpec) {
+        return new Builder(profileName, agentHolderSpec);
     }
 
     /**
@@ -102,6 +142,16 @@ public class DockerImageConfig {
         return useOfficialTCAgentImage;
     }
 
+    /**
+     * Capture-logs flag. When {@code true}, the logs of the agent holders will be continuously captured, and remain
+     * available once the agent holders are destroyed.
+     *
+     * @return {@code true} if the agent holders logs must be captured
+     */
+    public boolean isCaptureLogs() {
+        return captureLogs;
+    }
+
     /**
      * Gets the maximal number of instance associated with this image.
      *
@@ -121,6 +171,46 @@ public class DockerImageConfig {
         return Optional.ofNullable(agentPoolId);
     }
 
+    /**
+     * Gets the resources requested by each agent holder of this image, as declared in its specification.
+     *
+     * @return the requested resources
+     */
+    @Nonnull
+    public ComputeResources getResources() {
+        return resources;
+    }
+
+    /**
+     * Gets the policy under which the agent holders of this image must be discarded and replaced.
+     *
+     * @return the recycling policy
+     */
+    @Nonnull
+    public RecyclingPolicy getRecyclingPolicy() {
+        return recyclingPolicy;
+    }
+
+    /**
+     * Gets the dependency cache volumes to be mounted into the agent holders of this image.
+     *
+     * @return the list of cache volume definitions
+     */
+    @Nonnull
+    public List<CacheVolume> getCacheVolumes() {
+        return cacheVolumes;
+    }
+
+    /**
+     * Placement spreading flag. When {@code true}, each new agent holder is constrained to the eligible swarm node
+     * currently running the fewest agents relatively to its CPU count.
+     *
+     * @return {@code true} if the agent holders placement is spread according to the nodes load
+     */
+    public boolean isSpreadPlacement() {
+        return spreadPlacement;
+    }
+
     /**
      * Gets the credentials to retrieve the Docker image.
      *
@@ -196,4 +286,198 @@ public class DockerImageConfig {
 
         return images;
     }
+
+    /**
+     * Builder of {@link DockerImageConfig} instances.
+     */
+    public static class Builder {
+
+        private final String profileName;
+        private final Node agentHolderSpec;
+        private boolean pullOnCreate;
+        private boolean rmOnExit;
+        private boolean useOfficialTCAgentImage;
+        private boolean captureLogs;
+        private int maxInstanceCount = 1;
+        private Integer agentPoolId;
+        private DockerRegistryCredentials registryCredentials = DockerRegistryCredentials.ANONYMOUS;
+        private ComputeResources resources = ComputeResources.NONE;
+        private RecyclingPolicy recyclingPolicy = RecyclingPolicy.NONE;
+        private List<CacheVolume> cacheVolumes = Collections.emptyList();
+        private boolean spreadPlacement;
+
+        private Builder(String profileName, Node agentHolderSpec) {
+            this.profileName = DockerCloudUtils.requireNonNull(profileName, "Profile name cannot be null.");
+            this.agentHolderSpec = DockerCloudUtils.requireNonNull(agentHolderSpec,
+                    "Agent holder specification cannot be null.");
+        }
+
+        /**
+         * Sets the pull-on-create flag.
+         *
+         * @param pullOnCreate {@code true} if the image must be pulled before the container creation
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder pullOnCreate(boolean pullOnCreate) {
+            this.pullOnCreate = pullOnCreate;
+            return this;
+        }
+
+        /**
+         * Sets the rm-on-exit flag.
+         *
+         * @param rmOnExit {@code true} if the containers must be discarded as soon as they are stopped
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder rmOnExit(boolean rmOnExit) {
+            this.rmOnExit = rmOnExit;
+            return this;
+        }
+
+        /**
+         * Sets whether the official TeamCity agent image must be used.
+         *
+         * @param useOfficialTCAgentImage {@code true} if the official agent image must be used
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder useOfficialTCAgentImage(boolean useOfficialTCAgentImage) {
+            this.useOfficialTCAgentImage = useOfficialTCAgentImage;
+            return this;
+        }
+
+        /**
+         * Sets the capture-logs flag.
+         *
+         * @param captureLogs {@code true} if the agent holders logs must be captured
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder captureLogs(boolean captureLogs) {
+            this.captureLogs = captureLogs;
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of instances of the image. Must be strictly positive.
+         *
+         * @param maxInstanceCount the maximal instance count
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder maxInstanceCount(int maxInstanceCount) {
+            this.maxInstanceCount = maxInstanceCount;
+            return this;
+        }
+
+        /**
+         * Sets the agent pool of the image.
+         *
+         * @param agentPoolId the agent pool ID, {@code null} for the default pool
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder agentPoolId(@Nullable Integer agentPoolId) {
+            this.agentPoolId = agentPoolId;
+            return this;
+        }
+
+        /**
+         * Sets the credentials to retrieve the Docker image.
+         *
+         * @param registryCredentials the registry credentials
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code registryCredentials} is {@code null}
+         */
+        @Nonnull
+        public Builder registryCredentials(@Nonnull DockerRegistryCredentials registryCredentials) {
+            this.registryCredentials = DockerCloudUtils.requireNonNull(registryCredentials,
+                    "Registry credentials cannot be null.");
+            return this;
+        }
+
+        /**
+         * Sets the resources requested by each agent holder.
+         *
+         * @param resources the requested resources
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code resources} is {@code null}
+         */
+        @Nonnull
+        public Builder resources(@Nonnull ComputeResources resources) {
+            this.resources = DockerCloudUtils.requireNonNull(resources, "Resources cannot be null.");
+            return this;
+        }
+
+        /**
+         * Sets the policy under which the agent holders must be discarded and replaced.
+         *
+         * @param recyclingPolicy the recycling policy
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code recyclingPolicy} is {@code null}
+         */
+        @Nonnull
+        public Builder recyclingPolicy(@Nonnull RecyclingPolicy recyclingPolicy) {
+            this.recyclingPolicy = DockerCloudUtils.requireNonNull(recyclingPolicy,
+                    "Recycling policy cannot be null.");
+            return this;
+        }
+
+        /**
+         * Sets the dependency cache volumes to be mounted into the agent holders. Cache names must be unique.
+         *
+         * @param cacheVolumes the cache volume definitions
+         *
+         * @return this builder
+         *
+         * @throws NullPointerException if {@code cacheVolumes} is {@code null}
+         */
+        @Nonnull
+        public Builder cacheVolumes(@Nonnull List<CacheVolume> cacheVolumes) {
+            this.cacheVolumes = new ArrayList<>(DockerCloudUtils.requireNonNull(cacheVolumes,
+                    "Cache volumes cannot be null."));
+            return this;
+        }
+
+        /**
+         * Sets the placement spreading flag.
+         *
+         * @param spreadPlacement {@code true} if the agent holders placement must be spread according to the nodes
+         *                        load
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder spreadPlacement(boolean spreadPlacement) {
+            this.spreadPlacement = spreadPlacement;
+            return this;
+        }
+
+        /**
+         * Builds the image configuration.
+         *
+         * @return the new image configuration
+         *
+         * @throws IllegalArgumentException if the maximal instance count is not strictly positive, or if several
+         * cache volumes have the same name
+         */
+        @Nonnull
+        public DockerImageConfig build() {
+            return new DockerImageConfig(this);
+        }
+    }
 }
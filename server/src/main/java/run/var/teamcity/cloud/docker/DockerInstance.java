@@ -5,37 +5,68 @@ import jetbrains.buildServer.clouds.CloudInstance;
 import jetbrains.buildServer.clouds.InstanceStatus;
 import jetbrains.buildServer.serverSide.AgentDescription;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
-import run.var.teamcity.cloud.docker.util.LockHandler;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 /**
  * A Docker {@link CloudInstance}.
+ * <p>
+ * The instance state is held as an immutable record, atomically replaced on each modification. Querying the instance
+ * state never requires locking. Status changes are validated against the current status: illegal transitions, such
+ * as the ones resulting from conflicting concurrent operations, are rejected instead of silently overwritten.
+ * </p>
  */
 public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
 
+    /**
+     * Allowed source statuses for each target status.
+     */
+    private final static Map<InstanceStatus, EnumSet<InstanceStatus>> ALLOWED_TRANSITIONS;
+
+    static {
+        Map<InstanceStatus, EnumSet<InstanceStatus>> transitions = new EnumMap<>(InstanceStatus.class);
+        for (InstanceStatus status : InstanceStatus.values()) {
+            transitions.put(status, EnumSet.noneOf(InstanceStatus.class));
+        }
+        transitions.put(InstanceStatus.SCHEDULED_TO_START, EnumSet.of(InstanceStatus.UNKNOWN, InstanceStatus.STOPPED));
+        transitions.put(InstanceStatus.STARTING, EnumSet.of(InstanceStatus.SCHEDULED_TO_START));
+        transitions.put(InstanceStatus.RUNNING, EnumSet.of(InstanceStatus.STARTING, InstanceStatus.RESTARTING));
+        transitions.put(InstanceStatus.RESTARTING, EnumSet.of(InstanceStatus.RUNNING, InstanceStatus.RESTARTING,
+                InstanceStatus.STOPPED, InstanceStatus.ERROR));
+        // Any instance can be disposed, as long as it is not already being stopped.
+        transitions.put(InstanceStatus.SCHEDULED_TO_STOP, EnumSet.complementOf(EnumSet.of(InstanceStatus.STOPPING,
+                InstanceStatus.SCHEDULED_TO_STOP)));
+        transitions.put(InstanceStatus.STOPPING, EnumSet.of(InstanceStatus.SCHEDULED_TO_STOP));
+        transitions.put(InstanceStatus.STOPPED, EnumSet.of(InstanceStatus.STOPPING));
+        transitions.put(InstanceStatus.ERROR_CANNOT_STOP, EnumSet.of(InstanceStatus.SCHEDULED_TO_STOP,
+                InstanceStatus.STOPPING));
+        // Failures can always be reported.
+        transitions.put(InstanceStatus.ERROR, EnumSet.allOf(InstanceStatus.class));
+        ALLOWED_TRANSITIONS = Collections.unmodifiableMap(transitions);
+    }
+
     private final UUID uuid = UUID.randomUUID();
     private final DockerImage img;
 
-    private Instant startedTime;
+    private final AtomicReference<State> state;
 
-    // This lock ensure a thread-safe usage of all the variables below.
-    private final LockHandler lock = LockHandler.newReentrantLock();
+    private final ResourceUsageStats usageStats = new ResourceUsageStats();
 
-    private String agentHolderName = null;
-    private String resolvedImageName = null;
-    private String agentHolderId;
-    private String taskId;
-    private AgentHolderInfo agentHolderInfo;
-    private InstanceStatus status = InstanceStatus.UNKNOWN;
-    private CloudErrorInfo errorInfo;
-    private Integer agentId;
-    private UUID agentRuntimeUuid;
+    private final AtomicInteger completedBuildCount = new AtomicInteger();
+    private final AtomicBoolean recycled = new AtomicBoolean();
 
     /**
      * Creates a new Docker cloud instance.
@@ -49,7 +80,7 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
 
         // The instance is expected to be started immediately (we must do this to ensure that getStartedTime() always
         // return some meaningful value).
-        updateStartedTime();
+        this.state = new AtomicReference<>(new State(Instant.now()));
     }
 
     /**
@@ -76,7 +107,7 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      */
     @Nonnull
     Optional<String> getAgentHolderId() {
-        return Optional.ofNullable(lock.call(() -> this.agentHolderId));
+        return Optional.ofNullable(state.get().agentHolderId);
     }
 
     /**
@@ -86,19 +117,20 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      */
     @Nonnull
     public Optional<String> getTaskId() {
-        return Optional.ofNullable(taskId);
+        return Optional.ofNullable(state.get().taskId);
     }
 
     void setTaskId(@Nonnull String taskId) {
         DockerCloudUtils.requireNonNull(taskId, "Task id cannot be null.");
 
-        lock.run(() -> this.taskId = taskId);
+        state.updateAndGet(current -> current.withTaskId(taskId));
     }
 
     @Nonnull
     @Override
     public String getName() {
-        return lock.call(() -> agentHolderName == null ? "<Unknown>" : agentHolderName);
+        String agentHolderName = state.get().agentHolderName;
+        return agentHolderName == null ? "<Unknown>" : agentHolderName;
     }
 
     /**
@@ -111,7 +143,7 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      */
     @Nonnull
     public Optional<String> getAgentHolderName() {
-        return Optional.ofNullable(lock.call(() -> agentHolderName));
+        return Optional.ofNullable(state.get().agentHolderName);
     }
 
     /**
@@ -124,7 +156,7 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      */
     @Nonnull
     public Optional<String> getResolvedImageName() {
-        return Optional.ofNullable(lock.call(() -> resolvedImageName));
+        return Optional.ofNullable(state.get().resolvedImageName);
     }
 
     /**
@@ -138,14 +170,81 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
     public void bindWithAgentHolder(@Nonnull NewAgentHolderInfo agentHolderInfo) {
         DockerCloudUtils.requireNonNull(agentHolderInfo, "Agent holder info cannot be null.");
 
-        lock.run(() -> {
-            if (this.agentHolderId != null) {
-                assert agentHolderName != null && resolvedImageName != null;
+        state.updateAndGet(current -> {
+            if (current.agentHolderId != null) {
+                assert current.agentHolderName != null && current.resolvedImageName != null;
                 throw new IllegalStateException("Docker instance already bound with agent holder.");
             }
-            this.agentHolderId = agentHolderInfo.getId();
-            this.agentHolderName = agentHolderInfo.getName();
-            this.resolvedImageName = agentHolderInfo.getResolvedImage();
+            return current.withAgentHolder(agentHolderInfo.getId(), agentHolderInfo.getName(),
+                    agentHolderInfo.getResolvedImage());
+        });
+    }
+
+    /**
+     * Gets the endpoint on which this instance is placed. Only available once the instance has been placed.
+     *
+     * @return the instance endpoint
+     *
+     * @see #placeOnEndpoint(DockerEndpoint)
+     */
+    @Nonnull
+    public Optional<DockerEndpoint> getEndpoint() {
+        return Optional.ofNullable(state.get().endpoint);
+    }
+
+    /**
+     * Gets the resource usage statistics of this instance agent holders.
+     *
+     * @return the resource usage statistics
+     */
+    @Nonnull
+    public ResourceUsageStats getUsageStats() {
+        return usageStats;
+    }
+
+    /**
+     * Gets the number of builds completed by the agents of this instance. Since an instance is bound to a single
+     * agent holder, this count covers the whole agent holder lifetime, including when it is reused.
+     *
+     * @return the number of completed builds
+     */
+    public int getCompletedBuildCount() {
+        return completedBuildCount.get();
+    }
+
+    /**
+     * Notifies that a build was completed by the agent of this instance.
+     */
+    void notifyBuildCompleted() {
+        completedBuildCount.incrementAndGet();
+    }
+
+    /**
+     * Marks this instance as recycled. An instance can only be marked once.
+     *
+     * @return {@code true} if this instance was not already marked as recycled
+     */
+    boolean markRecycled() {
+        return recycled.compareAndSet(false, true);
+    }
+
+    /**
+     * Places this instance on the given endpoint. An instance cannot be moved to another endpoint once placed.
+     *
+     * @param endpoint the instance endpoint
+     *
+     * @throws NullPointerException if {@code endpoint} is {@code null}
+     * @throws IllegalStateException if this instance is already placed on another endpoint
+     */
+    void placeOnEndpoint(@Nonnull DockerEndpoint endpoint) {
+        DockerCloudUtils.requireNonNull(endpoint, "Endpoint cannot be null.");
+
+        state.updateAndGet(current -> {
+            if (current.endpoint != null && current.endpoint != endpoint) {
+                throw new IllegalStateException("Docker instance already placed on endpoint " + current.endpoint +
+                        ".");
+            }
+            return current.withEndpoint(endpoint);
         });
     }
 
@@ -164,7 +263,16 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
     @Nonnull
     @Override
     public Date getStartedTime() {
-        return Date.from(startedTime);
+        return Date.from(state.get().startedTime);
+    }
+
+    /**
+     * Gets the {@link System#nanoTime()} value at which the last status transition of this instance occurred.
+     *
+     * @return the last status transition time
+     */
+    long getLastTransitionNanos() {
+        return state.get().transitionNanos;
     }
 
     @Nullable
@@ -179,31 +287,50 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
     @Nonnull
     @Override
     public InstanceStatus getStatus() {
-        return status;
+        return state.get().status;
     }
 
     /**
-     * Set this instance status.
+     * Set this instance status. The transition must be valid with respect to the current instance status.
      *
      * @param status the instance status
      *
      * @throws NullPointerException if {@code status} is {@code null}
+     * @throws IllegalStateException if the current instance status cannot transition to the requested status
      */
     void setStatus(@Nonnull InstanceStatus status) {
         DockerCloudUtils.requireNonNull(status, "Instance status cannot be null.");
 
-        lock.run(() -> this.status = status);
+        if (!trySetStatus(status)) {
+            throw new IllegalStateException("Instance " + uuid + " cannot transition from status " + getStatus() +
+                    " to " + status + ".");
+        }
+    }
+
+    /**
+     * Set this instance status if the transition is valid with respect to the current instance status.
+     *
+     * @param status the instance status
+     *
+     * @return {@code true} if the status was updated, {@code false} if the transition is not valid
+     *
+     * @throws NullPointerException if {@code status} is {@code null}
+     */
+    boolean trySetStatus(@Nonnull InstanceStatus status) {
+        DockerCloudUtils.requireNonNull(status, "Instance status cannot be null.");
 
+        return transition(status, current -> current.withStatus(status));
     }
 
     final void updateStartedTime() {
-        lock.run(() -> startedTime = Instant.now());
+        Instant startedTime = Instant.now();
+        state.updateAndGet(current -> current.withStartedTime(startedTime));
     }
 
     @Nullable
     @Override
     public CloudErrorInfo getErrorInfo() {
-        return errorInfo;
+        return state.get().errorInfo;
     }
 
     /**
@@ -213,7 +340,7 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      */
     @Nonnull
     public Optional<AgentHolderInfo> getAgentHolderInfo() {
-        return Optional.ofNullable(lock.call(() -> agentHolderInfo));
+        return Optional.ofNullable(state.get().agentHolderInfo);
     }
 
     /**
@@ -225,13 +352,9 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      * @return {@code true} if {@code agentId} matches the currently registered agent, {@code false} otherwise
      */
     public boolean registerOrCompareAgentId(int agentId) {
-        return lock.call(() -> {
-            if (this.agentId != null) {
-                 return this.agentId == agentId;
-            }
-            this.agentId = agentId;
-            return true;
-        });
+        State newState = state.updateAndGet(current -> current.agentId != null ? current :
+                current.withAgentId(agentId));
+        return newState.agentId == agentId;
     }
 
     /**
@@ -241,7 +364,7 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      */
     @Nonnull
     public Optional<UUID> getAgentRuntimeUuid() {
-        return Optional.ofNullable(lock.call(() -> agentRuntimeUuid));
+        return Optional.ofNullable(state.get().agentRuntimeUuid);
     }
 
     /**
@@ -254,11 +377,8 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      */
     public void registerAgentRuntimeUuid(@Nonnull UUID agentRuntimeUuid) {
         DockerCloudUtils.requireNonNull(agentRuntimeUuid, "Agent runtime UUID cannot be null.");
-        lock.run(() -> {
-           if (this.agentRuntimeUuid == null) {
-               this.agentRuntimeUuid = agentRuntimeUuid;
-           }
-        });
+        state.updateAndGet(current -> current.agentRuntimeUuid != null ? current :
+                current.withAgentRuntimeUuid(agentRuntimeUuid));
     }
 
     /**
@@ -271,14 +391,8 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      */
     public void unregisterAgentRuntimeUUid(@Nonnull UUID agentRuntimeUuid) {
         DockerCloudUtils.requireNonNull(agentRuntimeUuid, "Agent runtime UUID cannot be null.");
-        lock.run(() -> {
-           if (this.agentRuntimeUuid == null) {
-               return;
-           }
-           if (agentRuntimeUuid.equals(this.agentRuntimeUuid)) {
-               this.agentRuntimeUuid = null;
-           }
-        });
+        state.updateAndGet(current -> agentRuntimeUuid.equals(current.agentRuntimeUuid) ?
+                current.withAgentRuntimeUuid(null) : current);
     }
 
     /**
@@ -287,23 +401,18 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
      * @param agentHolderInfo the container meta-data or {@code null} if not available
      */
     void setAgentHolderInfo(@Nullable AgentHolderInfo agentHolderInfo) {
-        lock.run(() -> this.agentHolderInfo = agentHolderInfo);
+        state.updateAndGet(current -> current.withAgentHolderInfo(agentHolderInfo));
     }
 
     @Override
     public void notifyFailure(@Nonnull String msg, @Nullable Throwable throwable) {
         DockerCloudUtils.requireNonNull(msg, "Message cannot be null.");
 
-        lock.run(() -> {
-            if (throwable != null) {
-                this.errorInfo = new CloudErrorInfo(msg, msg, throwable);
-            } else {
-                this.errorInfo = new CloudErrorInfo(msg, msg);
-            }
-
-            setStatus(InstanceStatus.ERROR);
-        });
+        CloudErrorInfo errorInfo = throwable != null ? new CloudErrorInfo(msg, msg, throwable) :
+                new CloudErrorInfo(msg, msg);
 
+        boolean updated = transition(InstanceStatus.ERROR, current -> current.withError(errorInfo));
+        assert updated : "Error status must always be reachable.";
     }
 
     @Override
@@ -315,4 +424,110 @@ public class DockerInstance implements CloudInstance, DockerCloudErrorHandler {
     public String toString() {
         return getName();
     }
+
+    private boolean transition(InstanceStatus status, UnaryOperator<State> update) {
+        EnumSet<InstanceStatus> allowedSources = ALLOWED_TRANSITIONS.get(status);
+        State current;
+        do {
+            current = state.get();
+            if (!allowedSources.contains(current.status)) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, update.apply(current).withTransitionNanos(System.nanoTime())));
+
+        img.statusChanged(this);
+        return true;
+    }
+
+    /**
+     * Immutable instance state.
+     */
+    private static final class State {
+        final InstanceStatus status;
+        final CloudErrorInfo errorInfo;
+        final Instant startedTime;
+        final String agentHolderId;
+        final String agentHolderName;
+        final String resolvedImageName;
+        final String taskId;
+        final AgentHolderInfo agentHolderInfo;
+        final Integer agentId;
+        final UUID agentRuntimeUuid;
+        // System.nanoTime() value of the last status transition.
+        final long transitionNanos;
+        final DockerEndpoint endpoint;
+
+        State(Instant startedTime) {
+            this(InstanceStatus.UNKNOWN, null, startedTime, null, null, null, null, null, null, null,
+                    System.nanoTime(), null);
+        }
+
+        private State(InstanceStatus status, CloudErrorInfo errorInfo, Instant startedTime, String agentHolderId,
+                      String agentHolderName, String resolvedImageName, String taskId,
+                      AgentHolderInfo agentHolderInfo, Integer agentId, UUID agentRuntimeUuid,
+                      long transitionNanos, DockerEndpoint endpoint) {
+            this.status = status;
+            this.errorInfo = errorInfo;
+            this.startedTime = startedTime;
+            this.agentHolderId = agentHolderId;
+            this.agentHolderName = agentHolderName;
+            this.resolvedImageName = resolvedImageName;
+            this.taskId = taskId;
+            this.agentHolderInfo = agentHolderInfo;
+            this.agentId = agentId;
+            this.agentRuntimeUuid = agentRuntimeUuid;
+            this.transitionNanos = transitionNanos;
+            this.endpoint = endpoint;
+        }
+
+        State withStatus(InstanceStatus status) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withError(CloudErrorInfo errorInfo) {
+            return new State(InstanceStatus.ERROR, errorInfo, startedTime, agentHolderId, agentHolderName,
+                    resolvedImageName, taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withStartedTime(Instant startedTime) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withAgentHolder(String agentHolderId, String agentHolderName, String resolvedImageName) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withTaskId(String taskId) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withAgentHolderInfo(AgentHolderInfo agentHolderInfo) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withAgentId(Integer agentId) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withAgentRuntimeUuid(UUID agentRuntimeUuid) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withTransitionNanos(long transitionNanos) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+
+        State withEndpoint(DockerEndpoint endpoint) {
+            return new State(status, errorInfo, startedTime, agentHolderId, agentHolderName, resolvedImageName,
+                    taskId, agentHolderInfo, agentId, agentRuntimeUuid, transitionNanos, endpoint);
+        }
+    }
 }
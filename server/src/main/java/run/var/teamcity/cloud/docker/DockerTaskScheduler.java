@@ -61,6 +61,7 @@ class DockerTaskScheduler {
     private final LinkedList<DockerInstanceTask> instancesTask = new LinkedList<>();
     private boolean clientTaskSubmitted = false;
     private boolean shutdownRequested = false;
+    private Runnable terminationHook = () -> {};
 
     /**
      * Executor service for externally submitted tasks.
@@ -189,7 +190,13 @@ class DockerTaskScheduler {
 
             @Override
             protected void terminated() {
-                mngExecutor.shutdown();
+                try {
+                    lock.call(() -> terminationHook).run();
+                } catch (Exception e) {
+                    LOG.error("Termination hook failed.", e);
+                } finally {
+                    mngExecutor.shutdown();
+                }
             }
         };
     }
@@ -276,12 +283,17 @@ class DockerTaskScheduler {
                     UUID instanceUuid = instance.getUuid();
                     // Only submit one task for a given instance at a time.
                     if (!submittedInstancesUUID.contains(instanceUuid)) {
-                        LOG.debug("Submitting instance task " + instanceTask + " for execution.");
                         InstanceStatus scheduledStatus = instanceTask.getScheduledStatus();
-                        if (scheduledStatus != null) {
-                            instance.setStatus(scheduledStatus);
+                        if (scheduledStatus != null && !instance.trySetStatus(scheduledStatus)) {
+                            // Conflicting request (such as a duplicated start request).
+                            LOG.warn("Discarding task " + instanceTask + ": instance " + instanceUuid + " cannot " +
+                                    "transition from status " + instance.getStatus() + " to " + scheduledStatus + ".");
+                            itr.remove();
+                            continue;
                         }
 
+                        LOG.debug("Submitting instance task " + instanceTask + " for execution.");
+
                         // Mark the instance tasks as being submitted.
                         submittedInstancesUUID.add(instanceUuid);
                         itr.remove();
@@ -342,7 +354,21 @@ class DockerTaskScheduler {
      * scheduling will be accepted.
      */
     void shutdown() {
+        shutdown(() -> {});
+    }
+
+    /**
+     * Shutdown the scheduler. All already scheduled tasks will eventually submitted for execution, but no new
+     * scheduling will be accepted. The given hook will be invoked once all tasks have been processed.
+     *
+     * @param terminationHook the hook to be invoked upon termination
+     *
+     * @throws NullPointerException if {@code terminationHook} is {@code null}
+     */
+    void shutdown(@Nonnull Runnable terminationHook) {
+        DockerCloudUtils.requireNonNull(terminationHook, "Termination hook cannot be null.");
         lock.run(() -> {
+            this.terminationHook = terminationHook;
             shutdownRequested = true;
             shutdownCheck();
         });
@@ -0,0 +1,105 @@
+package run.var.teamcity.cloud.docker;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the endpoint on which a new instance must be started.
+ * <p>
+ * Each available endpoint is given a share of the pool capacity, computed as the average of its share of the total
+ * CPU count and of the total memory, as reported by the daemons. The load of an endpoint is the number of its active
+ * instances (including the one to be placed) relative to its capacity share, and the least loaded endpoint is
+ * selected. Endpoints on which the image was already started are preferred as long as their load does not exceed the
+ * lowest load by more than {@link #WARM_IMAGE_LOAD_TOLERANCE}: the image is likely to be already pulled there, and
+ * the agent to start faster.
+ * </p>
+ */
+final class EndpointPlacement {
+
+    /**
+     * Maximal ratio between the load of a warm endpoint and the lowest load for the warm endpoint to be preferred.
+     */
+    static final double WARM_IMAGE_LOAD_TOLERANCE = 1.5;
+
+    private EndpointPlacement() {
+        // Not instantiable.
+    }
+
+    /**
+     * Selects the endpoint for a new instance of the given image.
+     *
+     * @param endpoints    the candidate endpoints, in order of preference for equally loaded endpoints
+     * @param activeCounts the number of active instances per endpoint, missing endpoints having none
+     * @param image        the image to be started
+     *
+     * @return the selected endpoint, or {@code null} if no endpoint is available
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    @Nullable
+    static DockerEndpoint select(@Nonnull List<DockerEndpoint> endpoints,
+                                 @Nonnull Map<DockerEndpoint, Integer> activeCounts, @Nonnull DockerImage image) {
+        DockerCloudUtils.requireNonNull(endpoints, "Endpoints list cannot be null.");
+        DockerCloudUtils.requireNonNull(activeCounts, "Active counts cannot be null.");
+        DockerCloudUtils.requireNonNull(image, "Image cannot be null.");
+
+        List<DockerEndpoint> candidates = new ArrayList<>(endpoints.size());
+        long totalCpus = 0;
+        long totalMemory = 0;
+        for (DockerEndpoint endpoint : endpoints) {
+            if (!endpoint.isAvailable()) {
+                continue;
+            }
+            DaemonResources resources = endpoint.getResources().orElse(null);
+            if (resources == null) {
+                continue;
+            }
+            candidates.add(endpoint);
+            totalCpus += resources.getCpuCount();
+            totalMemory += resources.getMemoryBytes();
+        }
+
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        DockerEndpoint best = null;
+        double bestLoad = Double.MAX_VALUE;
+        double[] loads = new double[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            DockerEndpoint endpoint = candidates.get(i);
+            DaemonResources resources = endpoint.getResources().get();
+            double cpuShare = totalCpus > 0 ? (double) resources.getCpuCount() / totalCpus :
+                    1.0 / candidates.size();
+            double memoryShare = totalMemory > 0 ? (double) resources.getMemoryBytes() / totalMemory :
+                    1.0 / candidates.size();
+            double share = (cpuShare + memoryShare) / 2;
+            int activeCount = activeCounts.getOrDefault(endpoint, 0);
+            loads[i] = share > 0 ? (activeCount + 1) / share : Double.MAX_VALUE;
+            if (loads[i] < bestLoad) {
+                best = endpoint;
+                bestLoad = loads[i];
+            }
+        }
+
+        DockerEndpoint bestWarm = null;
+        double bestWarmLoad = Double.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            DockerEndpoint endpoint = candidates.get(i);
+            if (endpoint.isWarm(image) && loads[i] < bestWarmLoad) {
+                bestWarm = endpoint;
+                bestWarmLoad = loads[i];
+            }
+        }
+
+        if (bestWarm != null && bestWarmLoad <= bestLoad * WARM_IMAGE_LOAD_TOLERANCE) {
+            return bestWarm;
+        }
+        return best;
+    }
+}
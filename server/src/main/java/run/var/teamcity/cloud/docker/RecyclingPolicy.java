@@ -0,0 +1,124 @@
+package run.var.teamcity.cloud.docker;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * Conditions under which the agent holder of a cloud instance must be discarded and replaced by a fresh one. Each
+ * limit is optional, a zero limit standing for no limit.
+ * <p>
+ * Instances of this class are immutable.
+ * </p>
+ */
+public class RecyclingPolicy {
+
+    /**
+     * Policy never requiring any recycling.
+     */
+    public static final RecyclingPolicy NONE = new RecyclingPolicy(0, Duration.ZERO, 0);
+
+    private final int maxBuildCount;
+    private final Duration maxAge;
+    private final long maxMemoryBytes;
+
+    /**
+     * Creates a new recycling policy.
+     *
+     * @param maxBuildCount  the number of completed builds after which the agent must be recycled
+     * @param maxAge         the time since the agent start after which the agent must be recycled
+     * @param maxMemoryBytes the memory usage above which the agent must be recycled, in bytes
+     *
+     * @throws NullPointerException if {@code maxAge} is {@code null}
+     * @throws IllegalArgumentException if any limit is negative
+     */
+    public RecyclingPolicy(int maxBuildCount, @Nonnull Duration maxAge, long maxMemoryBytes) {
+        DockerCloudUtils.requireNonNull(maxAge, "Maximum age cannot be null.");
+        if (maxBuildCount < 0) {
+            throw new IllegalArgumentException("Maximum build count cannot be negative: " + maxBuildCount);
+        }
+        if (maxAge.isNegative()) {
+            throw new IllegalArgumentException("Maximum age cannot be negative: " + maxAge);
+        }
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException("Maximum memory usage cannot be negative: " + maxMemoryBytes);
+        }
+        this.maxBuildCount = maxBuildCount;
+        this.maxAge = maxAge;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Gets the number of completed builds after which the agent must be recycled.
+     *
+     * @return the maximal build count, or {@code 0} if unlimited
+     */
+    public int getMaxBuildCount() {
+        return maxBuildCount;
+    }
+
+    /**
+     * Gets the time since the agent start after which the agent must be recycled.
+     *
+     * @return the maximal age, or {@link Duration#ZERO} if unlimited
+     */
+    @Nonnull
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Gets the memory usage above which the agent must be recycled.
+     *
+     * @return the maximal memory usage in bytes, or {@code 0} if unlimited
+     */
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * Checks if this policy never requires any recycling.
+     *
+     * @return {@code true} if no limit is set
+     */
+    public boolean isNone() {
+        return maxBuildCount == 0 && maxAge.isZero() && maxMemoryBytes == 0;
+    }
+
+    /**
+     * Checks if an agent must be recycled.
+     *
+     * @param completedBuildCount the number of builds completed by the agent
+     * @param age                 the time elapsed since the agent start
+     * @param memoryUsageBytes    the last known memory usage of the agent holder, if any
+     *
+     * @return a description of the exceeded limit, if any
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    @Nonnull
+    public Optional<String> checkLimits(int completedBuildCount, @Nonnull Duration age,
+                                        @Nonnull OptionalDouble memoryUsageBytes) {
+        DockerCloudUtils.requireNonNull(age, "Age cannot be null.");
+        DockerCloudUtils.requireNonNull(memoryUsageBytes, "Memory usage cannot be null.");
+        if (maxBuildCount != 0 && completedBuildCount >= maxBuildCount) {
+            return Optional.of(completedBuildCount + " builds completed");
+        }
+        if (!maxAge.isZero() && age.compareTo(maxAge) >= 0) {
+            return Optional.of("running for " + age.toMinutes() + " minutes");
+        }
+        if (maxMemoryBytes != 0 && memoryUsageBytes.isPresent() && memoryUsageBytes.getAsDouble() > maxMemoryBytes) {
+            return Optional.of("using " + ResourceUsageStats.Metric.MEMORY.format(memoryUsageBytes.getAsDouble()));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "max builds: " + maxBuildCount + ", max age: " + maxAge + ", max memory: " + maxMemoryBytes +
+                " bytes";
+    }
+}
@@ -0,0 +1,191 @@
+package run.var.teamcity.cloud.docker;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.clouds.InstanceStatus;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.NamedThreadFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic collection of the resource usage of running agent holders.
+ * <p>
+ * Samples are collected from dedicated threads, independently of the cloud client task scheduler: a statistics request
+ * may take a few seconds to complete and must not delay the instances management. The statistics requests of a
+ * sampling round are issued concurrently, with a bounded parallelism, on the sampling client facade of each endpoint
+ * such that they do not compete for the connections of the endpoint facade. Each sample is recorded into the
+ * {@link ResourceUsageStats} of both the instance and its image. I/O rates and the CPU throttling ratio are computed
+ * from the counter deltas between two consecutive samples of the same instance.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+class ResourceUsageSampler {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(ResourceUsageSampler.class);
+
+    /**
+     * Maximum number of statistics requests performed concurrently.
+     */
+    static final int FETCH_PARALLELISM = 4;
+
+    private final Collection<DockerImage> images;
+    private final DockerCloudSupport cloudSupport;
+    private final Duration samplingRate;
+    private final ScheduledExecutorService executor;
+    private final ExecutorService fetchExecutor;
+
+    // Only accessed from the sampling thread.
+    private final Map<UUID, ContainerStats> previousStats = new HashMap<>();
+
+    /**
+     * Creates a new sampler.
+     *
+     * @param images             the images whose instances must be sampled
+     * @param cloudSupport       the cloud support to be used to create the sampling client facades
+     * @param samplingRate       the delay between two sampling rounds
+     * @param usingDaemonThreads {@code true} if the sampling threads must be daemon threads
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code samplingRate} is not strictly positive
+     */
+    ResourceUsageSampler(@Nonnull Collection<DockerImage> images, @Nonnull DockerCloudSupport cloudSupport,
+                         @Nonnull Duration samplingRate, boolean usingDaemonThreads) {
+        DockerCloudUtils.requireNonNull(images, "Images collection cannot be null.");
+        DockerCloudUtils.requireNonNull(cloudSupport, "Cloud support cannot be null.");
+        DockerCloudUtils.requireNonNull(samplingRate, "Sampling rate cannot be null.");
+        if (samplingRate.isNegative() || samplingRate.isZero()) {
+            throw new IllegalArgumentException("Sampling rate must be strictly positive.");
+        }
+        this.images = images;
+        this.cloudSupport = cloudSupport;
+        this.samplingRate = samplingRate;
+        executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ResourceUsageSampler",
+                usingDaemonThreads));
+        fetchExecutor = Executors.newFixedThreadPool(FETCH_PARALLELISM,
+                new NamedThreadFactory("ResourceUsageSampler-fetch", usingDaemonThreads));
+    }
+
+    /**
+     * Starts the periodic sampling.
+     */
+    void start() {
+        long rateNanos = samplingRate.toNanos();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                sample();
+            } catch (Exception e) {
+                LOG.error("Resource usage sampling failed.", e);
+            }
+        }, rateNanos, rateNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Performs a single sampling round. Must not be invoked concurrently.
+     */
+    void sample() {
+        List<Fetch> fetches = new ArrayList<>();
+        for (DockerImage image : images) {
+            for (DockerInstance instance : image.getInstances()) {
+                if (instance.getStatus() != InstanceStatus.RUNNING) {
+                    continue;
+                }
+                Optional<String> agentHolderId = instance.getAgentHolderId();
+                Optional<DockerEndpoint> endpoint = instance.getEndpoint();
+                if (!agentHolderId.isPresent() || !endpoint.isPresent() || !endpoint.get().isAvailable()) {
+                    continue;
+                }
+                fetches.add(new Fetch(image, instance, fetchExecutor.submit(() ->
+                        endpoint.get().getSamplingFacade(cloudSupport).getAgentHolderStats(agentHolderId.get()))));
+            }
+        }
+
+        Set<UUID> sampledInstances = new HashSet<>();
+        try {
+            for (Fetch fetch : fetches) {
+                Optional<ContainerStats> stats;
+                try {
+                    stats = fetch.future.get();
+                } catch (ExecutionException e) {
+                    LOG.debug("Failed to fetch statistics for instance " + fetch.instance.getUuid() + ".",
+                            e.getCause());
+                    continue;
+                }
+                if (!stats.isPresent()) {
+                    continue;
+                }
+
+                UUID instanceUuid = fetch.instance.getUuid();
+                sampledInstances.add(instanceUuid);
+                ContainerStats previous = previousStats.put(instanceUuid, stats.get());
+
+                record(fetch.instance.getUsageStats(), stats.get(), previous);
+                record(fetch.image.getUsageStats(), stats.get(), previous);
+            }
+        } catch (InterruptedException e) {
+            fetches.forEach(fetch -> fetch.future.cancel(true));
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // Forget about the instances that are not running anymore.
+        previousStats.keySet().retainAll(sampledInstances);
+    }
+
+    private void record(ResourceUsageStats usageStats, ContainerStats stats, ContainerStats previous) {
+        usageStats.record(ResourceUsageStats.Metric.CPU, stats.getCpuUsage());
+        usageStats.record(ResourceUsageStats.Metric.MEMORY, stats.getMemoryUsageBytes());
+        if (previous == null) {
+            return;
+        }
+        double elapsedSec = (stats.getNanoTime() - previous.getNanoTime()) / 1e9;
+        if (elapsedSec > 0) {
+            // Negative rates, following a counter reset, are ignored.
+            usageStats.record(ResourceUsageStats.Metric.BLOCK_IO,
+                    (stats.getBlockIoBytes() - previous.getBlockIoBytes()) / elapsedSec);
+            usageStats.record(ResourceUsageStats.Metric.NETWORK_IO,
+                    (stats.getNetworkBytes() - previous.getNetworkBytes()) / elapsedSec);
+        }
+        long periods = stats.getPeriods() - previous.getPeriods();
+        if (periods > 0) {
+            usageStats.record(ResourceUsageStats.Metric.CPU_THROTTLING,
+                    (double) (stats.getThrottledPeriods() - previous.getThrottledPeriods()) / periods);
+        }
+    }
+
+    /**
+     * Stops the sampling. An ongoing sampling round will be interrupted.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+        fetchExecutor.shutdownNow();
+    }
+
+    private static class Fetch {
+        final DockerImage image;
+        final DockerInstance instance;
+        final Future<Optional<ContainerStats>> future;
+
+        Fetch(DockerImage image, DockerInstance instance, Future<Optional<ContainerStats>> future) {
+            this.image = image;
+            this.instance = instance;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package run.var.teamcity.cloud.docker;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.OptionalDouble;
+
+/**
+ * Aggregated resource usage of agent holders, for a single cloud instance or for a whole image.
+ * <p>
+ * The mean and the peak of each {@link Metric} are computed exactly over all recorded values. Percentiles are computed
+ * from a bounded history: values are retained in a fixed-size array per metric, and when the array is full, every
+ * other retained value is dropped while only one out of twice as many new values will be retained from then on. The
+ * history therefore always covers the whole recording period with a uniformly decreasing resolution, in a constant
+ * amount of memory.
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ */
+public class ResourceUsageStats {
+
+    /**
+     * Default number of values retained per metric for computing percentiles.
+     */
+    public static final int DEFAULT_HISTORY_CAPACITY = 128;
+
+    /**
+     * Resource usage metrics.
+     */
+    public enum Metric {
+        /**
+         * CPU usage, as a number of fully used CPUs.
+         */
+        CPU("CPUs"),
+        /**
+         * Ratio of the CPU enforcement periods during which the container was throttled, between 0 and 1.
+         */
+        CPU_THROTTLING("throttled"),
+        /**
+         * Memory usage excluding the page cache, in bytes.
+         */
+        MEMORY("bytes"),
+        /**
+         * Block device read and write rate, in bytes per second.
+         */
+        BLOCK_IO("bytes/s"),
+        /**
+         * Network receive and send rate, in bytes per second.
+         */
+        NETWORK_IO("bytes/s");
+
+        private final String unit;
+
+        Metric(String unit) {
+            this.unit = unit;
+        }
+
+        /**
+         * Gets the metric unit.
+         *
+         * @return the metric unit
+         */
+        @Nonnull
+        public String getUnit() {
+            return unit;
+        }
+
+        /**
+         * Formats a value of this metric for display.
+         *
+         * @param value the metric value
+         *
+         * @return the formatted value
+         */
+        @Nonnull
+        public String format(double value) {
+            switch (this) {
+                case CPU:
+                    return String.format(Locale.ENGLISH, "%.2f", value);
+                case CPU_THROTTLING:
+                    return String.format(Locale.ENGLISH, "%.1f%%", value * 100);
+                case MEMORY:
+                    return String.format(Locale.ENGLISH, "%.1f MiB", value / (1024 * 1024));
+                default:
+                    return String.format(Locale.ENGLISH, "%.1f KiB/s", value / 1024);
+            }
+        }
+    }
+
+    private final static int METRIC_COUNT = Metric.values().length;
+
+    private final LockHandler lock = LockHandler.newReentrantLock();
+
+    private final int historyCapacity;
+
+    // All arrays are indexed by metric ordinal.
+    private final float[][] history;
+    private final int[] historySizes = new int[METRIC_COUNT];
+    private final int[] strides = new int[METRIC_COUNT];
+    private final long[] counts = new long[METRIC_COUNT];
+    private final double[] sums = new double[METRIC_COUNT];
+    private final double[] peaks = new double[METRIC_COUNT];
+    private final double[] latest = new double[METRIC_COUNT];
+
+    /**
+     * Creates a new statistics instance with the {@link #DEFAULT_HISTORY_CAPACITY default history capacity}.
+     */
+    public ResourceUsageStats() {
+        this(DEFAULT_HISTORY_CAPACITY);
+    }
+
+    /**
+     * Creates a new statistics instance.
+     *
+     * @param historyCapacity the number of values retained per metric for computing percentiles
+     *
+     * @throws IllegalArgumentException if {@code historyCapacity} is smaller than 2 or is not even
+     */
+    public ResourceUsageStats(int historyCapacity) {
+        if (historyCapacity < 2 || historyCapacity % 2 != 0) {
+            throw new IllegalArgumentException("History capacity must be even and of at least 2: " + historyCapacity);
+        }
+        this.historyCapacity = historyCapacity;
+        history = new float[METRIC_COUNT][historyCapacity];
+        Arrays.fill(strides, 1);
+    }
+
+    /**
+     * Records a metric value. Non-finite or negative values are ignored.
+     *
+     * @param metric the metric
+     * @param value  the metric value
+     *
+     * @throws NullPointerException if {@code metric} is {@code null}
+     */
+    public void record(@Nonnull Metric metric, double value) {
+        DockerCloudUtils.requireNonNull(metric, "Metric cannot be null.");
+        if (!Double.isFinite(value) || value < 0) {
+            return;
+        }
+        int i = metric.ordinal();
+        lock.run(() -> {
+            if (counts[i] % strides[i] == 0) {
+                if (historySizes[i] == historyCapacity) {
+                    // Halve the resolution of the history.
+                    float[] values = history[i];
+                    for (int j = 0; j < historyCapacity / 2; j++) {
+                        values[j] = values[2 * j];
+                    }
+                    historySizes[i] = historyCapacity / 2;
+                    strides[i] *= 2;
+                }
+                // The new value may be discarded with the halved resolution.
+                if (counts[i] % strides[i] == 0) {
+                    history[i][historySizes[i]++] = (float) value;
+                }
+            }
+            counts[i]++;
+            sums[i] += value;
+            peaks[i] = Math.max(peaks[i], value);
+            latest[i] = value;
+        });
+    }
+
+    /**
+     * Gets the most recently recorded value of the given metric.
+     *
+     * @param metric the metric
+     *
+     * @return the latest value, if any
+     *
+     * @throws NullPointerException if {@code metric} is {@code null}
+     */
+    @Nonnull
+    public OptionalDouble getLatest(@Nonnull Metric metric) {
+        DockerCloudUtils.requireNonNull(metric, "Metric cannot be null.");
+        int i = metric.ordinal();
+        return lock.call(() -> counts[i] == 0 ? OptionalDouble.empty() : OptionalDouble.of(latest[i]));
+    }
+
+    /**
+     * Gets the statistics summary for the given metric.
+     *
+     * @param metric the metric
+     *
+     * @return the statistics summary
+     *
+     * @throws NullPointerException if {@code metric} is {@code null}
+     */
+    @Nonnull
+    public Summary getSummary(@Nonnull Metric metric) {
+        DockerCloudUtils.requireNonNull(metric, "Metric cannot be null.");
+        int i = metric.ordinal();
+        float[] values = lock.call(() -> {
+            if (counts[i] == 0) {
+                return null;
+            }
+            return Arrays.copyOf(history[i], historySizes[i]);
+        });
+        if (values == null) {
+            return Summary.EMPTY;
+        }
+        // Sorting is performed outside of the lock, on the copied history.
+        Arrays.sort(values);
+        double p95 = values[Math.max(0, (int) Math.ceil(values.length * 0.95) - 1)];
+        return lock.call(() -> new Summary(counts[i], sums[i] / counts[i], p95, peaks[i]));
+    }
+
+    /**
+     * Statistics summary of a metric.
+     */
+    public static class Summary {
+
+        /**
+         * Summary without any recorded value.
+         */
+        public static final Summary EMPTY = new Summary(0, 0, 0, 0);
+
+        private final long count;
+        private final double mean;
+        private final double p95;
+        private final double peak;
+
+        Summary(long count, double mean, double p95, double peak) {
+            this.count = count;
+            this.mean = mean;
+            this.p95 = p95;
+            this.peak = peak;
+        }
+
+        /**
+         * Gets the number of recorded values.
+         *
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the mean of the recorded values.
+         *
+         * @return the mean value
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * Gets the approximated 95th percentile of the recorded values.
+         *
+         * @return the 95th percentile
+         */
+        public double getP95() {
+            return p95;
+        }
+
+        /**
+         * Gets the highest recorded value.
+         *
+         * @return the peak value
+         */
+        public double getPeak() {
+            return peak;
+        }
+
+        @Override
+        public String toString() {
+            return "mean: " + mean + ", p95: " + p95 + ", peak: " + peak + " (" + count + " samples)";
+        }
+    }
+}
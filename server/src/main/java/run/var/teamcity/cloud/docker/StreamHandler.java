@@ -1,5 +1,6 @@
 package run.var.teamcity.cloud.docker;
 
+import run.var.teamcity.cloud.docker.client.StdioFrameReader;
 import run.var.teamcity.cloud.docker.client.StdioInputStream;
 
 import javax.annotation.Nonnull;
@@ -27,6 +28,21 @@ public interface StreamHandler extends AutoCloseable {
     @Nullable
     StdioInputStream getNextStreamFragment() throws IOException;
 
+    /**
+     * Gets a reader giving direct access to the process output as a sequence of typed frames. This is the most
+     * efficient way to consume high-volume output, as frames are delivered in place from a reusable buffer. A given
+     * handler must be consumed either using fragments streams or using a frame reader, but not both.
+     * <p>
+     * The default implementation adapts the stream fragments returned by {@link #getNextStreamFragment()}.
+     * </p>
+     *
+     * @return the frame reader
+     */
+    @Nonnull
+    default StdioFrameReader frameReader() {
+        return StdioFrameReader.fromFragments(this, StdioFrameReader.DEFAULT_BUFFER_SIZE);
+    }
+
     /**
      * Gets the process output stream ({@code STDIN} from the process perspective).
      *
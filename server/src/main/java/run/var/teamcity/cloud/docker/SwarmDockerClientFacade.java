@@ -10,6 +10,7 @@ import run.var.teamcity.cloud.docker.util.Node;
 import run.var.teamcity.cloud.docker.util.NodeProcessingException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.math.BigInteger;
 import java.time.Duration;
 import java.time.Instant;
@@ -76,15 +77,22 @@ public class SwarmDockerClientFacade extends BaseDockerClientFacade {
 
     private final boolean supportsQueryingLogs;
 
+    private final SwarmPlacementHelper placementHelper;
+
     private enum Scaling {
         UP,
         DOWN
     }
 
     public SwarmDockerClientFacade(DockerClient client) {
+        this(client, SwarmPlacementHelper.getDefault());
+    }
+
+    SwarmDockerClientFacade(DockerClient client, SwarmPlacementHelper placementHelper) {
         super(DockerCloudUtils.requireNonNull(client, "Docker client cannot be null."));
 
         supportsQueryingLogs = client.getApiVersion().isGreaterOrEqualTo(LOG_SUPPORT_MIN_VER);
+        this.placementHelper = DockerCloudUtils.requireNonNull(placementHelper, "Placement helper cannot be null.");
     }
 
     @Nonnull
@@ -116,6 +124,17 @@ public class SwarmDockerClientFacade extends BaseDockerClientFacade {
 
         applyLabels(editableServiceSpec, createAgentParameters.getLabels());
 
+        if (createAgentParameters.isSpreadPlacement()) {
+            EditableNode placement = editableServiceSpec.getOrCreateObject("TaskTemplate").getOrCreateObject("Placement");
+            if (placement.getArray("Constraints", Node.EMPTY_ARRAY.editNode()).getArrayValues().isEmpty()) {
+                // The node is selected each time the service is scaled up, see applyPlacement().
+                editableServiceSpec.getOrCreateObject("Labels").put(DockerCloudUtils.SPREAD_PLACEMENT_LABEL, "true");
+            } else {
+                // User defined constraints cannot be evaluated here, and may conflict with the selected node.
+                LOG.info("Placement constraints already defined, leaving placement to the swarm scheduler.");
+            }
+        }
+
         Node serviceNode =  client.createService(editableServiceSpec.saveNode());
 
         String id = serviceNode.getAsString("ID");
@@ -139,11 +158,28 @@ public class SwarmDockerClientFacade extends BaseDockerClientFacade {
 
     }
 
+    // Pins the service task to the currently least loaded node when scaling up, and releases the pin when scaling
+    // down. The node is never selected once and for all: it may have been drained or lost in the meantime, and
+    // a stale pin would leave the task pending forever.
+    private void applyPlacement(EditableNode serviceSpec, Scaling scaling) {
+        if (!serviceSpec.getObject("Labels", Node.EMPTY_OBJECT.editNode()).getObjectValues().
+                containsKey(DockerCloudUtils.SPREAD_PLACEMENT_LABEL)) {
+            return;
+        }
+        EditableNode placement = serviceSpec.getOrCreateObject("TaskTemplate").getOrCreateObject("Placement");
+        placement.remove("Constraints");
+        if (scaling == Scaling.UP) {
+            placementHelper.selectNode(client).ifPresent(nodeId ->
+                    placement.getOrCreateArray("Constraints").add("node.id==" + nodeId));
+        }
+    }
+
+    @Nullable
     @Override
     public String startAgent(@Nonnull String serviceId) {
         try {
             scale(serviceId, Scaling.UP);
-            return queryTaskId(serviceId);
+            return findTaskId(serviceId);
         } catch (NodeProcessingException e) {
             throw new DockerClientFacadeException("Failed to process response from daemon.", e);
         }
@@ -184,43 +220,33 @@ public class SwarmDockerClientFacade extends BaseDockerClientFacade {
 
         replicated.put("Replicas", newReplicas);
 
+        applyPlacement(serviceSpec, scaling);
+
         client.updateService(serviceId, serviceSpec.saveNode(), version);
     }
 
-    private String queryTaskId(@Nonnull String serviceId) {
-        final int maxRetry = 3;
-        final long retryDelay = 500;
-
-        int tryCount = 0;
+    // Looks up the task scheduled for the given agent holder, without waiting for the swarm orchestrator to create it.
+    // A task not created yet is resolved from the agent holder listings instead.
+    private String findTaskId(@Nonnull String agentHolderId) {
+        List<Node> tasks = client.listTasks(agentHolderId).getArrayValues().stream().
+                filter(SwarmDockerClientFacade::isDesiredRunning).
+                collect(Collectors.toList());
 
-        List<Node> node;
-        do {
-            node = client.listTasks(serviceId).getArrayValues();
-            if (!node.isEmpty()) {
-                break;
-            }
-            try {
-                Thread.sleep(retryDelay);
-            } catch (InterruptedException e) {
-                throw new DockerClientFacadeException("Interrupted.", e);
-            }
-        } while (tryCount++ < maxRetry);
-
-        if (node.size() != 1) {
-            throw new DockerClientFacadeException("Cannot resolved task ID, service was externally scaled (available " +
-                    "tasks: " + node.size() + ").");
+        if (tasks.size() > 1) {
+            LOG.warn("Cannot resolve task ID, service was externally scaled (available tasks: " + tasks.size() + ").");
+            return null;
         }
 
-        return node.get(0).getAsString("ID");
-
+        return tasks.isEmpty() ? null : tasks.get(0).getAsString("ID");
     }
 
+    @Nullable
     @Override
     public String restartAgent(@Nonnull String serviceId) {
         try {
             scale(serviceId, Scaling.DOWN);
             scale(serviceId, Scaling.UP);
-            return queryTaskId(serviceId);
+            return findTaskId(serviceId);
         } catch (NodeProcessingException e) {
             throw new DockerClientFacadeException("Failed to process response from daemon.", e);
         }
@@ -294,10 +320,15 @@ public class SwarmDockerClientFacade extends BaseDockerClientFacade {
 
     @Override
     public CharSequence getLogs(@Nonnull String serviceId) {
-        StreamHandler handler = client.streamServiceLogs(serviceId, 10000, StdioType.all(), false,
-                !hasTty(serviceId));
+        return demuxLogs(fetchLogs(serviceId, 10000, null, null));
+    }
 
-        return demuxLogs(handler);
+    @Nonnull
+    @Override
+    public StreamHandler fetchLogs(@Nonnull String serviceId, int lineCount, @Nullable Instant since,
+                                   @Nullable Instant until) {
+        return client.streamServiceLogs(serviceId, lineCount, StdioType.all(), false, !hasTty(serviceId), since,
+                until);
     }
 
     @Nonnull
@@ -306,6 +337,36 @@ public class SwarmDockerClientFacade extends BaseDockerClientFacade {
         return client.streamServiceLogs(serviceId, 10, StdioType.all(), true, !hasTty(serviceId));
     }
 
+    @Nonnull
+    @Override
+    public StreamHandler followLogs(@Nonnull String serviceId, @Nullable Instant since) {
+        return client.streamServiceLogs(serviceId, -1, StdioType.all(), true, !hasTty(serviceId), since, null);
+    }
+
+    @Nonnull
+    @Override
+    public Optional<ContainerStats> getAgentHolderStats(@Nonnull String serviceId) {
+        DockerCloudUtils.requireNonNull(serviceId, "Service ID cannot be null.");
+        String containerId = null;
+        try {
+            for (Node task : client.listTasks(serviceId).getArrayValues()) {
+                Node status = task.getObject("Status");
+                if (TaskRunningState.isRunning(status.getAsString("State"))) {
+                    containerId = status.getObject("ContainerStatus", Node.EMPTY_OBJECT).
+                            getAsString("ContainerID", null);
+                    break;
+                }
+            }
+        } catch (NodeProcessingException e) {
+            throw new DockerClientFacadeException("Failed to list service tasks.", e);
+        }
+        if (containerId == null) {
+            return Optional.empty();
+        }
+        // The task container is not known by the daemon when scheduled on another swarm node.
+        return fetchContainerStats(containerId);
+    }
+
     @Override
     public boolean supportQueryingLogs() {
         return supportsQueryingLogs;
@@ -319,4 +380,9 @@ public class SwarmDockerClientFacade extends BaseDockerClientFacade {
             throw new DockerClientFacadeException("Failed to inspect container service spec.", e);
         }
     }
+
+    // Checks if a task is expected to be running by the swarm orchestrator.
+    private static boolean isDesiredRunning(Node task) {
+        return "running".equals(task.getAsString("DesiredState", "running"));
+    }
 }
@@ -26,4 +26,35 @@ public class SwarmDockerImageConfigParser extends AbstractDockerImageConfigParse
     protected Node retrieveLabelsMap(@Nonnull Node agentHolderSpec) {
         return agentHolderSpec.getObject("Labels", Node.EMPTY_OBJECT);
     }
+
+    @Nonnull
+    @Override
+    protected ComputeResources retrieveResources(@Nonnull Node agentHolderSpec) {
+        Node resources = agentHolderSpec.
+                getObject("TaskTemplate", Node.EMPTY_OBJECT).
+                getObject("Resources", Node.EMPTY_OBJECT);
+        // Reservations are used when no limit is set.
+        Node limits = resources.getObject("Limits", Node.EMPTY_OBJECT);
+        Node reservations = resources.getObject("Reservations", Node.EMPTY_OBJECT);
+        long nanoCpus = getLong(limits, "NanoCPUs");
+        if (nanoCpus == 0) {
+            nanoCpus = getLong(reservations, "NanoCPUs");
+        }
+        long memoryBytes = getLong(limits, "MemoryBytes");
+        if (memoryBytes == 0) {
+            memoryBytes = getLong(reservations, "MemoryBytes");
+        }
+        return new ComputeResources(nanoCpus, memoryBytes);
+    }
+
+    @Override
+    protected boolean supportsCacheVolumes() {
+        // Service tasks may be scheduled on any node of the swarm, while volumes are local to a node.
+        return false;
+    }
+
+    @Override
+    protected boolean supportsSpreadPlacement() {
+        return true;
+    }
 }
@@ -0,0 +1,170 @@
+package run.var.teamcity.cloud.docker;
+
+import com.intellij.openapi.diagnostic.Logger;
+import run.var.teamcity.cloud.docker.client.DockerClient;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+import run.var.teamcity.cloud.docker.util.Node;
+import run.var.teamcity.cloud.docker.util.NodeProcessingException;
+
+import javax.annotation.Nonnull;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Selects the swarm node on which a new agent holder should be placed, such that agents are spread across the swarm
+ * according to the live load of the nodes.
+ * <p>
+ * A node is eligible if it is both ready and active. The load of a node is the number of running agent tasks it
+ * holds (tasks of a service managed by any cloud client), relatively to its CPU count. Since a new task takes some time
+ * to be reported on its node, the recent selections are accounted for as well during a short period, such that
+ * concurrent placements do not all end up on the same node.
+ * </p>
+ * <p>
+ * The recent selections must be accounted for by all the clients targeting a swarm, whatever their cloud profile. The
+ * plugin therefore uses a {@linkplain #getDefault() shared helper}. Selections are recorded by node ID, which is unique
+ * across swarms, such that the selections performed through a manager are accounted for by all the managers of the
+ * same swarm, and only by them.
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ */
+public class SwarmPlacementHelper {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(SwarmPlacementHelper.class);
+
+    /**
+     * Period during which a selection is accounted for in the node load.
+     */
+    static final Duration RESERVATION_PERIOD = Duration.ofSeconds(10);
+
+    private static final BigInteger NANO_CPUS_PER_CPU = BigInteger.valueOf(1_000_000_000L);
+
+    private final static SwarmPlacementHelper DEFAULT = new SwarmPlacementHelper();
+
+    private final LockHandler lock = LockHandler.newReentrantLock();
+
+    // Recent selections, oldest first.
+    private final Deque<Reservation> reservations = new ArrayDeque<>();
+
+    /**
+     * Creates a new placement helper.
+     */
+    SwarmPlacementHelper() {
+        // Package-private for testing.
+    }
+
+    /**
+     * Gets the placement helper shared by the plugin.
+     *
+     * @return the shared placement helper
+     */
+    @Nonnull
+    public static SwarmPlacementHelper getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Selects the least loaded eligible node of the swarm managed by the given client.
+     *
+     * @param client the Docker client to a swarm manager
+     *
+     * @return the ID of the selected node, or an empty optional if no node is eligible
+     *
+     * @throws NullPointerException if {@code client} is {@code null}
+     * @throws DockerClientFacadeException if the nodes or tasks could not be listed
+     */
+    @Nonnull
+    public Optional<String> selectNode(@Nonnull DockerClient client) {
+        DockerCloudUtils.requireNonNull(client, "Docker client cannot be null.");
+
+        Map<String, Integer> taskCounts = new HashMap<>();
+        Map<String, Long> cpuCounts = new HashMap<>();
+        try {
+            for (Node node : client.listNodes().getArrayValues()) {
+                Node spec = node.getObject("Spec", Node.EMPTY_OBJECT);
+                Node status = node.getObject("Status", Node.EMPTY_OBJECT);
+                if (!"active".equals(spec.getAsString("Availability", null)) ||
+                        !"ready".equals(status.getAsString("State", null))) {
+                    continue;
+                }
+                BigInteger nanoCpus = node.getObject("Description", Node.EMPTY_OBJECT).
+                        getObject("Resources", Node.EMPTY_OBJECT).
+                        getAsBigInt("NanoCPUs", BigInteger.ZERO);
+                String nodeId = node.getAsString("ID");
+                cpuCounts.put(nodeId, Math.max(1, nanoCpus.divide(NANO_CPUS_PER_CPU).longValue()));
+                taskCounts.put(nodeId, 0);
+            }
+
+            if (cpuCounts.isEmpty()) {
+                return Optional.empty();
+            }
+
+            Set<String> agentServices = new HashSet<>();
+            for (Node service : client.listServicesWithLabel(Collections.singletonMap(
+                    DockerCloudUtils.CLIENT_ID_LABEL, "")).getArrayValues()) {
+                agentServices.add(service.getAsString("ID"));
+            }
+
+            for (Node task : client.listRunningTasks().getArrayValues()) {
+                String nodeId = task.getAsString("NodeID", null);
+                if (nodeId != null && agentServices.contains(task.getAsString("ServiceID", null))) {
+                    taskCounts.computeIfPresent(nodeId, (key, count) -> count + 1);
+                }
+            }
+        } catch (NodeProcessingException e) {
+            throw new DockerClientFacadeException("Failed to process response from daemon.", e);
+        }
+
+        return lock.call(() -> {
+            Instant now = Instant.now();
+            while (!reservations.isEmpty() &&
+                    reservations.peekFirst().timestamp.plus(RESERVATION_PERIOD).isBefore(now)) {
+                reservations.pollFirst();
+            }
+            for (Reservation reservation : reservations) {
+                taskCounts.computeIfPresent(reservation.nodeId, (key, count) -> count + 1);
+            }
+
+            String selected = null;
+            double selectedLoad = 0;
+            for (Map.Entry<String, Integer> entry : taskCounts.entrySet()) {
+                String nodeId = entry.getKey();
+                double load = (double) entry.getValue() / cpuCounts.get(nodeId);
+                // Break ties on the node ID to get a stable selection.
+                if (selected == null || load < selectedLoad || (load == selectedLoad && nodeId.compareTo(selected) < 0)) {
+                    selected = nodeId;
+                    selectedLoad = load;
+                }
+            }
+
+            assert selected != null;
+
+            LOG.debug("Selected node " + selected + " (load: " + selectedLoad + ") among: " + taskCounts + ".");
+
+            reservations.addLast(new Reservation(selected, now));
+
+            return Optional.of(selected);
+        });
+    }
+
+    private static class Reservation {
+        final String nodeId;
+        final Instant timestamp;
+
+        Reservation(String nodeId, Instant timestamp) {
+            this.nodeId = nodeId;
+            this.timestamp = timestamp;
+        }
+    }
+}
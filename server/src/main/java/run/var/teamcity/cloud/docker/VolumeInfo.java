@@ -0,0 +1,71 @@
+package run.var.teamcity.cloud.docker;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Volume info set.
+ * <p>
+ * Instances of this class are immutable.
+ * </p>
+ */
+public class VolumeInfo {
+
+    private final String name;
+    private final Map<String, String> labels;
+    private final long sizeBytes;
+
+    /**
+     * Creates a new info set.
+     *
+     * @param name      the volume name
+     * @param labels    the volume labels
+     * @param sizeBytes the volume size in bytes, or {@code -1} if unknown
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public VolumeInfo(@Nonnull String name, @Nonnull Map<String, String> labels, long sizeBytes) {
+        this.name = DockerCloudUtils.requireNonNull(name, "Name cannot be null.");
+        DockerCloudUtils.requireNonNull(labels, "Labels cannot be null.");
+        this.labels = Collections.unmodifiableMap(new HashMap<>(labels));
+        this.sizeBytes = sizeBytes;
+    }
+
+    /**
+     * Gets the volume name.
+     *
+     * @return the volume name
+     */
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the volume labels.
+     *
+     * @return the volume labels
+     */
+    @Nonnull
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * Gets the disk space used by the volume.
+     *
+     * @return the volume size in bytes, or {@code -1} if unknown
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "name: " + name + ", labels: " + labels + ", size: " + sizeBytes;
+    }
+}
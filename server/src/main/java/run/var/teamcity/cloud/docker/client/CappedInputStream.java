@@ -1,7 +1,6 @@
 package run.var.teamcity.cloud.docker.client;
 
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
-import run.var.teamcity.cloud.docker.util.LockHandler;
 
 import javax.annotation.Nonnull;
 import java.io.FilterInputStream;
@@ -12,13 +11,12 @@ import java.io.InputStream;
  * An input stream filter with a fixed capacity. Invoking {@code close()} on this filter will not close the
  * underlying input stream.
  * <p>
- * This stream filter is thread-safe to use, as long as the underlying stream is thread-safe as well.
+ * This stream filter is not thread-safe: stream fragments are meant to be consumed by a single thread, and taking a
+ * lock on each read would be prohibitively expensive for fragments made of many small reads.
  * </p>
  */
 class CappedInputStream extends FilterInputStream {
 
-    private final LockHandler lock = LockHandler.newReentrantLock();
-
     private final long capacity;
     private long readSoFar = 0;
     private boolean closed = false;
@@ -43,44 +41,51 @@ class CappedInputStream extends FilterInputStream {
 
     @Override
     public int read() throws IOException {
-        return lock.callChecked(() -> {
-            checkNotClosed();
-            if (readSoFar < capacity) {
-                int b = super.read();
+        checkNotClosed();
+        if (readSoFar < capacity) {
+            int b = super.read();
+            if (b != -1) {
                 readSoFar++;
-                return b;
             }
-            return -1;
-        });
+            return b;
+        }
+        return -1;
     }
 
     @Override
     public int available() {
-        return lock.call(() -> {
-            if (closed) {
-                return 0;
-            }
-            long available = capacity - readSoFar;
-
-            assert available >= 0;
+        if (closed) {
+            return 0;
+        }
+        long available = capacity - readSoFar;
 
-            return (int) Math.min((long) Integer.MAX_VALUE, available);
-        });
+        assert available >= 0;
 
+        return (int) Math.min((long) Integer.MAX_VALUE, available);
     }
 
     @Override
     public int read(@Nonnull byte[] b, int off, int len) throws IOException {
-        return lock.callChecked(() -> {
-            checkNotClosed();
-            int available = available();
-            if (available > 0) {
-                int n = super.read(b, off, Math.min(available, len - off));
+        checkNotClosed();
+        int available = available();
+        if (available > 0) {
+            int n = super.read(b, off, Math.min(available, len));
+            if (n > 0) {
                 readSoFar += n;
-                return n;
             }
-            return -1;
-        });
+            return n;
+        }
+        return -1;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkNotClosed();
+        long skipped = super.skip(Math.min(n, capacity - readSoFar));
+        if (skipped > 0) {
+            readSoFar += skipped;
+        }
+        return skipped;
     }
 
     @Override
@@ -95,16 +100,20 @@ class CappedInputStream extends FilterInputStream {
      * @throws IOException if an error occurred while exhausting or closing the stream
      */
     void exhaustAndClose() throws IOException {
-        lock.runChecked(() -> {
-            long toSkip = capacity - readSoFar;
-            assert toSkip >= 0;
-
-            while (toSkip > 0) {
-                toSkip -= skip(toSkip);
+        // The fragment may already have been closed by its consumer, bypass the closed state check.
+        while (readSoFar < capacity) {
+            long skipped = in.skip(capacity - readSoFar);
+            if (skipped > 0) {
+                readSoFar += skipped;
+            } else if (in.read() != -1) {
+                readSoFar++;
+            } else {
+                // Source stream exhausted.
+                break;
             }
+        }
 
-            close();
-        });
+        close();
     }
 
     @Override
@@ -27,12 +27,14 @@ import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.EditableNode;
 import run.var.teamcity.cloud.docker.util.Node;
 import run.var.teamcity.cloud.docker.util.NodeStream;
+import run.var.teamcity.cloud.docker.util.Stopwatch;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSocketFactory;
 import javax.ws.rs.HttpMethod;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
@@ -52,12 +54,15 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -80,10 +85,19 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
 
     private final static Logger LOG = DockerCloudUtils.getLogger(DefaultDockerClient.class);
 
+    // Matches the daemon messages for a rejected API version, such as "client version 1.40 is too new. Maximum
+    // supported API version is 1.39" or "client is newer than server".
+    private final static Pattern VERSION_REJECTION_PTN = Pattern.compile(
+            "version \\S+ is too (new|old)|client is newer than server|" +
+                    "(unsupported|not supported).{0,20}api version|api version.{0,40}(unsupported|not supported)",
+            Pattern.CASE_INSENSITIVE);
+
     private final DockerHttpConnectionFactory connectionFactory;
     private final WebTarget baseTarget;
+    private final String endpoint;
 
     private volatile DockerAPIVersion apiVersion;
+    private volatile Runnable versionRejectionHandler = () -> {};
 
     /**
      * Supported scheme for the configured Docker URI.
@@ -110,11 +124,12 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
         }
     }
 
-    private DefaultDockerClient(DockerHttpConnectionFactory connectionFactory, Client jerseyClient, URI targetUri,
-                                DockerAPIVersion apiVersion) {
+    private DefaultDockerClient(DockerHttpConnectionFactory connectionFactory, Client jerseyClient, URI dockerURI,
+                                URI targetUri, DockerAPIVersion apiVersion) {
         super(jerseyClient);
         this.connectionFactory = connectionFactory;
         this.baseTarget = jerseyClient.target(targetUri);
+        this.endpoint = dockerURI.toString();
         this.apiVersion = apiVersion;
     }
 
@@ -237,22 +252,32 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
     @Nonnull
     @Override
     public StreamHandler streamLogs(@Nonnull String containerId, int lineCount, @Nonnull Set<StdioType> stdioTypes,
-                                    boolean follow, boolean demuxStdio) {
+                                    boolean follow, boolean demuxStdio, @Nullable Instant since,
+                                    @Nullable Instant until) {
 
         return invokeStream(prepareLogsTarget(target(), "/containers/{id}/logs", containerId, lineCount, stdioTypes,
-                follow), HttpMethod.GET, null, demuxStdio);
+                follow, since, until), HttpMethod.GET, null, demuxStdio);
     }
 
     @Nonnull
     @Override
     public StreamHandler streamServiceLogs(@Nonnull String serviceId, int lineCount, @Nonnull Set<StdioType>
-            stdioTypes, boolean follow, boolean demuxStream) {
+            stdioTypes, boolean follow, boolean demuxStream, @Nullable Instant since, @Nullable Instant until) {
         return invokeStream(prepareLogsTarget(target(), "/services/{id}/logs", serviceId, lineCount,
-                stdioTypes, follow), HttpMethod.GET, null, demuxStream);
+                stdioTypes, follow, since, until), HttpMethod.GET, null, demuxStream);
+    }
+
+    @Nonnull
+    @Override
+    public Node getStats(@Nonnull String containerId) {
+        DockerCloudUtils.requireNonNull(containerId, "Container ID cannot be null.");
+        return invoke(target().path("/containers/{id}/stats").resolveTemplate("id", containerId).
+                queryParam("stream", 0), HttpMethod.GET, null, prepareHeaders(DockerRegistryCredentials.ANONYMOUS),
+                null);
     }
 
     private WebTarget prepareLogsTarget(WebTarget target, String path, String container, int lineCount, Set<StdioType>
-            stdioTypes, boolean follow) {
+            stdioTypes, boolean follow, Instant since, Instant until) {
 
         DockerCloudUtils.requireNonNull(container, "Container name or id cannot be null.");
         DockerCloudUtils.requireNonNull(stdioTypes, "Set of stdio types cannot be null.");
@@ -267,11 +292,28 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
         if (stdioTypes.isEmpty()) {
             throw new IllegalArgumentException("Set of stdio types cannot be empty.");
         }
+        if (since != null && until != null && until.isBefore(since)) {
+            throw new IllegalArgumentException("Invalid time range: " + since + " - " + until);
+        }
 
-        return applyStdioTypes(target, stdioTypes).path(path).
+        target = applyStdioTypes(target, stdioTypes).path(path).
                 resolveTemplate("id", container).
                 queryParam("tail", tail).
                 queryParam("follow", follow ? 1 : 0);
+
+        if (since != null) {
+            target = target.queryParam("since", toUnixTimestamp(since));
+        }
+        if (until != null) {
+            target = target.queryParam("until", toUnixTimestamp(until));
+        }
+
+        return target;
+    }
+
+    private static String toUnixTimestamp(Instant instant) {
+        // Fractional UNIX timestamp, as expected by the daemon.
+        return String.format(Locale.ROOT, "%d.%09d", instant.getEpochSecond(), instant.getNano());
     }
 
     @Override
@@ -346,11 +388,70 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
         return invoke(target, HttpMethod.GET, null, prepareHeaders(DockerRegistryCredentials.ANONYMOUS), null);
     }
 
+    @Nonnull
+    @Override
+    public Node listRunningTasks() {
+        WebTarget target = target().path("/tasks");
+
+        target = addFilterToQuery(target, "desired-state", Collections.singletonList("running"));
+
+        return invoke(target, HttpMethod.GET, null, prepareHeaders(DockerRegistryCredentials.ANONYMOUS), null);
+    }
+
+    @Nonnull
+    @Override
+    public Node listNodes() {
+        return invoke(target().path("/nodes"), HttpMethod.GET, null,
+                prepareHeaders(DockerRegistryCredentials.ANONYMOUS), null);
+    }
+
+    @Nonnull
+    @Override
+    public Node createVolume(@Nonnull Node volumeSpec) {
+        DockerCloudUtils.requireNonNull(volumeSpec, "Volume JSON specification cannot be null.");
+        return invoke(target().path("/volumes/create"), HttpMethod.POST, volumeSpec,
+                prepareHeaders(DockerRegistryCredentials.ANONYMOUS), null);
+    }
+
+    @Nonnull
+    @Override
+    public Node inspectVolume(@Nonnull String volume) {
+        DockerCloudUtils.requireNonNull(volume, "Volume name cannot be null.");
+        return invoke(target().path("/volumes/{name}").resolveTemplate("name", volume), HttpMethod.GET, null,
+                prepareHeaders(DockerRegistryCredentials.ANONYMOUS), null);
+    }
+
+    @Nonnull
+    @Override
+    public Node listVolumesWithLabel(@Nonnull Map<String, String> labelFilters) {
+        DockerCloudUtils.requireNonNull(labelFilters, "Label filters map cannot be null.");
+
+        WebTarget target = target().path("/volumes");
+
+        target = addLabelsFiltersToQuery(target, labelFilters);
+
+        return invoke(target, HttpMethod.GET, null, prepareHeaders(DockerRegistryCredentials.ANONYMOUS), null);
+    }
+
+    @Override
+    public void removeVolume(@Nonnull String volume, boolean force) {
+        DockerCloudUtils.requireNonNull(volume, "Volume name cannot be null.");
+        invokeVoid(target().path("/volumes/{name}").resolveTemplate("name", volume).queryParam("force", force),
+                HttpMethod.DELETE, null, null);
+    }
+
+    @Nonnull
+    @Override
+    public Node getDiskUsage() {
+        return invoke(target().path("/system/df"), HttpMethod.GET, null,
+                prepareHeaders(DockerRegistryCredentials.ANONYMOUS), null);
+    }
+
     private WebTarget addLabelsFiltersToQuery(WebTarget target, Map<String, String> labelFilters) {
         assert target != null && labelFilters != null;
 
         List<String> labels = labelFilters.entrySet().stream().
-                map(entry -> entry.getKey() + "=" + entry.getValue()).
+                map(entry -> entry.getValue().isEmpty() ? entry.getKey() : entry.getKey() + "=" + entry.getValue()).
                 collect(Collectors.toList());
 
         return addFilterToQuery(target, "label", labels);
@@ -387,8 +488,21 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
 
         checkNotClosed();
 
-        Response response = target.request(MediaType.APPLICATION_JSON).acceptEncoding(SUPPORTED_CHARSET.name()).
-                header("Upgrade", "tcp").method(method);
+        String requestSpec = getRequestSpec(target, method);
+        Stopwatch stopwatch = Stopwatch.start();
+
+        Response response;
+        try {
+            response = target.request(MediaType.APPLICATION_JSON).acceptEncoding(SUPPORTED_CHARSET.name()).
+                    header("Upgrade", "tcp").method(method);
+        } catch (ProcessingException e) {
+            getMetrics().recordFailure(endpoint, requestSpec, stopwatch.getDuration(), e);
+            throw e;
+        }
+
+        // For streaming operations, the latency will only account for the time required to receive the response
+        // headers.
+        getMetrics().recordResponse(endpoint, requestSpec, stopwatch.getDuration(), response.getStatus(), 0);
 
         // While the API states that the "logs" operation can be upgraded to TCP streaming, this does not seem to be
         // honored in practice. Actually, connection upgrade is here not really required since we do not have any
@@ -399,12 +513,12 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
             LOG.debug("No connection upgrade performed.");
         }
 
-        validate(getRequestSpec(target, method), response, errorCodeMapper);
+        validate(requestSpec, response, errorCodeMapper);
 
         DockerHttpConnection connection = connectionFactory.getThreadLocalHttpConnection();
 
         Closeable closeHandle = new JaxWsResponseCloseableAdapter(response);
-        InputStream inputStream = (InputStream) response.getEntity();
+        InputStream inputStream = meterResponseBody(target, method, (InputStream) response.getEntity());
         OutputStream outputStream = connection.prepareOutputStream();
 
         return !demuxStdio ? new CompositeStreamHandler(closeHandle, inputStream, outputStream) :
@@ -412,6 +526,53 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
     }
 
 
+    /**
+     * Sets the handler to be notified when a request sent to a versioned endpoint is rejected because its API version
+     * is not supported by the daemon (for example, after the daemon was downgraded). Other bad requests are not
+     * reported.
+     *
+     * @param versionRejectionHandler the handler
+     *
+     * @throws NullPointerException if {@code versionRejectionHandler} is {@code null}
+     */
+    void setVersionRejectionHandler(@Nonnull Runnable versionRejectionHandler) {
+        this.versionRejectionHandler = DockerCloudUtils.requireNonNull(versionRejectionHandler,
+                "Handler cannot be null.");
+    }
+
+    @Override
+    protected void validate(@Nonnull String requestSpec, @Nonnull Response response,
+                            @Nullable ErrorCodeMapper errorCodeMapper) {
+        try {
+            super.validate(requestSpec, response, errorCodeMapper);
+        } catch (InvocationFailedException e) {
+            if (response.getStatus() == HttpStatus.SC_BAD_REQUEST && !apiVersion.isDefaultVersion() &&
+                    isVersionRejection(e.getMessage())) {
+                versionRejectionHandler.run();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Checks if the given error message reports that the requested API version is not supported by the daemon.
+     *
+     * @param msg the error message, may be {@code null}
+     *
+     * @return {@code true} if the message reports an API version mismatch
+     */
+    static boolean isVersionRejection(@Nullable String msg) {
+        return msg != null && VERSION_REJECTION_PTN.matcher(msg).find();
+    }
+
+    @Nonnull
+    @Override
+    protected String getEndpoint(WebTarget target) {
+        // Report the URI as configured by the user, the effective URI for Unix sockets or named pipes is
+        // meaningless.
+        return endpoint;
+    }
+
     /**
      * Open a new client using the provided configuration. The Docker URI must use one of the supported scheme
      * from the Docker CLI, either <tt>unix://<em>[absolute_path_to_unix_socket]</em> for Unix sockets,
@@ -520,7 +681,7 @@ public class DefaultDockerClient extends DockerAbstractClient implements DockerC
         config.property(ClientProperties.READ_TIMEOUT, (int) clientConfig.getTransferTimeout().toMillis());
         config.property(ApacheConnectorProvider.CONNECTION_REUSE_STRATEGY_PROP, connectionReuseStrategy);
 
-        return new DefaultDockerClient(connectionFactory, ClientBuilder.newClient(config), effectiveURI,
+        return new DefaultDockerClient(connectionFactory, ClientBuilder.newClient(config), dockerURI, effectiveURI,
                 clientConfig.getApiVersion());
     }
 
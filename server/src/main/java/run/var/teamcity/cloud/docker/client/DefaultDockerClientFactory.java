@@ -1,12 +1,16 @@
 package run.var.teamcity.cloud.docker.client;
 
 import javax.annotation.Nonnull;
+import java.net.URI;
 
 class DefaultDockerClientFactory extends DockerClientFactory {
 
     @Nonnull
     @Override
     public DockerClient createClient(DockerClientConfig config) {
-        return DefaultDockerClient.newInstance(config);
+        DefaultDockerClient client = DefaultDockerClient.newInstance(config);
+        URI instanceURI = config.getInstanceURI();
+        client.setVersionRejectionHandler(() -> invalidateNegotiatedVersion(instanceURI));
+        return client;
     }
 }
@@ -4,6 +4,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.Node;
 import run.var.teamcity.cloud.docker.util.NodeStream;
+import run.var.teamcity.cloud.docker.util.Stopwatch;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -19,6 +20,7 @@ import javax.ws.rs.core.Response;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -59,16 +61,29 @@ public abstract class DockerAbstractClient implements Closeable {
     };
 
     private final Client jerseyClient;
+    private final DockerClientMetrics metrics;
 
     private volatile boolean closed = false;
 
     /**
-     * Creates a new client instance wrapping the given Jersey client.
+     * Creates a new client instance wrapping the given Jersey client. Invocations will be recorded in the
+     * {@link DockerClientMetrics#getDefault() default} metrics instance.
      *
      * @param jerseyClient the Jersey client
      */
     protected DockerAbstractClient(@Nonnull Client jerseyClient) {
+        this(jerseyClient, DockerClientMetrics.getDefault());
+    }
+
+    /**
+     * Creates a new client instance wrapping the given Jersey client.
+     *
+     * @param jerseyClient the Jersey client
+     * @param metrics      the metrics in which the invocations will be recorded
+     */
+    protected DockerAbstractClient(@Nonnull Client jerseyClient, @Nonnull DockerClientMetrics metrics) {
         this.jerseyClient = jerseyClient;
+        this.metrics = DockerCloudUtils.requireNonNull(metrics, "Metrics cannot be null.");
     }
 
     /**
@@ -93,13 +108,20 @@ public abstract class DockerAbstractClient implements Closeable {
         Response response = execRequest(target,
                 target.
                         request(MediaType.APPLICATION_JSON).
-                        acceptEncoding(SUPPORTED_CHARSET.name()), method, entity != null ? Entity.json(entity.toString()) : null, headers, errorCodeMapper);
+                        acceptEncoding(SUPPORTED_CHARSET.name()), method, entity, headers, errorCodeMapper);
 
+        MeteredInputStream entityStream = meterResponseBody(target, method, (InputStream) response.getEntity());
         try {
-            return Node.parse((InputStream) response.getEntity());
+            return Node.parse(entityStream);
         } catch (IOException e) {
             throw new DockerClientProcessingException("Failed to parse response from server.", e);
         } finally {
+            try {
+                // Will report the number of received bytes, if not already done by the parser.
+                entityStream.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
             try {
                 response.close();
             } catch (ProcessingException e) {
@@ -130,11 +152,10 @@ public abstract class DockerAbstractClient implements Closeable {
         Response response = execRequest(target,
                 target.
                         request(MediaType.APPLICATION_JSON).
-                        acceptEncoding(SUPPORTED_CHARSET.name()), method,
-                entity != null ? Entity.json(entity.toString()) : null, headers, errorCodeMapper);
+                        acceptEncoding(SUPPORTED_CHARSET.name()), method, entity, headers, errorCodeMapper);
 
         try {
-            return Node.parseMany(JaxWsResponseFilterInputStream.wrap(response));
+            return Node.parseMany(meterResponseBody(target, method, JaxWsResponseFilterInputStream.wrap(response)));
         } catch (IOException e) {
             throw new DockerClientProcessingException("Failed to parse response from server.", e);
         }
@@ -155,7 +176,7 @@ public abstract class DockerAbstractClient implements Closeable {
 
         Response response = execRequest(target,
                 target.request(MediaType.APPLICATION_JSON).acceptEncoding(SUPPORTED_CHARSET.name()),
-                method, entity != null ? Entity.json(entity.toString()) : null, emptyHeaders(), errorCodeMapper);
+                method, entity, emptyHeaders(), errorCodeMapper);
 
         try {
             response.close();
@@ -171,36 +192,87 @@ public abstract class DockerAbstractClient implements Closeable {
      * @param target            the targeted resource
      * @param invocationBuilder the invocation builder to be used
      * @param method            the operation method
-     * @param entity            the entity to be submitted, may be {@code null}
+     * @param entity            the JSON entity to be submitted, may be {@code null}
      * @param headers           the request headers
      * @param errorCodeMapper   the additional error code mapper to be used, may be {@code null}
-     * @param <T>               the submitted entity type
      *
      * @return the Jersey response
      *
      * @throws DockerClientException if invoking the operation failed
      */
-    protected <T> Response execRequest(WebTarget target, Invocation.Builder invocationBuilder, String method,
-                                       Entity<T> entity, MultivaluedMap<String, Object> headers,
-                                       ErrorCodeMapper errorCodeMapper) {
+    protected Response execRequest(WebTarget target, Invocation.Builder invocationBuilder, String method,
+                                   Node entity, MultivaluedMap<String, Object> headers,
+                                   ErrorCodeMapper errorCodeMapper) {
 
         checkNotClosed();
 
         assert invocationBuilder != null && method != null && headers != null;
 
+        String requestSpec = getRequestSpec(target, method);
+        Stopwatch stopwatch = Stopwatch.start();
+
+        // The payload size is counted while it is written.
+        MeteredJsonEntity meteredEntity = entity != null ? new MeteredJsonEntity(entity) : null;
+
         Response response;
         try {
-            response = invocationBuilder.headers(headers).method(method, entity);
+            response = invocationBuilder.headers(headers).method(method,
+                    meteredEntity != null ? Entity.json(meteredEntity) : null);
         } catch (ProcessingException e) {
+            metrics.recordFailure(getEndpoint(target), requestSpec, stopwatch.getDuration(), e);
             String msg = e.getMessage();
             throw new DockerClientProcessingException(msg != null ? msg : "Method invocation failed.", e);
         }
 
-        validate(getRequestSpec(target, method), response, errorCodeMapper);
+        metrics.recordResponse(getEndpoint(target), requestSpec, stopwatch.getDuration(), response.getStatus(),
+                meteredEntity != null ? meteredEntity.getCount() : 0);
+
+        validate(requestSpec, response, errorCodeMapper);
 
         return response;
     }
 
+    /**
+     * Wraps a response body stream in order to record the number of bytes received for a given request.
+     *
+     * @param target the targeted resource
+     * @param method the operation method
+     * @param body   the response body stream
+     *
+     * @return the metered stream
+     */
+    @Nonnull
+    MeteredInputStream meterResponseBody(@Nonnull WebTarget target, @Nonnull String method,
+                                         @Nonnull InputStream body) {
+        String endpoint = getEndpoint(target);
+        String requestSpec = getRequestSpec(target, method);
+        return new MeteredInputStream(body, count -> metrics.recordBytesReceived(endpoint, requestSpec, count));
+    }
+
+    /**
+     * Gets the metrics in which the invocations performed by this client are recorded.
+     *
+     * @return the client metrics
+     */
+    @Nonnull
+    protected DockerClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the endpoint label under which the invocations will be recorded in the client metrics. The default
+     * implementation returns the scheme and authority of the targeted resource.
+     *
+     * @param target the targeted resource
+     *
+     * @return the endpoint label
+     */
+    @Nonnull
+    protected String getEndpoint(WebTarget target) {
+        URI uri = target.getUri();
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
     /**
      * Build a request specification from a target resource and an HTTP method. For debug purpose.
      *
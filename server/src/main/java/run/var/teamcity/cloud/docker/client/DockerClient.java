@@ -9,6 +9,7 @@ import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.math.BigInteger;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Map;
 import java.util.Set;
 
@@ -186,8 +187,30 @@ public interface DockerClient extends Closeable {
      * @throws DockerClientException if an error occurred while communicating with the daemon
      */
     @Nonnull
+    default StreamHandler streamLogs(@Nonnull String containerId, int lineCount, @Nonnull Set<StdioType> stdioTypes,
+                                     boolean follow, boolean demuxStdio) {
+        return streamLogs(containerId, lineCount, stdioTypes, follow, demuxStdio, null, null);
+    }
+
+    /**
+     * Streams the container logs within a time range.
+     *
+     * @param containerId the container id
+     * @param lineCount the number of line of context, or {@code -1} for all lines
+     * @param stdioTypes the types of stream to be fetched
+     * @param follow if the logs must be fetched continuously
+     * @param demuxStdio {@code true} if the logs content must be demultiplexed using Stdio frames
+     * @param since only fetch the logs emitted from this instant (may be {@code null})
+     * @param until only fetch the logs emitted before this instant (may be {@code null})
+     *
+     * @return a stream handler to consume the logs
+     *
+     * @throws NullPointerException if {@code containerId} or {@code stdioTypes} is {@code null}
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
     StreamHandler streamLogs(@Nonnull String containerId, int lineCount, @Nonnull Set<StdioType> stdioTypes,
-                             boolean follow, boolean demuxStdio);
+                             boolean follow, boolean demuxStdio, @Nullable Instant since, @Nullable Instant until);
 
     /**
      * Streams the service logs.
@@ -203,8 +226,44 @@ public interface DockerClient extends Closeable {
      * @throws DockerClientException if an error occurred while communicating with the daemon
      */
     @Nonnull
+    default StreamHandler streamServiceLogs(@Nonnull String containerId, int lineCount,
+                                            @Nonnull Set<StdioType> stdioTypes, boolean follow, boolean demuxStream) {
+        return streamServiceLogs(containerId, lineCount, stdioTypes, follow, demuxStream, null, null);
+    }
+
+    /**
+     * Streams the service logs within a time range.
+     *
+     * @param containerId the container id
+     * @param lineCount the number of line context, or {@code -1} for all lines
+     * @param stdioTypes the types of stream to be fetched
+     * @param follow {@code true} if the logs must be streamed continuously
+     * @param since only fetch the logs emitted from this instant (may be {@code null})
+     * @param until only fetch the logs emitted before this instant (may be {@code null})
+     *
+     * @return a stream handler to consume the logs
+     *
+     * @throws NullPointerException if {@code containerId} or {@code stdioTypes} is {@code null}
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
     StreamHandler streamServiceLogs(@Nonnull String containerId, int lineCount, @Nonnull Set<StdioType> stdioTypes,
-                                  boolean follow, boolean demuxStream);
+                                    boolean follow, boolean demuxStream, @Nullable Instant since,
+                                    @Nullable Instant until);
+
+    /**
+     * Gets a single resource usage statistics sample for the given container. The daemon waits for two consecutive
+     * samples to be collected, such that CPU usage deltas are available from the {@code precpu_stats} field.
+     *
+     * @param containerId the container id
+     *
+     * @return the resource usage statistics
+     *
+     * @throws NullPointerException if {@code containerId} is {@code null}
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
+    Node getStats(@Nonnull String containerId);
 
     /**
      * Stops the container with the given name or id and stop timeout. Use {@link #DEFAULT_TIMEOUT} as timeout value
@@ -243,6 +302,7 @@ public interface DockerClient extends Closeable {
     /**
      * Lists the containers filtered using the given sets of labels. For a container to be included in the list, all of
      * the labels from the filter map will need to be set with the corresponding value.
+     * An empty value only requires the label to be set, regardless of its value.
      *
      * @param labelFilters the label filter map
      *
@@ -257,6 +317,7 @@ public interface DockerClient extends Closeable {
     /**
      * Lists the services filtered using the given sets of labels. For a service to be included in the list, all of
      * the labels from the filter map will need to be set with the corresponding value.
+     * An empty value only requires the label to be set, regardless of its value.
      *
      * @param labelFilters the label filter map
      *
@@ -286,4 +347,86 @@ public interface DockerClient extends Closeable {
      */
     @Nonnull
     Node listTasks(@Nonnull String serviceId);
+
+    /**
+     * Lists the tasks of all services whose desired state is running.
+     *
+     * @return the list of tasks
+     *
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
+    Node listRunningTasks();
+
+    /**
+     * Lists the nodes of the swarm.
+     *
+     * @return the list of nodes
+     *
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
+    Node listNodes();
+
+    /**
+     * Creates a new volume.
+     *
+     * @param volumeSpec the volume specification
+     *
+     * @return the created volume
+     *
+     * @throws NullPointerException if {@code volumeSpec} is {@code null}
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
+    Node createVolume(@Nonnull Node volumeSpec);
+
+    /**
+     * Inspects the volume with the given name.
+     *
+     * @param volume the volume name
+     *
+     * @return the volume inspection node
+     *
+     * @throws NullPointerException if {@code volume} is {@code null}
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
+    Node inspectVolume(@Nonnull String volume);
+
+    /**
+     * Lists the volumes filtered using the given sets of labels. For a volume to be included in the list, all of
+     * the labels from the filter map will need to be set with the corresponding value.
+     * An empty value only requires the label to be set, regardless of its value.
+     *
+     * @param labelFilters the label filter map
+     *
+     * @return the volumes listing
+     *
+     * @throws NullPointerException if {@code labelFilters}, or any of its keys or values, are {@code null}
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
+    Node listVolumesWithLabel(@Nonnull Map<String, String> labelFilters);
+
+    /**
+     * Removes the volume with the given name.
+     *
+     * @param volume the volume name
+     * @param force force the volume removal also when currently in use
+     *
+     * @throws NullPointerException if {@code volume} is {@code null}
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    void removeVolume(@Nonnull String volume, boolean force);
+
+    /**
+     * Gets the daemon disk usage, including the size of each volume.
+     *
+     * @return the disk usage node
+     *
+     * @throws DockerClientException if an error occurred while communicating with the daemon
+     */
+    @Nonnull
+    Node getDiskUsage();
 }
@@ -0,0 +1,385 @@
+package run.var.teamcity.cloud.docker.client;
+
+import com.intellij.openapi.diagnostic.Logger;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+import run.var.teamcity.cloud.docker.util.NamedThreadFactory;
+
+import javax.annotation.Nonnull;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of {@link DockerClient}s shared across the plugin.
+ * <p>
+ * Creating a Docker client is expensive: each instance has its own connection pool (and TLS context), and requires
+ * a round-trip to the daemon to negotiate the API version. This cache hands out reference-counted leases on shared
+ * clients. Clients are keyed by the whole {@link DockerClientConfig} they are created with: consumers only share a
+ * client when they agree on the daemon URI, the TLS settings, the target API version, the connection pool size and
+ * the timeouts. Requested pool sizes are however raised to a common minimum beforehand, such that consumers with
+ * small pools still share the same client.
+ * </p>
+ * <p>
+ * The API version of a shared client is fixed once negotiated, leases cannot change it. If the daemon later rejects
+ * this version (for example, after a downgrade), the client is re-created with a new negotiation and the existing
+ * leases switch to it transparently.
+ * </p>
+ * <p>
+ * Closing a lease releases it. Clients that are no longer referenced will be closed after an idle timeout, or as
+ * soon as the cache is disposed.
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ */
+public class DockerClientCache {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(DockerClientCache.class);
+
+    /**
+     * Default idle timeout after which an unreferenced client will be closed.
+     */
+    public final static Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+    /**
+     * Minimal size of the connection pool for shared clients. Connections are only opened when required, a generous
+     * limit has therefore no cost, while a too small pool may starve concurrent consumers (especially when long-lived
+     * streams are involved).
+     */
+    private final static int MIN_SHARED_POOL_SIZE = Runtime.getRuntime().availableProcessors() + 1;
+
+    private final static DockerClientCache DEFAULT = new DockerClientCache(DockerClientFactory.getDefault(),
+            DEFAULT_IDLE_TIMEOUT);
+
+    private final LockHandler lock = LockHandler.newReentrantLock();
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private final DockerClientFactory clientFactory;
+    private final Duration idleTimeout;
+
+    private ScheduledExecutorService evictionExecutor;
+    private boolean disposed = false;
+
+    /**
+     * Creates a new cache instance.
+     *
+     * @param clientFactory the factory to be used to create new clients
+     * @param idleTimeout   the duration after which an unreferenced client will be closed
+     *
+     * @throws NullPointerException     if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code idleTimeout} is negative
+     */
+    public DockerClientCache(@Nonnull DockerClientFactory clientFactory, @Nonnull Duration idleTimeout) {
+        this.clientFactory = DockerCloudUtils.requireNonNull(clientFactory, "Client factory cannot be null.");
+        this.idleTimeout = DockerCloudUtils.requireNonNull(idleTimeout, "Idle timeout cannot be null.");
+        if (idleTimeout.isNegative()) {
+            throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeout);
+        }
+        clientFactory.addVersionRejectionListener(this::onVersionRejected);
+    }
+
+    /**
+     * Gets the cache instance shared by the plugin.
+     *
+     * @return the shared cache
+     */
+    @Nonnull
+    public static DockerClientCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Acquires a lease on a shared client matching the given configuration. If no such client is available, a new one
+     * will be created with API version negotiation enabled. Closing the returned client will release the lease.
+     *
+     * @param config the client configuration
+     *
+     * @return the leased client
+     *
+     * @throws NullPointerException  if {@code config} is {@code null}
+     * @throws DockerClientException if creating the client failed
+     * @see DockerClientFactory#createClientWithAPINegotiation(DockerClientConfig)
+     */
+    @Nonnull
+    public DockerClient acquire(@Nonnull DockerClientConfig config) {
+        DockerCloudUtils.requireNonNull(config, "Client configuration cannot be null.");
+
+        DockerClientConfig sharedConfig = sharedConfig(config);
+        Key key = new Key(sharedConfig);
+
+        Entry entry = lock.call(() -> {
+            Entry existing = entries.get(key);
+            if (existing == null) {
+                existing = new Entry();
+                entries.put(key, existing);
+            }
+            existing.refCount++;
+            return existing;
+        });
+
+        try {
+            resolve(key, entry);
+        } catch (Throwable t) {
+            // Only keep the entry if some client has been created for it.
+            boolean discarded = lock.call(() -> {
+                if (entry.refCount == 1 && entry.stale && entry.retiredClients.isEmpty()) {
+                    entries.remove(key, entry);
+                    return true;
+                }
+                return false;
+            });
+            if (!discarded) {
+                release(key, entry);
+            }
+            throw t;
+        }
+
+        return new SharedDockerClient(() -> resolve(key, entry), () -> release(key, entry));
+    }
+
+    /**
+     * Closes all the unreferenced clients that have been idle for longer than the idle timeout.
+     */
+    public void evictIdleClients() {
+        long now = System.nanoTime();
+        List<DockerClient> evicted = new ArrayList<>();
+        lock.run(() -> {
+            Iterator<Map.Entry<Key, Entry>> itr = entries.entrySet().iterator();
+            while (itr.hasNext()) {
+                Map.Entry<Key, Entry> mapEntry = itr.next();
+                Entry entry = mapEntry.getValue();
+                if (entry.refCount == 0 && now - entry.idleSince >= idleTimeout.toNanos()) {
+                    LOG.debug("Evicting idle client for " + mapEntry.getKey() + ".");
+                    itr.remove();
+                    evicted.addAll(entry.clients());
+                }
+            }
+        });
+
+        // Closing may be slow, do it outside of the lock.
+        evicted.forEach(DockerClient::close);
+    }
+
+    /**
+     * Disposes this cache. Unreferenced clients are closed immediately, and the other ones once their last lease is
+     * released. No eviction will be scheduled anymore.
+     */
+    public void dispose() {
+        List<DockerClient> idleClients = new ArrayList<>();
+        ScheduledExecutorService executor = lock.call(() -> {
+            disposed = true;
+            Iterator<Entry> itr = entries.values().iterator();
+            while (itr.hasNext()) {
+                Entry entry = itr.next();
+                if (entry.refCount == 0) {
+                    itr.remove();
+                    idleClients.addAll(entry.clients());
+                }
+            }
+            ScheduledExecutorService previous = evictionExecutor;
+            evictionExecutor = null;
+            return previous;
+        });
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+
+        idleClients.forEach(DockerClient::close);
+    }
+
+    /**
+     * Gets the number of clients currently held in this cache (referenced or not).
+     *
+     * @return the number of cached clients
+     */
+    public int size() {
+        return lock.call(entries::size);
+    }
+
+    // Gets the current client of an entry. The client will be created first if there is none yet, or if the daemon
+    // rejected the API version it negotiated. Concurrent invocations wait for the same client creation.
+    private DockerClient resolve(Key key, Entry entry) {
+        boolean[] creator = {false};
+        CompletableFuture<DockerClient> future = lock.call(() -> {
+            if (!entry.stale) {
+                return entry.client;
+            }
+            if (entry.client != null && entry.client.isDone() && !entry.client.isCompletedExceptionally()) {
+                // Requests may still be ongoing on the previous client (such as log streams), it will only be closed
+                // with the entry.
+                entry.retiredClients.add(entry.client.join());
+            }
+            entry.client = new CompletableFuture<>();
+            entry.stale = false;
+            creator[0] = true;
+            return entry.client;
+        });
+
+        if (creator[0]) {
+            DockerClient client;
+            try {
+                client = clientFactory.createClientWithAPINegotiation(key.config);
+            } catch (Throwable t) {
+                // Waiters must never be left blocked on the entry, the next invocation will try again.
+                lock.run(() -> entry.stale = true);
+                future.completeExceptionally(t);
+                throw t;
+            }
+            LOG.debug("New shared client created for " + key + ".");
+            future.complete(client);
+            return client;
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    // Marks the clients connected to the given daemon as stale, they will be re-created on next use.
+    private void onVersionRejected(URI instanceURI) {
+        lock.run(() -> entries.forEach((key, entry) -> {
+            // Clients still being created are left as is.
+            if (key.instanceURI.equals(instanceURI) && !entry.stale && entry.client.isDone()) {
+                LOG.info("API version rejected by the daemon, shared client for " + key + " will be re-created.");
+                entry.stale = true;
+            }
+        }));
+    }
+
+    private void release(Key key, Entry entry) {
+        List<DockerClient> disposedClients = new ArrayList<>();
+        boolean idle = lock.call(() -> {
+            assert entry.refCount > 0;
+            entry.refCount--;
+            if (entry.refCount == 0) {
+                if (disposed) {
+                    entries.remove(key, entry);
+                    disposedClients.addAll(entry.clients());
+                    return false;
+                }
+                entry.idleSince = System.nanoTime();
+                return true;
+            }
+            return false;
+        });
+
+        disposedClients.forEach(DockerClient::close);
+        if (idle) {
+            scheduleEviction();
+        }
+    }
+
+    private void scheduleEviction() {
+        ScheduledExecutorService executor = lock.call(() -> {
+            if (disposed) {
+                return null;
+            }
+            if (evictionExecutor == null) {
+                evictionExecutor = Executors.newSingleThreadScheduledExecutor(
+                        new NamedThreadFactory("DockerClientCacheEviction", true));
+            }
+            return evictionExecutor;
+        });
+
+        if (executor == null) {
+            return;
+        }
+
+        executor.schedule(this::evictIdleClients, idleTimeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static DockerClientConfig sharedConfig(DockerClientConfig config) {
+        return new DockerClientConfig(config.getInstanceURI(), config.getApiVersion())
+                .usingTls(config.isUsingTLS())
+                .verifyingHostname(config.isVerifyingHostname())
+                .connectionPoolSize(Math.max(config.getConnectionPoolSize(), MIN_SHARED_POOL_SIZE))
+                .connectTimeout(config.getConnectTimeout())
+                .transferTimeout(config.getTransferTimeout());
+    }
+
+    private static class Entry {
+        // Clients previously used by this entry, replaced after their API version was rejected.
+        final List<DockerClient> retiredClients = new ArrayList<>();
+        CompletableFuture<DockerClient> client = null;
+        boolean stale = true;
+        int refCount = 0;
+        long idleSince;
+
+        List<DockerClient> clients() {
+            List<DockerClient> clients = new ArrayList<>(retiredClients);
+            if (client != null && client.isDone() && !client.isCompletedExceptionally()) {
+                clients.add(client.join());
+            }
+            return clients;
+        }
+    }
+
+    private static class Key {
+        final DockerClientConfig config;
+        final URI instanceURI;
+        final boolean usingTLS;
+        final boolean verifyingHostname;
+        final DockerAPIVersion apiVersion;
+        final int connectionPoolSize;
+        final Duration connectTimeout;
+        final Duration transferTimeout;
+
+        Key(DockerClientConfig config) {
+            this.config = config;
+            instanceURI = config.getInstanceURI();
+            usingTLS = config.isUsingTLS();
+            verifyingHostname = config.isVerifyingHostname();
+            apiVersion = config.getApiVersion();
+            connectionPoolSize = config.getConnectionPoolSize();
+            connectTimeout = config.getConnectTimeout();
+            transferTimeout = config.getTransferTimeout();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return usingTLS == key.usingTLS && verifyingHostname == key.verifyingHostname &&
+                    connectionPoolSize == key.connectionPoolSize && instanceURI.equals(key.instanceURI) &&
+                    apiVersion.equals(key.apiVersion) && connectTimeout.equals(key.connectTimeout) &&
+                    transferTimeout.equals(key.transferTimeout);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(instanceURI, usingTLS, verifyingHostname, apiVersion, connectionPoolSize,
+                    connectTimeout, transferTimeout);
+        }
+
+        @Override
+        public String toString() {
+            return instanceURI + " (TLS: " + usingTLS + ", API: " + apiVersion + ", pool: " + connectionPoolSize +
+                    ", connect timeout: " + connectTimeout + ", transfer timeout: " + transferTimeout + ")";
+        }
+    }
+}
@@ -6,6 +6,13 @@ import run.var.teamcity.cloud.docker.util.Node;
 import run.var.teamcity.cloud.docker.util.NodeProcessingException;
 
 import javax.annotation.Nonnull;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Factory class to create {@link DefaultDockerClient} instances.
@@ -14,6 +21,41 @@ public abstract class DockerClientFactory {
 
     private final static Logger LOG = DockerCloudUtils.getLogger(DockerClientFactory.class);
 
+    /**
+     * Default duration for which a negotiated API version will be reused without querying the daemon.
+     */
+    public final static Duration DEFAULT_NEGOTIATION_TTL = Duration.ofMinutes(10);
+
+    private final static DockerClientFactory DEFAULT = new DefaultDockerClientFactory();
+
+    private final ConcurrentHashMap<NegotiationKey, NegotiatedVersion> negotiatedVersions = new ConcurrentHashMap<>();
+    private final List<Consumer<URI>> versionRejectionListeners = new CopyOnWriteArrayList<>();
+    private final Duration negotiationTtl;
+
+    /**
+     * Creates a new factory instance caching negotiated API versions for {@link #DEFAULT_NEGOTIATION_TTL}.
+     */
+    protected DockerClientFactory() {
+        this(DEFAULT_NEGOTIATION_TTL);
+    }
+
+    /**
+     * Creates a new factory instance.
+     *
+     * @param negotiationTtl the duration for which a negotiated API version will be reused, use {@code 0} to
+     *                       disable caching
+     *
+     * @throws NullPointerException     if {@code negotiationTtl} is {@code null}
+     * @throws IllegalArgumentException if {@code negotiationTtl} is negative
+     */
+    protected DockerClientFactory(@Nonnull Duration negotiationTtl) {
+        DockerCloudUtils.requireNonNull(negotiationTtl, "Negotiation TTL cannot be null.");
+        if (negotiationTtl.isNegative()) {
+            throw new IllegalArgumentException("Negotiation TTL must be positive: " + negotiationTtl);
+        }
+        this.negotiationTtl = negotiationTtl;
+    }
+
     /**
      * Gets the default factory instance.
      *
@@ -21,7 +63,7 @@ public abstract class DockerClientFactory {
      */
     @Nonnull
     public static DockerClientFactory getDefault() {
-        return new DefaultDockerClientFactory();
+        return DEFAULT;
     }
 
     /**
@@ -33,6 +75,11 @@ public abstract class DockerClientFactory {
      *     <if>If the target version is greater than the daemon current API version, or smaller than the minimal API
      *     version, then the current and minimal API versions will respectfully be used instead.</if>
      * </ul>
+     * <p>
+     * The outcome of the negotiation is cached per daemon URI and target version for a limited time, during which
+     * creating a client will not require any interaction with the daemon. A cached version will be discarded as soon
+     * as the daemon rejects it for a client using it.
+     * </p>
      *
      * @param config the client configuration
      *
@@ -49,12 +96,56 @@ public abstract class DockerClientFactory {
 
         DockerAPIVersion targetVersion = client.getApiVersion();
 
+        NegotiationKey key = new NegotiationKey(config.getInstanceURI(), targetVersion);
+        NegotiatedVersion negotiated = negotiatedVersions.get(key);
+
+        if (negotiated != null && !negotiated.isExpired()) {
+            LOG.debug("Reusing negotiated API version " + negotiated.version + " for " + key.instanceURI + ".");
+            client.setApiVersion(negotiated.version);
+            return client;
+        }
+
         negotiate(client, targetVersion);
 
+        if (!negotiationTtl.isZero()) {
+            negotiatedVersions.put(key, new NegotiatedVersion(client.getApiVersion(),
+                    System.nanoTime() + negotiationTtl.toNanos()));
+        }
+
         return client;
 
     }
 
+    /**
+     * Discards the cached API versions negotiated with the given daemon, and notifies the version rejection
+     * listeners. The next client creation with API negotiation for this daemon will query it again. Factory
+     * implementations should invoke this method when the daemon rejects the API version of a request.
+     *
+     * @param instanceURI the daemon URI
+     *
+     * @throws NullPointerException if {@code instanceURI} is {@code null}
+     */
+    public void invalidateNegotiatedVersion(@Nonnull URI instanceURI) {
+        DockerCloudUtils.requireNonNull(instanceURI, "Instance URI cannot be null.");
+        if (negotiatedVersions.keySet().removeIf(key -> key.instanceURI.equals(instanceURI))) {
+            LOG.info("Discarded negotiated API version for " + instanceURI + ".");
+        }
+        versionRejectionListeners.forEach(listener -> listener.accept(instanceURI));
+    }
+
+    /**
+     * Registers a listener to be notified with the daemon URI when a daemon rejects the API version of a client
+     * created by this factory. Clients already created remain unchanged: it is up to the listener to replace them.
+     *
+     * @param listener the listener
+     *
+     * @throws NullPointerException if {@code listener} is {@code null}
+     */
+    public void addVersionRejectionListener(@Nonnull Consumer<URI> listener) {
+        DockerCloudUtils.requireNonNull(listener, "Listener cannot be null.");
+        versionRejectionListeners.add(listener);
+    }
+
     private void negotiate(DockerClient client, DockerAPIVersion targetVersion) {
 
         boolean targetVersionRejected = false;
@@ -125,4 +216,45 @@ public abstract class DockerClientFactory {
      */
     @Nonnull
     public abstract DockerClient createClient(DockerClientConfig config);
+
+    private static class NegotiationKey {
+        final URI instanceURI;
+        final DockerAPIVersion targetVersion;
+
+        NegotiationKey(URI instanceURI, DockerAPIVersion targetVersion) {
+            this.instanceURI = instanceURI;
+            this.targetVersion = targetVersion;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof NegotiationKey)) {
+                return false;
+            }
+            NegotiationKey key = (NegotiationKey) obj;
+            return instanceURI.equals(key.instanceURI) && targetVersion.equals(key.targetVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(instanceURI, targetVersion);
+        }
+    }
+
+    private static class NegotiatedVersion {
+        final DockerAPIVersion version;
+        final long expirationNanos;
+
+        NegotiatedVersion(DockerAPIVersion version, long expirationNanos) {
+            this.version = version;
+            this.expirationNanos = expirationNanos;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expirationNanos >= 0;
+        }
+    }
 }
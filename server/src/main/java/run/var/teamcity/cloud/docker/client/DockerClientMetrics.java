@@ -0,0 +1,320 @@
+package run.var.teamcity.cloud.docker.client;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.EditableNode;
+import run.var.teamcity.cloud.docker.util.Node;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Collects per-endpoint statistics for invocations performed against Docker services.
+ * <p>
+ * Statistics are keyed by the daemon (or registry) the request was sent to, and by a templated request
+ * specification, where the API version prefix has been removed and resource identifiers replaced by a placeholder
+ * (for example: {@code POST /containers/{id}/start}). For each key, we track a coarse latency histogram (time
+ * elapsed until the response headers have been received), the number of bytes transmitted in both directions, and
+ * counters for the returned status codes and raised exceptions.
+ * </p>
+ * <p>
+ * This class is thread-safe. Recording a sample is lock-free.
+ * </p>
+ */
+public class DockerClientMetrics {
+
+    /**
+     * Upper bounds (inclusive, in milliseconds) of the latency histogram buckets. An implicit last bucket collects
+     * all samples above the highest bound.
+     */
+    static final long[] LATENCY_BUCKETS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    /**
+     * Identifier placeholder used in templated request specifications.
+     */
+    static final String ID_PLACEHOLDER = "{id}";
+
+    /**
+     * Maximum number of raw request specifications for which the templated form is cached. Raw paths embed resource
+     * identifiers, the cache is therefore cleared when this size is exceeded.
+     */
+    static final int MAX_CACHED_TEMPLATES = 1024;
+
+    private final static DockerClientMetrics DEFAULT = new DockerClientMetrics();
+
+    private final static Pattern API_VERSION_PREFIX_PTN = Pattern.compile("^/v\\d+\\.\\d+(?=/|$)");
+
+    private final static Set<String> RESOURCE_COLLECTIONS = new HashSet<>(Arrays.asList("containers", "images",
+            "services", "tasks", "nodes", "volumes", "networks", "exec", "secrets", "configs", "plugins"));
+
+    private final static Set<String> COLLECTION_OPERATIONS = new HashSet<>(Arrays.asList("json", "create", "prune",
+            "search", "load", "get", "build"));
+
+    private final static Set<String> RESOURCE_OPERATIONS = new HashSet<>(Arrays.asList("json", "start", "stop",
+            "restart", "kill", "logs", "attach", "update", "stats", "wait", "top", "changes", "export", "resize",
+            "pause", "unpause", "rename", "archive", "history", "push", "tag", "inspect", "exec"));
+
+    private final ConcurrentHashMap<Key, EndpointStats> stats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the metrics instance shared by all clients created by the plugin.
+     *
+     * @return the shared instance
+     */
+    @Nonnull
+    public static DockerClientMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param endpoint    the daemon or registry URI
+     * @param requestSpec the request specification (HTTP method and raw path)
+     * @param duration    the time elapsed until the response has been received
+     * @param statusCode  the returned HTTP status code
+     * @param bytesSent   the size of the request payload in bytes, or {@code -1} if unknown
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void recordResponse(@Nonnull String endpoint, @Nonnull String requestSpec, @Nonnull Duration duration,
+                               int statusCode, long bytesSent) {
+        DockerCloudUtils.requireNonNull(duration, "Duration cannot be null.");
+        EndpointStats endpointStats = getStats(endpoint, requestSpec);
+        endpointStats.recordLatency(duration);
+        endpointStats.statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+        if (bytesSent > 0) {
+            endpointStats.bytesSent.add(bytesSent);
+        }
+    }
+
+    /**
+     * Records a request that failed before any response could be obtained.
+     *
+     * @param endpoint    the daemon or registry URI
+     * @param requestSpec the request specification (HTTP method and raw path)
+     * @param duration    the time elapsed until the failure
+     * @param failure     the raised exception
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void recordFailure(@Nonnull String endpoint, @Nonnull String requestSpec, @Nonnull Duration duration,
+                              @Nonnull Throwable failure) {
+        DockerCloudUtils.requireNonNull(duration, "Duration cannot be null.");
+        DockerCloudUtils.requireNonNull(failure, "Failure cannot be null.");
+        EndpointStats endpointStats = getStats(endpoint, requestSpec);
+        endpointStats.recordLatency(duration);
+        Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+        endpointStats.exceptions.computeIfAbsent(cause.getClass().getSimpleName(), name -> new LongAdder())
+                .increment();
+    }
+
+    /**
+     * Records a number of bytes received as part of a response body.
+     *
+     * @param endpoint      the daemon or registry URI
+     * @param requestSpec   the request specification (HTTP method and raw path)
+     * @param bytesReceived the number of bytes received
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void recordBytesReceived(@Nonnull String endpoint, @Nonnull String requestSpec, long bytesReceived) {
+        if (bytesReceived > 0) {
+            getStats(endpoint, requestSpec).bytesReceived.add(bytesReceived);
+        }
+    }
+
+    /**
+     * Discards all collected statistics.
+     */
+    public void reset() {
+        stats.clear();
+        templates.clear();
+    }
+
+    /**
+     * Gets a snapshot of the collected statistics as a JSON structure. The returned node is an array of objects, one
+     * for each endpoint and request specification, sorted by endpoint and then by request specification.
+     *
+     * @return the statistics snapshot
+     */
+    @Nonnull
+    public Node toNode() {
+        List<Map.Entry<Key, EndpointStats>> entries = new ArrayList<>(stats.entrySet());
+        entries.sort((e1, e2) -> {
+            int cmp = e1.getKey().endpoint.compareTo(e2.getKey().endpoint);
+            return cmp != 0 ? cmp : e1.getKey().requestSpec.compareTo(e2.getKey().requestSpec);
+        });
+
+        EditableNode root = Node.EMPTY_ARRAY.editNode();
+        for (Map.Entry<Key, EndpointStats> entry : entries) {
+            Key key = entry.getKey();
+            EndpointStats endpointStats = entry.getValue();
+            EditableNode statsNode = root.addObject().
+                    put("endpoint", key.endpoint).
+                    put("request", key.requestSpec).
+                    put("count", endpointStats.count.sum()).
+                    put("totalLatencyMs", toMillis(endpointStats.totalLatencyNanos.sum())).
+                    put("maxLatencyMs", toMillis(endpointStats.maxLatencyNanos.get())).
+                    put("bytesSent", endpointStats.bytesSent.sum()).
+                    put("bytesReceived", endpointStats.bytesReceived.sum());
+            EditableNode histogram = statsNode.getOrCreateArray("latencyHistogram");
+            for (int i = 0; i < endpointStats.latencyBuckets.length(); i++) {
+                histogram.addObject().
+                        put("le", i < LATENCY_BUCKETS_MS.length ? String.valueOf(LATENCY_BUCKETS_MS[i]) : "+Inf").
+                        put("count", endpointStats.latencyBuckets.get(i));
+            }
+            EditableNode statusCodes = statsNode.getOrCreateObject("statusCodes");
+            endpointStats.statusCodes.forEach((code, count) -> statusCodes.put(String.valueOf(code), count.sum()));
+            EditableNode exceptions = statsNode.getOrCreateObject("exceptions");
+            endpointStats.exceptions.forEach((name, count) -> exceptions.put(name, count.sum()));
+        }
+        return root.saveNode();
+    }
+
+    /**
+     * Gets the templated form of a request specification: the API version prefix is removed and resource identifiers
+     * are replaced with {@value #ID_PLACEHOLDER}. This ensures that the number of distinct statistics keys remain
+     * bounded.
+     *
+     * @param requestSpec the request specification (HTTP method and raw path)
+     *
+     * @return the templated request specification
+     *
+     * @throws NullPointerException if {@code requestSpec} is {@code null}
+     */
+    @Nonnull
+    static String templateRequestSpec(@Nonnull String requestSpec) {
+        DockerCloudUtils.requireNonNull(requestSpec, "Request specification cannot be null.");
+
+        int sep = requestSpec.indexOf(' ');
+        String method = sep != -1 ? requestSpec.substring(0, sep + 1) : "";
+        String path = API_VERSION_PREFIX_PTN.matcher(requestSpec.substring(sep + 1)).replaceFirst("");
+
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+
+        if (!segments.isEmpty() && segments.get(0).equals("v2")) {
+            // Registry V2 API: repository names may contain slashes.
+            int opIndex = Math.max(segments.lastIndexOf("manifests"), Math.max(segments.lastIndexOf("blobs"),
+                    segments.lastIndexOf("tags")));
+            if (opIndex > 1) {
+                List<String> templated = new ArrayList<>();
+                templated.add("v2");
+                templated.add("{name}");
+                templated.add(segments.get(opIndex));
+                if (opIndex + 1 < segments.size()) {
+                    templated.add(segments.get(opIndex).equals("tags") ? segments.get(opIndex + 1) : "{reference}");
+                }
+                segments = templated;
+            }
+        } else if (segments.size() > 1 && RESOURCE_COLLECTIONS.contains(segments.get(0)) &&
+                !COLLECTION_OPERATIONS.contains(segments.get(1))) {
+            // Image names may contain slashes, consider everything up to the operation to be the identifier.
+            int last = segments.size() - 1;
+            int idEnd = last > 1 && RESOURCE_OPERATIONS.contains(segments.get(last)) ? last : segments.size();
+            List<String> templated = new ArrayList<>();
+            templated.add(segments.get(0));
+            templated.add(ID_PLACEHOLDER);
+            templated.addAll(segments.subList(idEnd, segments.size()));
+            segments = templated;
+        }
+
+        return method + "/" + String.join("/", segments);
+    }
+
+    private EndpointStats getStats(String endpoint, String requestSpec) {
+        DockerCloudUtils.requireNonNull(endpoint, "Endpoint cannot be null.");
+        DockerCloudUtils.requireNonNull(requestSpec, "Request specification cannot be null.");
+        return stats.computeIfAbsent(new Key(endpoint, getTemplate(requestSpec)), key -> new EndpointStats());
+    }
+
+    private String getTemplate(String requestSpec) {
+        String template = templates.get(requestSpec);
+        if (template == null) {
+            if (templates.size() >= MAX_CACHED_TEMPLATES) {
+                templates.clear();
+            }
+            template = templateRequestSpec(requestSpec);
+            templates.put(requestSpec, template);
+        }
+        return template;
+    }
+
+    /**
+     * Gets the number of raw request specifications for which the templated form is currently cached.
+     *
+     * @return the number of cached templates
+     */
+    int getCachedTemplateCount() {
+        return templates.size();
+    }
+
+    private static long toMillis(long nanos) {
+        return Duration.ofNanos(nanos).toMillis();
+    }
+
+    private static class Key {
+        final String endpoint;
+        final String requestSpec;
+
+        Key(String endpoint, String requestSpec) {
+            this.endpoint = endpoint;
+            this.requestSpec = requestSpec;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return endpoint.equals(key.endpoint) && requestSpec.equals(key.requestSpec);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(endpoint, requestSpec);
+        }
+    }
+
+    private static class EndpointStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalLatencyNanos = new LongAdder();
+        final AtomicLong maxLatencyNanos = new AtomicLong();
+        final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS_MS.length + 1);
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+        final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> exceptions = new ConcurrentHashMap<>();
+
+        void recordLatency(Duration duration) {
+            long nanos = duration.toNanos();
+            count.increment();
+            totalLatencyNanos.add(nanos);
+            maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+            long millis = duration.toMillis();
+            int bucket = Arrays.binarySearch(LATENCY_BUCKETS_MS, millis);
+            latencyBuckets.incrementAndGet(bucket >= 0 ? bucket : -bucket - 1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package run.var.teamcity.cloud.docker.client;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import javax.annotation.Nonnull;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * An input stream filter counting the number of bytes read. The total count is reported exactly once to a listener
+ * when the stream is closed.
+ * <p>
+ * This class is not thread-safe: it is expected to be consumed by a single thread at a time.
+ * </p>
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    private final LongConsumer closeListener;
+
+    private long count = 0;
+    private boolean reported = false;
+
+    /**
+     * Creates a new metered stream.
+     *
+     * @param in            the source stream
+     * @param closeListener the listener to which the byte count will be reported upon closure
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    MeteredInputStream(@Nonnull InputStream in, @Nonnull LongConsumer closeListener) {
+        super(DockerCloudUtils.requireNonNull(in, "Source stream cannot be null."));
+        this.closeListener = DockerCloudUtils.requireNonNull(closeListener, "Close listener cannot be null.");
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c != -1) {
+            count++;
+        }
+        return c;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            count += skipped;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Resetting the stream would corrupt the byte count.
+        return false;
+    }
+
+    /**
+     * Gets the number of bytes read so far.
+     *
+     * @return the number of bytes read
+     */
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!reported) {
+                reported = true;
+                closeListener.accept(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package run.var.teamcity.cloud.docker.client;
+
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.Node;
+
+import javax.annotation.Nonnull;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A JSON request entity counting the number of bytes written while it is streamed to the server, such that the
+ * payload size can be recorded without encoding it twice.
+ * <p>
+ * The entity is expected to be written by a single thread at a time. The byte count can be queried from any thread.
+ * </p>
+ */
+class MeteredJsonEntity implements StreamingOutput {
+
+    private final Node node;
+
+    private volatile long count = 0;
+
+    /**
+     * Creates a new metered entity.
+     *
+     * @param node the JSON payload
+     *
+     * @throws NullPointerException if {@code node} is {@code null}
+     */
+    MeteredJsonEntity(@Nonnull Node node) {
+        this.node = DockerCloudUtils.requireNonNull(node, "Node cannot be null.");
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        CountingOutputStream countingStream = new CountingOutputStream(output);
+        try {
+            node.writeTo(countingStream);
+            countingStream.flush();
+        } finally {
+            count += countingStream.count;
+        }
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     *
+     * @return the number of bytes written
+     */
+    long getCount() {
+        return count;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            // Do not write byte by byte as the base implementation does.
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -4,13 +4,12 @@ package run.var.teamcity.cloud.docker.client;
 import com.intellij.openapi.diagnostic.Logger;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 /**
  * {@link AbstractStreamHandler} supporting multiplexed {@link StdioInputStream}s.
@@ -19,9 +18,7 @@ public class MultiplexedStreamHandler extends AbstractStreamHandler {
 
     private static final Logger LOG = DockerCloudUtils.getLogger(MultiplexedStreamHandler.class);
 
-    private final static int STREAM_HEADER_SIZE = 8;
-
-    private final byte[] headerBuffer = new byte[STREAM_HEADER_SIZE];
+    private final byte[] headerBuffer = new byte[StdioFrameReader.STREAM_HEADER_SIZE];
 
     private final InputStream inputStream;
 
@@ -49,18 +46,8 @@ public class MultiplexedStreamHandler extends AbstractStreamHandler {
             assert headerOffset <= headerBuffer.length;
             if (headerOffset == headerBuffer.length) {
                 // Header buffer is full.
-                ByteBuffer bb = ByteBuffer.wrap(headerBuffer);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                StdioType type;
-                try {
-                    type = StdioType.fromStreamType(DockerCloudUtils.toUnsignedLong(bb.getInt()));
-                } catch (IllegalArgumentException e) {
-                    throw new IOException("Invalid stream content.", e);
-                }
-
-                bb.order(ByteOrder.BIG_ENDIAN);
-                long fragmentLength = DockerCloudUtils.toUnsignedLong(bb.getInt());
-                assert !bb.hasRemaining() : "Header not fully parsed.";
+                StdioType type = StdioFrameReader.decodeStreamType(headerBuffer, 0);
+                long fragmentLength = StdioFrameReader.decodeFrameLength(headerBuffer, 0);
 
                 CappedInputStream streamFragment = new CappedInputStream(inputStream,
                         fragmentLength);
@@ -75,4 +62,10 @@ public class MultiplexedStreamHandler extends AbstractStreamHandler {
         }
         return null;
     }
+
+    @Nonnull
+    @Override
+    public StdioFrameReader frameReader() {
+        return StdioFrameReader.demultiplexing(inputStream, StdioFrameReader.DEFAULT_BUFFER_SIZE);
+    }
 }
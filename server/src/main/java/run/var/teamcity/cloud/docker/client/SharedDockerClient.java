@@ -0,0 +1,232 @@
+package run.var.teamcity.cloud.docker.client;
+
+import run.var.teamcity.cloud.docker.StreamHandler;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.Node;
+import run.var.teamcity.cloud.docker.util.NodeStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A lease on a client shared through the {@link DockerClientCache}. All operations are delegated to the shared client
+ * except for {@link #close()}, which will release the lease instead, and {@link #setApiVersion(DockerAPIVersion)},
+ * which is not supported since it would affect all the leases. The shared client may be replaced during the lease
+ * lifetime, when the daemon rejects its API version.
+ */
+class SharedDockerClient implements DockerClient {
+
+    private final Supplier<DockerClient> clientSupplier;
+    private final Runnable releaseHandler;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Creates a new lease.
+     *
+     * @param clientSupplier the supplier of the current shared client, invoked for each operation
+     * @param releaseHandler the handler to be invoked when the lease is released
+     *
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    SharedDockerClient(@Nonnull Supplier<DockerClient> clientSupplier, @Nonnull Runnable releaseHandler) {
+        this.clientSupplier = DockerCloudUtils.requireNonNull(clientSupplier, "Client supplier cannot be null.");
+        this.releaseHandler = DockerCloudUtils.requireNonNull(releaseHandler, "Release handler cannot be null.");
+    }
+
+    @Nonnull
+    @Override
+    public DockerAPIVersion getApiVersion() {
+        return client().getApiVersion();
+    }
+
+    /**
+     * Not supported: the API version of a shared client is fixed once negotiated.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setApiVersion(@Nonnull DockerAPIVersion apiVersion) {
+        throw new UnsupportedOperationException("API version of a shared client cannot be changed.");
+    }
+
+    @Nonnull
+    @Override
+    public Node getVersion() {
+        return client().getVersion();
+    }
+
+    @Nonnull
+    @Override
+    public Node getInfo() {
+        return client().getInfo();
+    }
+
+    @Nonnull
+    @Override
+    public Node createContainer(@Nonnull Node containerSpec, @Nullable String name) {
+        return client().createContainer(containerSpec, name);
+    }
+
+    @Override
+    public void startContainer(@Nonnull String containerId) {
+        client().startContainer(containerId);
+    }
+
+    @Nonnull
+    @Override
+    public Node createService(@Nonnull Node serviceSpec) {
+        return client().createService(serviceSpec);
+    }
+
+    @Nonnull
+    @Override
+    public Node inspectService(@Nonnull String service) {
+        return client().inspectService(service);
+    }
+
+    @Override
+    public void updateService(@Nonnull String service, @Nonnull Node serviceSpec, @Nonnull BigInteger version) {
+        client().updateService(service, serviceSpec, version);
+    }
+
+    @Override
+    public void restartContainer(@Nonnull String containerId) {
+        client().restartContainer(containerId);
+    }
+
+    @Nonnull
+    @Override
+    public Node inspectContainer(@Nonnull String container) {
+        return client().inspectContainer(container);
+    }
+
+    @Nonnull
+    @Override
+    public Node inspectImage(@Nonnull String image) {
+        return client().inspectImage(image);
+    }
+
+    @Nonnull
+    @Override
+    public NodeStream createImage(@Nonnull String from, @Nullable String tag,
+                                  @Nonnull DockerRegistryCredentials credentials) {
+        return client().createImage(from, tag, credentials);
+    }
+
+    @Nonnull
+    @Override
+    public StreamHandler streamLogs(@Nonnull String containerId, int lineCount, @Nonnull Set<StdioType> stdioTypes,
+                                    boolean follow, boolean demuxStdio, @Nullable Instant since,
+                                    @Nullable Instant until) {
+        return client().streamLogs(containerId, lineCount, stdioTypes, follow, demuxStdio, since, until);
+    }
+
+    @Nonnull
+    @Override
+    public StreamHandler streamServiceLogs(@Nonnull String containerId, int lineCount,
+                                           @Nonnull Set<StdioType> stdioTypes, boolean follow, boolean demuxStream,
+                                           @Nullable Instant since, @Nullable Instant until) {
+        return client().streamServiceLogs(containerId, lineCount, stdioTypes, follow, demuxStream, since, until);
+    }
+
+    @Override
+    public void stopContainer(@Nonnull String container, Duration timeout) {
+        client().stopContainer(container, timeout);
+    }
+
+    @Override
+    public void removeContainer(@Nonnull String container, boolean removeVolumes, boolean force) {
+        client().removeContainer(container, removeVolumes, force);
+    }
+
+    @Override
+    public void removeService(@Nonnull String service) {
+        client().removeService(service);
+    }
+
+    @Nonnull
+    @Override
+    public Node listContainersWithLabel(@Nonnull Map<String, String> labelFilters) {
+        return client().listContainersWithLabel(labelFilters);
+    }
+
+    @Nonnull
+    @Override
+    public Node listServicesWithLabel(@Nonnull Map<String, String> labelFilters) {
+        return client().listServicesWithLabel(labelFilters);
+    }
+
+    @Nonnull
+    @Override
+    public Node listTasks(@Nonnull String serviceId) {
+        return client().listTasks(serviceId);
+    }
+
+    @Nonnull
+    @Override
+    public Node listRunningTasks() {
+        return client().listRunningTasks();
+    }
+
+    @Nonnull
+    @Override
+    public Node listNodes() {
+        return client().listNodes();
+    }
+
+    @Nonnull
+    @Override
+    public Node createVolume(@Nonnull Node volumeSpec) {
+        return client().createVolume(volumeSpec);
+    }
+
+    @Nonnull
+    @Override
+    public Node inspectVolume(@Nonnull String volume) {
+        return client().inspectVolume(volume);
+    }
+
+    @Nonnull
+    @Override
+    public Node listVolumesWithLabel(@Nonnull Map<String, String> labelFilters) {
+        return client().listVolumesWithLabel(labelFilters);
+    }
+
+    @Override
+    public void removeVolume(@Nonnull String volume, boolean force) {
+        client().removeVolume(volume, force);
+    }
+
+    @Nonnull
+    @Override
+    public Node getDiskUsage() {
+        return client().getDiskUsage();
+    }
+
+    @Nonnull
+    @Override
+    public Node getStats(@Nonnull String containerId) {
+        return client().getStats(containerId);
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            releaseHandler.run();
+        }
+    }
+
+    private DockerClient client() {
+        if (closed.get()) {
+            throw new IllegalStateException("Client has been closed.");
+        }
+        return clientSupplier.get();
+    }
+}
@@ -0,0 +1,294 @@
+package run.var.teamcity.cloud.docker.client;
+
+import com.intellij.openapi.diagnostic.Logger;
+import run.var.teamcity.cloud.docker.StreamHandler;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Low-level reader giving direct access to the output of a process as a sequence of frames, each frame being a slice
+ * of an internal buffer tagged with a {@link StdioType}.
+ * <p>
+ * Frames are exposed in place: after a successful invocation of {@link #next()}, the frame content is available in
+ * {@link #getBuffer()} from {@link #getOffset()} for {@link #getLength()} bytes. The buffer is reused, and its content
+ * is only valid until the next invocation of {@link #next()}. Large frames from the source stream may be delivered in
+ * several consecutive slices of the same type.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe and are meant to be used by a single consumer.
+ * </p>
+ */
+public abstract class StdioFrameReader {
+
+    /**
+     * Default size of the internal buffer.
+     */
+    public final static int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    final static int STREAM_HEADER_SIZE = 8;
+
+    final byte[] buffer;
+
+    int offset = 0;
+    int length = 0;
+    StdioType type = null;
+
+    private StdioFrameReader(int bufferSize) {
+        if (bufferSize < STREAM_HEADER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + STREAM_HEADER_SIZE + " bytes: " +
+                    bufferSize);
+        }
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Moves to the next frame.
+     *
+     * @return {@code true} if a new frame is available, {@code false} if the end of the process output has been
+     * reached
+     *
+     * @throws IOException if reading the source stream failed
+     */
+    public abstract boolean next() throws IOException;
+
+    /**
+     * Gets the type of the current frame.
+     *
+     * @return the frame type, or {@code null} if unknown (for example, when the process output is not multiplexed)
+     */
+    @Nullable
+    public StdioType getType() {
+        return type;
+    }
+
+    /**
+     * Gets the buffer holding the current frame.
+     *
+     * @return the buffer
+     */
+    @Nonnull
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets the offset of the current frame in the {@link #getBuffer() buffer}.
+     *
+     * @return the frame offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the length of the current frame.
+     *
+     * @return the frame length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Creates a new reader demultiplexing a stream using the framing protocol from the Docker remote API.
+     *
+     * @param multiplexedStream the multiplexed stream
+     * @param bufferSize        the size of the internal buffer
+     *
+     * @return the new reader
+     *
+     * @throws NullPointerException     if {@code multiplexedStream} is {@code null}
+     * @throws IllegalArgumentException if {@code bufferSize} is too small to hold a frame header
+     */
+    @Nonnull
+    public static StdioFrameReader demultiplexing(@Nonnull InputStream multiplexedStream, int bufferSize) {
+        DockerCloudUtils.requireNonNull(multiplexedStream, "Input stream cannot be null.");
+        return new DemuxReader(multiplexedStream, bufferSize);
+    }
+
+    /**
+     * Creates a new reader adapting the stream fragments from an arbitrary stream handler.
+     *
+     * @param streamHandler the stream handler
+     * @param bufferSize    the size of the internal buffer
+     *
+     * @return the new reader
+     *
+     * @throws NullPointerException     if {@code streamHandler} is {@code null}
+     * @throws IllegalArgumentException if {@code bufferSize} is too small to hold a frame header
+     */
+    @Nonnull
+    public static StdioFrameReader fromFragments(@Nonnull StreamHandler streamHandler, int bufferSize) {
+        DockerCloudUtils.requireNonNull(streamHandler, "Stream handler cannot be null.");
+        return new FragmentsReader(streamHandler, bufferSize);
+    }
+
+    /**
+     * Decodes the stream type from a frame header (unsigned little-endian integer).
+     *
+     * @param header the header buffer
+     * @param off    the header offset
+     *
+     * @return the decoded type
+     *
+     * @throws IOException if the stream type is not valid
+     */
+    static StdioType decodeStreamType(byte[] header, int off) throws IOException {
+        long streamType = (header[off] & 0xffL) |
+                (header[off + 1] & 0xffL) << 8 |
+                (header[off + 2] & 0xffL) << 16 |
+                (header[off + 3] & 0xffL) << 24;
+        try {
+            return StdioType.fromStreamType(streamType);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid stream content.", e);
+        }
+    }
+
+    /**
+     * Decodes the frame length from a frame header (unsigned big-endian integer).
+     *
+     * @param header the header buffer
+     * @param off    the header offset
+     *
+     * @return the decoded length
+     */
+    static long decodeFrameLength(byte[] header, int off) {
+        return (header[off + 4] & 0xffL) << 24 |
+                (header[off + 5] & 0xffL) << 16 |
+                (header[off + 6] & 0xffL) << 8 |
+                (header[off + 7] & 0xffL);
+    }
+
+    /**
+     * Demultiplexing reader. Headers are decoded directly from the internal buffer, and frame contents are delivered
+     * without copy. A single read from the source stream may therefore provide many small frames.
+     */
+    private static class DemuxReader extends StdioFrameReader {
+
+        private final static Logger LOG = DockerCloudUtils.getLogger(DemuxReader.class);
+
+        private final InputStream in;
+
+        // Bytes available in the buffer and not yet processed are located in [pos, limit).
+        private int pos = 0;
+        private int limit = 0;
+        private long remainingInFrame = 0;
+        private boolean eof = false;
+
+        DemuxReader(InputStream in, int bufferSize) {
+            super(bufferSize);
+            this.in = in;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (remainingInFrame == 0) {
+                if (!ensureAvailable(STREAM_HEADER_SIZE)) {
+                    if (pos != limit) {
+                        LOG.warn("Underflow while reading stream header.");
+                    }
+                    return endOfStream();
+                }
+                type = decodeStreamType(buffer, pos);
+                remainingInFrame = decodeFrameLength(buffer, pos);
+                pos += STREAM_HEADER_SIZE;
+            }
+
+            if (!ensureAvailable(1)) {
+                // Truncated frame.
+                return endOfStream();
+            }
+
+            int n = (int) Math.min(limit - pos, remainingInFrame);
+            offset = pos;
+            length = n;
+            pos += n;
+            remainingInFrame -= n;
+
+            return true;
+        }
+
+        private boolean ensureAvailable(int required) throws IOException {
+            assert required <= buffer.length;
+
+            if (limit - pos >= required) {
+                return true;
+            }
+
+            // Compact the buffer if there is not enough room left.
+            if (buffer.length - pos < required) {
+                int remaining = limit - pos;
+                System.arraycopy(buffer, pos, buffer, 0, remaining);
+                pos = 0;
+                limit = remaining;
+            } else if (pos == limit) {
+                pos = 0;
+                limit = 0;
+            }
+
+            while (!eof && limit - pos < required) {
+                int n = in.read(buffer, limit, buffer.length - limit);
+                if (n == -1) {
+                    eof = true;
+                } else {
+                    limit += n;
+                }
+            }
+
+            return limit - pos >= required;
+        }
+
+        private boolean endOfStream() {
+            offset = 0;
+            length = 0;
+            type = null;
+            return false;
+        }
+    }
+
+    /**
+     * Adapter for stream handlers only providing access to their content using fragment streams.
+     */
+    private static class FragmentsReader extends StdioFrameReader {
+
+        private final StreamHandler streamHandler;
+
+        private StdioInputStream fragment;
+
+        FragmentsReader(StreamHandler streamHandler, int bufferSize) {
+            super(bufferSize);
+            this.streamHandler = streamHandler;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (true) {
+                if (fragment == null) {
+                    fragment = streamHandler.getNextStreamFragment();
+                    if (fragment == null) {
+                        offset = 0;
+                        length = 0;
+                        type = null;
+                        return false;
+                    }
+                }
+
+                int n = fragment.read(buffer, 0, buffer.length);
+                if (n == -1) {
+                    fragment.close();
+                    fragment = null;
+                } else if (n > 0) {
+                    type = fragment.getType();
+                    offset = 0;
+                    length = n;
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -51,11 +51,27 @@ public enum StdioType {
      */
     @Nonnull
     static StdioType fromStreamType(long streamType) {
-        for (StdioType type : values()) {
-            if (type.streamType == streamType) {
+        // Called for each frame when demultiplexing streams: avoid cloning the values array.
+        if (streamType >= 0 && streamType < BY_STREAM_TYPE.length) {
+            StdioType type = BY_STREAM_TYPE[(int) streamType];
+            if (type != null) {
                 return type;
             }
         }
         throw new IllegalArgumentException("Invalid stream type: " + streamType);
     }
+
+    private final static StdioType[] BY_STREAM_TYPE;
+
+    static {
+        StdioType[] values = values();
+        long maxStreamType = 0;
+        for (StdioType type : values) {
+            maxStreamType = Math.max(maxStreamType, type.streamType);
+        }
+        BY_STREAM_TYPE = new StdioType[(int) maxStreamType + 1];
+        for (StdioType type : values) {
+            BY_STREAM_TYPE[(int) type.streamType] = type;
+        }
+    }
 }
@@ -2,6 +2,7 @@ package run.var.teamcity.cloud.docker.util;
 
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -11,6 +12,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -465,6 +468,22 @@ abstract class AbstractNode<N extends AbstractNode> {
         return node instanceof NullNode;
     }
 
+    /**
+     * Writes this node as JSON to the given stream, encoded in UTF-8. The stream is not closed.
+     *
+     * @param out the output stream
+     *
+     * @throws NullPointerException if {@code out} is {@code null}
+     * @throws IOException if writing to the stream failed
+     */
+    public void writeTo(@Nonnull OutputStream out) throws IOException {
+        DockerCloudUtils.requireNonNull(out, "Output stream cannot be null.");
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out).
+                disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            OBJECT_MAPPER.writeTree(generator, node);
+        }
+    }
+
     @Override
     public String toString() {
         return node.toString();
@@ -0,0 +1,185 @@
+package run.var.teamcity.cloud.docker.util;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed-size byte ring buffer backed by a (typically direct) {@link ByteBuffer}.
+ * <p>
+ * Bytes are appended at the head of the ring, the oldest bytes being overwritten once the capacity is exceeded. When
+ * using a direct buffer, the retained bytes are stored off-heap and do not contribute to the garbage collection
+ * pressure. The backing buffer is owned by the ring for its whole lifetime, and can be retrieved with
+ * {@link #release()} for reuse.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class DirectRingBuffer {
+
+    private final static int COPY_CHUNK_SIZE = 8 * 1024;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    // Next write position in the ring.
+    private int head = 0;
+    // Total count of bytes appended (including overwritten ones).
+    private long appended = 0;
+
+    /**
+     * Creates a new ring buffer.
+     *
+     * @param buffer the backing buffer, its whole capacity will be used
+     *
+     * @throws NullPointerException     if {@code buffer} is {@code null}
+     * @throws IllegalArgumentException if {@code buffer} has no capacity or is read-only
+     */
+    public DirectRingBuffer(@Nonnull ByteBuffer buffer) {
+        DockerCloudUtils.requireNonNull(buffer, "Buffer cannot be null.");
+        if (buffer.capacity() == 0) {
+            throw new IllegalArgumentException("Buffer capacity must be strictly positive.");
+        }
+        if (buffer.isReadOnly()) {
+            throw new IllegalArgumentException("Buffer cannot be read-only.");
+        }
+        this.buffer = buffer.duplicate();
+        this.buffer.clear();
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * Appends a chunk of bytes.
+     *
+     * @param b   the source buffer
+     * @param off the chunk offset
+     * @param len the chunk length
+     *
+     * @throws NullPointerException      if {@code b} is {@code null}
+     * @throws IndexOutOfBoundsException if the offset or length are out of the buffer bounds
+     */
+    public void append(@Nonnull byte[] b, int off, int len) {
+        DockerCloudUtils.requireNonNull(b, "Buffer cannot be null.");
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException("Invalid offset or length: " + off + ", " + len);
+        }
+
+        appended += len;
+
+        if (len >= capacity) {
+            // Only the last bytes fit.
+            buffer.clear();
+            buffer.put(b, off + len - capacity, capacity);
+            head = 0;
+            return;
+        }
+
+        int firstPart = Math.min(len, capacity - head);
+        buffer.position(head);
+        buffer.put(b, off, firstPart);
+        buffer.position(0);
+        buffer.put(b, off + firstPart, len - firstPart);
+        head = (head + len) % capacity;
+    }
+
+    /**
+     * Gets the capacity of this ring in bytes.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of bytes currently retained.
+     *
+     * @return the number of bytes retained
+     */
+    public int size() {
+        return (int) Math.min(appended, capacity);
+    }
+
+    /**
+     * Gets the number of bytes that were overwritten so far.
+     *
+     * @return the number of overwritten bytes
+     */
+    public long getDroppedBytes() {
+        return Math.max(0, appended - capacity);
+    }
+
+    /**
+     * Writes the retained bytes to the given stream, from the oldest to the most recent one.
+     *
+     * @param out the output stream
+     *
+     * @throws NullPointerException if {@code out} is {@code null}
+     * @throws IOException          if writing to the stream failed
+     */
+    public void writeTo(@Nonnull OutputStream out) throws IOException {
+        DockerCloudUtils.requireNonNull(out, "Output stream cannot be null.");
+
+        int size = size();
+        int start = appended > capacity ? head : 0;
+        int firstPart = Math.min(size, capacity - start);
+
+        byte[] chunk = new byte[Math.min(size, COPY_CHUNK_SIZE)];
+        copy(start, firstPart, chunk, out);
+        copy(0, size - firstPart, chunk, out);
+    }
+
+    /**
+     * Copies the retained bytes into a new heap array.
+     *
+     * @return the retained bytes
+     */
+    @Nonnull
+    public byte[] toByteArray() {
+        int size = size();
+        int start = appended > capacity ? head : 0;
+        int firstPart = Math.min(size, capacity - start);
+
+        byte[] bytes = new byte[size];
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(bytes, 0, firstPart);
+        view.position(0);
+        view.get(bytes, firstPart, size - firstPart);
+        return bytes;
+    }
+
+    /**
+     * Discards all retained bytes.
+     */
+    public void clear() {
+        head = 0;
+        appended = 0;
+    }
+
+    /**
+     * Discards all retained bytes and gives back the backing buffer. This ring must not be used anymore once
+     * released.
+     *
+     * @return the backing buffer
+     */
+    @Nonnull
+    public ByteBuffer release() {
+        clear();
+        buffer.clear();
+        return buffer;
+    }
+
+    private void copy(int from, int len, byte[] chunk, OutputStream out) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        view.position(from);
+        while (len > 0) {
+            int n = Math.min(len, chunk.length);
+            view.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+            len -= n;
+        }
+    }
+}
@@ -56,6 +56,18 @@ public final class DockerCloudUtils {
      * Docker label key to store a demo instance UUID.
      */
     public static final String TEST_INSTANCE_ID_LABEL = NS_PREFIX + "test_instance_id";
+    /**
+     * Docker label key to store the key of the cache held by a volume.
+     */
+    public static final String CACHE_KEY_LABEL = NS_PREFIX + "cache_key";
+    /**
+     * Docker label key to store the CPUs of the cpuset allocated to a container.
+     */
+    public static final String CPUSET_LABEL = NS_PREFIX + "cpuset";
+    /**
+     * Docker label key to flag a service whose task must be placed on the least loaded swarm node.
+     */
+    public static final String SPREAD_PLACEMENT_LABEL = NS_PREFIX + "spread_placement";
     /**
      * Docker cloud parameter: cloud type.
      */
@@ -88,6 +100,38 @@ public final class DockerCloudUtils {
      * Docker cloud parameter: Docker instance URI.
      */
     public static final String INSTANCE_URI = NS_PREFIX + "instance_uri";
+    /**
+     * Docker cloud parameter: URIs of additional Docker instances, one per line.
+     */
+    public static final String ADDITIONAL_INSTANCE_URIS = NS_PREFIX + "additional_instance_uris";
+    /**
+     * Docker cloud parameter: maximal number of CPUs allocated to the profile agents, possibly fractional.
+     */
+    public static final String CPU_BUDGET_PARAM = NS_PREFIX + "cpu_budget";
+    /**
+     * Docker cloud parameter: maximal memory allocated to the profile agents, in MiB.
+     */
+    public static final String MEMORY_BUDGET_PARAM = NS_PREFIX + "memory_budget";
+    /**
+     * Docker cloud parameter: delay between two collections of the agents resource usage, in seconds. Zero disables
+     * the collection.
+     */
+    public static final String STATS_SAMPLING_RATE_PARAM = NS_PREFIX + "stats_sampling_rate";
+    /**
+     * Docker cloud parameter: number of CPUs of the disjoint cpusets allocated to the agents. Empty to disable the
+     * allocation.
+     */
+    public static final String CPUSET_WIDTH_PARAM = NS_PREFIX + "cpuset_width";
+    /**
+     * Docker cloud parameter: number of NUMA nodes of the Docker hosts, for binding the cpusets to the memory of their
+     * node.
+     */
+    public static final String CPUSET_NUMA_NODES_PARAM = NS_PREFIX + "cpuset_numa_nodes";
+    /**
+     * Docker cloud parameter: disk space available to the cache volumes on each Docker host, in MiB. Empty for no
+     * limit.
+     */
+    public static final String CACHE_DISK_BUDGET_PARAM = NS_PREFIX + "cache_disk_budget";
     /**
      * Docker cloud parameter: use transport layer security.
      */
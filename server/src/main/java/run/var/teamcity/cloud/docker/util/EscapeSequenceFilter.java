@@ -0,0 +1,119 @@
+package run.var.teamcity.cloud.docker.util;
+
+import javax.annotation.Nonnull;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream filter stripping VT100 control sequences ({@code ESC [ params final}) from an UTF-8 encoded
+ * stream.
+ * <p>
+ * Escape sequences are pure ASCII and can therefore not be confused with the content of multi-byte UTF-8 sequences:
+ * the filtering works directly on the raw bytes, without decoding, and both escape sequences and codepoints may be
+ * freely split across writes. Runs of plain text are forwarded to the underlying stream in a single write.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class EscapeSequenceFilter extends FilterOutputStream {
+
+    private final static byte ESC = 0x1B;
+
+    private enum State {
+        TEXT,
+        ESCAPE,
+        CONTROL_SEQUENCE,
+        CONTROL_SEQUENCE_TRAILER
+    }
+
+    private State state = State.TEXT;
+
+    /**
+     * Creates a new filter.
+     *
+     * @param out the underlying output stream
+     *
+     * @throws NullPointerException if {@code out} is {@code null}
+     */
+    public EscapeSequenceFilter(@Nonnull OutputStream out) {
+        super(DockerCloudUtils.requireNonNull(out, "Output stream cannot be null."));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        DockerCloudUtils.requireNonNull(b, "Buffer cannot be null.");
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException("Invalid offset or length: " + off + ", " + len);
+        }
+
+        // Start of the current run of plain text bytes.
+        int textStart = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            byte c = b[i];
+            switch (state) {
+                case TEXT:
+                    if (c == ESC) {
+                        writeText(b, textStart, i - textStart);
+                        state = State.ESCAPE;
+                    }
+                    break;
+                case ESCAPE:
+                    if (c == '[') {
+                        state = State.CONTROL_SEQUENCE;
+                    } else {
+                        // Not a control sequence, keep the escape character as is.
+                        out.write(ESC);
+                        textStart = i;
+                        state = State.TEXT;
+                        // Reprocess this byte as plain text.
+                        i--;
+                    }
+                    break;
+                case CONTROL_SEQUENCE:
+                    if (!isParameter(c)) {
+                        // Final byte. Must also skip the continuation bytes if a non-ASCII codepoint was used.
+                        state = c < 0 ? State.CONTROL_SEQUENCE_TRAILER : State.TEXT;
+                        textStart = i + 1;
+                    }
+                    break;
+                case CONTROL_SEQUENCE_TRAILER:
+                    if (isContinuation(c)) {
+                        textStart = i + 1;
+                    } else {
+                        state = State.TEXT;
+                        textStart = i;
+                        i--;
+                    }
+                    break;
+                default:
+                    throw new AssertionError("Unexpected state: " + state);
+            }
+        }
+
+        if (state == State.TEXT) {
+            writeText(b, textStart, end - textStart);
+        }
+    }
+
+    private void writeText(byte[] b, int off, int len) throws IOException {
+        if (len > 0) {
+            out.write(b, off, len);
+        }
+    }
+
+    private static boolean isParameter(byte c) {
+        return (c >= '0' && c <= '9') || c == ';';
+    }
+
+    static boolean isContinuation(byte c) {
+        return (c & 0xC0) == 0x80;
+    }
+}
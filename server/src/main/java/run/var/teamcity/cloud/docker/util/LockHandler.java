@@ -7,18 +7,35 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 
 /**
  * A {@link Lock} wrapper providing additional lambda-friendly operations.
+ * <p>
+ * Handlers can be given a name, in which case the wait and hold times of the lambda-based operations are recorded by
+ * the {@link LockInstrumentation} when enabled. Explicit {@link #lock()}/{@link #unlock()} invocations are never
+ * instrumented since the hold is not lexically scoped.
+ * </p>
+ *
+ * @see ReadWriteLockHandler
+ * @see StampedLockHandler
  */
 public class LockHandler implements Lock {
 
-    private final ReentrantLock lock;
+    private final static long NOT_INSTRUMENTED = Long.MIN_VALUE;
 
-    private LockHandler(ReentrantLock lock) {
-        assert lock != null;
+    private final Lock lock;
+    private final BooleanSupplier lockedCheck;
+    private final BooleanSupplier heldCheck;
+    private final LockInstrumentation.Probe probe;
+
+    LockHandler(Lock lock, BooleanSupplier lockedCheck, BooleanSupplier heldCheck, LockInstrumentation.Probe probe) {
+        assert lock != null && lockedCheck != null && heldCheck != null;
         this.lock = lock;
+        this.lockedCheck = lockedCheck;
+        this.heldCheck = heldCheck;
+        this.probe = probe;
     }
 
     /**
@@ -30,11 +47,11 @@ public class LockHandler implements Lock {
      */
     public void run(@Nonnull Runnable runnable) {
         DockerCloudUtils.requireNonNull(runnable, "Runnable cannot be null.");
-        lock.lock();
+        long acquired = acquire();
         try {
             runnable.run();
         } finally {
-            lock.unlock();
+            release(acquired);
         }
     }
 
@@ -48,11 +65,11 @@ public class LockHandler implements Lock {
      */
     public <E extends Exception> void runChecked(@Nonnull CheckedRunnable<E> runnable) throws E {
         DockerCloudUtils.requireNonNull(runnable, "Runnable cannot be null.");
-        lock.lock();
+        long acquired = acquire();
         try {
             runnable.run();
         } finally {
-            lock.unlock();
+            release(acquired);
         }
     }
 
@@ -66,11 +83,11 @@ public class LockHandler implements Lock {
      */
     public void runInterruptibly(@Nonnull Runnable runnable) throws InterruptedException {
         DockerCloudUtils.requireNonNull(runnable, "Runnable cannot be null.");
-        lock.lockInterruptibly();
+        long acquired = acquireInterruptibly();
         try {
             runnable.run();
         } finally {
-            lock.unlock();
+            release(acquired);
         }
     }
 
@@ -85,11 +102,11 @@ public class LockHandler implements Lock {
      */
     public <U> U call(@Nonnull Supplier<U> supplier) {
         DockerCloudUtils.requireNonNull(supplier, "Supplier cannot be null.");
-        lock.lock();
+        long acquired = acquire();
         try {
             return supplier.get();
         } finally {
-            lock.unlock();
+            release(acquired);
         }
     }
 
@@ -105,11 +122,11 @@ public class LockHandler implements Lock {
      */
     public <U, E extends Exception> U callChecked(CheckedSupplier<U,E> supplier) throws E {
         DockerCloudUtils.requireNonNull(supplier, "Supplier cannot be null.");
-        lock.lock();
+        long acquired = acquire();
         try {
             return supplier.get();
         } finally {
-            lock.unlock();
+            release(acquired);
         }
     }
 
@@ -125,11 +142,11 @@ public class LockHandler implements Lock {
      */
     public <U> U callInterruptibly(Supplier<U> supplier) throws InterruptedException {
         DockerCloudUtils.requireNonNull(supplier, "Supplier cannot be null.");
-        lock.lockInterruptibly();
+        long acquired = acquireInterruptibly();
         try {
             return supplier.get();
         } finally {
-            lock.unlock();
+            release(acquired);
         }
     }
 
@@ -139,7 +156,7 @@ public class LockHandler implements Lock {
      * @return {@code true} if the wrapped lock is locked
      */
     public boolean isLocked() {
-        return lock.isLocked();
+        return lockedCheck.getAsBoolean();
     }
 
     /**
@@ -148,7 +165,7 @@ public class LockHandler implements Lock {
      * @return {@code true} if the wrapped lock is held by the current thread
      */
     public boolean isHeldByCurrentThread() {
-        return lock.isHeldByCurrentThread();
+        return heldCheck.getAsBoolean();
     }
 
     /**
@@ -158,7 +175,30 @@ public class LockHandler implements Lock {
      */
     @Nonnull
     public static LockHandler newReentrantLock() {
-        return new LockHandler(new ReentrantLock());
+        ReentrantLock lock = new ReentrantLock();
+        return new LockHandler(lock, lock::isLocked, lock::isHeldByCurrentThread, null);
+    }
+
+    /**
+     * Creates a new named lock handler wrapping a {@link ReentrantLock}. Wait and hold times will be recorded under
+     * the given name by the {@linkplain LockInstrumentation#getDefault() default instrumentation}.
+     *
+     * @param name the lock name
+     *
+     * @return the new lock handler
+     *
+     * @throws NullPointerException if {@code name} is {@code null}
+     */
+    @Nonnull
+    public static LockHandler newReentrantLock(@Nonnull String name) {
+        return newReentrantLock(name, LockInstrumentation.getDefault());
+    }
+
+    @Nonnull
+    static LockHandler newReentrantLock(@Nonnull String name, @Nonnull LockInstrumentation instrumentation) {
+        DockerCloudUtils.requireNonNull(instrumentation, "Instrumentation cannot be null.");
+        ReentrantLock lock = new ReentrantLock();
+        return new LockHandler(lock, lock::isLocked, lock::isHeldByCurrentThread, instrumentation.probe(name));
     }
 
     @Override
@@ -178,7 +218,7 @@ public class LockHandler implements Lock {
 
     @Override
     public boolean tryLock(long time, @NotNull TimeUnit unit) throws InterruptedException {
-        return lock.tryLock();
+        return lock.tryLock(time, unit);
     }
 
     @Override
@@ -191,4 +231,42 @@ public class LockHandler implements Lock {
     public Condition newCondition() {
         return lock.newCondition();
     }
+
+    private long acquire() {
+        if (!isInstrumented()) {
+            lock.lock();
+            return NOT_INSTRUMENTED;
+        }
+        long waitStart = System.nanoTime();
+        lock.lock();
+        return acquired(waitStart);
+    }
+
+    private long acquireInterruptibly() throws InterruptedException {
+        if (!isInstrumented()) {
+            lock.lockInterruptibly();
+            return NOT_INSTRUMENTED;
+        }
+        long waitStart = System.nanoTime();
+        lock.lockInterruptibly();
+        return acquired(waitStart);
+    }
+
+    private boolean isInstrumented() {
+        // Nested acquisitions of a reentrant lock are accounted in the outermost one.
+        return probe != null && probe.isEnabled() && !heldCheck.getAsBoolean();
+    }
+
+    private long acquired(long waitStart) {
+        long acquired = System.nanoTime();
+        probe.recordWait(acquired - waitStart);
+        return acquired;
+    }
+
+    private void release(long acquired) {
+        lock.unlock();
+        if (acquired != NOT_INSTRUMENTED) {
+            probe.recordHold(System.nanoTime() - acquired);
+        }
+    }
 }
@@ -0,0 +1,222 @@
+package run.var.teamcity.cloud.docker.util;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects wait and hold time statistics for named locks.
+ * <p>
+ * Statistics are aggregated per lock name: all locks sharing a name (for example, the locks of all cloud images)
+ * contribute to the same entry. When a lock is held for longer than the configured threshold, a warning is logged
+ * along with the stack trace of the holding thread at release time, which points to the offending critical section.
+ * </p>
+ * <p>
+ * Instrumentation is disabled by default, and can be turned on at startup using the
+ * {@value #ENABLED_PROPERTY} system property. When disabled, the overhead on the lock operations is limited to a
+ * volatile read.
+ * </p>
+ * <p>
+ * This class is thread-safe. Recording a sample is lock-free.
+ * </p>
+ */
+public class LockInstrumentation {
+
+    /**
+     * System property to enable the default instrumentation.
+     */
+    public static final String ENABLED_PROPERTY = DockerCloudUtils.NS_PREFIX + "lock_instrumentation";
+
+    /**
+     * Default hold time above which a warning is logged.
+     */
+    public static final Duration DEFAULT_SLOW_HOLD_THRESHOLD = Duration.ofMillis(500);
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(LockInstrumentation.class);
+
+    private final static LockInstrumentation DEFAULT = new LockInstrumentation(Boolean.getBoolean(ENABLED_PROPERTY),
+            DEFAULT_SLOW_HOLD_THRESHOLD);
+
+    private final ConcurrentHashMap<String, LockStats> stats = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+    private volatile long slowHoldThresholdNanos;
+
+    /**
+     * Creates a new instrumentation instance.
+     *
+     * @param enabled           {@code true} if the instrumentation is initially enabled
+     * @param slowHoldThreshold the hold time above which a warning is logged
+     *
+     * @throws NullPointerException if {@code slowHoldThreshold} is {@code null}
+     * @throws IllegalArgumentException if {@code slowHoldThreshold} is negative
+     */
+    public LockInstrumentation(boolean enabled, @Nonnull Duration slowHoldThreshold) {
+        this.enabled = enabled;
+        setSlowHoldThreshold(slowHoldThreshold);
+    }
+
+    /**
+     * Gets the instrumentation instance used by the named lock handlers created by the plugin.
+     *
+     * @return the shared instance
+     */
+    @Nonnull
+    public static LockInstrumentation getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Checks if this instrumentation is enabled.
+     *
+     * @return {@code true} if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables this instrumentation. Already collected statistics are preserved.
+     *
+     * @param enabled {@code true} to enable the instrumentation
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Sets the hold time above which a warning is logged.
+     *
+     * @param slowHoldThreshold the threshold
+     *
+     * @throws NullPointerException if {@code slowHoldThreshold} is {@code null}
+     * @throws IllegalArgumentException if {@code slowHoldThreshold} is negative
+     */
+    public void setSlowHoldThreshold(@Nonnull Duration slowHoldThreshold) {
+        DockerCloudUtils.requireNonNull(slowHoldThreshold, "Threshold cannot be null.");
+        if (slowHoldThreshold.isNegative()) {
+            throw new IllegalArgumentException("Threshold cannot be negative: " + slowHoldThreshold);
+        }
+        this.slowHoldThresholdNanos = slowHoldThreshold.toNanos();
+    }
+
+    /**
+     * Discards all collected statistics.
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Gets a snapshot of the collected statistics as a JSON structure. The returned node is an array of objects, one
+     * for each lock name, sorted by name. Durations are expressed in microseconds.
+     *
+     * @return the statistics snapshot
+     */
+    @Nonnull
+    public Node toNode() {
+        List<Map.Entry<String, LockStats>> entries = new ArrayList<>(stats.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+
+        EditableNode root = Node.EMPTY_ARRAY.editNode();
+        for (Map.Entry<String, LockStats> entry : entries) {
+            LockStats lockStats = entry.getValue();
+            root.addObject().
+                    put("name", entry.getKey()).
+                    put("acquisitions", lockStats.acquisitions.sum()).
+                    put("totalWaitUs", toMicros(lockStats.totalWaitNanos.sum())).
+                    put("maxWaitUs", toMicros(lockStats.maxWaitNanos.get())).
+                    put("totalHoldUs", toMicros(lockStats.totalHoldNanos.sum())).
+                    put("maxHoldUs", toMicros(lockStats.maxHoldNanos.get())).
+                    put("slowHolds", lockStats.slowHolds.sum()).
+                    put("optimisticReads", lockStats.optimisticReads.sum()).
+                    put("optimisticReadFailures", lockStats.optimisticReadFailures.sum());
+        }
+        return root.saveNode();
+    }
+
+    /**
+     * Gets the probe to be used by a lock with the given name.
+     *
+     * @param name the lock name
+     *
+     * @return the probe
+     *
+     * @throws NullPointerException if {@code name} is {@code null}
+     */
+    @Nonnull
+    Probe probe(@Nonnull String name) {
+        DockerCloudUtils.requireNonNull(name, "Lock name cannot be null.");
+        return new Probe(name);
+    }
+
+    private LockStats getStats(String name) {
+        return stats.computeIfAbsent(name, key -> new LockStats());
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Records the samples of a named lock. Statistics are looked up for each sample so that resetting the
+     * instrumentation does not leave probes attached to discarded entries.
+     */
+    final class Probe {
+
+        private final String name;
+
+        private Probe(String name) {
+            this.name = name;
+        }
+
+        boolean isEnabled() {
+            return enabled;
+        }
+
+        void recordWait(long nanos) {
+            LockStats lockStats = getStats(name);
+            lockStats.acquisitions.increment();
+            lockStats.totalWaitNanos.add(nanos);
+            lockStats.maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        void recordHold(long nanos) {
+            LockStats lockStats = getStats(name);
+            lockStats.totalHoldNanos.add(nanos);
+            lockStats.maxHoldNanos.accumulateAndGet(nanos, Math::max);
+            if (nanos > slowHoldThresholdNanos) {
+                lockStats.slowHolds.increment();
+                LOG.warn("Lock " + name + " held for " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms by thread " +
+                        Thread.currentThread().getName() + ".", new Throwable("Lock holder stack trace"));
+            }
+        }
+
+        void recordOptimisticRead(boolean validated) {
+            LockStats lockStats = getStats(name);
+            lockStats.optimisticReads.increment();
+            if (!validated) {
+                lockStats.optimisticReadFailures.increment();
+            }
+        }
+    }
+
+    private static class LockStats {
+        final LongAdder acquisitions = new LongAdder();
+        final LongAdder totalWaitNanos = new LongAdder();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final LongAdder totalHoldNanos = new LongAdder();
+        final AtomicLong maxHoldNanos = new AtomicLong();
+        final LongAdder slowHolds = new LongAdder();
+        final LongAdder optimisticReads = new LongAdder();
+        final LongAdder optimisticReadFailures = new LongAdder();
+    }
+}
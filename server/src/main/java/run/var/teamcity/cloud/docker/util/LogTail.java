@@ -0,0 +1,169 @@
+package run.var.teamcity.cloud.docker.util;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Collects the tail of an UTF-8 encoded log stream in constant memory.
+ * <p>
+ * Raw chunks of the stream are submitted as they are received. VT100 escape sequences are stripped in the same pass
+ * (see {@link EscapeSequenceFilter}), and the remaining bytes are stored in a ring buffer of fixed capacity, older
+ * content being overwritten once the capacity is exceeded. Both escape sequences and codepoints may be freely split
+ * across chunks. Decoding only occurs when the tail is retrieved, leading bytes belonging to a codepoint that was
+ * partially overwritten are skipped. Malformed sequences are decoded using the replacement character.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class LogTail {
+
+    /**
+     * Default capacity in bytes.
+     */
+    public final static int DEFAULT_CAPACITY = 1024 * 1024;
+
+    private final byte[] ring;
+
+    // Next write position in the ring.
+    private int head = 0;
+    // Total count of bytes stored (including overwritten ones).
+    private long stored = 0;
+
+    private final OutputStream filter = new EscapeSequenceFilter(new OutputStream() {
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) {
+            store(b, off, len);
+        }
+    });
+
+    /**
+     * Creates a new log tail with the {@link #DEFAULT_CAPACITY default capacity}.
+     */
+    public LogTail() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new log tail.
+     *
+     * @param capacity the maximal number of bytes to be retained
+     *
+     * @throws IllegalArgumentException if {@code capacity} is smaller than 1
+     */
+    public LogTail(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be strictly positive: " + capacity);
+        }
+        ring = new byte[capacity];
+    }
+
+    /**
+     * Appends a chunk of the log stream.
+     *
+     * @param b   the source buffer
+     * @param off the chunk offset
+     * @param len the chunk length
+     *
+     * @throws NullPointerException      if {@code b} is {@code null}
+     * @throws IndexOutOfBoundsException if the offset or length are out of the buffer bounds
+     */
+    public void append(@Nonnull byte[] b, int off, int len) {
+        DockerCloudUtils.requireNonNull(b, "Buffer cannot be null.");
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException("Invalid offset or length: " + off + ", " + len);
+        }
+
+        try {
+            filter.write(b, off, len);
+        } catch (IOException e) {
+            // Cannot happen, storing into the ring never fails.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Gets the total number of bytes retained so far, including bytes that were overwritten. Stripped escape
+     * sequences are not accounted for.
+     *
+     * @return the total number of bytes
+     */
+    public long getTotalBytes() {
+        return stored;
+    }
+
+    /**
+     * Checks if the beginning of the log has been overwritten.
+     *
+     * @return {@code true} if the log has been truncated
+     */
+    public boolean isTruncated() {
+        return stored > ring.length;
+    }
+
+    /**
+     * Decodes the retained log tail.
+     *
+     * @return the log tail
+     */
+    @Nonnull
+    @Override
+    public String toString() {
+        int size = (int) Math.min(stored, ring.length);
+        int start = isTruncated() ? head : 0;
+
+        byte[] tail = new byte[size];
+        int firstPart = Math.min(size, ring.length - start);
+        System.arraycopy(ring, start, tail, 0, firstPart);
+        System.arraycopy(ring, 0, tail, firstPart, size - firstPart);
+
+        int off = 0;
+        if (isTruncated()) {
+            // Skip the remainder of a codepoint that was partially overwritten.
+            while (off < size && EscapeSequenceFilter.isContinuation(tail[off])) {
+                off++;
+            }
+        }
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try {
+            return decoder.decode(ByteBuffer.wrap(tail, off, size - off)).toString();
+        } catch (CharacterCodingException e) {
+            // Cannot happen with the replace action.
+            throw new AssertionError(e);
+        }
+    }
+
+    private void store(byte[] b, int off, int len) {
+        if (len <= 0) {
+            return;
+        }
+
+        stored += len;
+
+        if (len >= ring.length) {
+            // Only the last bytes fit.
+            System.arraycopy(b, off + len - ring.length, ring, 0, ring.length);
+            head = 0;
+            return;
+        }
+
+        int firstPart = Math.min(len, ring.length - head);
+        System.arraycopy(b, off, ring, head, firstPart);
+        System.arraycopy(b, off + firstPart, ring, 0, len - firstPart);
+        head = (head + len) % ring.length;
+    }
+}
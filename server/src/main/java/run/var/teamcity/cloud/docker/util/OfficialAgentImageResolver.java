@@ -41,7 +41,8 @@ public class OfficialAgentImageResolver implements DockerImageNameResolver {
 
     final static String LATEST = REPO + ":latest";
 
-    private final LockHandler lock = LockHandler.newReentrantLock();
+    private final ReadWriteLockHandler lock =
+            ReadWriteLockHandler.newReentrantReadWriteLock("OfficialAgentImageResolver");
     private final String version;
 
     private final DockerRegistryClientFactory registryClientFty;
@@ -64,13 +65,19 @@ public class OfficialAgentImageResolver implements DockerImageNameResolver {
     @Nonnull
     @Override
     public String resolve() {
-        return lock.call(() -> {
-            String imageTag = this.imageTag;
-            if (imageTag == null) {
-                imageTag = this.imageTag = performResolution();
+        // Once resolved, the image tag is never modified: concurrent resolutions can share the read lock.
+        String imageTag = lock.read().call(() -> this.imageTag);
+        if (imageTag != null) {
+            return imageTag;
+        }
+
+        return lock.write().call(() -> {
+            String resolvedTag = this.imageTag;
+            if (resolvedTag == null) {
+                resolvedTag = this.imageTag = performResolution();
             }
 
-            return imageTag;
+            return resolvedTag;
         });
     }
 
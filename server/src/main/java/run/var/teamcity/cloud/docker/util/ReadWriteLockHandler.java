@@ -0,0 +1,81 @@
+package run.var.teamcity.cloud.docker.util;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link ReentrantReadWriteLock} wrapper exposing its read and write locks as {@link LockHandler}s.
+ * <p>
+ * The usual restrictions of reentrant read/write locks apply: the write lock holder may acquire the read lock, but
+ * attempting to acquire the write lock while holding the read lock will deadlock.
+ * </p>
+ */
+public class ReadWriteLockHandler {
+
+    private final LockHandler readLock;
+    private final LockHandler writeLock;
+
+    private ReadWriteLockHandler(ReentrantReadWriteLock lock, LockInstrumentation.Probe readProbe,
+                                 LockInstrumentation.Probe writeProbe) {
+        assert lock != null;
+        readLock = new LockHandler(lock.readLock(), () -> lock.getReadLockCount() > 0,
+                () -> lock.getReadHoldCount() > 0, readProbe);
+        writeLock = new LockHandler(lock.writeLock(), lock::isWriteLocked, lock::isWriteLockedByCurrentThread,
+                writeProbe);
+    }
+
+    /**
+     * Gets the handler for the shared read lock.
+     *
+     * @return the read lock handler
+     */
+    @Nonnull
+    public LockHandler read() {
+        return readLock;
+    }
+
+    /**
+     * Gets the handler for the exclusive write lock.
+     *
+     * @return the write lock handler
+     */
+    @Nonnull
+    public LockHandler write() {
+        return writeLock;
+    }
+
+    /**
+     * Creates a new handler wrapping a non-fair {@link ReentrantReadWriteLock}.
+     *
+     * @return the new handler
+     */
+    @Nonnull
+    public static ReadWriteLockHandler newReentrantReadWriteLock() {
+        return new ReadWriteLockHandler(new ReentrantReadWriteLock(), null, null);
+    }
+
+    /**
+     * Creates a new named handler wrapping a non-fair {@link ReentrantReadWriteLock}. Wait and hold times will be
+     * recorded by the {@linkplain LockInstrumentation#getDefault() default instrumentation} under the given name,
+     * suffixed with {@code .read} or {@code .write}.
+     *
+     * @param name the lock name
+     *
+     * @return the new handler
+     *
+     * @throws NullPointerException if {@code name} is {@code null}
+     */
+    @Nonnull
+    public static ReadWriteLockHandler newReentrantReadWriteLock(@Nonnull String name) {
+        return newReentrantReadWriteLock(name, LockInstrumentation.getDefault());
+    }
+
+    @Nonnull
+    static ReadWriteLockHandler newReentrantReadWriteLock(@Nonnull String name,
+                                                          @Nonnull LockInstrumentation instrumentation) {
+        DockerCloudUtils.requireNonNull(name, "Lock name cannot be null.");
+        DockerCloudUtils.requireNonNull(instrumentation, "Instrumentation cannot be null.");
+        return new ReadWriteLockHandler(new ReentrantReadWriteLock(), instrumentation.probe(name + ".read"),
+                instrumentation.probe(name + ".write"));
+    }
+}
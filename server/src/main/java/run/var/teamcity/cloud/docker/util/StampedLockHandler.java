@@ -0,0 +1,251 @@
+package run.var.teamcity.cloud.docker.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * A {@link StampedLock} wrapper supporting optimistic reads, and exposing its read and write locks as
+ * {@link LockHandler}s.
+ * <p>
+ * Optimistic reads do not block and do not write to shared memory: they are best suited for short read-only
+ * sections over state that is rarely modified. The suppliers given to {@link #callOptimistic(Supplier)} may observe
+ * inconsistent state and must therefore be free of side effects. Note that, unlike the other handlers, the
+ * underlying lock is not reentrant and does not support conditions.
+ * </p>
+ */
+public class StampedLockHandler {
+
+    private final StampedLock lock = new StampedLock();
+    private final LockInstrumentation.Probe readProbe;
+    private final LockHandler readLock;
+    private final LockHandler writeLock;
+
+    private StampedLockHandler(LockInstrumentation.Probe readProbe, LockInstrumentation.Probe writeProbe) {
+        this.readProbe = readProbe;
+        ReadLockView readView = new ReadLockView(lock.asReadLock());
+        WriteLockView writeView = new WriteLockView(lock.asWriteLock());
+        readLock = new LockHandler(readView, lock::isReadLocked, readView::isHeldByCurrentThread, readProbe);
+        writeLock = new LockHandler(writeView, lock::isWriteLocked, writeView::isHeldByCurrentThread, writeProbe);
+    }
+
+    /**
+     * Invoke the specified value supplier in an optimistic read context. If a write occurred while the supplier was
+     * being evaluated, the supplier is invoked again while holding the read lock. If the current thread is holding the
+     * write lock, the supplier is invoked directly.
+     *
+     * @param supplier the side effect free value supplier
+     *
+     * @return the supplier value
+     *
+     * @throws NullPointerException if {@code supplier} is {@code null}
+     */
+    public <U> U callOptimistic(@Nonnull Supplier<U> supplier) {
+        DockerCloudUtils.requireNonNull(supplier, "Supplier cannot be null.");
+        if (writeLock.isHeldByCurrentThread()) {
+            return supplier.get();
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            U value;
+            try {
+                value = supplier.get();
+            } catch (RuntimeException e) {
+                // The supplier may have failed because of an inconsistent state.
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+                value = null;
+            }
+            if (lock.validate(stamp)) {
+                recordOptimisticRead(true);
+                return value;
+            }
+        }
+        recordOptimisticRead(false);
+        return readLock.call(supplier);
+    }
+
+    /**
+     * Gets the handler for the shared read lock.
+     *
+     * @return the read lock handler
+     */
+    @Nonnull
+    public LockHandler read() {
+        return readLock;
+    }
+
+    /**
+     * Gets the handler for the exclusive write lock.
+     *
+     * @return the write lock handler
+     */
+    @Nonnull
+    public LockHandler write() {
+        return writeLock;
+    }
+
+    /**
+     * Creates a new handler wrapping a {@link StampedLock}.
+     *
+     * @return the new handler
+     */
+    @Nonnull
+    public static StampedLockHandler newStampedLock() {
+        return new StampedLockHandler(null, null);
+    }
+
+    /**
+     * Creates a new named handler wrapping a {@link StampedLock}. Wait and hold times will be recorded by the
+     * {@linkplain LockInstrumentation#getDefault() default instrumentation} under the given name, suffixed with
+     * {@code .read} or {@code .write}. Optimistic reads and their validation failures are accounted in the read
+     * lock statistics.
+     *
+     * @param name the lock name
+     *
+     * @return the new handler
+     *
+     * @throws NullPointerException if {@code name} is {@code null}
+     */
+    @Nonnull
+    public static StampedLockHandler newStampedLock(@Nonnull String name) {
+        return newStampedLock(name, LockInstrumentation.getDefault());
+    }
+
+    @Nonnull
+    static StampedLockHandler newStampedLock(@Nonnull String name, @Nonnull LockInstrumentation instrumentation) {
+        DockerCloudUtils.requireNonNull(name, "Lock name cannot be null.");
+        DockerCloudUtils.requireNonNull(instrumentation, "Instrumentation cannot be null.");
+        return new StampedLockHandler(instrumentation.probe(name + ".read"), instrumentation.probe(name + ".write"));
+    }
+
+    private void recordOptimisticRead(boolean validated) {
+        if (readProbe != null && readProbe.isEnabled()) {
+            readProbe.recordOptimisticRead(validated);
+        }
+    }
+
+    /**
+     * Read lock view tracking the number of holds of each thread.
+     */
+    private static class ReadLockView extends LockView {
+
+        private final ThreadLocal<int[]> holdCount = ThreadLocal.withInitial(() -> new int[1]);
+
+        ReadLockView(Lock delegate) {
+            super(delegate);
+        }
+
+        @Override
+        void acquired() {
+            holdCount.get()[0]++;
+        }
+
+        @Override
+        void releasing() {
+            int[] count = holdCount.get();
+            if (count[0] == 0) {
+                throw new IllegalMonitorStateException("Read lock not held by current thread.");
+            }
+            count[0]--;
+        }
+
+        boolean isHeldByCurrentThread() {
+            return holdCount.get()[0] > 0;
+        }
+    }
+
+    /**
+     * Write lock view tracking the owning thread.
+     */
+    private static class WriteLockView extends LockView {
+
+        private volatile Thread owner;
+
+        WriteLockView(Lock delegate) {
+            super(delegate);
+        }
+
+        @Override
+        void acquired() {
+            owner = Thread.currentThread();
+        }
+
+        @Override
+        void releasing() {
+            if (owner != Thread.currentThread()) {
+                throw new IllegalMonitorStateException("Write lock not held by current thread.");
+            }
+            owner = null;
+        }
+
+        boolean isHeldByCurrentThread() {
+            return owner == Thread.currentThread();
+        }
+    }
+
+    /**
+     * Base class for the {@link StampedLock} views. The views keep track of their holders, which the stamped lock
+     * itself does not, and reject releases from threads not holding the lock.
+     */
+    private static abstract class LockView implements Lock {
+
+        private final Lock delegate;
+
+        LockView(Lock delegate) {
+            this.delegate = delegate;
+        }
+
+        abstract void acquired();
+
+        abstract void releasing();
+
+        @Override
+        public void lock() {
+            delegate.lock();
+            acquired();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            delegate.lockInterruptibly();
+            acquired();
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (delegate.tryLock()) {
+                acquired();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, @NotNull TimeUnit unit) throws InterruptedException {
+            if (delegate.tryLock(time, unit)) {
+                acquired();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            releasing();
+            delegate.unlock();
+        }
+
+        @NotNull
+        @Override
+        public Condition newCondition() {
+            return delegate.newCondition();
+        }
+    }
+}
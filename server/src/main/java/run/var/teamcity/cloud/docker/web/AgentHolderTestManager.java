@@ -3,8 +3,11 @@ package run.var.teamcity.cloud.docker.web;
 
 import run.var.teamcity.cloud.docker.DockerCloudClientConfig;
 import run.var.teamcity.cloud.docker.DockerImageConfig;
+import run.var.teamcity.cloud.docker.StreamHandler;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Instant;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -38,17 +41,22 @@ interface AgentHolderTestManager {
     void startTestContainer(@Nonnull UUID testUuid);
 
     /**
-     * Gets the agent holder logs for the given test UUID.
+     * Fetches the agent holder logs for the given test UUID within a time range. The logs are streamed from the daemon
+     * as they are consumed, the returned handler must be closed once done.
      *
      * @param testUuid the test UUID
+     * @param lineCount the maximal number of lines to fetch (counting from the end), or {@code -1} for all lines
+     * @param since only fetch the logs emitted from this instant (may be {@code null})
+     * @param until only fetch the logs emitted before this instant (may be {@code null})
      *
-     * @return the agent holder logs
+     * @return the stream handler to consume the logs
      *
      * @throws NullPointerException if {@code testUuid} is {@code null}
+     * @throws IllegalArgumentException if {@code lineCount} is invalid, or if {@code until} is before {@code since}
      * @throws ContainerTestException if an error prevented querying the agent holder logs
      */
     @Nonnull
-    String getLogs(@Nonnull UUID testUuid);
+    StreamHandler fetchLogs(@Nonnull UUID testUuid, int lineCount, @Nullable Instant since, @Nullable Instant until);
 
     /**
      * Dispose the test with the given UUID.
@@ -0,0 +1,125 @@
+package run.var.teamcity.cloud.docker.web;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+import jetbrains.buildServer.web.openapi.WebControllerManager;
+import jetbrains.buildServer.web.util.SessionUser;
+import org.springframework.web.servlet.ModelAndView;
+import run.var.teamcity.cloud.docker.AgentLogStore;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.EditableNode;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Spring controller giving access to the agent holder logs captured by the {@link AgentLogStore}. The Docker daemon
+ * is never involved: captured logs remain available after the agent holder has been destroyed.
+ * <p>
+ * A GET request with the {@code agentHolderId} parameter will stream the corresponding logs as plain text. A POST
+ * request will list the agent holders for which logs are available.
+ * </p>
+ */
+public class CapturedLogsController extends BaseFormJsonController {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(CapturedLogsController.class);
+
+    public static final String PATH = "captured-logs.html";
+
+    private final AgentLogStore logStore;
+
+    public CapturedLogsController(@Nonnull PluginDescriptor pluginDescriptor,
+                                  @Nonnull WebControllerManager manager,
+                                  @Nonnull AgentLogStore logStore) {
+        this.logStore = DockerCloudUtils.requireNonNull(logStore, "Log store cannot be null.");
+        manager.registerController(pluginDescriptor.getPluginResourcesPath(PATH), this);
+        manager.registerController("/app/docker-cloud/captured-logs", this);
+    }
+
+    @Override
+    protected ModelAndView doGet(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response) {
+        if (!WebUtils.isAuthorizedToViewDiagnostics(SessionUser.getUser(request))) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return null;
+        }
+
+        String agentHolderId = request.getParameter("agentHolderId");
+        if (agentHolderId == null || agentHolderId.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+
+        try {
+            // The status and content type must be set before the response gets committed: the response stream is
+            // only opened once logs are effectively available.
+            DeferredOutputStream out = new DeferredOutputStream(response);
+            if (logStore.writeLogs(agentHolderId, out)) {
+                out.flush();
+            } else {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            }
+        } catch (IOException e) {
+            // Can be a client disconnection.
+            LOG.info("Failed to stream captured logs.", e);
+        }
+
+        return null;
+    }
+
+    @Override
+    protected void doPost(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response,
+                          @Nonnull EditableNode responseNode) {
+        if (!WebUtils.isAuthorizedToViewDiagnostics(SessionUser.getUser(request))) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            responseNode.put("error", "Bad or missing user session");
+            return;
+        }
+
+        EditableNode agentHolders = responseNode.getOrCreateArray("agentHolders");
+        for (String agentHolderId : logStore.getAgentHolderIds()) {
+            agentHolders.add(agentHolderId);
+        }
+        responseNode.put("diskUsage", logStore.getDiskUsage());
+    }
+
+    /**
+     * Output stream opening the response stream on first write, or when flushed.
+     */
+    private static class DeferredOutputStream extends OutputStream {
+
+        private final HttpServletResponse response;
+        private OutputStream out;
+
+        DeferredOutputStream(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            open().write(b);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            open().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            open().flush();
+        }
+
+        private OutputStream open() throws IOException {
+            if (out == null) {
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType("text/plain;charset=UTF-8");
+                response.setHeader("Cache-Control", "no-cache");
+                out = response.getOutputStream();
+            }
+            return out;
+        }
+    }
+}
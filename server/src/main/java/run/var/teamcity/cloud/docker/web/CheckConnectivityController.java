@@ -5,6 +5,7 @@ import jetbrains.buildServer.web.openapi.WebControllerManager;
 import org.springframework.web.servlet.ModelAndView;
 import run.var.teamcity.cloud.docker.client.DockerAPIVersion;
 import run.var.teamcity.cloud.docker.client.DockerClient;
+import run.var.teamcity.cloud.docker.client.DockerClientCache;
 import run.var.teamcity.cloud.docker.client.DockerClientConfig;
 import run.var.teamcity.cloud.docker.client.DockerClientFactory;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
@@ -25,18 +26,25 @@ public class CheckConnectivityController extends BaseFormJsonController {
 
     public static final String PATH = "checkconnectivity.html";
 
-    private final DockerClientFactory dockerClientFactory;
+    private final DockerClientCache dockerClientCache;
 
 
     public CheckConnectivityController(@Nonnull PluginDescriptor pluginDescriptor,
                                        @Nonnull WebControllerManager manager) {
-        this(pluginDescriptor, manager, DockerClientFactory.getDefault());
+        this(pluginDescriptor, manager, DockerClientCache.getDefault());
     }
 
     CheckConnectivityController(@Nonnull PluginDescriptor pluginDescriptor,
                                 @Nonnull WebControllerManager manager,
                                 @Nonnull DockerClientFactory dockerClientFactory) {
-        this.dockerClientFactory = dockerClientFactory;
+        this(pluginDescriptor, manager, new DockerClientCache(dockerClientFactory,
+                DockerClientCache.DEFAULT_IDLE_TIMEOUT));
+    }
+
+    CheckConnectivityController(@Nonnull PluginDescriptor pluginDescriptor,
+                                @Nonnull WebControllerManager manager,
+                                @Nonnull DockerClientCache dockerClientCache) {
+        this.dockerClientCache = dockerClientCache;
         manager.registerController(pluginDescriptor.getPluginResourcesPath(PATH), this);
     }
 
@@ -63,19 +71,20 @@ public class CheckConnectivityController extends BaseFormJsonController {
                     .connectionPoolSize(1)
                     .connectTimeout(Duration.ofSeconds(20));
 
-            DockerClient client = dockerClientFactory.createClientWithAPINegotiation(dockerConfig);
+            try (DockerClient client = dockerClientCache.acquire(dockerConfig)) {
 
-            DockerAPIVersion effectiveApiVersion = client.getApiVersion();
+                DockerAPIVersion effectiveApiVersion = client.getApiVersion();
 
-            Node versionNode = client.getVersion();
-            Node infoNode = client.getInfo();
+                Node versionNode = client.getVersion();
+                Node infoNode = client.getInfo();
 
-            responseNode.put("version", versionNode);
+                responseNode.put("version", versionNode);
 
-            responseNode.put("info", infoNode);
-            responseNode.getOrCreateObject("meta")
-                    .put("serverTime", System.currentTimeMillis())
-                    .put("effectiveApiVersion", effectiveApiVersion.getVersionString());
+                responseNode.put("info", infoNode);
+                responseNode.getOrCreateObject("meta")
+                        .put("serverTime", System.currentTimeMillis())
+                        .put("effectiveApiVersion", effectiveApiVersion.getVersionString());
+            }
         } catch (Exception e) {
             error = e;
         }
@@ -12,8 +12,11 @@ import run.var.teamcity.cloud.docker.DockerCloudClientConfig;
 import run.var.teamcity.cloud.docker.DockerCloudClientConfigException;
 import run.var.teamcity.cloud.docker.DockerCloudSupportRegistry;
 import run.var.teamcity.cloud.docker.DockerImageConfig;
+import run.var.teamcity.cloud.docker.StreamHandler;
+import run.var.teamcity.cloud.docker.client.StdioFrameReader;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.EditableNode;
+import run.var.teamcity.cloud.docker.util.EscapeSequenceFilter;
 import run.var.teamcity.cloud.docker.util.Node;
 
 import javax.annotation.Nonnull;
@@ -21,7 +24,13 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
@@ -61,8 +70,80 @@ public class ContainerTestController extends BaseFormJsonController {
     }
 
 
+    /**
+     * Streams the logs of a test container as plain text. The logs are directly piped from the daemon to the
+     * response, without being buffered. Supported query parameters:
+     * <ul>
+     *     <li>{@code action}: must be {@code logs}</li>
+     *     <li>{@code testUuid}: the test UUID</li>
+     *     <li>{@code tail}: the number of lines to fetch counting from the end, or {@code all} (default)</li>
+     *     <li>{@code since}, {@code until}: the time range to fetch, either as ISO-8601 instants or UNIX timestamps
+     *     (optional)</li>
+     * </ul>
+     */
     @Override
     protected ModelAndView doGet(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response) {
+
+        if (!WebUtils.isAuthorizedToRunContainerTests(SessionUser.getUser(request))) {
+            sendErrorQuietly(response, HttpServletResponse.SC_UNAUTHORIZED, "Bad or missing user session");
+            return null;
+        }
+
+        String actionParam = request.getParameter("action");
+
+        if (!Action.LOGS.name().equalsIgnoreCase(actionParam)) {
+            sendErrorQuietly(response, HttpServletResponse.SC_BAD_REQUEST, "Bad action parameter: " + actionParam);
+            return null;
+        }
+
+        UUID testUuid = retrieveTestUuid(request, response);
+
+        if (testUuid == null) {
+            return null;
+        }
+
+        int lineCount;
+        Instant since;
+        Instant until;
+        try {
+            lineCount = parseLineCount(request.getParameter("tail"));
+            since = parseInstant(request.getParameter("since"));
+            until = parseInstant(request.getParameter("until"));
+        } catch (IllegalArgumentException e) {
+            sendErrorQuietly(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+
+        if (since != null && until != null && until.isBefore(since)) {
+            sendErrorQuietly(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid time range.");
+            return null;
+        }
+
+        StreamHandler streamHandler;
+        try {
+            streamHandler = testMgr.fetchLogs(testUuid, lineCount, since, until);
+        } catch (Exception e) {
+            LOG.warn("Failed to fetch logs.", e);
+            sendErrorQuietly(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to fetch logs.");
+            return null;
+        }
+
+        try (StreamHandler handler = streamHandler) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("text/plain;charset=UTF-8");
+            response.setHeader("Cache-Control", "no-cache");
+            // No content length: the response will use chunked transfer encoding.
+            OutputStream out = new EscapeSequenceFilter(response.getOutputStream());
+            StdioFrameReader frameReader = handler.frameReader();
+            while (frameReader.next()) {
+                out.write(frameReader.getBuffer(), frameReader.getOffset(), frameReader.getLength());
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Can be a client disconnection.
+            LOG.info("Failed to stream logs.", e);
+        }
+
         return null;
     }
 
@@ -90,6 +171,12 @@ public class ContainerTestController extends BaseFormJsonController {
             return;
         }
 
+        if (action == Action.LOGS) {
+            // Logs are streamed by the GET handler, and must never be buffered in a JSON response.
+            sendErrorQuietly(response, HttpServletResponse.SC_METHOD_NOT_ALLOWED,
+                    "Logs must be fetched with a GET request.");
+            return;
+        }
 
         if (action == Action.CREATE) {
             Map<String, String> params = DockerCloudUtils.extractTCPluginParams(request);
@@ -137,23 +224,14 @@ public class ContainerTestController extends BaseFormJsonController {
             return;
         }
 
-        String uuidParam = request.getParameter("testUuid");
-        UUID testUuid = DockerCloudUtils.tryParseAsUUID(uuidParam);
+        UUID testUuid = retrieveTestUuid(request, response);
 
         if (testUuid == null) {
-            sendErrorQuietly(response, HttpServletResponse.SC_BAD_REQUEST, "Bad request identifier: " + uuidParam);
             return;
         }
 
-        Optional<ContainerTestReference> testRefOpt = ContainerTestReference.retrieveFromHttpSession(
-                request.getSession(), testUuid);
-
-        if (!testRefOpt.isPresent()) {
-            sendErrorQuietly(response, HttpServletResponse.SC_BAD_REQUEST, "Bad or expired test uuid: " + testUuid);
-            return;
-        }
-
-        ContainerTestReference testRef = testRefOpt.get();
+        ContainerTestReference testRef = ContainerTestReference.retrieveFromHttpSession(request.getSession(),
+                testUuid).orElseThrow(IllegalStateException::new);
 
         if (action == Action.START) {
             testMgr.startTestContainer(testUuid);
@@ -173,11 +251,6 @@ public class ContainerTestController extends BaseFormJsonController {
             return;
         }
 
-        if (action == Action.LOGS) {
-            responseNode.put("logs", testMgr.getLogs(testUuid));
-            return;
-        }
-
         assert action == Action.CANCEL : "Unknown enum member: " + action;
 
         try {
@@ -187,6 +260,58 @@ public class ContainerTestController extends BaseFormJsonController {
         }
     }
 
+    private UUID retrieveTestUuid(HttpServletRequest request, HttpServletResponse response) {
+        String uuidParam = request.getParameter("testUuid");
+        UUID testUuid = DockerCloudUtils.tryParseAsUUID(uuidParam);
+
+        if (testUuid == null) {
+            sendErrorQuietly(response, HttpServletResponse.SC_BAD_REQUEST, "Bad request identifier: " + uuidParam);
+            return null;
+        }
+
+        if (!ContainerTestReference.retrieveFromHttpSession(request.getSession(), testUuid).isPresent()) {
+            sendErrorQuietly(response, HttpServletResponse.SC_BAD_REQUEST, "Bad or expired test uuid: " + testUuid);
+            return null;
+        }
+
+        return testUuid;
+    }
+
+    private static int parseLineCount(String tailParam) {
+        if (tailParam == null || tailParam.equalsIgnoreCase("all")) {
+            return -1;
+        }
+        try {
+            int lineCount = Integer.parseInt(tailParam);
+            if (lineCount > 0) {
+                return lineCount;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        throw new IllegalArgumentException("Bad tail parameter: " + tailParam);
+    }
+
+    private static Instant parseInstant(String param) {
+        if (param == null || param.isEmpty()) {
+            return null;
+        }
+        try {
+            return Instant.parse(param);
+        } catch (DateTimeParseException e) {
+            // Try as UNIX timestamp.
+        }
+        try {
+            BigDecimal timestamp = new BigDecimal(param);
+            BigDecimal seconds = timestamp.setScale(0, RoundingMode.FLOOR);
+            return Instant.ofEpochSecond(seconds.longValueExact(),
+                    timestamp.subtract(seconds).movePointRight(9).intValue());
+        } catch (ArithmeticException | NumberFormatException | DateTimeException e) {
+            // Handled below.
+        }
+        throw new IllegalArgumentException("Bad timestamp: " + param);
+    }
+
     private void sendErrorQuietly(HttpServletResponse response, int sc, String msg) {
         try {
             response.setStatus(sc);
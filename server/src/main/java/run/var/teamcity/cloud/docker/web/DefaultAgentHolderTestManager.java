@@ -13,16 +13,18 @@ import run.var.teamcity.cloud.docker.DockerClientFacade;
 import run.var.teamcity.cloud.docker.DockerCloudClientConfig;
 import run.var.teamcity.cloud.docker.DockerImageConfig;
 import run.var.teamcity.cloud.docker.DockerImageNameResolver;
+import run.var.teamcity.cloud.docker.StreamHandler;
 import run.var.teamcity.cloud.docker.client.DockerClientException;
 import run.var.teamcity.cloud.docker.client.DockerRegistryClientFactory;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
-import run.var.teamcity.cloud.docker.util.LockHandler;
+import run.var.teamcity.cloud.docker.util.ReadWriteLockHandler;
 import run.var.teamcity.cloud.docker.util.NamedThreadFactory;
 import run.var.teamcity.cloud.docker.util.OfficialAgentImageResolver;
 import run.var.teamcity.cloud.docker.util.ScheduledFutureWithRunnable;
 import run.var.teamcity.cloud.docker.util.WrappedRunnableScheduledFuture;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.net.URL;
 import java.time.Duration;
 import java.time.Instant;
@@ -40,7 +42,6 @@ import java.util.concurrent.RunnableScheduledFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 
 /**
  * Default {@link AgentHolderTestManager} implementation.
@@ -53,7 +54,8 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
     final static Duration CLEANUP_DEFAULT_TASK_RATE = Duration.ofSeconds(10);
     final static Duration TEST_DEFAULT_IDLE_TIME = Duration.ofMinutes(10);
 
-    private final LockHandler lock = LockHandler.newReentrantLock();
+    private final ReadWriteLockHandler lock =
+            ReadWriteLockHandler.newReentrantReadWriteLock("DefaultAgentHolderTestManager");
     private final Map<UUID, DefaultAgentHolderTestHandler> tests = new HashMap<>();
     private final DockerImageNameResolver imageNameResolver;
     private final Duration testMaxIdleTime;
@@ -134,11 +136,10 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
         test.setCurrentTaskFuture(schedule(testTask));
     }
 
-    private static final Pattern VT100_ESCAPE_PTN = Pattern.compile("\u001B\\[[\\d;]*[^\\d;]");
-
     @Nonnull
     @Override
-    public String getLogs(@Nonnull UUID testUuid) {
+    public StreamHandler fetchLogs(@Nonnull UUID testUuid, int lineCount, @Nullable Instant since,
+                                   @Nullable Instant until) {
         DockerCloudUtils.requireNonNull(testUuid, "Test UUID cannot be null.");
 
         DefaultAgentHolderTestHandler test = retrieveTestInstance(testUuid);
@@ -146,19 +147,17 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
         Optional<String> agentHolderId = test.getAgentHolderId();
 
         if (!agentHolderId.isPresent()) {
-            throw new ContainerTestException("Agent holdere not created.");
+            throw new ContainerTestException("Agent holder not created.");
         }
 
-        CharSequence logs = test.getDockerClientFacade().getLogs(agentHolderId.get());
-
-        return VT100_ESCAPE_PTN.matcher(logs).replaceAll("");
+        return test.getDockerClientFacade().fetchLogs(agentHolderId.get(), lineCount, since, until);
     }
 
     @Override
     public void dispose(@Nonnull UUID testUuid) {
         DockerCloudUtils.requireNonNull(testUuid, "Test UUID cannot be null.");
 
-        DefaultAgentHolderTestHandler test = lock.call(() -> tests.get(testUuid));
+        DefaultAgentHolderTestHandler test = lock.read().call(() -> tests.get(testUuid));
 
         if (test == null) {
             return;
@@ -186,7 +185,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
 
     private DefaultAgentHolderTestHandler retrieveTestInstance(UUID testUuid) {
 
-        DefaultAgentHolderTestHandler test = lock.call(() -> tests.get(testUuid));
+        DefaultAgentHolderTestHandler test = lock.read().call(() -> tests.get(testUuid));
 
         if (test == null) {
             throw new ContainerTestException("Bad or expired token: " + testUuid);
@@ -197,7 +196,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
 
     private void activate() {
         if (executorService == null) {
-            lock.run(() -> {
+            lock.write().run(() -> {
                 executorService = createScheduledExecutor();
                 executorService.scheduleWithFixedDelay(new CleanupTask(), cleanupRate.toNanos(), cleanupRate.toNanos(),
                         TimeUnit.NANOSECONDS);
@@ -207,7 +206,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
 
     private void passivate() {
         if (executorService != null) {
-            lock.run(() -> {
+            lock.write().run(() -> {
                 executorService.shutdownNow();
                 executorService = null;
             });
@@ -222,7 +221,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
         Optional<AgentHolderTestListener> statusListener;
         Optional<String> agentHolderId;
 
-        lock.run(() -> {
+        lock.write().run(() -> {
             tests.remove(test.getUuid());
 
             if (tests.isEmpty() && agentToRemove.isEmpty()) {
@@ -262,7 +261,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
     }
 
     private DefaultAgentHolderTestHandler newTestInstance(DockerCloudClientConfig clientConfig) {
-        return lock.call(() -> {
+        return lock.write().call(() -> {
             DefaultAgentHolderTestHandler test = DefaultAgentHolderTestHandler.newTestInstance(clientConfig);
 
             boolean duplicate = tests.put(test.getUuid(), test) != null;
@@ -324,7 +323,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
     }
 
     private <T extends AgentHolderTestTask> ScheduledFutureWithRunnable<T> schedule(T task) {
-        return lock.call(() -> {
+        return lock.write().call(() -> {
             if (executorService == null) {
                 activate();
             }
@@ -343,7 +342,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
 
             List<DefaultAgentHolderTestHandler> toDispose = new ArrayList<>();
 
-            lock.run(() -> {
+            lock.read().run(() -> {
                 for (DefaultAgentHolderTestHandler test : DefaultAgentHolderTestManager.this.tests.values()) {
                     if (test.getCurrentTaskFuture() != null) {
                         if (Duration.between(test.getLastInteraction(), Instant.now()).compareTo
@@ -376,7 +375,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
             UUID instanceUuid = DockerCloudUtils.tryParseAsUUID(uuidStr);
             if (instanceUuid != null) {
 
-                boolean removeAgent = lock.call(() -> {
+                boolean removeAgent = lock.write().call(() -> {
                     if (!tests.containsKey(instanceUuid)) {
                         if (agent.isRegistered()) {
                             agentToRemove.add(instanceUuid);
@@ -399,7 +398,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
             }
         }
 
-        lock.run(() -> {
+        lock.write().run(() -> {
             if (tests.isEmpty() && agentToRemove.isEmpty()) {
                 passivate();
             }
@@ -409,7 +408,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
 
     @Override
     public void dispose() {
-        lock.run(() -> {
+        lock.write().run(() -> {
             if (disposed) {
                 return;
             }
@@ -434,7 +433,7 @@ public class DefaultAgentHolderTestManager implements AgentHolderTestManager {
 
             if (testInstanceUuid != null) {
                 agent.setEnabled(false, null, "Docker cloud test instance.");
-                lock.run(() -> {
+                lock.write().run(() -> {
                     agentToRemove.add(testInstanceUuid);
                     activate();
                     DefaultAgentHolderTestHandler test = tests.get(testInstanceUuid);
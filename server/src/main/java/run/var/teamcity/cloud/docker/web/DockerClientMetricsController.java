@@ -0,0 +1,69 @@
+package run.var.teamcity.cloud.docker.web;
+
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+import jetbrains.buildServer.web.openapi.WebControllerManager;
+import jetbrains.buildServer.web.util.SessionUser;
+import org.springframework.web.servlet.ModelAndView;
+import run.var.teamcity.cloud.docker.client.DockerClientMetrics;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.EditableNode;
+import run.var.teamcity.cloud.docker.util.LockInstrumentation;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Spring controller exposing the Docker API invocation statistics, and the lock contention statistics when the
+ * {@linkplain LockInstrumentation lock instrumentation} is enabled, for diagnostic purpose. The statistics can be
+ * optionally reset by submitting the {@code reset} parameter.
+ */
+public class DockerClientMetricsController extends BaseFormJsonController {
+
+    public static final String PATH = "client-metrics.html";
+
+    private final DockerClientMetrics metrics;
+    private final LockInstrumentation lockInstrumentation;
+
+    public DockerClientMetricsController(@Nonnull PluginDescriptor pluginDescriptor,
+                                         @Nonnull WebControllerManager manager) {
+        this(pluginDescriptor, manager, DockerClientMetrics.getDefault(), LockInstrumentation.getDefault());
+    }
+
+    DockerClientMetricsController(@Nonnull PluginDescriptor pluginDescriptor,
+                                  @Nonnull WebControllerManager manager,
+                                  @Nonnull DockerClientMetrics metrics,
+                                  @Nonnull LockInstrumentation lockInstrumentation) {
+        this.metrics = DockerCloudUtils.requireNonNull(metrics, "Metrics cannot be null.");
+        this.lockInstrumentation = DockerCloudUtils.requireNonNull(lockInstrumentation,
+                "Lock instrumentation cannot be null.");
+        manager.registerController(pluginDescriptor.getPluginResourcesPath(PATH), this);
+        manager.registerController("/app/docker-cloud/client-metrics", this);
+    }
+
+    @Override
+    protected ModelAndView doGet(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response) {
+        // Nothing to do.
+        return null;
+    }
+
+    @Override
+    protected void doPost(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response,
+                          @Nonnull EditableNode responseNode) {
+        if (!WebUtils.isAuthorizedToViewDiagnostics(SessionUser.getUser(request))) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            responseNode.put("error", "Bad or missing user session");
+            return;
+        }
+
+        responseNode.put("serverTime", System.currentTimeMillis());
+        responseNode.put("endpoints", metrics.toNode());
+        responseNode.put("lockInstrumentation", lockInstrumentation.isEnabled());
+        responseNode.put("locks", lockInstrumentation.toNode());
+
+        if (Boolean.parseBoolean(request.getParameter("reset"))) {
+            metrics.reset();
+            lockInstrumentation.reset();
+        }
+    }
+}
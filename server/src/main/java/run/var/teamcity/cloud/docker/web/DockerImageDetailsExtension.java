@@ -8,7 +8,8 @@ import run.var.teamcity.cloud.docker.DockerImage;
 import javax.annotation.Nonnull;
 
 /**
- * {@link CloudImageDetailsExtensionBase} for {@link DockerImage}s.
+ * {@link CloudImageDetailsExtensionBase} for {@link DockerImage}s. Besides the agent holders, the details include the
+ * {@link DockerImage#getUsageStats() resource usage statistics} of the image and of each of its instances.
  */
 public class DockerImageDetailsExtension extends CloudImageDetailsExtensionBase<DockerImage> {
     public DockerImageDetailsExtension(@Nonnull PagePlaces pagePlaces, @Nonnull PluginDescriptor descr) {
@@ -0,0 +1,543 @@
+package run.var.teamcity.cloud.docker.web;
+
+import com.intellij.openapi.diagnostic.Logger;
+import run.var.teamcity.cloud.docker.DockerClientFacade;
+import run.var.teamcity.cloud.docker.StreamHandler;
+import run.var.teamcity.cloud.docker.client.StdioFrameReader;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.LockHandler;
+import run.var.teamcity.cloud.docker.util.NamedThreadFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.websocket.CloseReason;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static javax.websocket.CloseReason.CloseCodes.GOING_AWAY;
+import static javax.websocket.CloseReason.CloseCodes.NORMAL_CLOSURE;
+import static javax.websocket.CloseReason.CloseCodes.TRY_AGAIN_LATER;
+import static javax.websocket.CloseReason.CloseCodes.UNEXPECTED_CONDITION;
+
+/**
+ * Broadcasts the live logs of containers to any number of subscribers.
+ * <p>
+ * A single upstream log stream is opened per container, and shared by all of its subscribers. Received frames are
+ * decoded incrementally (UTF-8 codepoints may be split across frames), and coalesced over a short window before
+ * being dispatched. New subscribers first receive the tail of the logs already broadcast.
+ * </p>
+ * <p>
+ * Each subscriber has at most one send in flight. Text received in the meantime is queued, and subscribers whose
+ * queue grows beyond a fixed limit are considered to be too slow and are dropped: they can never stall the upstream
+ * stream or the other subscribers. The upstream stream is closed as soon as the last subscriber is gone. Subscribers
+ * are never invoked while holding the broadcaster lock.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+class LogsBroadcaster {
+
+    private final static Logger LOG = DockerCloudUtils.getLogger(LogsBroadcaster.class);
+
+    /**
+     * Default duration over which received frames are coalesced.
+     */
+    final static Duration DEFAULT_COALESCING_WINDOW = Duration.ofMillis(50);
+
+    /**
+     * Default size of the shared tail, in characters.
+     */
+    final static int DEFAULT_TAIL_SIZE = 64 * 1024;
+
+    /**
+     * Default maximal amount of text that can be queued for a single subscriber, in characters.
+     */
+    final static int DEFAULT_MAX_PENDING_SIZE = 256 * 1024;
+
+    private final LockHandler lock = LockHandler.newReentrantLock();
+    private final Map<String, Channel> channels = new HashMap<>();
+
+    private final ExecutorService upstreamExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final Duration coalescingWindow;
+    private final int tailSize;
+    private final int maxPendingSize;
+
+    // Guarded by lock.
+    private boolean disposed = false;
+
+    /**
+     * Creates a new broadcaster with default settings.
+     */
+    LogsBroadcaster() {
+        this(Executors.newCachedThreadPool(new NamedThreadFactory("DockerStreaming")),
+                Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("DockerStreamingDispatch")),
+                DEFAULT_COALESCING_WINDOW, DEFAULT_TAIL_SIZE, DEFAULT_MAX_PENDING_SIZE);
+    }
+
+    /**
+     * Creates a new broadcaster.
+     *
+     * @param upstreamExecutor the executor service to be used to consume the upstream log streams (one task per
+     *                         container)
+     * @param scheduler        the scheduler to be used to dispatch coalesced frames
+     * @param coalescingWindow the duration over which received frames are coalesced
+     * @param tailSize         the size of the shared tail, in characters
+     * @param maxPendingSize   the maximal amount of text that can be queued for a single subscriber, in characters
+     *
+     * @throws NullPointerException     if any argument is {@code null}
+     * @throws IllegalArgumentException if the coalescing window is negative, or if any size is not strictly positive
+     */
+    LogsBroadcaster(@Nonnull ExecutorService upstreamExecutor, @Nonnull ScheduledExecutorService scheduler,
+                    @Nonnull Duration coalescingWindow, int tailSize, int maxPendingSize) {
+        this.upstreamExecutor = DockerCloudUtils.requireNonNull(upstreamExecutor,
+                "Upstream executor cannot be null.");
+        this.scheduler = DockerCloudUtils.requireNonNull(scheduler, "Scheduler cannot be null.");
+        this.coalescingWindow = DockerCloudUtils.requireNonNull(coalescingWindow,
+                "Coalescing window cannot be null.");
+        if (coalescingWindow.isNegative()) {
+            throw new IllegalArgumentException("Coalescing window must be positive: " + coalescingWindow);
+        }
+        if (tailSize < 1 || maxPendingSize < 1) {
+            throw new IllegalArgumentException("Sizes must be strictly positive: " + tailSize + ", " +
+                    maxPendingSize);
+        }
+        this.tailSize = tailSize;
+        this.maxPendingSize = maxPendingSize;
+    }
+
+    /**
+     * Subscribes to the logs of the container associated with the given test.
+     *
+     * @param testRef    the container test reference
+     * @param subscriber the subscriber
+     *
+     * @return the subscription
+     *
+     * @throws NullPointerException     if any argument is {@code null}
+     * @throws IllegalArgumentException if no container is registered for this test
+     * @throws IllegalStateException    if this broadcaster is disposed
+     */
+    @Nonnull
+    Subscription subscribe(@Nonnull ContainerTestReference testRef, @Nonnull LogsSubscriber subscriber) {
+        DockerCloudUtils.requireNonNull(testRef, "Test reference cannot be null.");
+        DockerCloudUtils.requireNonNull(subscriber, "Subscriber cannot be null.");
+
+        String containerId = testRef.getContainerId().orElseThrow(() ->
+                new IllegalArgumentException("No container registered for test: " + testRef.getTestUuid()));
+
+        String key = testRef.getClientConfig().getInstanceURI() + " " + containerId;
+
+        List<Runnable> sends = new ArrayList<>();
+        Subscription subscription = lock.call(() -> {
+            if (disposed) {
+                throw new IllegalStateException("Broadcaster is disposed.");
+            }
+            Channel channel = channels.get(key);
+            if (channel == null) {
+                channel = new Channel(key, testRef, containerId);
+                channels.put(key, channel);
+                upstreamExecutor.submit(channel);
+            }
+            return channel.addSubscriber(subscriber, sends);
+        });
+        sends.forEach(Runnable::run);
+        return subscription;
+    }
+
+    /**
+     * Disposes this broadcaster. All the upstream log streams are closed, all the subscribers are closed, and the
+     * executor services are shut down. Has no effect if the broadcaster is already disposed.
+     */
+    void dispose() {
+        List<StreamHandler> streamHandlers = new ArrayList<>();
+        List<SubscriberState> subscribers = new ArrayList<>();
+        boolean alreadyDisposed = lock.call(() -> {
+            if (disposed) {
+                return true;
+            }
+            disposed = true;
+            for (Channel channel : new ArrayList<>(channels.values())) {
+                channel.close();
+                if (channel.streamHandler != null) {
+                    streamHandlers.add(channel.streamHandler);
+                }
+                for (SubscriberState subscriber : channel.subscribers) {
+                    subscriber.removed = true;
+                    subscriber.queue.setLength(0);
+                    subscribers.add(subscriber);
+                }
+            }
+            return false;
+        });
+
+        if (alreadyDisposed) {
+            return;
+        }
+
+        LOG.info("Disposing logs broadcaster, closing " + streamHandlers.size() + " upstream log streams.");
+
+        // Will abort the upstream consumers.
+        for (StreamHandler streamHandler : streamHandlers) {
+            try {
+                streamHandler.close();
+            } catch (Exception e) {
+                LOG.debug("Failed to close upstream log stream.", e);
+            }
+        }
+        CloseReason reason = new CloseReason(GOING_AWAY, "Server shutting down.");
+        for (SubscriberState subscriber : subscribers) {
+            try {
+                subscriber.subscriber.close(reason);
+            } catch (Exception e) {
+                LOG.debug("Failed to close logs subscriber.", e);
+            }
+        }
+
+        upstreamExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Gets the number of upstream log streams currently being broadcast.
+     *
+     * @return the number of upstream streams
+     */
+    int getChannelCount() {
+        return lock.call(channels::size);
+    }
+
+    private void closeSubscriber(SubscriberState subscriber, CloseReason reason) {
+        // Closing a subscriber may block, never do it while holding the lock.
+        execute(() -> {
+            try {
+                subscriber.subscriber.close(reason);
+            } catch (Exception e) {
+                LOG.debug("Failed to close logs subscriber.", e);
+            }
+        });
+    }
+
+    private void execute(Runnable task) {
+        try {
+            scheduler.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Disposed in the meantime, all the streams and subscribers are closed on disposal.
+            LOG.debug("Broadcaster disposed, task discarded.", e);
+        }
+    }
+
+    /**
+     * Receiver of broadcast logs.
+     */
+    interface LogsSubscriber {
+
+        /**
+         * Sends a chunk of text asynchronously. The completion handler must be invoked exactly once, with the failure
+         * cause if the sending failed, or with {@code null} otherwise.
+         *
+         * @param text              the text to be sent
+         * @param completionHandler the completion handler
+         */
+        void send(@Nonnull String text, @Nonnull Consumer<Throwable> completionHandler);
+
+        /**
+         * Closes this subscriber. No more text will be sent.
+         *
+         * @param reason the closing reason
+         */
+        void close(@Nonnull CloseReason reason);
+    }
+
+    /**
+     * Handle to a subscription.
+     */
+    interface Subscription {
+
+        /**
+         * Cancels this subscription. The subscriber will not be closed.
+         */
+        void cancel();
+    }
+
+    private class Channel implements Runnable {
+
+        final String key;
+        final ContainerTestReference testRef;
+        final String containerId;
+
+        // All fields below are guarded by the broadcaster lock.
+        final List<SubscriberState> subscribers = new ArrayList<>();
+        final Deque<String> tail = new ArrayDeque<>();
+        final StringBuilder pending = new StringBuilder();
+        int tailLength = 0;
+        boolean flushScheduled = false;
+        boolean closed = false;
+        StreamHandler streamHandler;
+
+        Channel(String key, ContainerTestReference testRef, String containerId) {
+            this.key = key;
+            this.testRef = testRef;
+            this.containerId = containerId;
+        }
+
+        @Override
+        public void run() {
+            CloseReason closeReason;
+            try (DockerClientFacade facade = testRef.getCloudSupport().createClientFacade(testRef.getClientConfig())) {
+                try (StreamHandler streamHandler = facade.streamLogs(containerId)) {
+                    boolean alreadyClosed = lock.call(() -> {
+                        this.streamHandler = streamHandler;
+                        return closed;
+                    });
+                    if (!alreadyClosed) {
+                        consume(streamHandler.frameReader());
+                    }
+                }
+                closeReason = new CloseReason(NORMAL_CLOSURE, "Connection with container lost.");
+            } catch (IOException e) {
+                closeReason = new CloseReason(UNEXPECTED_CONDITION, "Connection with server failed:\n" +
+                        DockerCloudUtils.getStackTrace(e));
+            } catch (Exception e) {
+                if (!lock.call(() -> closed)) {
+                    LOG.error("Failed to stream container logs.", e);
+                }
+                closeReason = new CloseReason(UNEXPECTED_CONDITION, "Failed to stream container logs.");
+            }
+
+            CloseReason finalCloseReason = closeReason;
+            List<Runnable> sends = new ArrayList<>();
+            List<SubscriberState> remaining = lock.call(() -> {
+                if (closed) {
+                    // Stream closed on purpose.
+                    return new ArrayList<SubscriberState>();
+                }
+                flush(sends);
+                close();
+                return new ArrayList<>(subscribers);
+            });
+
+            sends.forEach(Runnable::run);
+
+            // Queued text will be discarded, but the whole logs are available anyway.
+            remaining.forEach(subscriber -> closeSubscriber(subscriber, finalCloseReason));
+        }
+
+        private void consume(StdioFrameReader frameReader) throws IOException {
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            // Frames are at most as large as the reader buffer. Keep some space for an incomplete codepoint.
+            ByteBuffer input = ByteBuffer.allocate(frameReader.getBuffer().length + 4);
+            // Decoding UTF-8 never produces more chars than bytes.
+            CharBuffer output = CharBuffer.allocate(input.capacity());
+            while (frameReader.next()) {
+                input.put(frameReader.getBuffer(), frameReader.getOffset(), frameReader.getLength());
+                input.flip();
+                decoder.decode(input, output, false);
+                input.compact();
+                publish(output);
+            }
+            // End of stream: a trailing incomplete codepoint gets replaced.
+            input.flip();
+            decoder.decode(input, output, true);
+            decoder.flush(output);
+            publish(output);
+        }
+
+        private void publish(CharBuffer output) {
+            output.flip();
+            if (output.hasRemaining()) {
+                String text = output.toString();
+                lock.run(() -> {
+                    if (closed) {
+                        return;
+                    }
+                    pending.append(text);
+                    if (!flushScheduled) {
+                        flushScheduled = true;
+                        try {
+                            scheduler.schedule(this::scheduledFlush, coalescingWindow.toNanos(),
+                                    TimeUnit.NANOSECONDS);
+                        } catch (RejectedExecutionException e) {
+                            LOG.debug("Broadcaster disposed, flush discarded.", e);
+                        }
+                    }
+                });
+            }
+            output.clear();
+        }
+
+        private void scheduledFlush() {
+            List<Runnable> sends = new ArrayList<>();
+            lock.run(() -> flush(sends));
+            sends.forEach(Runnable::run);
+        }
+
+        // Sends to be performed once the lock is released are added to the given list.
+        private void flush(List<Runnable> sends) {
+            assert lock.isHeldByCurrentThread();
+
+            flushScheduled = false;
+            if (pending.length() == 0 || closed) {
+                return;
+            }
+
+            String text = pending.toString();
+            pending.setLength(0);
+
+            appendToTail(text);
+
+            for (SubscriberState subscriber : new ArrayList<>(subscribers)) {
+                subscriber.enqueue(text, sends);
+            }
+        }
+
+        private void appendToTail(String text) {
+            if (text.length() > tailSize) {
+                int start = text.length() - tailSize;
+                if (Character.isLowSurrogate(text.charAt(start))) {
+                    start++;
+                }
+                text = text.substring(start);
+                tail.clear();
+                tailLength = 0;
+            }
+            tail.addLast(text);
+            tailLength += text.length();
+            while (tailLength > tailSize) {
+                tailLength -= tail.removeFirst().length();
+            }
+        }
+
+        private Subscription addSubscriber(LogsSubscriber subscriber, List<Runnable> sends) {
+            assert lock.isHeldByCurrentThread();
+
+            SubscriberState state = new SubscriberState(this, subscriber);
+            subscribers.add(state);
+            if (tailLength > 0) {
+                state.enqueue(String.join("", tail), sends);
+            }
+
+            return () -> lock.run(state::remove);
+        }
+
+        private void removeSubscriber(SubscriberState subscriber) {
+            assert lock.isHeldByCurrentThread();
+
+            if (subscribers.remove(subscriber) && subscribers.isEmpty()) {
+                LOG.debug("No more subscribers for " + key + ", closing upstream log stream.");
+                close();
+                if (streamHandler != null) {
+                    // Will abort the upstream consumer. Closing may block, do not hold the lock.
+                    execute(streamHandler::close);
+                }
+            }
+        }
+
+        private void close() {
+            assert lock.isHeldByCurrentThread();
+
+            closed = true;
+            channels.remove(key, this);
+        }
+    }
+
+    private class SubscriberState {
+
+        final Channel channel;
+        final LogsSubscriber subscriber;
+
+        // All fields below are guarded by the broadcaster lock.
+        final StringBuilder queue = new StringBuilder();
+        boolean sending = false;
+        boolean removed = false;
+
+        SubscriberState(Channel channel, LogsSubscriber subscriber) {
+            this.channel = channel;
+            this.subscriber = subscriber;
+        }
+
+        // The send to be performed once the lock is released, if any, is added to the given list.
+        void enqueue(String text, List<Runnable> sends) {
+            assert lock.isHeldByCurrentThread();
+
+            if (removed) {
+                return;
+            }
+
+            if (!sending) {
+                // Only the holder of the sending flag may send, preserving the text order.
+                sending = true;
+                sends.add(() -> send(text));
+                return;
+            }
+
+            queue.append(text);
+            if (queue.length() > maxPendingSize) {
+                LOG.info("Dropping slow logs subscriber for " + channel.key + ".");
+                remove();
+                closeSubscriber(this, new CloseReason(TRY_AGAIN_LATER, "Client too slow."));
+            }
+        }
+
+        void remove() {
+            assert lock.isHeldByCurrentThread();
+
+            removed = true;
+            queue.setLength(0);
+            channel.removeSubscriber(this);
+        }
+
+        private void send(String text) {
+            assert !lock.isHeldByCurrentThread();
+
+            try {
+                subscriber.send(text, this::onSendCompleted);
+            } catch (RuntimeException e) {
+                onSendCompleted(e);
+            }
+        }
+
+        private void onSendCompleted(@Nullable Throwable failure) {
+            String next = lock.call(() -> {
+                if (removed) {
+                    sending = false;
+                } else if (failure != null) {
+                    LOG.debug("Sending logs failed, removing subscriber.", failure);
+                    sending = false;
+                    remove();
+                } else if (queue.length() > 0) {
+                    String text = queue.toString();
+                    queue.setLength(0);
+                    // Still holding the sending flag.
+                    return text;
+                } else {
+                    sending = false;
+                }
+                return null;
+            });
+            if (next != null) {
+                send(next);
+            }
+        }
+    }
+}
@@ -2,14 +2,9 @@ package run.var.teamcity.cloud.docker.web;
 
 
 import com.intellij.openapi.diagnostic.Logger;
-import run.var.teamcity.cloud.docker.DockerClientFacade;
-import run.var.teamcity.cloud.docker.DockerCloudSupport;
-import run.var.teamcity.cloud.docker.StreamHandler;
-import run.var.teamcity.cloud.docker.client.DockerClientConfig;
-import run.var.teamcity.cloud.docker.client.StdioInputStream;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
-import run.var.teamcity.cloud.docker.util.NamedThreadFactory;
 
+import javax.annotation.Nonnull;
 import javax.servlet.http.HttpSession;
 import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
@@ -20,25 +15,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
-import static javax.websocket.CloseReason.CloseCodes.NORMAL_CLOSURE;
-import static javax.websocket.CloseReason.CloseCodes.UNEXPECTED_CONDITION;
 import static javax.websocket.CloseReason.CloseCodes.VIOLATED_POLICY;
 
 /**
- * WebSocket endpoint to provide live-logs streaming.
+ * WebSocket endpoint to provide live-logs streaming. Sessions watching the same container share a single upstream
+ * log stream.
+ *
+ * @see LogsBroadcaster
  */
 public class LogsStreamingEndpoint {
 
     // NB: this bean is expected to be used as singleton instead of being created for each client as by default with
     // JSR-356 containers.
     private final static Logger LOG = DockerCloudUtils.getLogger(LogsStreamingEndpoint.class);
-    private final static String USER_PROP_LOGS_WORKER = DockerCloudUtils.NS_PREFIX + "logsWorker";
+    private final static String USER_PROP_LOGS_SUBSCRIPTION = DockerCloudUtils.NS_PREFIX + "logsSubscription";
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(3, new NamedThreadFactory
-            ("DockerStreaming"));
+    private final LogsBroadcaster broadcaster = new LogsBroadcaster();
 
     @OnOpen
     public void open(Session session) throws IOException {
@@ -76,11 +70,10 @@ public class LogsStreamingEndpoint {
             return;
         }
 
-        LogsWorker logsWorker = new LogsWorker(testRef.get(), session);
+        LogsBroadcaster.Subscription subscription = broadcaster.subscribe(testRef.get(),
+                new SessionSubscriber(session));
 
-        session.getUserProperties().put(USER_PROP_LOGS_WORKER, logsWorker);
-
-        executorService.submit(logsWorker);
+        session.getUserProperties().put(USER_PROP_LOGS_SUBSCRIPTION, subscription);
     }
 
     private String getParam(Map<String, List<String>> params, String name) {
@@ -93,74 +86,44 @@ public class LogsStreamingEndpoint {
 
     @OnClose
     public void close(Session session) {
-        try {
-            LogsWorker worker = (LogsWorker) session.getUserProperties().get(USER_PROP_LOGS_WORKER);
-            if (worker != null) {
-                worker.dispose();
-            }
-        } catch (IOException e) {
-            LOG.info("I/O Exception when closing worker.", e);
+        LogsBroadcaster.Subscription subscription = (LogsBroadcaster.Subscription) session.getUserProperties()
+                .get(USER_PROP_LOGS_SUBSCRIPTION);
+        if (subscription != null) {
+            subscription.cancel();
         }
     }
 
-    private class LogsWorker implements Runnable {
+    /**
+     * Disposes this endpoint, closing all the log streams and sessions. Invoked on plugin shutdown.
+     */
+    public void dispose() {
+        broadcaster.dispose();
+    }
 
-        final ContainerTestReference containerTestReference;
-        final Session session;
+    private static class SessionSubscriber implements LogsBroadcaster.LogsSubscriber {
 
-        volatile StreamHandler streamHandler;
+        final Session session;
 
-        LogsWorker(ContainerTestReference containerTestReference, Session session) {
-            this.containerTestReference = containerTestReference;
+        SessionSubscriber(Session session) {
             this.session = session;
         }
 
         @Override
-        public void run() {
-            assert containerTestReference.getContainerId().isPresent();
-
-            String containerId = containerTestReference.getContainerId().get();
-            DockerCloudSupport cloudSupport = containerTestReference.getCloudSupport();
-            DockerClientConfig clientConfig = containerTestReference.getClientConfig();
-
-            try (DockerClientFacade client = cloudSupport.createClientFacade(clientConfig)) {
-                try (StreamHandler streamHandler = client.streamLogs(containerId)) {
-                    this.streamHandler = streamHandler;
-
-                    while (true) {
-                        try (StdioInputStream is = streamHandler.getNextStreamFragment()) {
-                            if (is == null) {
-                                break;
-                            }
-                            byte[] buffer = new byte[4096];
-                            int n;
-                            while ((n = is.read(buffer)) != -1) {
-                                if (n > 0) {
-                                    synchronized (session) {
-                                        session.getBasicRemote().sendText(new String(buffer, 0, n));
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    synchronized (session) {
-                        session.close(new CloseReason(NORMAL_CLOSURE, "Connection with container lost."));
-                    }
-                } catch (IOException e) {
-                    String msg = "Connection with server failed:\n" + DockerCloudUtils.getStackTrace(e);
-                    synchronized (session) {
-                        session.close(new CloseReason(UNEXPECTED_CONDITION, msg));
-                    }
-
-                }
-            } catch (Exception e) {
-                LOG.error("Failed to stream container logs.", e);
+        public void send(@Nonnull String text, @Nonnull Consumer<Throwable> completionHandler) {
+            if (!session.isOpen()) {
+                completionHandler.accept(new IOException("Session closed."));
+                return;
             }
+            session.getAsyncRemote().sendText(text, result -> completionHandler.accept(result.isOK() ? null :
+                    result.getException()));
         }
 
-        void dispose() throws IOException {
-            if (streamHandler != null) {
-                streamHandler.close();
+        @Override
+        public void close(@Nonnull CloseReason reason) {
+            try {
+                session.close(reason);
+            } catch (IOException e) {
+                LOG.debug("I/O Exception when closing session.", e);
             }
         }
     }
@@ -2,17 +2,22 @@ package run.var.teamcity.cloud.docker.web;
 
 import jetbrains.buildServer.clouds.CloudRegistrar;
 import jetbrains.buildServer.serverSide.SBuildServer;
+import jetbrains.buildServer.serverSide.ServerPaths;
 import jetbrains.buildServer.web.openapi.PluginDescriptor;
 import jetbrains.buildServer.web.openapi.WebControllerManager;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import run.var.teamcity.cloud.docker.AgentLogStore;
 import run.var.teamcity.cloud.docker.DefaultDockerCloudSupport;
 import run.var.teamcity.cloud.docker.DockerCloudClientFactory;
 import run.var.teamcity.cloud.docker.DockerCloudSupportRegistry;
+import run.var.teamcity.cloud.docker.client.DockerClientCache;
 import run.var.teamcity.cloud.docker.util.ClassNameResolver;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 
 import javax.servlet.ServletContext;
+import java.nio.file.Path;
 
 import static run.var.teamcity.cloud.docker.util.DockerCloudUtils.immutableMapOf;
 import static run.var.teamcity.cloud.docker.util.DockerCloudUtils.pair;
@@ -23,15 +28,46 @@ import static run.var.teamcity.cloud.docker.util.DockerCloudUtils.pair;
 @Configuration
 public class SpringConfiguration {
 
+    /**
+     * Instantiates the {@link AgentLogStore} bean, storing the captured logs in the plugin data directory. The store
+     * caps and the maximum number of concurrent captures can be overridden using system properties.
+     *
+     * @param serverPaths the server paths
+     *
+     * @return the new log store
+     */
+    @Bean(destroyMethod = "dispose")
+    public AgentLogStore agentLogStore(ServerPaths serverPaths) {
+        Path directory = serverPaths.getPluginDataDirectory().toPath().resolve("docker-cloud").resolve("logs");
+        return new AgentLogStore(directory,
+                Integer.getInteger(DockerCloudUtils.NS_PREFIX + "log_capture.ring_capacity",
+                        AgentLogStore.DEFAULT_RING_CAPACITY),
+                Long.getLong(DockerCloudUtils.NS_PREFIX + "log_capture.memory_cap", AgentLogStore.DEFAULT_MEMORY_CAP),
+                Long.getLong(DockerCloudUtils.NS_PREFIX + "log_capture.disk_cap", AgentLogStore.DEFAULT_DISK_CAP),
+                Integer.getInteger(DockerCloudUtils.NS_PREFIX + "log_capture.max_captures",
+                        AgentLogStore.DEFAULT_MAX_CAPTURES));
+    }
+
+    /**
+     * Exposes the plugin-wide {@link DockerClientCache} as a bean, such that it gets disposed on plugin shutdown.
+     *
+     * @return the plugin-wide client cache
+     */
+    @Bean(destroyMethod = "dispose")
+    public DockerClientCache dockerClientCache() {
+        return DockerClientCache.getDefault();
+    }
+
     @Bean
     public DockerCloudClientFactory vanillaCloudClientFactory(SBuildServer buildServer, PluginDescriptor pluginDescriptor, CloudRegistrar
-            cloudRegistrar) {
+            cloudRegistrar, AgentLogStore logStore) {
 
         DockerCloudClientFactory defaultFty = new DockerCloudClientFactory(
                 DefaultDockerCloudSupport.VANILLA,
                 DockerCloudSupportRegistry.getDefault(),
                 buildServer,
-                pluginDescriptor
+                pluginDescriptor,
+                logStore
         );
 
         cloudRegistrar.registerCloudFactory(defaultFty);
@@ -40,12 +76,14 @@ public class SpringConfiguration {
     }
 
     @Bean
-    public DockerCloudClientFactory swarmCloudClientFactory(SBuildServer buildServer, PluginDescriptor pluginDescriptor, CloudRegistrar cloudRegistrar) {
+    public DockerCloudClientFactory swarmCloudClientFactory(SBuildServer buildServer, PluginDescriptor pluginDescriptor, CloudRegistrar cloudRegistrar,
+                                                            AgentLogStore logStore) {
         DockerCloudClientFactory swarmFty = new DockerCloudClientFactory(
                 DefaultDockerCloudSupport.SWARM,
                 DockerCloudSupportRegistry.getDefault(),
                 buildServer,
-                pluginDescriptor
+                pluginDescriptor,
+                logStore
         );
 
         cloudRegistrar.registerCloudFactory(swarmFty);
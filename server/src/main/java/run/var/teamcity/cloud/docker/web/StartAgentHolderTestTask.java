@@ -68,6 +68,21 @@ class StartAgentHolderTestTask extends AgentHolderTestTask {
 
         List<AgentHolderInfo> containers = clientFacade.listAgentHolders(DockerCloudUtils
                 .TEST_INSTANCE_ID_LABEL, instanceUuid.toString());
+        if (taskId == null) {
+            // The task was not scheduled yet when starting the agent holder.
+            Optional<AgentHolderInfo> scheduled = containers.stream().
+                    filter(holder -> holder.getId().equals(containerId) && holder.isRunning()).
+                    findFirst();
+            if (!scheduled.isPresent()) {
+                if (agentConnectionStopWatch.getDuration().compareTo(AGENT_WAIT_TIMEOUT) > 0) {
+                    throw new ContainerTestTaskException("Timeout: no task scheduled after " +
+                            AGENT_WAIT_TIMEOUT.getSeconds() + " seconds.");
+                }
+                return PENDING;
+            }
+            taskId = scheduled.get().getTaskId();
+        }
+
         Optional<AgentHolderInfo> agentHolder = containers.stream().
                 filter(holder -> holder.getId().equals(containerId) && holder.getTaskId().equals(taskId)).
                 findFirst();
@@ -136,4 +136,19 @@ public class WebUtils {
                 user.isPermissionGrantedForAnyProject(Permission.START_STOP_CLOUD_AGENT);
 
     }
+
+    /**
+     * Verifies if the given user (if any) is authorized to access the plugin diagnostic data, such as the Docker API
+     * invocation statistics. If the specified user is {@code null}, the authorization will be rejected.
+     * <p>
+     * The {@link Permission#MANAGE_AGENT_CLOUDS} permission must be available on any of the TeamCity project.
+     * </p>
+     *
+     * @param user the user to be tested (may be {@code null})
+     *
+     * @return {@code true} if the user is authorized to access diagnostic data, {@code false} otherwise
+     */
+    public static boolean isAuthorizedToViewDiagnostics(@Nullable SUser user) {
+        return user != null && user.isPermissionGrantedForAnyProject(Permission.MANAGE_AGENT_CLOUDS);
+    }
 }
@@ -373,12 +373,22 @@ function Controller(bs, oo, tabbedPane, params, schema) {
         });
 
         $testContainerContainerLogsBtn.click(function() {
-            _invokeTestAction('logs', null, true)
-                .done(function(response) {
-                    let logs = JSON.parse(response.responseText).logs;
+            // Logs are streamed as plain text.
+            let url = testContainerCtrlURL + '?action=logs&tail=10000&testUuid=' + testUuid;
+            $j.get(url, null, null, 'text')
+                .done(function(logs) {
                     prepareDiagnosticDialog(i18n.text('test.logs'), logs);
                     $testContainerLoader.hide();
                     BS.DockerDiagnosticDialog.showCentered();
+                })
+                .fail(function(response) {
+                    let txt = response.responseText;
+                    if (!txt || txt.length > 150 || txt.indexOf('<html>') !== -1) {
+                        txt = response.statusText;
+                    }
+                    Logger.logError('Failed to retrieve logs: ' + txt);
+                    $testContainerLabel.text('Failed to retrieve logs: ' + txt).addClass('containerTestError');
+                    $testContainerLoader.hide();
                 });
         });
 
@@ -56,10 +56,23 @@ function Schema() {
 
         _copy(viewModel, admin, 'RmOnExit');
         _copy(viewModel, admin, 'PullOnCreate');
+        _copy(viewModel, admin, 'CaptureLogs');
 
         if (Utils.notEmpty(viewModel.MaxInstanceCount)) {
             admin.MaxInstanceCount = parseInt(viewModel.MaxInstanceCount);
         }
+        _copy(viewModel, admin, 'SingleUse');
+        _copy(viewModel, admin, 'RecycleAfterBuilds', parseInt);
+        _copy(viewModel, admin, 'RecycleAfterMinutes', parseInt);
+        _copy(viewModel, admin, 'RecycleAboveMemoryMiB', parseInt);
+
+        if (Utils.notEmpty(viewModel.CacheVolumes)) {
+            admin.CacheVolumes = [];
+            Utils.safeEach(viewModel.CacheVolumes, function (cacheVolume) {
+                admin.CacheVolumes.push({ Name: cacheVolume.Name, Target: cacheVolume.Target });
+            });
+        }
+
         _copy(viewModel, admin, 'UseOfficialTCAgentImage');
         _copy(viewModel, admin, 'RegistryUser');
         _copy(viewModel, admin, 'RegistryPassword', Utils.base64Utf16BEEncode);
@@ -285,7 +298,21 @@ function Schema() {
         _copy(admin, viewModel, 'Profile');
         _copy(admin, viewModel, 'PullOnCreate');
         _copy(admin, viewModel, 'RmOnExit');
+        _copy(admin, viewModel, 'CaptureLogs');
         _copy(admin, viewModel, 'MaxInstanceCount');
+        _copy(admin, viewModel, 'SingleUse');
+        _copy(admin, viewModel, 'RecycleAfterBuilds');
+        _copy(admin, viewModel, 'RecycleAfterMinutes');
+        _copy(admin, viewModel, 'RecycleAboveMemoryMiB');
+
+        let cacheVolumes = [];
+        Utils.safeEach(admin.CacheVolumes, function(cacheVolume) {
+            cacheVolumes.push({ Name: cacheVolume.Name, Target: cacheVolume.Target });
+        });
+        if (cacheVolumes.length) {
+            viewModel.CacheVolumes = cacheVolumes;
+        }
+
         _copy(admin, viewModel, 'UseOfficialTCAgentImage');
         _copy(admin, viewModel, 'RegistryUser');
         _copy(admin, viewModel, 'RegistryPassword', Utils.base64Utf16BEDecode);
@@ -546,6 +573,9 @@ function Schema() {
         Image: Validators.imageValidators,
         UseOfficialTCAgentImage: Validators.useOfficialTCAgentImageValidators,
         MaxInstanceCount: Validators.maxInstanceCountValidators,
+        RecycleAfterBuilds: [Validators.positiveIntegerValidator],
+        RecycleAfterMinutes: [Validators.positiveIntegerValidator],
+        RecycleAboveMemoryMiB: [Validators.positiveIntegerValidator],
         RegistryUser: Validators.registryUserValidatorsFn($registryPassword),
         RegistryPassword: Validators.registryPasswordValidatorsFn($registryUser),
         StopTimeout: [Validators.positiveIntegerValidator, Validators.api1_25RequiredValidator],
@@ -558,6 +588,12 @@ function Schema() {
             }
         }],
         Volumes_IDX_PathInContainer: [Validators.requiredValidator],
+        CacheVolumes_IDX_Name: [Validators.requiredValidator, function($elt) {
+            if (!/^[a-zA-Z0-9][a-zA-Z0-9_.-]*$/.test($elt.val())) {
+                return {msg: 'Only alphanumerical characters, dots, dashes and underscores allowed.'}
+            }
+        }],
+        CacheVolumes_IDX_Target: [Validators.requiredValidator],
         Ports_IDX_HostIp: [Validators.ipv4OrIpv6Validator],
         Ports_IDX_HostPort: Validators.portNumberValidators,
         Ports_IDX_ContainerPort: [Validators.requiredValidator].concat(Validators.portNumberValidators),
@@ -657,6 +693,8 @@ function Schema() {
         Volumes: '<td><input type="text" id="dockerCloudImage_Volumes_IDX_PathOnHost" /></td>\
         <td><input type="text" id="dockerCloudImage_Volumes_IDX_PathInContainer" /><span class="error" id="dockerCloudImage_Volumes_IDX_PathInContainer_error"></span></td>\
         <td class="center"><input type="checkbox" id="dockerCloudImage_Volumes_IDX_ReadOnly" /></td>',
+        CacheVolumes: '<td><input type="text" id="dockerCloudImage_CacheVolumes_IDX_Name" /><span class="error" id="dockerCloudImage_CacheVolumes_IDX_Name_error"></span></td>\
+        <td><input type="text" id="dockerCloudImage_CacheVolumes_IDX_Target" /><span class="error" id="dockerCloudImage_CacheVolumes_IDX_Target_error"></span></td>',
         Devices: '<td><input type="text" id="dockerCloudImage_Devices_IDX_PathOnHost" /></td>\
         <td><input type="text" id="dockerCloudImage_Devices_IDX_PathInContainer" /></td>\
         <td><input type="text" id="dockerCloudImage_Devices_IDX_CgroupPermissions" /></td>',
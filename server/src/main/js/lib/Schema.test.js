@@ -176,6 +176,11 @@ let settingsConverterFixtures = [
         {settings: {Administration: {RmOnExit: true}}, viewModel: {RmOnExit: true}},
         {settings: {Administration: {RmOnExit: false}}, viewModel: {RmOnExit: false}}]
     },
+    {
+        name: 'should handle CaptureLogs flag', fixtures: [
+        {settings: {Administration: {CaptureLogs: true}}, viewModel: {CaptureLogs: true}},
+        {settings: {Administration: {CaptureLogs: false}}, viewModel: {CaptureLogs: false}}]
+    },
     {
         name: 'should handle PullOnCreate flag', fixtures: [
         {settings: {Administration: {PullOnCreate: true}}, viewModel: {PullOnCreate: true}},
@@ -187,6 +192,24 @@ let settingsConverterFixtures = [
         settings: {Administration: {MaxInstanceCount: 42}}, viewModel: {MaxInstanceCount: 42}
     }]
     },
+    {
+        name: 'should handle SingleUse flag', fixtures: [
+        {settings: {Administration: {SingleUse: true}}, viewModel: {SingleUse: true}},
+        {settings: {Administration: {SingleUse: false}}, viewModel: {SingleUse: false}}]
+    },
+    {
+        name: 'should handle recycling limits', fixtures: [{
+        settings: {Administration: {RecycleAfterBuilds: 10, RecycleAfterMinutes: 120, RecycleAboveMemoryMiB: 2048}},
+        viewModel: {RecycleAfterBuilds: 10, RecycleAfterMinutes: 120, RecycleAboveMemoryMiB: 2048}
+    }]
+    },
+    {
+        name: 'should handle CacheVolumes', fixtures: [{
+        settings: {Administration: {CacheVolumes: [{Name: 'maven', Target: '/root/.m2'},
+            {Name: 'npm', Target: '/root/.npm'}]}},
+        viewModel: {CacheVolumes: [{Name: 'maven', Target: '/root/.m2'}, {Name: 'npm', Target: '/root/.npm'}]}
+    }]
+    },
     {
         name: 'should handle UseOfficialTCAgentImage flag', fixtures: [{
         settings: {Administration: {UseOfficialTCAgentImage: true}}, viewModel: {UseOfficialTCAgentImage: true}
@@ -686,6 +709,12 @@ describe('Validators', function() {
         v.verifyMaxInstanceCount(v.loadElt('MaxInstanceCount'));
     });
 
+    it('should perform recycling limits validation', function() {
+        v.verifyInteger(v.loadElt('RecycleAfterBuilds'));
+        v.verifyInteger(v.loadElt('RecycleAfterMinutes'));
+        v.verifyInteger(v.loadElt('RecycleAboveMemoryMiB'));
+    });
+
     it('should perform registry user and password validation', function() {
         v.verifyRegistryUserAndPassword(v.loadElt('RegistryUser'),
             v.loadElt('RegistryPassword'))
@@ -800,6 +829,16 @@ describe('Validators', function() {
         v.verifyOk(tableRow.field('Value'));
     });
 
+    it('should perform cache volumes validation', function() {
+        let tableRow = new v.Table('CacheVolumes').addRow();
+        let name = tableRow.field('Name');
+        v.verifyMandatory(name);
+        v.verifyOk(name, 'maven-2.repo');
+        v.verifyFailure(name, '.m2');
+        v.verifyFailure(name, 'maven cache');
+        v.verifyMandatory(tableRow.field('Target'));
+    });
+
     it('should perform memory validation', function() {
         v.verifyMemory(v.loadElt('Memory'), Utils.getElt('MemoryUnit'))
     });
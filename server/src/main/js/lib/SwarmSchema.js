@@ -58,6 +58,11 @@ function SwarmSchema() {
         let admin = {};
 
         _copy(viewModel, admin, 'MaxInstanceCount', parseInt);
+        _copy(viewModel, admin, 'SingleUse');
+        _copy(viewModel, admin, 'SpreadPlacement');
+        _copy(viewModel, admin, 'RecycleAfterBuilds', parseInt);
+        _copy(viewModel, admin, 'RecycleAfterMinutes', parseInt);
+        _copy(viewModel, admin, 'RecycleAboveMemoryMiB', parseInt);
         _copy(viewModel, admin, 'Profile');
         _copy(viewModel, admin, 'UseOfficialTCAgentImage');
         _copy(viewModel, admin, 'RegistryUser');
@@ -183,6 +188,11 @@ function SwarmSchema() {
 
         _copy(admin, viewModel, 'Profile');
         _copy(admin, viewModel, 'MaxInstanceCount');
+        _copy(admin, viewModel, 'SingleUse');
+        _copy(admin, viewModel, 'SpreadPlacement');
+        _copy(admin, viewModel, 'RecycleAfterBuilds');
+        _copy(admin, viewModel, 'RecycleAfterMinutes');
+        _copy(admin, viewModel, 'RecycleAboveMemoryMiB');
         _copy(admin, viewModel, 'UseOfficialTCAgentImage');
         _copy(admin, viewModel, 'RegistryUser');
         _copy(admin, viewModel, 'RegistryPassword', Utils.base64Utf16BEDecode);
@@ -281,6 +291,9 @@ function SwarmSchema() {
         Image: Validators.imageValidators,
         UseOfficialTCAgentImage: Validators.useOfficialTCAgentImageValidators,
         MaxInstanceCount: Validators.maxInstanceCountValidators,
+        RecycleAfterBuilds: [Validators.positiveIntegerValidator],
+        RecycleAfterMinutes: [Validators.positiveIntegerValidator],
+        RecycleAboveMemoryMiB: [Validators.positiveIntegerValidator],
         RegistryUser: Validators.registryUserValidatorsFn($registryPassword),
         RegistryPassword: Validators.registryPasswordValidatorsFn($registryUser),
         StopGracePeriod: [Validators.positiveIntegerValidator],
@@ -16,6 +16,22 @@ let settingsConverterFixtures = [
             settings: {Administration: {MaxInstanceCount: 42}}, viewModel: {MaxInstanceCount: 42}
         }]
     },
+    {
+        name: 'should handle SingleUse flag', fixtures: [
+        {settings: {Administration: {SingleUse: true}}, viewModel: {SingleUse: true}},
+        {settings: {Administration: {SingleUse: false}}, viewModel: {SingleUse: false}}]
+    },
+    {
+        name: 'should handle SpreadPlacement flag', fixtures: [
+        {settings: {Administration: {SpreadPlacement: true}}, viewModel: {SpreadPlacement: true}},
+        {settings: {Administration: {SpreadPlacement: false}}, viewModel: {SpreadPlacement: false}}]
+    },
+    {
+        name: 'should handle recycling limits', fixtures: [{
+        settings: {Administration: {RecycleAfterBuilds: 10, RecycleAfterMinutes: 120, RecycleAboveMemoryMiB: 2048}},
+        viewModel: {RecycleAfterBuilds: 10, RecycleAfterMinutes: 120, RecycleAboveMemoryMiB: 2048}
+    }]
+    },
     {
         name: 'should handle UseOfficialTCAgentImage flag', fixtures: [{
         settings: {Administration: {UseOfficialTCAgentImage: true}}, viewModel: {UseOfficialTCAgentImage: true}
@@ -283,6 +299,12 @@ describe('Validators', function() {
         v.verifyMaxInstanceCount(v.loadElt('MaxInstanceCount'));
     });
 
+    it('should perform recycling limits validation', function() {
+        v.verifyInteger(v.loadElt('RecycleAfterBuilds'));
+        v.verifyInteger(v.loadElt('RecycleAfterMinutes'));
+        v.verifyInteger(v.loadElt('RecycleAboveMemoryMiB'));
+    });
+
     it('should perform registry user and password validation (Swarm)', function() {
         v.verifyRegistryUserAndPassword(v.loadElt('RegistryUser'),
             v.loadElt('RegistryPassword'))
@@ -1,11 +1,15 @@
+<%@ page import="jetbrains.buildServer.clouds.InstanceStatus" %>
 <%@ page import="run.var.teamcity.cloud.docker.AgentHolderInfo" %>
 <%@ page import="run.var.teamcity.cloud.docker.DockerInstance" %>
+<%@ page import="run.var.teamcity.cloud.docker.ResourceUsageStats" %>
 <%@ page import="run.var.teamcity.cloud.docker.util.DockerCloudUtils" %>
 <%@ page import="java.time.Instant" %>
 <%@ page import="java.time.ZoneId" %>
 <%@ page import="java.time.format.DateTimeFormatter" %>
 <%@ page import="java.time.format.FormatStyle" %>
+<%@ page import="java.util.LinkedHashMap" %>
 <%@ page import="java.util.Locale" %>
+<%@ page import="java.util.Map" %>
 <%@ page import="java.util.Optional" %>
 <%@ page import="run.var.teamcity.cloud.docker.util.Resources" %>
 
@@ -49,6 +53,10 @@
             %>
             <tr>
                 <td><%= DockerCloudUtils.toShortId(agentHolderInfo.getId()) %>
+                    <% if (image.getConfig().isCaptureLogs()) { %>
+                    (<a href="<c:url value='/app/docker-cloud/captured-logs'/>?agentHolderId=<%= agentHolderInfo.getId() %>"
+                        target="_blank">logs</a>)
+                    <% } %>
                 </td>
                 <td><%= dateFmt.format(agentHolderInfo.getCreationTimestamp().atZone(ZoneId.systemDefault())) %>
                 </td>
@@ -65,6 +73,55 @@
             </tbody>
         </table>
     </div>
+    <h4>Resource usage (mean / p95 / peak)</h4>
+    <div style="margin: 5px 10%; width: 90%">
+        <table style="width: 85%;">
+            <thead>
+            <tr>
+                <th style="width: 15%;">Instance</th>
+                <%
+                    for (ResourceUsageStats.Metric metric : ResourceUsageStats.Metric.values()) {
+                %>
+                <th style="width: 17%;"><%= metric.name().replace('_', ' ') %>
+                </th>
+                <%
+                    }
+                %>
+            </tr>
+            </thead>
+            <tbody>
+            <%
+                Map<String, ResourceUsageStats> usageStatsByName = new LinkedHashMap<>();
+                usageStatsByName.put("All", image.getUsageStats());
+                for (DockerInstance instance : image.getInstances()) {
+                    Optional<AgentHolderInfo> optAgentHolderInfo = instance.getAgentHolderInfo();
+                    if (optAgentHolderInfo.isPresent()) {
+                        usageStatsByName.put(DockerCloudUtils.toShortId(optAgentHolderInfo.get().getId()),
+                                instance.getUsageStats());
+                    }
+                }
+                for (Map.Entry<String, ResourceUsageStats> entry : usageStatsByName.entrySet()) {
+            %>
+            <tr>
+                <td><%= entry.getKey() %>
+                </td>
+                <%
+                    for (ResourceUsageStats.Metric metric : ResourceUsageStats.Metric.values()) {
+                        ResourceUsageStats.Summary summary = entry.getValue().getSummary(metric);
+                %>
+                <td><%= summary.getCount() == 0 ? "-" : metric.format(summary.getMean()) + " / " +
+                        metric.format(summary.getP95()) + " / " + metric.format(summary.getPeak()) %>
+                </td>
+                <%
+                    }
+                %>
+            </tr>
+            <%
+                }
+            %>
+            </tbody>
+        </table>
+    </div>
     <%
         Optional<Instant> lastDockerSyncTime = image.getCloudClient().getLastDockerSyncTime();
         String lastSync;
@@ -78,5 +135,15 @@
             lastSync = "not performed yet.";
         }
     %>
-    Last sync with docker: <%= lastSync %>
+    Last sync with docker: <%= lastSync %><br/>
+    <%
+        StringBuilder instanceCounts = new StringBuilder();
+        for (Map.Entry<InstanceStatus, Integer> entry : image.getInstanceCountByStatus().entrySet()) {
+            if (instanceCounts.length() > 0) {
+                instanceCounts.append(", ");
+            }
+            instanceCounts.append(entry.getKey().getText()).append(": ").append(entry.getValue());
+        }
+    %>
+    Instances: <%= instanceCounts.length() > 0 ? instanceCounts : "none" %>
 </div>
\ No newline at end of file
@@ -87,11 +87,70 @@
                 <i class="icon icon16 tc-icon_help_small tooltip"></i>
                 <span class="tooltiptext">Activate TLS support when connecting to Docker over TCP socket. Checkout the plugin wiki for additional info on how to configure TLS properly.</span>
             </p>
+            <p>
+                <label for="<%=DockerCloudUtils.ADDITIONAL_INSTANCE_URIS%>">Additional Docker instances:</label>
+                <i class="icon icon16 tc-icon_help_small tooltip"></i>
+                <span class="tooltiptext">Daemon URIs, one per line. New agents will be spread across the Docker instances according to their available resources. The TLS setting applies to all instances.</span>
+            </p>
+            <p>
+                <props:multilineProperty name="<%=DockerCloudUtils.ADDITIONAL_INSTANCE_URIS%>"
+                                         linkTitle="Edit additional Docker instances" cols="58" rows="3"
+                                         className="longField"/>
+                <span class="error" id="error_<%=DockerCloudUtils.ADDITIONAL_INSTANCE_URIS%>"></span>
+            </p>
             <div class="hidden" id="dockerCloudCheckConnectionLoader"><i class="icon-refresh icon-spin"></i>&nbsp;Connecting
                 to Docker instance...
             </div>
         </td>
     </tr>
+    <tr>
+        <th>Resource budget:</th>
+        <td>
+            <p>
+                <label for="<%=DockerCloudUtils.CPU_BUDGET_PARAM%>">CPUs:</label>
+                <props:textProperty name="<%=DockerCloudUtils.CPU_BUDGET_PARAM%>" className="smallField"/>
+                <label for="<%=DockerCloudUtils.MEMORY_BUDGET_PARAM%>">Memory (MiB):</label>
+                <props:textProperty name="<%=DockerCloudUtils.MEMORY_BUDGET_PARAM%>" className="smallField"/>
+                <i class="icon icon16 tc-icon_help_small tooltip"></i>
+                <span class="tooltiptext">Maximal amount of CPU and memory allocated to the agents of this profile, as declared by the container limits. Leave empty for no limit. When set, agents will also not be started on a Docker instance lacking the corresponding capacity.</span>
+            </p>
+            <span class="error" id="error_<%=DockerCloudUtils.CPU_BUDGET_PARAM%>"></span>
+            <span class="error" id="error_<%=DockerCloudUtils.MEMORY_BUDGET_PARAM%>"></span>
+        </td>
+    </tr>
+    <tr>
+        <th><label for="<%=DockerCloudUtils.STATS_SAMPLING_RATE_PARAM%>">Usage sampling rate:</label></th>
+        <td>
+            <props:textProperty name="<%=DockerCloudUtils.STATS_SAMPLING_RATE_PARAM%>" className="smallField"/>
+            <span class="smallNote">Delay in seconds between two collections of the agents CPU, memory and I/O usage.
+                Defaults to 60 seconds, <code>0</code> disables the collection.</span>
+            <span class="error" id="error_<%=DockerCloudUtils.STATS_SAMPLING_RATE_PARAM%>"></span>
+        </td>
+    </tr>
+    <tr>
+        <th>Cpusets:</th>
+        <td>
+            <p>
+                <label for="<%=DockerCloudUtils.CPUSET_WIDTH_PARAM%>">CPUs per agent:</label>
+                <props:textProperty name="<%=DockerCloudUtils.CPUSET_WIDTH_PARAM%>" className="smallField"/>
+                <label for="<%=DockerCloudUtils.CPUSET_NUMA_NODES_PARAM%>">NUMA nodes:</label>
+                <props:textProperty name="<%=DockerCloudUtils.CPUSET_NUMA_NODES_PARAM%>" className="smallField"/>
+                <i class="icon icon16 tc-icon_help_small tooltip"></i>
+                <span class="tooltiptext">Pin each agent container to its own set of CPUs, such that concurrently running agents do not compete for the same cores. Agents are not started when all the CPUs of the Docker hosts are allocated. With several NUMA nodes, CPUs are assumed to be evenly distributed among the nodes, and each agent is bound to the memory of its node. Leave empty to disable. Not supported with Swarm.</span>
+            </p>
+            <span class="error" id="error_<%=DockerCloudUtils.CPUSET_WIDTH_PARAM%>"></span>
+            <span class="error" id="error_<%=DockerCloudUtils.CPUSET_NUMA_NODES_PARAM%>"></span>
+        </td>
+    </tr>
+    <tr>
+        <th><label for="<%=DockerCloudUtils.CACHE_DISK_BUDGET_PARAM%>">Cache disk budget:</label></th>
+        <td>
+            <props:textProperty name="<%=DockerCloudUtils.CACHE_DISK_BUDGET_PARAM%>" className="smallField"/>
+            <span class="smallNote">Disk space in MiB available to the dependency cache volumes on each Docker host.
+                Least recently used volumes are removed when exceeded. Leave empty for no limit.</span>
+            <span class="error" id="error_<%=DockerCloudUtils.CACHE_DISK_BUDGET_PARAM%>"></span>
+        </td>
+    </tr>
 </table>
 <div id="dockerCloudCheckConnectionResult" class="message hidden"></div>
 <div id="dockerCloudCheckConnectionWarning" class="message warningMessage hidden"></div>
@@ -0,0 +1,266 @@
+package run.var.teamcity.cloud.docker;
+
+import org.junit.Before;
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.TestDockerClientFacade.AgentHolder;
+import run.var.teamcity.cloud.docker.client.DockerClientConfig;
+import run.var.teamcity.cloud.docker.client.DockerClientException;
+import run.var.teamcity.cloud.docker.test.Interceptor;
+import run.var.teamcity.cloud.docker.test.TestDockerClient;
+import run.var.teamcity.cloud.docker.test.TestUtils;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link AgentHolderWatcher} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class AgentHolderWatcherTest {
+
+    private AgentHolderWatcher watcher;
+    private TestDockerClientFacade facade;
+    private Interceptor<DockerClientFacade> interceptor;
+    private DockerClientFacade interceptedFacade;
+    private DockerClientConfig clientConfig;
+    private TestDockerCloudSupport cloudSupport;
+
+    @Before
+    public void init() {
+        watcher = new AgentHolderWatcher();
+        facade = new TestDockerClientFacade();
+        interceptor = Interceptor.wrap(facade, DockerClientFacade.class);
+        interceptedFacade = interceptor.buildProxy();
+        clientConfig = new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI,
+                DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+        cloudSupport = new TestDockerCloudSupport();
+    }
+
+    @Test
+    public void dispatchByClient() {
+        AgentHolder agentHolder1 = agentHolder(TestUtils.TEST_UUID);
+        AgentHolder agentHolder2 = agentHolder(TestUtils.TEST_UUID);
+        AgentHolder agentHolder3 = agentHolder(TestUtils.TEST_UUID_2);
+        facade.agentHolder(new AgentHolder());
+
+        AgentHolderWatcher.Registration registration1 = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+        AgentHolderWatcher.Registration registration2 = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID_2);
+        AgentHolderWatcher.Registration registration3 = watcher.register(cloudSupport, clientConfig,
+                UUID.randomUUID());
+
+        assertThat(ids(registration1.listAgentHolders(interceptedFacade, Duration.ofMinutes(1))))
+                .containsOnly(agentHolder1.getId(), agentHolder2.getId());
+        assertThat(ids(registration2.listAgentHolders(interceptedFacade, Duration.ofMinutes(1))))
+                .containsOnly(agentHolder3.getId());
+        assertThat(registration3.listAgentHolders(interceptedFacade, Duration.ofMinutes(1)).getAgentHolders())
+                .isEmpty();
+
+        // A single listing was performed.
+        assertThat(listingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void listingMaxAge() {
+        AgentHolderWatcher.Registration registration = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+
+        long before = System.nanoTime();
+        AgentHolderWatcher.Listing listing = registration.listAgentHolders(interceptedFacade, Duration.ofMinutes(1));
+
+        assertThat(listing.getNanoTime() - before).isNotNegative();
+        assertThat(listing.getAgentHolders()).isEmpty();
+
+        AgentHolder agentHolder = agentHolder(TestUtils.TEST_UUID);
+
+        assertThat(registration.listAgentHolders(interceptedFacade, Duration.ofMinutes(1)).getNanoTime())
+                .isEqualTo(listing.getNanoTime());
+
+        listing = registration.listAgentHolders(interceptedFacade, Duration.ZERO);
+
+        assertThat(ids(listing)).containsOnly(agentHolder.getId());
+        assertThat(listingCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void endpointsAreIsolated() {
+        agentHolder(TestUtils.TEST_UUID);
+
+        DockerClientConfig otherConfig = new DockerClientConfig(URI.create("tcp://127.0.0.1:2376"),
+                DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+
+        AgentHolderWatcher.Registration registration1 = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+        AgentHolderWatcher.Registration registration2 = watcher.register(cloudSupport, otherConfig,
+                TestUtils.TEST_UUID);
+
+        assertThat(watcher.getEndpointCount()).isEqualTo(2);
+
+        registration1.listAgentHolders(interceptedFacade, Duration.ofMinutes(1));
+        registration2.listAgentHolders(interceptedFacade, Duration.ofMinutes(1));
+
+        assertThat(listingCount()).isEqualTo(2);
+
+        registration1.close();
+        registration1.close();
+
+        assertThat(watcher.getEndpointCount()).isEqualTo(1);
+
+        registration2.close();
+
+        assertThat(watcher.getEndpointCount()).isEqualTo(0);
+
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() ->
+                registration2.listAgentHolders(interceptedFacade, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    public void cpusetAllocatorIsSharedByEndpoint() {
+        DockerClientConfig otherConfig = new DockerClientConfig(URI.create("tcp://127.0.0.1:2376"),
+                DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+
+        AgentHolderWatcher.Registration registration1 = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+        AgentHolderWatcher.Registration registration2 = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID_2);
+        AgentHolderWatcher.Registration otherRegistration = watcher.register(cloudSupport, otherConfig,
+                TestUtils.TEST_UUID);
+
+        CpusetAllocator allocator = registration1.getCpusetAllocator(4);
+
+        assertThat(registration2.getCpusetAllocator(4)).isSameAs(allocator);
+        assertThat(otherRegistration.getCpusetAllocator(4)).isNotSameAs(allocator);
+    }
+
+    @Test
+    public void cacheVolumePoolIsSharedByEndpoint() {
+        DockerClientConfig otherConfig = new DockerClientConfig(URI.create("tcp://127.0.0.1:2376"),
+                DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+
+        AgentHolderWatcher.Registration registration1 = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+        AgentHolderWatcher.Registration registration2 = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID_2);
+        AgentHolderWatcher.Registration otherRegistration = watcher.register(cloudSupport, otherConfig,
+                TestUtils.TEST_UUID);
+
+        CacheVolumePool pool = registration1.getCacheVolumePool();
+
+        assertThat(registration2.getCacheVolumePool()).isSameAs(pool);
+        assertThat(otherRegistration.getCacheVolumePool()).isNotSameAs(pool);
+    }
+
+    @Test
+    public void cpusetAllocatorIsReconciledWithListings() {
+        CpusetLayout layout = new CpusetLayout(2, 1);
+
+        UUID instanceUuid = UUID.randomUUID();
+        AgentHolder agentHolder = agentHolder(TestUtils.TEST_UUID_2).
+                label(DockerCloudUtils.INSTANCE_ID_LABEL, instanceUuid.toString()).
+                label(DockerCloudUtils.CPUSET_LABEL, "0-1");
+
+        AgentHolderWatcher.Registration registration = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+
+        registration.listAgentHolders(interceptedFacade, Duration.ZERO);
+
+        // Agent holders of other clients are accounted for, including when listed before the allocator creation.
+        CpusetAllocator allocator = registration.getCpusetAllocator(4);
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(1);
+        assertThat(allocator.allocate(UUID.randomUUID(), layout).get().getCpus()).isEqualTo("2-3");
+
+        facade.removeAgentHolder(agentHolder.getId());
+
+        registration.listAgentHolders(interceptedFacade, Duration.ZERO);
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(1);
+        assertThat(allocator.allocate(UUID.randomUUID(), layout).get().getCpus()).isEqualTo("0-1");
+    }
+
+    @Test
+    public void listingFailure() {
+        AgentHolderWatcher.Registration registration = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+
+        facade.setFailOnAccessException(new DockerClientException("Test failure."));
+
+        assertThatExceptionOfType(DockerClientException.class).isThrownBy(() ->
+                registration.listAgentHolders(interceptedFacade, Duration.ofMinutes(1)));
+
+        facade.setFailOnAccessException(null);
+
+        AgentHolder agentHolder = agentHolder(TestUtils.TEST_UUID);
+
+        assertThat(ids(registration.listAgentHolders(interceptedFacade, Duration.ofMinutes(1))))
+                .containsOnly(agentHolder.getId());
+    }
+
+    @Test
+    public void listingError() {
+        AgentHolderWatcher.Registration registration = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+
+        boolean[] failing = {true};
+        DockerClientFacade failingFacade = Interceptor.wrap(facade, DockerClientFacade.class).beforeInvoke(() -> {
+            if (failing[0]) {
+                throw new InternalError("Test error.");
+            }
+        }).buildProxy();
+
+        assertThatExceptionOfType(InternalError.class).isThrownBy(() ->
+                registration.listAgentHolders(failingFacade, Duration.ofMinutes(1)));
+
+        failing[0] = false;
+
+        AgentHolder agentHolder = agentHolder(TestUtils.TEST_UUID);
+
+        // The failed listing must not remain pending.
+        assertThat(ids(registration.listAgentHolders(failingFacade, Duration.ofMinutes(1))))
+                .containsOnly(agentHolder.getId());
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                watcher.register(null, clientConfig, TestUtils.TEST_UUID));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                watcher.register(cloudSupport, null, TestUtils.TEST_UUID));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                watcher.register(cloudSupport, clientConfig, null));
+
+        AgentHolderWatcher.Registration registration = watcher.register(cloudSupport, clientConfig,
+                TestUtils.TEST_UUID);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                registration.listAgentHolders(null, Duration.ofMinutes(1)));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                registration.listAgentHolders(interceptedFacade, null));
+    }
+
+    private AgentHolder agentHolder(UUID clientUuid) {
+        AgentHolder agentHolder = new AgentHolder().label(DockerCloudUtils.CLIENT_ID_LABEL, clientUuid.toString());
+        facade.agentHolder(agentHolder);
+        return agentHolder;
+    }
+
+    private List<String> ids(AgentHolderWatcher.Listing listing) {
+        return listing.getAgentHolders().stream().
+                map(AgentHolderInfo::getId).
+                collect(Collectors.toList());
+    }
+
+    private long listingCount() {
+        return interceptor.getInvocations().stream().
+                filter(invocation -> invocation.getMethod().getName().equals("listAgentHolders")).
+                count();
+    }
+}
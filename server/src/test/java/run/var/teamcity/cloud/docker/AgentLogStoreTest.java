@@ -0,0 +1,331 @@
+package run.var.teamcity.cloud.docker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.TestDockerClientFacade.LogsQuery;
+import run.var.teamcity.cloud.docker.test.TestPipedStreamHandler;
+import run.var.teamcity.cloud.docker.test.TestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link AgentLogStore} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class AgentLogStoreTest {
+
+    private Path directory;
+    private TestDockerClientFacade facade;
+    private Map<String, TestPipedStreamHandler> streamHandlers;
+    private List<AgentLogStore> stores;
+
+    @Before
+    public void init() {
+        directory = TestUtils.tempDirectory();
+        facade = new TestDockerClientFacade();
+        streamHandlers = new ConcurrentHashMap<>();
+        stores = new ArrayList<>();
+        facade.setLogStreamProvider(agentHolderId -> streamHandlers.computeIfAbsent(agentHolderId,
+                id -> new TestPipedStreamHandler()));
+    }
+
+    @After
+    public void tearDown() {
+        streamHandlers.values().forEach(TestPipedStreamHandler::end);
+        stores.forEach(AgentLogStore::dispose);
+    }
+
+    @Test
+    public void captureUntilTermination() {
+        AgentLogStore store = createStore(1024, 1024, 1024 * 1024);
+
+        Instant since = Instant.now();
+        assertThat(store.capture("container_a", facade, since)).isTrue();
+        assertThat(store.isCapturing("container_a")).isTrue();
+
+        TestPipedStreamHandler handler = waitForStreamHandler("container_a");
+        handler.push("\u001B[1mhello ");
+        handler.push("world\u001B[0m\n");
+        handler.end();
+
+        TestUtils.waitUntil(() -> !store.isCapturing("container_a"));
+
+        assertThat(readLogs(store, "container_a")).isEqualTo("hello world\n");
+        assertThat(store.getDiskUsage()).isPositive();
+        assertThat(store.getRingsInUse()).isEqualTo(0);
+        assertThat(store.getAgentHolderIds()).containsExactly("container_a");
+
+        LogsQuery query = facade.getLastLogsQuery();
+        assertThat(query.getAgentHolderId()).isEqualTo("container_a");
+        assertThat(query.getLineCount()).isEqualTo(-1);
+        assertThat(query.getSince()).isEqualTo(since);
+    }
+
+    @Test
+    public void readWhileCapturing() {
+        AgentLogStore store = createStore(1024, 1024, 1024 * 1024);
+
+        store.capture("container_a", facade, null);
+
+        TestPipedStreamHandler handler = waitForStreamHandler("container_a");
+        handler.push("hello");
+
+        TestUtils.waitUntil(() -> readLogs(store, "container_a").equals("hello"));
+
+        assertThat(store.getDiskUsage()).isEqualTo(0);
+        assertThat(store.getRingsInUse()).isEqualTo(1);
+    }
+
+    @Test
+    public void appendToPreviousCapture() {
+        AgentLogStore store = createStore(1024, 1024, 1024 * 1024);
+
+        store.capture("container_a", facade, null);
+        TestPipedStreamHandler handler = waitForStreamHandler("container_a");
+        handler.push("first run\n");
+        handler.end();
+        TestUtils.waitUntil(() -> !store.isCapturing("container_a"));
+
+        streamHandlers.remove("container_a");
+
+        store.capture("container_a", facade, null);
+        handler = waitForStreamHandler("container_a");
+        handler.push("second run\n");
+        handler.end();
+        TestUtils.waitUntil(() -> !store.isCapturing("container_a"));
+
+        assertThat(readLogs(store, "container_a")).isEqualTo("first run\nsecond run\n");
+    }
+
+    @Test
+    public void alreadyCapturing() {
+        AgentLogStore store = createStore(1024, 1024, 1024 * 1024);
+
+        assertThat(store.capture("container_a", facade, null)).isTrue();
+        assertThat(store.capture("container_a", facade, null)).isFalse();
+    }
+
+    @Test
+    public void persistedAcrossRestarts() {
+        AgentLogStore store = createStore(1024, 1024, 1024 * 1024);
+
+        store.capture("container_a", facade, null);
+        TestPipedStreamHandler handler = waitForStreamHandler("container_a");
+        handler.push("hello");
+        handler.end();
+        TestUtils.waitUntil(() -> !store.isCapturing("container_a"));
+
+        store.dispose();
+
+        AgentLogStore reloaded = createStore(1024, 1024, 1024 * 1024);
+
+        assertThat(reloaded.getAgentHolderIds()).containsExactly("container_a");
+        assertThat(reloaded.getDiskUsage()).isEqualTo(store.getDiskUsage());
+        assertThat(readLogs(reloaded, "container_a")).isEqualTo("hello");
+    }
+
+    @Test
+    public void spillOnDispose() {
+        AgentLogStore store = createStore(1024, 1024, 1024 * 1024);
+
+        store.capture("container_a", facade, null);
+        TestPipedStreamHandler handler = waitForStreamHandler("container_a");
+        handler.push("hello");
+        TestUtils.waitUntil(() -> readLogs(store, "container_a").equals("hello"));
+
+        store.dispose();
+
+        assertThat(handler.isClosed()).isTrue();
+        assertThat(store.isCapturing("container_a")).isFalse();
+        assertThat(readLogs(store, "container_a")).isEqualTo("hello");
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() ->
+                store.capture("container_b", facade, null));
+    }
+
+    @Test
+    public void capturesInExcessMustBeQueued() {
+        AgentLogStore store = createStore(1024, 1024 * 1024, 1024 * 1024, 1);
+
+        store.capture("container_a", facade, null);
+        TestPipedStreamHandler handlerA = waitForStreamHandler("container_a");
+
+        assertThat(store.capture("container_b", facade, null)).isTrue();
+        assertThat(store.isCapturing("container_b")).isTrue();
+
+        TestUtils.waitMillis(300);
+        assertThat(streamHandlers).doesNotContainKey("container_b");
+
+        handlerA.end();
+
+        TestPipedStreamHandler handlerB = waitForStreamHandler("container_b");
+        handlerB.push("b");
+        handlerB.end();
+        TestUtils.waitUntil(() -> !store.isCapturing("container_b"));
+
+        assertThat(readLogs(store, "container_b")).isEqualTo("b");
+    }
+
+    @Test
+    public void cancelQueuedCapture() {
+        AgentLogStore store = createStore(1024, 1024 * 1024, 1024 * 1024, 1);
+
+        store.capture("container_a", facade, null);
+        TestPipedStreamHandler handler = waitForStreamHandler("container_a");
+        store.capture("container_b", facade, null);
+
+        store.dispose();
+
+        assertThat(handler.isClosed()).isTrue();
+        assertThat(store.isCapturing("container_b")).isFalse();
+        assertThat(streamHandlers).doesNotContainKey("container_b");
+    }
+
+    @Test
+    public void ringOverflow() {
+        AgentLogStore store = createStore(8, 8, 1024 * 1024);
+
+        store.capture("container_a", facade, null);
+        TestPipedStreamHandler handler = waitForStreamHandler("container_a");
+        handler.push("0123456789ab");
+
+        TestUtils.waitUntil(() -> readLogs(store, "container_a").equals("[... 4 bytes dropped ...]\n456789ab"));
+
+        handler.end();
+        TestUtils.waitUntil(() -> !store.isCapturing("container_a"));
+
+        assertThat(readLogs(store, "container_a")).isEqualTo("[... 4 bytes dropped ...]\n456789ab");
+    }
+
+    @Test
+    public void ringEviction() {
+        // Memory cap allows a single ring.
+        AgentLogStore store = createStore(1024, 1024, 1024 * 1024);
+
+        store.capture("container_a", facade, null);
+        TestPipedStreamHandler handlerA = waitForStreamHandler("container_a");
+        handlerA.push("a1 ");
+        TestUtils.waitUntil(() -> readLogs(store, "container_a").equals("a1 "));
+
+        store.capture("container_b", facade, null);
+        TestPipedStreamHandler handlerB = waitForStreamHandler("container_b");
+        handlerB.push("b1 ");
+        TestUtils.waitUntil(() -> readLogs(store, "container_b").equals("b1 "));
+
+        assertThat(store.getRingsInUse()).isEqualTo(1);
+        // The ring of the first container was spilled.
+        assertThat(store.getDiskUsage()).isPositive();
+        assertThat(readLogs(store, "container_a")).isEqualTo("a1 ");
+
+        handlerA.push("a2 ");
+        TestUtils.waitUntil(() -> readLogs(store, "container_a").equals("a1 a2 "));
+
+        handlerA.end();
+        handlerB.push("b2 ");
+        handlerB.end();
+
+        TestUtils.waitUntil(() -> !store.isCapturing("container_a") && !store.isCapturing("container_b"));
+
+        assertThat(readLogs(store, "container_a")).isEqualTo("a1 a2 ");
+        assertThat(readLogs(store, "container_b")).isEqualTo("b1 b2 ");
+        assertThat(store.getRingsInUse()).isEqualTo(0);
+    }
+
+    @Test
+    public void diskCapEviction() {
+        // Disk cap only allows the last written segment.
+        AgentLogStore store = createStore(1024, 1024, 1);
+
+        store.capture("container_a", facade, null);
+        TestPipedStreamHandler handler = waitForStreamHandler("container_a");
+        handler.push("a");
+        handler.end();
+        TestUtils.waitUntil(() -> !store.isCapturing("container_a"));
+
+        assertThat(readLogs(store, "container_a")).isEqualTo("a");
+
+        store.capture("container_b", facade, null);
+        handler = waitForStreamHandler("container_b");
+        handler.push("b");
+        handler.end();
+        TestUtils.waitUntil(() -> !store.isCapturing("container_b"));
+
+        assertThat(store.getAgentHolderIds()).containsExactly("container_b");
+        assertThat(readLogs(store, "container_a")).isNull();
+        assertThat(readLogs(store, "container_b")).isEqualTo("b");
+    }
+
+    @Test
+    public void unknownAgentHolder() {
+        AgentLogStore store = createStore(1024, 1024, 1024);
+
+        assertThat(readLogs(store, "container_a")).isNull();
+        assertThat(store.getAgentHolderIds()).isEmpty();
+    }
+
+    @Test
+    public void invalidArguments() {
+        AgentLogStore store = createStore(1024, 1024, 1024);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                store.capture(null, facade, null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                store.capture("container_a", null, null));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                store.capture("../container_a", facade, null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                store.writeLogs(null, new ByteArrayOutputStream()));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                store.writeLogs("container_a", null));
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                new AgentLogStore(null, 1024, 1024, 1024));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new AgentLogStore(directory, 0, 1024, 1024));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new AgentLogStore(directory, 1024, 0, 1024));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new AgentLogStore(directory, 1024, 1024, 0));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new AgentLogStore(directory, 1024, 1024, 1024, 0));
+    }
+
+    private AgentLogStore createStore(int ringCapacity, long memoryCap, long diskCap) {
+        return createStore(ringCapacity, memoryCap, diskCap, AgentLogStore.DEFAULT_MAX_CAPTURES);
+    }
+
+    private AgentLogStore createStore(int ringCapacity, long memoryCap, long diskCap, int maxCaptures) {
+        AgentLogStore store = new AgentLogStore(directory, ringCapacity, memoryCap, diskCap, maxCaptures);
+        stores.add(store);
+        return store;
+    }
+
+    private TestPipedStreamHandler waitForStreamHandler(String agentHolderId) {
+        TestUtils.waitUntil(() -> streamHandlers.containsKey(agentHolderId));
+        return streamHandlers.get(agentHolderId);
+    }
+
+    private static String readLogs(AgentLogStore store, String agentHolderId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!store.writeLogs(agentHolderId, out)) {
+                return null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,240 @@
+package run.var.teamcity.cloud.docker;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link CacheVolumePool} test suite.
+ */
+public class CacheVolumePoolTest {
+
+    @Test
+    public void acquireFreeVolume() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        UUID instance = UUID.randomUUID();
+
+        assertThat(pool.acquire("maven", instance)).isEmpty();
+
+        pool.register("volume1", "maven", instance);
+
+        // In use.
+        assertThat(pool.acquire("maven", UUID.randomUUID())).isEmpty();
+
+        pool.release(instance);
+
+        // Other cache.
+        assertThat(pool.acquire("npm", UUID.randomUUID())).isEmpty();
+
+        UUID otherInstance = UUID.randomUUID();
+
+        assertThat(pool.acquire("maven", otherInstance)).isEqualTo(Optional.of("volume1"));
+        assertThat(pool.acquire("maven", UUID.randomUUID())).isEmpty();
+
+        pool.release(otherInstance);
+
+        assertThat(pool.acquire("maven", UUID.randomUUID())).isEqualTo(Optional.of("volume1"));
+    }
+
+    @Test
+    public void mostRecentlyUsedVolumeIsPreferred() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        UUID instance1 = UUID.randomUUID();
+        UUID instance2 = UUID.randomUUID();
+
+        pool.register("volume1", "maven", instance1);
+        pool.register("volume2", "maven", instance2);
+
+        pool.release(instance2);
+        pool.release(instance1);
+
+        assertThat(pool.acquire("maven", UUID.randomUUID())).isEqualTo(Optional.of("volume1"));
+        assertThat(pool.acquire("maven", UUID.randomUUID())).isEqualTo(Optional.of("volume2"));
+    }
+
+    @Test
+    public void register() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        pool.register("volume1", "maven", UUID.randomUUID());
+
+        assertThat(pool.getVolumeNames()).containsExactly("volume1");
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                pool.register("volume1", "maven", UUID.randomUUID()));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                pool.register(null, "maven", UUID.randomUUID()));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                pool.register("volume2", null, UUID.randomUUID()));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                pool.register("volume2", "maven", null));
+    }
+
+    @Test
+    public void restore() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        UUID instance = UUID.randomUUID();
+
+        pool.register("volume1", "maven", instance);
+        pool.release(instance);
+
+        pool.restore("volume2", "maven", 100);
+        // Already registered.
+        pool.restore("volume1", "npm", 10);
+
+        assertThat(pool.getVolumeNames()).containsOnly("volume1", "volume2");
+
+        // Restored volumes are the least recently used ones.
+        assertThat(pool.acquire("maven", UUID.randomUUID())).isEqualTo(Optional.of("volume1"));
+        assertThat(pool.acquire("maven", UUID.randomUUID())).isEqualTo(Optional.of("volume2"));
+        assertThat(pool.acquire("npm", UUID.randomUUID())).isEmpty();
+    }
+
+    @Test
+    public void updateSize() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        pool.restore("volume1", "maven", 100);
+        pool.restore("volume2", "maven", -1);
+
+        assertThat(pool.getTotalSize()).isEqualTo(100);
+
+        pool.updateSize("volume2", 50);
+        // Unknown size.
+        pool.updateSize("volume1", -1);
+        // Unknown volume.
+        pool.updateSize("volume3", 1000);
+
+        assertThat(pool.getTotalSize()).isEqualTo(150);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedVolumes() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        UUID instance1 = UUID.randomUUID();
+        UUID instance2 = UUID.randomUUID();
+        UUID instance3 = UUID.randomUUID();
+
+        pool.register("volume1", "maven", instance1);
+        pool.register("volume2", "maven", instance2);
+        pool.register("volume3", "npm", instance3);
+        pool.updateSize("volume1", 100);
+        pool.updateSize("volume2", 100);
+        pool.updateSize("volume3", 100);
+
+        pool.release(instance2);
+        pool.release(instance1);
+        pool.release(instance3);
+
+        assertThat(pool.evict("", 300)).isEmpty();
+        assertThat(pool.evict("", 250)).containsExactly("volume2");
+        // Volumes being evicted are no longer accounted for.
+        assertThat(pool.evict("", 50)).containsExactly("volume1", "volume3");
+
+        // Evicted volumes remain registered until removed.
+        assertThat(pool.getVolumeNames()).containsOnly("volume1", "volume2", "volume3");
+
+        pool.removed("volume1");
+        pool.removed("volume2");
+        pool.removed("volume3");
+
+        assertThat(pool.getVolumeNames()).isEmpty();
+        assertThat(pool.getTotalSize()).isZero();
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> pool.evict("", -1));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> pool.evict(null, 0));
+    }
+
+    @Test
+    public void evictionIsScopedToCacheKeyPrefix() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        UUID instance1 = UUID.randomUUID();
+        UUID instance2 = UUID.randomUUID();
+
+        pool.register("volume1", "client1/maven", instance1);
+        pool.register("volume2", "client2/maven", instance2);
+        pool.updateSize("volume1", 100);
+        pool.updateSize("volume2", 100);
+
+        pool.release(instance1);
+        pool.release(instance2);
+
+        // The volumes of other clients are neither accounted for nor evicted.
+        assertThat(pool.evict("client1/", 100)).isEmpty();
+        assertThat(pool.evict("client1/", 50)).containsExactly("volume1");
+    }
+
+    @Test
+    public void failedRemovalIsRetried() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        UUID instance = UUID.randomUUID();
+
+        pool.register("volume1", "maven", instance);
+        pool.updateSize("volume1", 100);
+        pool.release(instance);
+
+        assertThat(pool.evict("", 0)).containsExactly("volume1");
+
+        // Being evicted.
+        assertThat(pool.acquire("maven", UUID.randomUUID())).isEmpty();
+        assertThat(pool.evict("", 0)).isEmpty();
+
+        pool.removalFailed("volume1");
+
+        assertThat(pool.getTotalSize()).isEqualTo(100);
+        assertThat(pool.evict("", 0)).containsExactly("volume1");
+    }
+
+    @Test
+    public void volumesInUseAreNeverEvicted() {
+        CacheVolumePool pool = new CacheVolumePool();
+
+        UUID instance1 = UUID.randomUUID();
+        UUID instance2 = UUID.randomUUID();
+
+        pool.register("volume1", "maven", instance1);
+        pool.register("volume2", "maven", instance2);
+        pool.updateSize("volume1", 100);
+        pool.updateSize("volume2", 100);
+
+        pool.release(instance2);
+
+        assertThat(pool.evict("", 0)).containsExactly("volume2");
+
+        pool.removed("volume2");
+
+        assertThat(pool.getVolumeNames()).containsExactly("volume1");
+        assertThat(pool.getTotalSize()).isEqualTo(100);
+    }
+
+    @Test
+    public void sizeRefreshIsThrottled() {
+        CacheVolumePool pool = new CacheVolumePool(Duration.ofHours(1));
+
+        assertThat(pool.claimSizeRefresh()).isTrue();
+        assertThat(pool.claimSizeRefresh()).isFalse();
+
+        pool = new CacheVolumePool(Duration.ZERO);
+
+        assertThat(pool.claimSizeRefresh()).isTrue();
+        assertThat(pool.claimSizeRefresh()).isTrue();
+    }
+
+    @Test
+    public void invalidConstructorArguments() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> new CacheVolumePool(null));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new CacheVolumePool(Duration.ofSeconds(-1)));
+    }
+}
@@ -0,0 +1,64 @@
+package run.var.teamcity.cloud.docker;
+
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.util.EditableNode;
+import run.var.teamcity.cloud.docker.util.Node;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link ContainerStats} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class ContainerStatsTest {
+
+    @Test
+    public void fromNode() {
+        EditableNode node = Node.EMPTY_OBJECT.editNode();
+        EditableNode cpuStats = node.getOrCreateObject("cpu_stats");
+        cpuStats.getOrCreateObject("cpu_usage").put("total_usage", 3_000_000_000L);
+        cpuStats.put("system_cpu_usage", 10_000_000_000L).put("online_cpus", 4);
+        cpuStats.getOrCreateObject("throttling_data").put("periods", 100).put("throttled_periods", 5);
+        EditableNode preCpuStats = node.getOrCreateObject("precpu_stats");
+        preCpuStats.getOrCreateObject("cpu_usage").put("total_usage", 1_000_000_000L);
+        preCpuStats.put("system_cpu_usage", 6_000_000_000L);
+        EditableNode memoryStats = node.getOrCreateObject("memory_stats").put("usage", 5000L);
+        memoryStats.getOrCreateObject("stats").put("cache", 1000L);
+        EditableNode blkio = node.getOrCreateObject("blkio_stats").getOrCreateArray("io_service_bytes_recursive");
+        blkio.addObject().put("op", "Read").put("value", 100L);
+        blkio.addObject().put("op", "Write").put("value", 200L);
+        blkio.addObject().put("op", "Total").put("value", 300L);
+        EditableNode networks = node.getOrCreateObject("networks");
+        networks.getOrCreateObject("eth0").put("rx_bytes", 10L).put("tx_bytes", 20L);
+        networks.getOrCreateObject("eth1").put("rx_bytes", 1L).put("tx_bytes", 2L);
+
+        ContainerStats stats = ContainerStats.fromNode(node.saveNode(), 42);
+
+        assertThat(stats.getNanoTime()).isEqualTo(42);
+        assertThat(stats.getCpuUsage()).isEqualTo(2.0);
+        assertThat(stats.getPeriods()).isEqualTo(100);
+        assertThat(stats.getThrottledPeriods()).isEqualTo(5);
+        assertThat(stats.getMemoryUsageBytes()).isEqualTo(4000);
+        assertThat(stats.getBlockIoBytes()).isEqualTo(300);
+        assertThat(stats.getNetworkBytes()).isEqualTo(33);
+    }
+
+    @Test
+    public void emptyNode() {
+        ContainerStats stats = ContainerStats.fromNode(Node.EMPTY_OBJECT, 0);
+
+        // No previous CPU sample.
+        assertThat(stats.getCpuUsage()).isNaN();
+        assertThat(stats.getMemoryUsageBytes()).isZero();
+        assertThat(stats.getBlockIoBytes()).isZero();
+        assertThat(stats.getNetworkBytes()).isZero();
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> ContainerStats.fromNode(null, 0));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new ContainerStats(0, -1, 0, 0, 0, 1, 0, 0, 0, 0, 0));
+    }
+}
@@ -0,0 +1,225 @@
+package run.var.teamcity.cloud.docker;
+
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link CpusetAllocator} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class CpusetAllocatorTest {
+
+    @Test
+    public void invalidConstructorArguments() {
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> new CpusetAllocator(-1));
+    }
+
+    @Test
+    public void invalidLayout() {
+        CpusetAllocator allocator = new CpusetAllocator(4);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> allocator.getCapacity(null));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                allocator.getCapacity(CpusetLayout.NONE));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                allocator.allocate(UUID.randomUUID(), CpusetLayout.NONE));
+    }
+
+    @Test
+    public void disjointCpusets() {
+        CpusetAllocator allocator = new CpusetAllocator(8);
+        CpusetLayout layout = new CpusetLayout(4, 1);
+
+        assertThat(allocator.getCapacity(layout)).isEqualTo(2);
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(2);
+
+        CpusetAllocator.Cpuset first = allocator.allocate(UUID.randomUUID(), layout).get();
+        CpusetAllocator.Cpuset second = allocator.allocate(UUID.randomUUID(), layout).get();
+
+        assertThat(first.getCpus()).isEqualTo("0-3");
+        assertThat(first.getMems()).isEmpty();
+        assertThat(second.getCpus()).isEqualTo("4-7");
+        assertThat(allocator.getFreeCount(layout)).isZero();
+        assertThat(allocator.allocate(UUID.randomUUID(), layout)).isEmpty();
+    }
+
+    @Test
+    public void singleCpuWidth() {
+        CpusetAllocator allocator = new CpusetAllocator(2);
+        CpusetLayout layout = new CpusetLayout(1, 1);
+
+        assertThat(allocator.allocate(UUID.randomUUID(), layout).get().getCpus()).isEqualTo("0");
+        assertThat(allocator.allocate(UUID.randomUUID(), layout).get().getCpus()).isEqualTo("1");
+    }
+
+    @Test
+    public void remainingCpusAreUnused() {
+        assertThat(new CpusetAllocator(7).getCapacity(new CpusetLayout(3, 1))).isEqualTo(2);
+
+        CpusetAllocator allocator = new CpusetAllocator(2);
+        CpusetLayout layout = new CpusetLayout(4, 1);
+
+        assertThat(allocator.getCapacity(layout)).isZero();
+        assertThat(allocator.allocate(UUID.randomUUID(), layout)).isEmpty();
+    }
+
+    @Test
+    public void numaNodesAreBalanced() {
+        CpusetAllocator allocator = new CpusetAllocator(8);
+        CpusetLayout layout = new CpusetLayout(2, 2);
+
+        assertThat(allocator.getCapacity(layout)).isEqualTo(4);
+
+        CpusetAllocator.Cpuset first = allocator.allocate(UUID.randomUUID(), layout).get();
+        CpusetAllocator.Cpuset second = allocator.allocate(UUID.randomUUID(), layout).get();
+
+        assertThat(first.getCpus()).isEqualTo("0-1");
+        assertThat(first.getMems()).isEqualTo(Optional.of("0"));
+        assertThat(second.getCpus()).isEqualTo("4-5");
+        assertThat(second.getMems()).isEqualTo(Optional.of("1"));
+    }
+
+    @Test
+    public void layoutsShareTheHostCpus() {
+        CpusetAllocator allocator = new CpusetAllocator(8);
+        CpusetLayout narrow = new CpusetLayout(2, 1);
+        CpusetLayout wide = new CpusetLayout(4, 1);
+
+        assertThat(allocator.allocate(UUID.randomUUID(), narrow).get().getCpus()).isEqualTo("0-1");
+
+        // The first wide cpuset overlaps with the allocated narrow one.
+        assertThat(allocator.getFreeCount(wide)).isEqualTo(1);
+        assertThat(allocator.allocate(UUID.randomUUID(), wide).get().getCpus()).isEqualTo("4-7");
+        assertThat(allocator.getFreeCount(narrow)).isEqualTo(1);
+        assertThat(allocator.allocate(UUID.randomUUID(), wide)).isEmpty();
+        assertThat(allocator.allocate(UUID.randomUUID(), narrow).get().getCpus()).isEqualTo("2-3");
+    }
+
+    @Test
+    public void allocationIsIdempotent() {
+        CpusetAllocator allocator = new CpusetAllocator(4);
+        CpusetLayout layout = new CpusetLayout(2, 1);
+
+        UUID uuid = UUID.randomUUID();
+
+        String cpus = allocator.allocate(uuid, layout).get().getCpus();
+
+        assertThat(allocator.allocate(uuid, layout).get().getCpus()).isEqualTo(cpus);
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(1);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> allocator.allocate(null, layout));
+    }
+
+    @Test
+    public void release() {
+        CpusetAllocator allocator = new CpusetAllocator(4);
+        CpusetLayout layout = new CpusetLayout(2, 1);
+
+        UUID uuid = UUID.randomUUID();
+
+        allocator.allocate(uuid, layout);
+        allocator.allocate(UUID.randomUUID(), layout);
+
+        assertThat(allocator.getFreeCount(layout)).isZero();
+
+        allocator.release(uuid);
+        // Releasing twice or releasing an unknown instance has no effect.
+        allocator.release(uuid);
+        allocator.release(UUID.randomUUID());
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(1);
+        assertThat(allocator.allocate(UUID.randomUUID(), layout).get().getCpus()).isEqualTo("0-1");
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> allocator.release(null));
+    }
+
+    @Test
+    public void reconcileMustAdoptLabeledCpusets() {
+        CpusetAllocator allocator = new CpusetAllocator(8);
+        CpusetLayout layout = new CpusetLayout(2, 1);
+
+        UUID adoptedUuid = UUID.randomUUID();
+        AgentHolderInfo agentHolder = agentHolder(adoptedUuid, "0-1,4");
+
+        allocator.reconcile(Arrays.asList(agentHolder, agentHolder(UUID.randomUUID(), null)), System.nanoTime());
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(2);
+        assertThat(allocator.allocate(UUID.randomUUID(), layout).get().getCpus()).isEqualTo("2-3");
+
+        // Adopted cpusets are freed once their agent holder is gone.
+        allocator.reconcile(Collections.emptyList(), System.nanoTime());
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(3);
+    }
+
+    @Test
+    public void reconcileMustNotFreeAllocatedCpusets() {
+        CpusetAllocator allocator = new CpusetAllocator(4);
+        CpusetLayout layout = new CpusetLayout(2, 1);
+
+        // The agent holder may not be created yet.
+        allocator.allocate(UUID.randomUUID(), layout);
+
+        allocator.reconcile(Collections.emptyList(), System.nanoTime());
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(1);
+    }
+
+    @Test
+    public void reconcileMustNotAdoptCpusetsReleasedAfterListing() {
+        CpusetAllocator allocator = new CpusetAllocator(4);
+        CpusetLayout layout = new CpusetLayout(2, 1);
+
+        UUID uuid = UUID.randomUUID();
+        String cpus = allocator.allocate(uuid, layout).get().getCpus();
+
+        long listingTime = System.nanoTime();
+
+        allocator.release(uuid);
+
+        allocator.reconcile(Collections.singletonList(agentHolder(uuid, cpus)), listingTime);
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(2);
+
+        // A more recent listing still reporting the agent holder is trusted.
+        allocator.reconcile(Collections.singletonList(agentHolder(uuid, cpus)), System.nanoTime());
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(1);
+    }
+
+    @Test
+    public void reconcileMustIgnoreInvalidLabels() {
+        CpusetAllocator allocator = new CpusetAllocator(4);
+        CpusetLayout layout = new CpusetLayout(2, 1);
+
+        allocator.reconcile(Arrays.asList(agentHolder(UUID.randomUUID(), "not a cpuset"),
+                agentHolder(UUID.randomUUID(), "3-1"), agentHolder(null, "0-1")), System.nanoTime());
+
+        assertThat(allocator.getFreeCount(layout)).isEqualTo(2);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                allocator.reconcile(null, System.nanoTime()));
+    }
+
+    private AgentHolderInfo agentHolder(UUID instanceUuid, String cpus) {
+        Map<String, String> labels = new HashMap<>();
+        if (instanceUuid != null) {
+            labels.put(DockerCloudUtils.INSTANCE_ID_LABEL, instanceUuid.toString());
+        }
+        if (cpus != null) {
+            labels.put(DockerCloudUtils.CPUSET_LABEL, cpus);
+        }
+        return new AgentHolderInfo(UUID.randomUUID().toString(), "", labels, "", "", Instant.now(), true);
+    }
+}
@@ -135,6 +135,44 @@ public class CreateAgentParametersTest {
         assertThat(params.getPullStrategy()).isEqualTo(PullStrategy.PULL_IGNORE_FAILURE);
     }
 
+    @Test
+    public void getCpuset() {
+        CreateAgentParameters params = CreateAgentParameters.from(Node.EMPTY_OBJECT);
+
+        assertThat(params.getCpuset()).isEmpty();
+
+        CpusetAllocator.Cpuset cpuset = new CpusetAllocator.Cpuset("0-3", "0");
+
+        assertThat(params.cpuset(cpuset).getCpuset().get()).isSameAs(cpuset);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> params.cpuset(null));
+    }
+
+    @Test
+    public void getVolumes() {
+        CreateAgentParameters params = CreateAgentParameters.from(Node.EMPTY_OBJECT);
+
+        assertThat(params.getVolumes()).isEmpty();
+
+        params.volume("cache1", "/cache1").volume("cache2", "/cache2");
+
+        assertThat(params.getVolumes()).containsExactly(entry("cache1", "/cache1"), entry("cache2", "/cache2"));
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> params.volume(null, "/cache"));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> params.volume("cache", null));
+    }
+
+    @Test
+    public void spreadPlacement() {
+        CreateAgentParameters params = CreateAgentParameters.from(Node.EMPTY_OBJECT);
+
+        assertThat(params.isSpreadPlacement()).isFalse();
+
+        params.spreadPlacement(true);
+
+        assertThat(params.isSpreadPlacement()).isTrue();
+    }
+
     @Test
     public void fromImageConfigMustResolveImage() {
         DockerImageConfigBuilder builder = DockerImageConfigBuilder.newBuilder("test", Node.EMPTY_OBJECT);
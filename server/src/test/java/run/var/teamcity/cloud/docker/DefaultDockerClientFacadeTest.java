@@ -9,6 +9,7 @@ import run.var.teamcity.cloud.docker.test.TestDockerClient;
 import run.var.teamcity.cloud.docker.test.TestDockerClient.Container;
 import run.var.teamcity.cloud.docker.test.TestUtils;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.EditableNode;
 import run.var.teamcity.cloud.docker.util.Node;
 
 import java.math.BigInteger;
@@ -19,6 +20,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static run.var.teamcity.cloud.docker.test.TestUtils.listOf;
 import static run.var.teamcity.cloud.docker.util.DockerCloudUtils.mapOf;
 import static run.var.teamcity.cloud.docker.util.DockerCloudUtils.pair;
@@ -235,6 +237,26 @@ public class DefaultDockerClientFacadeTest extends DockerClientFacadeTest {
         assertThat(containers.get(0).getLabels()).containsEntry("key1", "value1").containsEntry("key2", "value2");
     }
 
+    @Test
+    public void containerVolumes() {
+        dockerClient.localImage("resolved-image", "latest");
+
+        DefaultDockerClientFacade facade = new DefaultDockerClientFacade(dockerClient);
+
+        EditableNode containerSpec = Node.EMPTY_OBJECT.editNode();
+        containerSpec.getOrCreateObject("HostConfig").getOrCreateArray("Binds").add("/host:/container");
+
+        facade.createAgent(CreateAgentParameters.from(containerSpec.saveNode()).
+                imageName("resolved-image:latest").
+                volume("cache1", "/cache1").
+                volume("cache2", "/cache2"));
+
+        List<Container> containers = dockerClient.getContainers();
+        assertThat(containers).hasSize(1);
+        assertThat(containers.get(0).getBinds()).containsExactly("/host:/container", "cache1:/cache1",
+                "cache2:/cache2");
+    }
+
     @Test
     public void containerEnv() {
 
@@ -254,6 +276,18 @@ public class DefaultDockerClientFacadeTest extends DockerClientFacadeTest {
         assertThat(containers.get(0).getEnv()).isEqualTo(env);
     }
 
+    @Test
+    public void spreadPlacementNotSupported() {
+        DefaultDockerClientFacade facade = new DefaultDockerClientFacade(dockerClient);
+
+        dockerClient.newLocalImage("image-1", "latest");
+
+        assertThatExceptionOfType(DockerClientFacadeException.class).isThrownBy(() ->
+                facade.createAgent(CreateAgentParameters.from(Node.EMPTY_OBJECT).
+                        imageName("image-1:latest").
+                        spreadPlacement(true)));
+    }
+
     @Test
     public void startAgentContainer() {
 
@@ -435,6 +469,24 @@ public class DefaultDockerClientFacadeTest extends DockerClientFacadeTest {
         assertThat(logs.toString()).isEqualTo("txt on stdout, txt on stdin, txt unknown std type");
     }
 
+    @Test
+    public void getLogsStripEscapeSequences() {
+        DefaultDockerClientFacade facade = new DefaultDockerClientFacade(dockerClient);
+
+        Container container = new Container();
+
+        container.getLogStreamHandler().
+                fragment("\u001B[1;3", StdioType.STDOUT).
+                fragment("1mred\u001B[0m, h\u00e9", StdioType.STDOUT).
+                fragment("llo", StdioType.STDERR);
+
+        dockerClient.container(container);
+
+        CharSequence logs = facade.getLogs(container.getId());
+
+        assertThat(logs.toString()).isEqualTo("red, h\u00e9llo");
+    }
+
     @Override
     protected DockerClientFacade createFacade(TestDockerClient dockerClient) {
         return new DefaultDockerClientFacade(dockerClient);
@@ -6,6 +6,7 @@ import jetbrains.buildServer.clouds.InstanceStatus;
 import jetbrains.buildServer.clouds.QuotaException;
 import jetbrains.buildServer.serverSide.BuildAgentManager;
 import jetbrains.buildServer.serverSide.SBuildServer;
+import jetbrains.buildServer.serverSide.SRunningBuild;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -22,23 +23,33 @@ import run.var.teamcity.cloud.docker.test.LongRunning;
 import run.var.teamcity.cloud.docker.test.TestCloudState;
 import run.var.teamcity.cloud.docker.test.TestDockerClient;
 import run.var.teamcity.cloud.docker.test.TestDockerImageResolver;
+import run.var.teamcity.cloud.docker.test.TestPipedStreamHandler;
 import run.var.teamcity.cloud.docker.test.TestSBuildAgent;
 import run.var.teamcity.cloud.docker.test.TestSBuildServer;
 import run.var.teamcity.cloud.docker.test.TestUtils;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.Node;
 
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
@@ -61,6 +72,7 @@ public class DefaultDockerCloudClientTest {
     private Node containerSpec;
     private boolean pullOnCreate;
     private boolean rmOnExit;
+    private boolean captureLogs;
     private int maxInstanceCount;
     private TestSBuildServer buildServer;
     private TestDockerImageResolver dockerImageResolver;
@@ -69,6 +81,15 @@ public class DefaultDockerCloudClientTest {
     private CloudErrorInfo errorInfo;
     private URL serverURL;
     private URL defaultServerURL;
+    private AgentLogStore logStore;
+    private List<DockerClientConfig> additionalDockerConfigs;
+    private ComputeResources imageResources;
+    private ComputeResources resourceBudget;
+    private Duration statsSamplingRate;
+    private RecyclingPolicy recyclingPolicy;
+    private CpusetLayout cpusetLayout;
+    private long cacheDiskBudgetBytes;
+    private List<CacheVolume> cacheVolumes;
 
     @Before
     public void init() throws MalformedURLException {
@@ -86,6 +107,16 @@ public class DefaultDockerCloudClientTest {
         maxInstanceCount = 1;
         pullOnCreate = true;
         rmOnExit = true;
+        captureLogs = false;
+        logStore = new AgentLogStore(TestUtils.tempDirectory());
+        additionalDockerConfigs = new ArrayList<>();
+        imageResources = ComputeResources.NONE;
+        resourceBudget = ComputeResources.NONE;
+        statsSamplingRate = DockerCloudClientConfig.DEFAULT_STATS_SAMPLING_RATE;
+        recyclingPolicy = RecyclingPolicy.NONE;
+        cpusetLayout = CpusetLayout.NONE;
+        cacheDiskBudgetBytes = 0;
+        cacheVolumes = Collections.emptyList();
     }
 
     @Test
@@ -175,6 +206,110 @@ public class DefaultDockerCloudClientTest {
         assertThat(testCloudSupport.getClientFacade().getAgentHolders().isEmpty());
     }
 
+    @Test(timeout = 30000)
+    public void queriesDoNotWaitForClientLock() throws InterruptedException {
+        maxInstanceCount = 2;
+
+        CountDownLatch syncBlocked = new CountDownLatch(1);
+        CountDownLatch releaseSync = new CountDownLatch(1);
+
+        cloudState = new TestCloudState() {
+            @Override
+            public void registerTerminatedInstance(@Nonnull String imageId, @Nonnull String instanceId) {
+                // Invoked from the sync task while holding the client lock.
+                syncBlocked.countDown();
+                try {
+                    releaseSync.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        testCloudSupport.getClientFacade().getAgentHolders().get(0).running(false);
+
+        try {
+            syncBlocked.await();
+
+            assertThat(client.isInitialized()).isTrue();
+            assertThat(client.getImages()).containsExactly(image);
+            assertThat(client.findImageById(image.getId())).isSameAs(image);
+            assertThat(client.canStartNewInstance(image)).isTrue();
+            assertThat(image.getInstances()).containsExactly(instance);
+            assertThat(image.findInstanceById(instance.getInstanceId())).isSameAs(instance);
+            assertThat(instance.getStatus()).isEqualTo(InstanceStatus.RUNNING);
+            assertThat(instance.getAgentHolderId()).isPresent();
+        } finally {
+            releaseSync.countDown();
+        }
+    }
+
+    @Test
+    public void captureLogs() {
+        captureLogs = true;
+
+        TestPipedStreamHandler logStream = new TestPipedStreamHandler();
+        testCloudSupport.getClientFacade().setLogStreamProvider(agentHolderId -> logStream);
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        String agentHolderId = instance.getAgentHolderId().get();
+
+        waitUntil(() -> logStore.isCapturing(agentHolderId));
+
+        // Captures must run on their own connections, without read timeout.
+        assertThat(testCloudSupport.getClientConfigs().stream().anyMatch(config ->
+                config.getTransferTimeout().isZero() &&
+                        config.getConnectionPoolSize() == DockerEndpoint.LOG_CAPTURE_POOL_SIZE)).isTrue();
+
+        logStream.push("agent output");
+
+        client.terminateInstance(instance);
+
+        waitForInstanceStatus(instance, InstanceStatus.STOPPED);
+
+        // Container termination ends the log stream.
+        logStream.end();
+
+        waitUntil(() -> !logStore.isCapturing(agentHolderId));
+
+        ByteArrayOutputStream logs = new ByteArrayOutputStream();
+        try {
+            assertThat(logStore.writeLogs(agentHolderId, logs)).isTrue();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        assertThat(new String(logs.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("agent output");
+    }
+
+    @Test
+    public void noLogCaptureByDefault() {
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        assertThat(logStore.isCapturing(instance.getAgentHolderId().get())).isFalse();
+        assertThat(logStore.getAgentHolderIds()).isEmpty();
+    }
+
     @Test
     public void restartInstance() {
 
@@ -281,6 +416,28 @@ public class DefaultDockerCloudClientTest {
         assertThat(client.getErrorInfo()).isNull();
     }
 
+    @Test
+    public void discardAgentsUnregisteredAfterInitialSync() {
+        DefaultDockerCloudClient client = createClient();
+
+        waitUntil(() -> client.getLastDockerSyncTime().isPresent());
+
+        TestSBuildAgent orphanAgent = new TestSBuildAgent().
+                environmentVariable(DockerCloudUtils.ENV_CLIENT_ID, TestUtils.TEST_UUID.toString()).
+                environmentVariable(DockerCloudUtils.ENV_INSTANCE_ID, TestUtils.TEST_UUID_2.toString());
+
+        buildServer.getTestBuildAgentManager().unregisteredAgent(orphanAgent);
+
+        waitUntilNextSync(client);
+
+        // The server-wide list of unregistered agents is only scanned once.
+        assertThat(buildServer.getBuildAgentManager().getUnregisteredAgents()).containsOnly(orphanAgent);
+
+        buildServer.notifyAgentUnregistered(orphanAgent);
+
+        waitUntil(() -> buildServer.getBuildAgentManager().getUnregisteredAgents().isEmpty());
+    }
+
     @Test
     public void findInstanceByAgentMustReturnManagedAgentWhenNotRegisteredYet() {
         DefaultDockerCloudClient client = createClient();
@@ -427,6 +584,73 @@ public class DefaultDockerCloudClientTest {
         assertThat(instance.getAgentRuntimeUuid()).isEmpty();
     }
 
+    @Test
+    public void findInstanceByAgentMustRejectForeignAgentWithoutParsingParameters() {
+        DefaultDockerCloudClient client = createClient();
+
+        DockerImage dockerImage = waitForImage(client);
+
+        DockerInstance instance = client.startNewInstance(dockerImage, userData);
+
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        TestSBuildAgent agent = new TestSBuildAgent() {
+            @Override
+            public Map<String, String> getConfigurationParameters() {
+                throw new AssertionError("Configuration parameters must not be queried.");
+            }
+        }.
+                environmentVariable(DockerCloudUtils.ENV_CLIENT_ID, TestUtils.TEST_UUID_2.toString()).
+                environmentVariable(DockerCloudUtils.ENV_IMAGE_ID, dockerImage.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_INSTANCE_ID, instance.getUuid().toString());
+
+        assertThat(client.findInstanceByAgent(agent)).isNull();
+        assertThat(client.findInstanceByAgent(new TestSBuildAgent())).isNull();
+
+        buildServer.notifyAgentRegistered(agent);
+        buildServer.notifyAgentUnregistered(agent);
+    }
+
+    @Test
+    public void findInstanceByAgentMustUseAgentIdOnceRegistered() {
+        rmOnExit = true;
+
+        DefaultDockerCloudClient client = createClient();
+
+        DockerImage dockerImage = waitForImage(client);
+
+        DockerInstance instance = client.startNewInstance(dockerImage, userData);
+
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        TestSBuildAgent agent = new TestSBuildAgent().
+                id(42).
+                environmentVariable(DockerCloudUtils.ENV_CLIENT_ID, client.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_IMAGE_ID, dockerImage.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_INSTANCE_ID, instance.getUuid().toString()).
+                configurationParameter(DockerCloudUtils.AGENT_RUNTIME_ID_AGENT_CONF, TestUtils.TEST_UUID.toString());
+
+        buildServer.notifyAgentRegistered(agent);
+
+        // Registered agent are matched from their id only.
+        assertThat(client.findInstanceByAgent(new TestSBuildAgent().id(42))).isSameAs(instance);
+        assertThat(client.findInstanceByAgent(new TestSBuildAgent().id(43))).isNull();
+
+        buildServer.notifyAgentUnregistered(agent);
+
+        assertThat(client.findInstanceByAgent(new TestSBuildAgent().id(42))).isNull();
+
+        buildServer.notifyAgentRegistered(agent);
+
+        client.terminateInstance(instance);
+
+        waitUntil(() -> dockerImage.getInstances().isEmpty());
+
+        // Stale entries are discarded.
+        assertThat(client.findInstanceByAgent(new TestSBuildAgent().id(42))).isNull();
+        assertThat(client.findInstanceByAgent(agent)).isNull();
+    }
+
     @Test
     public void findImageById() {
         DefaultDockerCloudClient client = createClient();
@@ -1001,6 +1225,29 @@ public class DefaultDockerCloudClientTest {
         assertThat(instance.getTaskId().get()).isEqualTo(container.getTaskId());
     }
 
+    @Test
+    public void mustResolveDeferredTaskIdOnSync() {
+        DefaultDockerCloudClient client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        TestDockerClientFacade clientFacade = testCloudSupport.getClientFacade();
+
+        clientFacade.deferredTaskIds(true);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        waitUntilNextSync(client);
+
+        AgentHolder agentHolder = clientFacade.getAgentHolders().get(0);
+
+        assertThat(instance.getTaskId()).isEqualTo(Optional.of(agentHolder.getTaskId()));
+        assertThat(instance.getStatus()).isEqualTo(InstanceStatus.RUNNING);
+        assertThat(instance.getErrorInfo()).isNull();
+    }
+
     @Test
     public void mustSetInstanceAgentHolderId() {
         DefaultDockerCloudClient client = createClient();
@@ -1016,6 +1263,430 @@ public class DefaultDockerCloudClientTest {
         assertThat(instance.getAgentHolderId().get()).isEqualTo(agentHolder.getId());
     }
 
+    @Test
+    public void placementAcrossEndpoints() {
+        maxInstanceCount = 3;
+
+        URI otherURI = URI.create("tcp://127.0.0.1:2376");
+        TestDockerClientFacade otherFacade = testCloudSupport.additionalFacade(otherURI);
+        otherFacade.
+                localImage("resolved-image:latest").
+                localImage("image:latest");
+        additionalDockerConfigs.add(new DockerClientConfig(otherURI, DockerCloudUtils.DOCKER_API_TARGET_VERSION));
+
+        DefaultDockerCloudClient client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        waitUntilNextSync(client);
+
+        DockerInstance instance1 = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance1, InstanceStatus.RUNNING);
+
+        // Both daemons have the same resources: the second instance must go to the idle one.
+        DockerInstance instance2 = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance2, InstanceStatus.RUNNING);
+
+        DockerEndpoint primaryEndpoint = instance1.getEndpoint().get();
+        DockerEndpoint otherEndpoint = instance2.getEndpoint().get();
+
+        assertThat(primaryEndpoint.getInstanceURI()).isEqualTo(TestDockerClient.TEST_CLIENT_URI);
+        assertThat(otherEndpoint.getInstanceURI()).isEqualTo(otherURI);
+        assertThat(testCloudSupport.getClientFacade().getAgentHolders()).hasSize(1);
+        assertThat(otherFacade.getAgentHolders()).hasSize(1);
+
+        otherFacade.setFailOnAccessException(new DockerClientException("Test failure."));
+
+        waitUntil(() -> !otherEndpoint.isAvailable());
+
+        // The state of the instances of an unreachable endpoint is unknown, they must be left untouched.
+        waitUntilNextSync(client);
+        assertThat(instance2.getStatus()).isEqualTo(InstanceStatus.RUNNING);
+        assertThat(client.getErrorInfo()).isNull();
+
+        DockerInstance instance3 = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance3, InstanceStatus.RUNNING);
+
+        assertThat(instance3.getEndpoint().get()).isSameAs(primaryEndpoint);
+
+        otherFacade.setFailOnAccessException(null);
+
+        waitUntil(otherEndpoint::isAvailable);
+
+        client.terminateInstance(instance2);
+
+        waitUntil(() -> !otherFacade.getTerminationInfos().isEmpty());
+
+        assertThat(otherFacade.getTerminationInfos()).hasSize(1);
+        assertThat(testCloudSupport.getClientFacade().getTerminationInfos()).isEmpty();
+    }
+
+    @Test
+    public void resourceBudget() {
+        maxInstanceCount = 10;
+        imageResources = new ComputeResources(ComputeResources.NANO_CPUS_PER_CPU, 1024L * 1024 * 1024);
+        resourceBudget = new ComputeResources(3 * ComputeResources.NANO_CPUS_PER_CPU, 0);
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        waitUntilNextSync(client);
+
+        for (int i = 0; i < 3; i++) {
+            DockerInstance instance = client.startNewInstance(image, userData);
+            waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+        }
+
+        assertThat(client.canStartNewInstance(image)).isFalse();
+        assertThatExceptionOfType(QuotaException.class).isThrownBy(() -> client.startNewInstance(image, userData));
+    }
+
+    @Test
+    public void resourceBudgetDaemonCapacity() {
+        maxInstanceCount = 10;
+        imageResources = new ComputeResources(ComputeResources.NANO_CPUS_PER_CPU, 1024L * 1024 * 1024);
+        resourceBudget = new ComputeResources(0, 10L * 1024 * 1024 * 1024);
+        testCloudSupport.getClientFacade().setDaemonResources(new DaemonResources(4, 2L * 1024 * 1024 * 1024));
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        waitUntilNextSync(client);
+
+        for (int i = 0; i < 2; i++) {
+            DockerInstance instance = client.startNewInstance(image, userData);
+            waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+        }
+
+        // The profile budget still allows a third instance, but the daemon host memory is exhausted.
+        assertThat(client.canStartNewInstance(image)).isTrue();
+        assertThatExceptionOfType(QuotaException.class).isThrownBy(() -> client.startNewInstance(image, userData));
+    }
+
+    @Test
+    public void cpusetAllocation() {
+        rmOnExit = false;
+        maxInstanceCount = 10;
+        cpusetLayout = new CpusetLayout(2, 1);
+        testCloudSupport.getClientFacade().setDaemonResources(new DaemonResources(4, 8L * 1024 * 1024 * 1024));
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        waitUntilNextSync(client);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+        DockerInstance otherInstance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(otherInstance, InstanceStatus.RUNNING);
+
+        List<AgentHolder> agentHolders = testCloudSupport.getClientFacade().getAgentHolders();
+        assertThat(agentHolders).hasSize(2);
+        assertThat(agentHolders.get(0).getCpuset()).isIn("0-1", "2-3");
+        assertThat(agentHolders.get(1).getCpuset()).isIn("0-1", "2-3").isNotEqualTo(agentHolders.get(0).getCpuset());
+        // The cpuset is recorded as a label, for the allocator to be rebuilt from the agent holders.
+        assertThat(agentHolders.get(0).getLabels().get(DockerCloudUtils.CPUSET_LABEL))
+                .isEqualTo(agentHolders.get(0).getCpuset());
+
+        // All CPUs are allocated.
+        assertThat(client.canStartNewInstance(image)).isFalse();
+        assertThatExceptionOfType(QuotaException.class).isThrownBy(() -> client.startNewInstance(image, userData));
+
+        client.terminateInstance(instance);
+
+        waitForInstanceStatus(instance, InstanceStatus.STOPPED);
+
+        // Containers are always discarded, since they would keep their released cpuset otherwise.
+        List<TestDockerClientFacade.TerminationInfo> terminationInfos = testCloudSupport.getClientFacade().
+                getTerminationInfos();
+        assertThat(terminationInfos).hasSize(1);
+        assertThat(terminationInfos.get(0).isRemoved()).isTrue();
+        assertThat(client.canStartNewInstance(image)).isTrue();
+
+        DockerInstance newInstance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(newInstance, InstanceStatus.RUNNING);
+
+        assertThat(testCloudSupport.getClientFacade().getAgentHolders()).hasSize(2);
+        assertThat(client.canStartNewInstance(image)).isFalse();
+    }
+
+    @Test
+    public void cpusetReleasedOnStartFailure() {
+        rmOnExit = false;
+        maxInstanceCount = 10;
+        cpusetLayout = new CpusetLayout(2, 1);
+        testCloudSupport.getClientFacade().setDaemonResources(new DaemonResources(4, 8L * 1024 * 1024 * 1024));
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        waitUntilNextSync(client);
+
+        testCloudSupport.getClientFacade().setFailOnCreateException(new DockerClientException("Simulated failure."));
+
+        DockerInstance failedInstance = client.startNewInstance(image, userData);
+        waitUntil(() -> failedInstance.getStatus() == InstanceStatus.ERROR);
+
+        testCloudSupport.getClientFacade().setFailOnCreateException(null);
+
+        // The cpuset reserved to the failed instance is available again.
+        DockerInstance instance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+        DockerInstance otherInstance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(otherInstance, InstanceStatus.RUNNING);
+
+        List<AgentHolder> agentHolders = testCloudSupport.getClientFacade().getAgentHolders();
+        assertThat(agentHolders).hasSize(2);
+        assertThat(agentHolders.get(0).getCpuset()).isNotEqualTo(agentHolders.get(1).getCpuset());
+    }
+
+    @Test
+    public void cacheVolumes() {
+        rmOnExit = false;
+        maxInstanceCount = 10;
+        cacheVolumes = Collections.singletonList(new CacheVolume("maven", "/root/.m2"));
+        cacheDiskBudgetBytes = 150;
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        waitUntilNextSync(client);
+
+        TestDockerClientFacade clientFacade = testCloudSupport.getClientFacade();
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+        DockerInstance otherInstance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(otherInstance, InstanceStatus.RUNNING);
+
+        // Concurrently running agent holders never share a volume.
+        List<AgentHolder> agentHolders = clientFacade.getAgentHolders();
+        assertThat(agentHolders).hasSize(2);
+        String volume = agentHolders.get(0).getVolumes().entrySet().iterator().next().getKey();
+        String otherVolume = agentHolders.get(1).getVolumes().entrySet().iterator().next().getKey();
+        assertThat(agentHolders.get(0).getVolumes()).containsOnlyKeys(volume).containsValue("/root/.m2");
+        assertThat(agentHolders.get(1).getVolumes()).containsOnlyKeys(otherVolume).containsValue("/root/.m2");
+        assertThat(volume).isNotEqualTo(otherVolume);
+
+        List<VolumeInfo> volumes = clientFacade.getVolumes();
+        assertThat(volumes).hasSize(2);
+        assertThat(volumes.get(0).getLabels()).containsEntry(DockerCloudUtils.CLIENT_ID_LABEL,
+                TestUtils.TEST_UUID.toString());
+
+        client.terminateInstance(instance);
+        waitForInstanceStatus(instance, InstanceStatus.STOPPED);
+
+        // Containers are always discarded, since they would keep their released volumes otherwise.
+        List<TestDockerClientFacade.TerminationInfo> terminationInfos = clientFacade.getTerminationInfos();
+        assertThat(terminationInfos).hasSize(1);
+        assertThat(terminationInfos.get(0).isRemoved()).isTrue();
+
+        String releasedVolume = clientFacade.getAgentHolders().get(0).getVolumes().containsKey(volume) ?
+                otherVolume : volume;
+
+        // Released volumes are handed over to the next instance.
+        DockerInstance newInstance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(newInstance, InstanceStatus.RUNNING);
+
+        assertThat(clientFacade.getVolumes()).hasSize(2);
+        agentHolders = clientFacade.getAgentHolders();
+        assertThat(agentHolders).hasSize(2);
+        assertThat(agentHolders.get(0).getVolumes().keySet()).isNotEqualTo(agentHolders.get(1).getVolumes().keySet());
+        assertThat(agentHolders.get(0).getVolumes().keySet()).isSubsetOf(volume, otherVolume);
+        assertThat(agentHolders.get(1).getVolumes().keySet()).isSubsetOf(volume, otherVolume);
+
+        // Exceeds the disk budget once released.
+        for (VolumeInfo volumeInfo : clientFacade.getVolumes()) {
+            clientFacade.volume(new VolumeInfo(volumeInfo.getName(), volumeInfo.getLabels(), 100));
+        }
+
+        client.terminateInstance(newInstance);
+        waitForInstanceStatus(newInstance, InstanceStatus.STOPPED);
+
+        waitUntil(() -> clientFacade.getVolumes().size() == 1);
+
+        // Volumes in use are never evicted.
+        assertThat(clientFacade.getVolumes().get(0).getName()).isNotEqualTo(releasedVolume);
+    }
+
+    @Test
+    public void resourceUsageSampling() {
+        statsSamplingRate = Duration.ofSeconds(2);
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        waitUntilNextSync(client);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        long nanoTime = System.nanoTime();
+        AgentHolder agentHolder = testCloudSupport.getClientFacade().getAgentHolders().get(0);
+        // Two CPUs half used, 2 out of 10 periods throttled.
+        agentHolder.stats(new ContainerStats(nanoTime, 2_000_000_000L, 8_000_000_000L, 1_000_000_000L,
+                4_000_000_000L, 2, 10, 2, 64 * 1024 * 1024, 1024, 2048));
+
+        waitUntil(() -> instance.getUsageStats().getSummary(ResourceUsageStats.Metric.CPU).getCount() > 0);
+
+        agentHolder.stats(new ContainerStats(nanoTime + 1_000_000_000L, 2_000_000_000L, 8_000_000_000L,
+                1_000_000_000L, 4_000_000_000L, 2, 20, 7, 64 * 1024 * 1024, 3072, 2048));
+
+        waitUntil(() -> instance.getUsageStats().getSummary(ResourceUsageStats.Metric.BLOCK_IO).getCount() > 0);
+
+        ResourceUsageStats.Summary cpu = instance.getUsageStats().getSummary(ResourceUsageStats.Metric.CPU);
+        assertThat(cpu.getMean()).isEqualTo(0.5);
+        assertThat(instance.getUsageStats().getSummary(ResourceUsageStats.Metric.MEMORY).getPeak())
+                .isEqualTo(64 * 1024 * 1024);
+        assertThat(instance.getUsageStats().getSummary(ResourceUsageStats.Metric.BLOCK_IO).getPeak())
+                .isEqualTo(2048);
+        assertThat(instance.getUsageStats().getSummary(ResourceUsageStats.Metric.NETWORK_IO).getPeak())
+                .isEqualTo(0);
+        assertThat(instance.getUsageStats().getSummary(ResourceUsageStats.Metric.CPU_THROTTLING).getPeak())
+                .isEqualTo(0.5);
+
+        // Image statistics aggregate the samples of all its instances.
+        assertThat(image.getUsageStats().getSummary(ResourceUsageStats.Metric.CPU).getCount())
+                .isGreaterThanOrEqualTo(cpu.getCount());
+
+        // Statistics are fetched on a dedicated client facade.
+        assertThat(testCloudSupport.getClientConfigs().stream().anyMatch(config ->
+                config.getConnectionPoolSize() == DockerEndpoint.SAMPLING_POOL_SIZE)).isTrue();
+    }
+
+    @Test
+    public void recycleAfterBuildCount() {
+        rmOnExit = false;
+        recyclingPolicy = new RecyclingPolicy(2, Duration.ZERO, 0);
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        TestSBuildAgent agent = new TestSBuildAgent().
+                environmentVariable(DockerCloudUtils.ENV_CLIENT_ID, client.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_IMAGE_ID, image.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_INSTANCE_ID, instance.getUuid().toString());
+
+        buildServer.getTestBuildAgentManager().registeredAgent(agent);
+
+        buildServer.notifyBuildFinished(TestSBuildServer.newRunningBuild(1, agent));
+
+        assertThat(instance.getCompletedBuildCount()).isEqualTo(1);
+        assertThat(instance.getStatus()).isEqualTo(InstanceStatus.RUNNING);
+        assertThat(agent.isEnabled()).isTrue();
+
+        buildServer.notifyBuildFinished(TestSBuildServer.newRunningBuild(2, agent));
+
+        assertThat(instance.getCompletedBuildCount()).isEqualTo(2);
+        assertThat(agent.isEnabled()).isFalse();
+
+        // The container is discarded regardless of the rm-on-exit flag.
+        waitUntil(() -> image.getInstances().isEmpty());
+
+        TestDockerClientFacade clientFacade = testCloudSupport.getClientFacade();
+        assertThat(clientFacade.getTerminationInfos()).hasSize(1);
+        assertThat(clientFacade.getTerminationInfos().get(0).isRemoved()).isTrue();
+
+        // A replacement can be started.
+        assertThat(client.canStartNewInstance(image)).isTrue();
+    }
+
+    @Test
+    public void singleUse() {
+        rmOnExit = false;
+        maxInstanceCount = 2;
+        recyclingPolicy = new RecyclingPolicy(1, Duration.ZERO, 0);
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+        DockerInstance otherInstance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+        waitForInstanceStatus(otherInstance, InstanceStatus.RUNNING);
+
+        TestSBuildAgent agent = new TestSBuildAgent().
+                environmentVariable(DockerCloudUtils.ENV_CLIENT_ID, client.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_IMAGE_ID, image.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_INSTANCE_ID, instance.getUuid().toString());
+        TestSBuildAgent otherAgent = new TestSBuildAgent().
+                environmentVariable(DockerCloudUtils.ENV_CLIENT_ID, client.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_IMAGE_ID, image.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_INSTANCE_ID, otherInstance.getUuid().toString());
+
+        buildServer.getTestBuildAgentManager().registeredAgent(agent);
+        buildServer.getTestBuildAgentManager().registeredAgent(otherAgent);
+
+        // The finished build may still be reported as running by the agent.
+        SRunningBuild build = TestSBuildServer.newRunningBuild(1, agent);
+        agent.runningBuild(build);
+
+        buildServer.notifyBuildFinished(build);
+
+        assertThat(agent.isEnabled()).isFalse();
+
+        waitUntil(() -> image.getInstances().size() == 1);
+
+        assertThat(image.getInstances()).containsExactly(otherInstance);
+
+        // Another build was assigned before the agent could be disabled: termination is deferred.
+        otherAgent.runningBuild(TestSBuildServer.newRunningBuild(3, otherAgent));
+
+        buildServer.notifyBuildFinished(TestSBuildServer.newRunningBuild(2, otherAgent));
+
+        assertThat(otherAgent.isEnabled()).isFalse();
+
+        waitUntilNextSync(client);
+
+        assertThat(otherInstance.getStatus()).isEqualTo(InstanceStatus.RUNNING);
+
+        otherAgent.runningBuild(null);
+
+        // The pending recycling is completed on sync.
+        waitUntil(() -> image.getInstances().isEmpty());
+    }
+
+    @Test
+    public void recycleAboveMemoryUsage() {
+        recyclingPolicy = new RecyclingPolicy(0, Duration.ZERO, 32 * 1024 * 1024);
+
+        client = createClient();
+
+        DockerImage image = waitForImage(client);
+
+        DockerInstance instance = client.startNewInstance(image, userData);
+        waitForInstanceStatus(instance, InstanceStatus.RUNNING);
+
+        TestSBuildAgent agent = new TestSBuildAgent().
+                environmentVariable(DockerCloudUtils.ENV_CLIENT_ID, client.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_IMAGE_ID, image.getUuid().toString()).
+                environmentVariable(DockerCloudUtils.ENV_INSTANCE_ID, instance.getUuid().toString());
+
+        buildServer.getTestBuildAgentManager().registeredAgent(agent);
+
+        waitUntilNextSync(client);
+
+        assertThat(instance.getStatus()).isEqualTo(InstanceStatus.RUNNING);
+
+        instance.getUsageStats().record(ResourceUsageStats.Metric.MEMORY, 64 * 1024 * 1024);
+
+        // Memory limits are checked on sync.
+        waitUntil(() -> image.getInstances().isEmpty());
+
+        assertThat(agent.isEnabled()).isFalse();
+    }
+
     private DockerInstance extractInstance(DockerImage dockerImage) {
         Collection<DockerInstance> instances = dockerImage.getInstances();
 
@@ -1047,10 +1718,29 @@ public class DefaultDockerCloudClientTest {
 
         DockerClientConfig dockerClientConfig = new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI,
                 DockerCloudUtils.DOCKER_API_TARGET_VERSION);
-        DockerCloudClientConfig clientConfig = new DockerCloudClientConfig(testCloudSupport, TestUtils
-                .TEST_UUID, dockerClientConfig, false, Duration.ofSeconds(2), Duration.ofMinutes(10), serverURL);
-        DockerImageConfig imageConfig = new DockerImageConfig("UnitTest", containerSpec, pullOnCreate, rmOnExit, false,
-                registryCredentials, maxInstanceCount, 111);
+        DockerCloudClientConfig clientConfig = DockerCloudClientConfig.newBuilder(testCloudSupport,
+                TestUtils.TEST_UUID, dockerClientConfig).
+                additionalDockerClientConfigs(additionalDockerConfigs).
+                usingDaemonThreads(false).
+                dockerSyncRate(Duration.ofSeconds(2)).
+                taskTimeout(Duration.ofMinutes(10)).
+                serverURL(serverURL).
+                resourceBudget(resourceBudget).
+                statsSamplingRate(statsSamplingRate).
+                cpusetLayout(cpusetLayout).
+                cacheDiskBudgetBytes(cacheDiskBudgetBytes).
+                build();
+        DockerImageConfig imageConfig = DockerImageConfig.newBuilder("UnitTest", containerSpec).
+                pullOnCreate(pullOnCreate).
+                rmOnExit(rmOnExit).
+                registryCredentials(registryCredentials).
+                maxInstanceCount(maxInstanceCount).
+                agentPoolId(111).
+                captureLogs(captureLogs).
+                resources(imageResources).
+                recyclingPolicy(recyclingPolicy).
+                cacheVolumes(cacheVolumes).
+                build();
 
         // Setup proxies to make sure that the cloud client is not accessing the docker client or the TC API when
         // client internal state is locked, to prevent deadlocks.
@@ -1080,7 +1770,8 @@ public class DefaultDockerCloudClientTest {
         testCloudSupport.setFacadeWrapper(wrappedFacade);
 
         DefaultDockerCloudClient client = new DefaultDockerCloudClient(clientConfig,
-                Collections.singletonList(imageConfig), dockerImageResolver, cloudState, buildServerProxy);
+                Collections.singletonList(imageConfig), dockerImageResolver, cloudState, buildServerProxy, logStore,
+                new AgentHolderWatcher(Duration.ZERO));
 
 
         this.client = client;
@@ -1106,5 +1797,6 @@ public class DefaultDockerCloudClientTest {
                 // Ignore.
             }
         }
+        logStore.dispose();
     }
 }
\ No newline at end of file
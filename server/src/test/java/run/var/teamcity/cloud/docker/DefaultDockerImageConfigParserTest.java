@@ -1,12 +1,79 @@
 package run.var.teamcity.cloud.docker;
 
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.util.EditableNode;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
 /**
  * {@link DefaultDockerImageConfigParser} test suite.
  */
 public class DefaultDockerImageConfigParserTest extends DockerImageConfigParserTest {
 
+    @Test
+    public void resources() {
+        DockerImageConfigParser parser = createParser();
+        Spec spec = new Spec();
+
+        DockerImageConfig config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.getResources()).isEqualTo(ComputeResources.NONE);
+
+        EditableNode hostConfig = spec.root.getOrCreateObject("AgentHolderSpec").getOrCreateObject("HostConfig");
+        hostConfig.put("Memory", 512L * 1024 * 1024).put("CpuShares", 512);
+
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.getResources()).isEqualTo(new ComputeResources(500_000_000L, 512L * 1024 * 1024));
+
+        // Nano CPUs take precedence over CPU shares.
+        hostConfig.put("NanoCpus", 2_000_000_000L);
+
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.getResources()).isEqualTo(new ComputeResources(2_000_000_000L, 512L * 1024 * 1024));
+    }
+
+    @Test
+    public void cacheVolumes() {
+        DockerImageConfigParser parser = createParser();
+        Spec spec = new Spec();
+
+        DockerImageConfig config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.getCacheVolumes()).isEmpty();
+
+        EditableNode cacheVolumes = spec.administration.getOrCreateArray("CacheVolumes");
+        cacheVolumes.addObject().put("Name", "maven").put("Target", "/root/.m2");
+        cacheVolumes.addObject().put("Name", "gradle").put("Target", "/root/.gradle");
+
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.getCacheVolumes()).containsExactly(new CacheVolume("maven", "/root/.m2"),
+                new CacheVolume("gradle", "/root/.gradle"));
+
+        // Duplicate cache name.
+        cacheVolumes.addObject().put("Name", "maven").put("Target", "/root/.m3");
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> parser.fromJSon(spec.root.saveNode(),
+                emptyList()));
+    }
+
+    @Test
+    public void spreadPlacementNotSupported() {
+        DockerImageConfigParser parser = createParser();
+        Spec spec = new Spec();
+
+        spec.administration.put("SpreadPlacement", true);
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> parser.fromJSon(spec.root.saveNode(),
+                emptyList()));
+    }
+
     @Override
     protected DockerImageConfigParser createParser() {
         return new DefaultDockerImageConfigParser();
     }
-}
\ No newline at end of file
+}
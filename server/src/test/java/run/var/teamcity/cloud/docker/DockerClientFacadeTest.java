@@ -8,11 +8,15 @@ import run.var.teamcity.cloud.docker.client.DockerRegistryCredentials;
 import run.var.teamcity.cloud.docker.test.TestDockerClient;
 import run.var.teamcity.cloud.docker.util.Node;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static run.var.teamcity.cloud.docker.test.TestUtils.listOf;
+import static run.var.teamcity.cloud.docker.util.DockerCloudUtils.mapOf;
+import static run.var.teamcity.cloud.docker.util.DockerCloudUtils.pair;
 
 public abstract class DockerClientFacadeTest {
 
@@ -44,6 +48,34 @@ public abstract class DockerClientFacadeTest {
         facade.close();
     }
 
+    @Test
+    public void volumes() {
+        DockerClientFacade facade = createFacade(dockerClient);
+
+        Map<String, String> labels = mapOf(pair("key", "value"));
+
+        facade.createVolume("volume1", labels);
+        facade.createVolume("volume2", mapOf(pair("key", "other_value")));
+        dockerClient.volume(new TestDockerClient.Volume("volume3"));
+
+        assertThat(dockerClient.getVolumes()).hasSize(3);
+
+        dockerClient.getVolumes().stream().filter(volume -> volume.getName().equals("volume1")).findFirst().get().
+                size(42);
+
+        List<VolumeInfo> volumes = facade.listVolumes("key", "value");
+
+        assertThat(volumes).hasSize(1);
+        assertThat(volumes.get(0).getName()).isEqualTo("volume1");
+        assertThat(volumes.get(0).getLabels()).isEqualTo(labels);
+        assertThat(volumes.get(0).getSizeBytes()).isEqualTo(42);
+
+        assertThat(facade.removeVolume("volume1")).isTrue();
+        assertThat(facade.removeVolume("volume1")).isFalse();
+
+        assertThat(facade.listVolumes("key", "value")).isEmpty();
+    }
+
     protected abstract DockerClientFacade createFacade(TestDockerClient dockerClient);
 
     class ListenerInvocation {
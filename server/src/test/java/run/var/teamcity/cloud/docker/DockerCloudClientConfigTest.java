@@ -82,6 +82,85 @@ public class DockerCloudClientConfigTest {
                 dockerConfig, true, Duration.ofSeconds(2), Duration.ofSeconds(9), serverURL));
     }
 
+    @Test
+    public void builder() {
+        DockerClientConfig dockerConfig = new DockerClientConfig(DockerCloudUtils.DOCKER_DEFAULT_SOCKET_URI,
+                DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+
+        DockerCloudClientConfig config = DockerCloudClientConfig.newBuilder(testCloudSupport, TestUtils.TEST_UUID,
+                dockerConfig).build();
+
+        assertThat(config.getCloudSupport()).isSameAs(testCloudSupport);
+        assertThat(config.getUuid()).isEqualTo(TestUtils.TEST_UUID);
+        assertThat(config.getDockerClientConfigs()).containsExactly(dockerConfig);
+        assertThat(config.isUsingDaemonThreads()).isTrue();
+        assertThat(config.getDockerSyncRate()).isEqualTo(DockerCloudClientConfig.DEFAULT_DOCKER_SYNC_RATE);
+        assertThat(config.getTaskTimeout()).isEqualTo(DockerCloudClientConfig.DEFAULT_TASK_TIMEOUT_MILLIS);
+        assertThat(config.getServerURL()).isNull();
+        assertThat(config.getResourceBudget()).isEqualTo(ComputeResources.NONE);
+        assertThat(config.getStatsSamplingRate()).isEqualTo(DockerCloudClientConfig.DEFAULT_STATS_SAMPLING_RATE);
+        assertThat(config.getCpusetLayout()).isEqualTo(CpusetLayout.NONE);
+        assertThat(config.getCacheDiskBudgetBytes()).isZero();
+
+        DockerClientConfig additionalConfig = new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI,
+                DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+        ComputeResources resourceBudget = new ComputeResources(2 * ComputeResources.NANO_CPUS_PER_CPU, 0);
+
+        config = DockerCloudClientConfig.newBuilder(testCloudSupport, TestUtils.TEST_UUID, dockerConfig).
+                additionalDockerClientConfigs(Collections.singletonList(additionalConfig)).
+                usingDaemonThreads(false).
+                dockerSyncRate(Duration.ofSeconds(42)).
+                taskTimeout(Duration.ofSeconds(43)).
+                serverURL(serverURL).
+                resourceBudget(resourceBudget).
+                statsSamplingRate(Duration.ZERO).
+                cpusetLayout(new CpusetLayout(4, 1)).
+                cacheDiskBudgetBytes(1024).
+                build();
+
+        assertThat(config.getDockerClientConfigs()).containsExactly(dockerConfig, additionalConfig);
+        assertThat(config.isUsingDaemonThreads()).isFalse();
+        assertThat(config.getDockerSyncRate()).isEqualTo(Duration.ofSeconds(42));
+        assertThat(config.getTaskTimeout()).isEqualTo(Duration.ofSeconds(43));
+        assertThat(config.getServerURL()).isEqualTo(serverURL);
+        assertThat(config.getResourceBudget()).isEqualTo(resourceBudget);
+        assertThat(config.getStatsSamplingRate()).isEqualTo(Duration.ZERO);
+        assertThat(config.getCpusetLayout()).isEqualTo(new CpusetLayout(4, 1));
+        assertThat(config.getCacheDiskBudgetBytes()).isEqualTo(1024);
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void invalidBuilderArguments() {
+        DockerClientConfig dockerConfig = new DockerClientConfig(DockerCloudUtils.DOCKER_DEFAULT_SOCKET_URI,
+                DockerAPIVersion.DEFAULT);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                DockerCloudClientConfig.newBuilder(null, TestUtils.TEST_UUID, dockerConfig));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                DockerCloudClientConfig.newBuilder(testCloudSupport, null, dockerConfig));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                DockerCloudClientConfig.newBuilder(testCloudSupport, TestUtils.TEST_UUID, null));
+
+        DockerCloudClientConfig.Builder builder = DockerCloudClientConfig.newBuilder(testCloudSupport,
+                TestUtils.TEST_UUID, dockerConfig);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                builder.additionalDockerClientConfigs(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                builder.additionalDockerClientConfigs(Collections.singletonList(null)));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> builder.resourceBudget(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> builder.statsSamplingRate(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> builder.cpusetLayout(null));
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                DockerCloudClientConfig.newBuilder(testCloudSupport, TestUtils.TEST_UUID, dockerConfig).
+                        statsSamplingRate(Duration.ofSeconds(1)).build());
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                DockerCloudClientConfig.newBuilder(testCloudSupport, TestUtils.TEST_UUID, dockerConfig).
+                        cacheDiskBudgetBytes(-1).build());
+    }
+
     @Test
     public void minimalConfigMap() {
         Map<String, String> params = new HashMap<>();
@@ -202,6 +281,192 @@ public class DockerCloudClientConfigTest {
         assertInvalidProperty(params, DockerCloudUtils.CLIENT_UUID_PARAM);
     }
 
+    @Test
+    public void additionalInstancesInConfigMap() {
+        URI otherURI = URI.create("tcp://127.0.0.1:2376");
+        URI anotherURI = URI.create("tcp://127.0.0.2:2376");
+        testCloudSupport.additionalFacade(otherURI);
+        testCloudSupport.additionalFacade(anotherURI);
+
+        Map<String, String> params = new HashMap<>();
+        params.put(DockerCloudUtils.CLIENT_UUID_PARAM, TestUtils.TEST_UUID.toString());
+        params.put(DockerCloudUtils.INSTANCE_URI, TestDockerClient.TEST_CLIENT_URI.toString());
+        params.put(DockerCloudUtils.CLOUD_TYPE_PARAM, TestDockerCloudSupport.CODE);
+        params.put(DockerCloudUtils.USE_TLS, Boolean.TRUE.toString());
+
+        DockerCloudClientConfig config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getDockerClientConfigs()).hasSize(1);
+
+        params.put(DockerCloudUtils.ADDITIONAL_INSTANCE_URIS, " " + otherURI + "\n\n" + anotherURI + " \n");
+
+        config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        List<DockerClientConfig> dockerConfigs = config.getDockerClientConfigs();
+        assertThat(dockerConfigs).hasSize(3);
+        assertThat(dockerConfigs.get(0)).isSameAs(config.getDockerClientConfig());
+        assertThat(dockerConfigs.get(0).getInstanceURI()).isEqualTo(TestDockerClient.TEST_CLIENT_URI);
+        assertThat(dockerConfigs.get(1).getInstanceURI()).isEqualTo(otherURI);
+        assertThat(dockerConfigs.get(2).getInstanceURI()).isEqualTo(anotherURI);
+        assertThat(dockerConfigs.get(1).isUsingTLS()).isTrue();
+
+        params.put(DockerCloudUtils.ADDITIONAL_INSTANCE_URIS, otherURI + "\n" + otherURI);
+
+        assertInvalidProperty(params, DockerCloudUtils.ADDITIONAL_INSTANCE_URIS);
+
+        params.put(DockerCloudUtils.ADDITIONAL_INSTANCE_URIS, TestDockerClient.TEST_CLIENT_URI.toString());
+
+        assertInvalidProperty(params, DockerCloudUtils.ADDITIONAL_INSTANCE_URIS);
+
+        params.put(DockerCloudUtils.ADDITIONAL_INSTANCE_URIS, "tcp://127.0.0.3:2376");
+
+        assertInvalidProperty(params, DockerCloudUtils.ADDITIONAL_INSTANCE_URIS);
+    }
+
+    @Test
+    public void duplicatedAdditionalConfig() {
+        DockerClientConfig dockerConfig = new DockerClientConfig(DockerCloudUtils.DOCKER_DEFAULT_SOCKET_URI,
+                DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+        DockerClientConfig duplicatedConfig = new DockerClientConfig(DockerCloudUtils.DOCKER_DEFAULT_SOCKET_URI,
+                DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                DockerCloudClientConfig.newBuilder(testCloudSupport, TestUtils.TEST_UUID, dockerConfig).
+                        additionalDockerClientConfigs(Collections.singletonList(duplicatedConfig)).build());
+    }
+
+    @Test
+    public void resourceBudgetInConfigMap() {
+        Map<String, String> params = new HashMap<>();
+        params.put(DockerCloudUtils.CLIENT_UUID_PARAM, TestUtils.TEST_UUID.toString());
+        params.put(DockerCloudUtils.INSTANCE_URI, TestDockerClient.TEST_CLIENT_URI.toString());
+        params.put(DockerCloudUtils.CLOUD_TYPE_PARAM, TestDockerCloudSupport.CODE);
+
+        DockerCloudClientConfig config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getResourceBudget()).isEqualTo(ComputeResources.NONE);
+
+        params.put(DockerCloudUtils.CPU_BUDGET_PARAM, " 2.5 ");
+        params.put(DockerCloudUtils.MEMORY_BUDGET_PARAM, "4096");
+
+        config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getResourceBudget()).isEqualTo(new ComputeResources(2_500_000_000L,
+                4096L * 1024 * 1024));
+
+        params.put(DockerCloudUtils.CPU_BUDGET_PARAM, "0");
+
+        assertInvalidProperty(params, DockerCloudUtils.CPU_BUDGET_PARAM);
+
+        params.put(DockerCloudUtils.CPU_BUDGET_PARAM, "two");
+
+        assertInvalidProperty(params, DockerCloudUtils.CPU_BUDGET_PARAM);
+
+        params.remove(DockerCloudUtils.CPU_BUDGET_PARAM);
+        params.put(DockerCloudUtils.MEMORY_BUDGET_PARAM, "-1");
+
+        assertInvalidProperty(params, DockerCloudUtils.MEMORY_BUDGET_PARAM);
+
+        params.put(DockerCloudUtils.MEMORY_BUDGET_PARAM, "1.5");
+
+        assertInvalidProperty(params, DockerCloudUtils.MEMORY_BUDGET_PARAM);
+    }
+
+    @Test
+    public void statsSamplingRateInConfigMap() {
+        Map<String, String> params = new HashMap<>();
+        params.put(DockerCloudUtils.CLIENT_UUID_PARAM, TestUtils.TEST_UUID.toString());
+        params.put(DockerCloudUtils.INSTANCE_URI, TestDockerClient.TEST_CLIENT_URI.toString());
+        params.put(DockerCloudUtils.CLOUD_TYPE_PARAM, TestDockerCloudSupport.CODE);
+
+        DockerCloudClientConfig config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getStatsSamplingRate()).isEqualTo(DockerCloudClientConfig.DEFAULT_STATS_SAMPLING_RATE);
+
+        params.put(DockerCloudUtils.STATS_SAMPLING_RATE_PARAM, "15");
+
+        config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getStatsSamplingRate()).isEqualTo(Duration.ofSeconds(15));
+
+        params.put(DockerCloudUtils.STATS_SAMPLING_RATE_PARAM, "0");
+
+        config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getStatsSamplingRate()).isEqualTo(Duration.ZERO);
+
+        params.put(DockerCloudUtils.STATS_SAMPLING_RATE_PARAM, "1");
+
+        assertInvalidProperty(params, DockerCloudUtils.STATS_SAMPLING_RATE_PARAM);
+
+        params.put(DockerCloudUtils.STATS_SAMPLING_RATE_PARAM, "often");
+
+        assertInvalidProperty(params, DockerCloudUtils.STATS_SAMPLING_RATE_PARAM);
+    }
+
+    @Test
+    public void cpusetLayoutInConfigMap() {
+        Map<String, String> params = new HashMap<>();
+        params.put(DockerCloudUtils.CLIENT_UUID_PARAM, TestUtils.TEST_UUID.toString());
+        params.put(DockerCloudUtils.INSTANCE_URI, TestDockerClient.TEST_CLIENT_URI.toString());
+        params.put(DockerCloudUtils.CLOUD_TYPE_PARAM, TestDockerCloudSupport.CODE);
+
+        DockerCloudClientConfig config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getCpusetLayout()).isEqualTo(CpusetLayout.NONE);
+
+        params.put(DockerCloudUtils.CPUSET_WIDTH_PARAM, "4");
+
+        config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getCpusetLayout()).isEqualTo(new CpusetLayout(4, 1));
+
+        params.put(DockerCloudUtils.CPUSET_NUMA_NODES_PARAM, " 2 ");
+
+        config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getCpusetLayout()).isEqualTo(new CpusetLayout(4, 2));
+
+        params.put(DockerCloudUtils.CPUSET_NUMA_NODES_PARAM, "0");
+
+        assertInvalidProperty(params, DockerCloudUtils.CPUSET_NUMA_NODES_PARAM);
+
+        params.remove(DockerCloudUtils.CPUSET_NUMA_NODES_PARAM);
+        params.put(DockerCloudUtils.CPUSET_WIDTH_PARAM, "0");
+
+        assertInvalidProperty(params, DockerCloudUtils.CPUSET_WIDTH_PARAM);
+
+        params.put(DockerCloudUtils.CPUSET_WIDTH_PARAM, "all");
+
+        assertInvalidProperty(params, DockerCloudUtils.CPUSET_WIDTH_PARAM);
+    }
+
+    @Test
+    public void cacheDiskBudgetInConfigMap() {
+        Map<String, String> params = new HashMap<>();
+        params.put(DockerCloudUtils.CLIENT_UUID_PARAM, TestUtils.TEST_UUID.toString());
+        params.put(DockerCloudUtils.INSTANCE_URI, TestDockerClient.TEST_CLIENT_URI.toString());
+        params.put(DockerCloudUtils.CLOUD_TYPE_PARAM, TestDockerCloudSupport.CODE);
+
+        DockerCloudClientConfig config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getCacheDiskBudgetBytes()).isZero();
+
+        params.put(DockerCloudUtils.CACHE_DISK_BUDGET_PARAM, " 2048 ");
+
+        config = DockerCloudClientConfig.processParams(params, testCloudSupportRegistry);
+
+        assertThat(config.getCacheDiskBudgetBytes()).isEqualTo(2048L * 1024 * 1024);
+
+        params.put(DockerCloudUtils.CACHE_DISK_BUDGET_PARAM, "0");
+
+        assertInvalidProperty(params, DockerCloudUtils.CACHE_DISK_BUDGET_PARAM);
+
+        params.put(DockerCloudUtils.CACHE_DISK_BUDGET_PARAM, "2G");
+
+        assertInvalidProperty(params, DockerCloudUtils.CACHE_DISK_BUDGET_PARAM);
+    }
+
     private void assertInvalidProperty(Map<String, String> params, String name) {
         Throwable throwable = catchThrowable(() -> DockerCloudClientConfig.processParams(params, testCloudSupportRegistry));
         assertThat(throwable).isInstanceOf(DockerCloudClientConfigException.class);
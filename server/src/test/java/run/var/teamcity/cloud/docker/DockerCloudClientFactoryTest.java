@@ -96,6 +96,6 @@ public class DockerCloudClientFactoryTest {
 
     private DockerCloudClientFactory createFactory() {
         return new DockerCloudClientFactory(testCloudSupport, testCloudSupportRegistry, new TestSBuildServer(), new
-                TestPluginDescriptor());
+                TestPluginDescriptor(), new AgentLogStore(TestUtils.tempDirectory()));
     }
 }
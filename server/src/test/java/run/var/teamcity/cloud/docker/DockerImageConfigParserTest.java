@@ -5,6 +5,7 @@ import org.junit.Test;
 import run.var.teamcity.cloud.docker.util.EditableNode;
 import run.var.teamcity.cloud.docker.util.Node;
 
+import java.time.Duration;
 import java.util.Arrays;
 
 import static java.util.Collections.emptyList;
@@ -44,6 +45,50 @@ public abstract class DockerImageConfigParserTest {
         assertThat(config.isRmOnExit()).isFalse();
     }
 
+    @Test
+    public void captureLogs() {
+        DockerImageConfigParser parser = createParser();
+        Spec spec = new Spec();
+        spec.administration.put("CaptureLogs", true);
+        DockerImageConfig config = parser.fromJSon(spec.root.saveNode(), emptyList());
+        assertThat(config.isCaptureLogs()).isTrue();
+        spec.administration.put("CaptureLogs", false);
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+        assertThat(config.isCaptureLogs()).isFalse();
+        spec.administration.remove("CaptureLogs");
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+        assertThat(config.isCaptureLogs()).isFalse();
+    }
+
+    @Test
+    public void recyclingPolicy() {
+        DockerImageConfigParser parser = createParser();
+        Spec spec = new Spec();
+        DockerImageConfig config = parser.fromJSon(spec.root.saveNode(), emptyList());
+        assertThat(config.getRecyclingPolicy().isNone()).isTrue();
+        spec.administration.
+                put("RecycleAfterBuilds", 10).
+                put("RecycleAfterMinutes", 120).
+                put("RecycleAboveMemoryMiB", 2048);
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+        RecyclingPolicy policy = config.getRecyclingPolicy();
+        assertThat(policy.getMaxBuildCount()).isEqualTo(10);
+        assertThat(policy.getMaxAge()).isEqualTo(Duration.ofHours(2));
+        assertThat(policy.getMaxMemoryBytes()).isEqualTo(2048L * 1024 * 1024);
+        spec.administration.put("SingleUse", true);
+        // Single use would silently override the build count limit.
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> parser.fromJSon(spec.root.saveNode(),
+                emptyList()));
+        spec.administration.remove("RecycleAfterBuilds");
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+        assertThat(config.getRecyclingPolicy().getMaxBuildCount()).isEqualTo(1);
+        assertThat(config.getRecyclingPolicy().getMaxAge()).isEqualTo(Duration.ofHours(2));
+        spec.administration.remove("SingleUse");
+        spec.administration.put("RecycleAfterBuilds", -1);
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> parser.fromJSon(spec.root.saveNode(),
+                emptyList()));
+    }
+
     @Test
     public void maxInstanceCount() {
         DockerImageConfigParser parser = createParser();
@@ -116,7 +161,7 @@ public abstract class DockerImageConfigParserTest {
 
     protected abstract DockerImageConfigParser createParser();
 
-    private static class Spec {
+    static class Spec {
         final EditableNode root;
         final EditableNode administration;
 
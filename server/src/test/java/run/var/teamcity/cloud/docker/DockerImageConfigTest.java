@@ -8,6 +8,8 @@ import run.var.teamcity.cloud.docker.test.TestUtils;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 import run.var.teamcity.cloud.docker.util.Node;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -35,6 +37,7 @@ public class DockerImageConfigTest {
         assertThat(config.isUseOfficialTCAgentImage()).isFalse();
         assertThat(config.getMaxInstanceCount()).isEqualTo(42);
         assertThat(config.getAgentPoolId()).isEqualTo(Optional.of(111));
+        assertThat(config.getRecyclingPolicy()).isSameAs(RecyclingPolicy.NONE);
 
         config = new DockerImageConfig("test", Node.EMPTY_OBJECT, false, true, false, DockerRegistryCredentials.ANONYMOUS, 42, null);
         assertThat(config.isPullOnCreate()).isFalse();
@@ -69,6 +72,109 @@ public class DockerImageConfigTest {
                 new DockerImageConfig("test", Node.EMPTY_OBJECT, true,true, false, DockerRegistryCredentials.ANONYMOUS, -1, 111));
     }
 
+    @Test
+    public void builder() {
+        DockerImageConfig config = DockerImageConfig.newBuilder("test", Node.EMPTY_OBJECT).build();
+
+        assertThat(config.getProfileName()).isEqualTo("test");
+        assertThat(config.getAgentHolderSpec()).isSameAs(Node.EMPTY_OBJECT);
+        assertThat(config.isPullOnCreate()).isFalse();
+        assertThat(config.isRmOnExit()).isFalse();
+        assertThat(config.isUseOfficialTCAgentImage()).isFalse();
+        assertThat(config.isCaptureLogs()).isFalse();
+        assertThat(config.getMaxInstanceCount()).isEqualTo(1);
+        assertThat(config.getAgentPoolId()).isEmpty();
+        assertThat(config.getRegistryCredentials()).isSameAs(DockerRegistryCredentials.ANONYMOUS);
+        assertThat(config.getResources()).isEqualTo(ComputeResources.NONE);
+        assertThat(config.getRecyclingPolicy()).isSameAs(RecyclingPolicy.NONE);
+
+        DockerRegistryCredentials credentials = DockerRegistryCredentials.from("foo", "bar");
+        ComputeResources resources = new ComputeResources(ComputeResources.NANO_CPUS_PER_CPU, 0);
+        RecyclingPolicy recyclingPolicy = new RecyclingPolicy(5, Duration.ZERO, 0);
+
+        config = DockerImageConfig.newBuilder("test", Node.EMPTY_OBJECT).
+                pullOnCreate(true).
+                rmOnExit(true).
+                useOfficialTCAgentImage(true).
+                captureLogs(true).
+                maxInstanceCount(42).
+                agentPoolId(111).
+                registryCredentials(credentials).
+                resources(resources).
+                recyclingPolicy(recyclingPolicy).
+                build();
+
+        assertThat(config.isPullOnCreate()).isTrue();
+        assertThat(config.isRmOnExit()).isTrue();
+        assertThat(config.isUseOfficialTCAgentImage()).isTrue();
+        assertThat(config.isCaptureLogs()).isTrue();
+        assertThat(config.getMaxInstanceCount()).isEqualTo(42);
+        assertThat(config.getAgentPoolId()).isEqualTo(Optional.of(111));
+        assertThat(config.getRegistryCredentials()).isEqualTo(credentials);
+        assertThat(config.getResources()).isEqualTo(resources);
+        assertThat(config.getRecyclingPolicy()).isSameAs(recyclingPolicy);
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void invalidBuilderInput() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                DockerImageConfig.newBuilder(null, Node.EMPTY_OBJECT));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                DockerImageConfig.newBuilder("test", null));
+
+        DockerImageConfig.Builder builder = DockerImageConfig.newBuilder("test", Node.EMPTY_OBJECT);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> builder.registryCredentials(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> builder.resources(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> builder.recyclingPolicy(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> builder.cacheVolumes(null));
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                builder.maxInstanceCount(0).build());
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void cacheVolumes() {
+        DockerImageConfig config = new DockerImageConfig("test", Node.EMPTY_OBJECT, true, false, false,
+                DockerRegistryCredentials.ANONYMOUS, 1, null);
+
+        assertThat(config.getCacheVolumes()).isEmpty();
+
+        CacheVolume maven = new CacheVolume("maven", "/root/.m2");
+        CacheVolume npm = new CacheVolume("npm.cache", "/root/.npm");
+
+        config = DockerImageConfig.newBuilder("test", Node.EMPTY_OBJECT).
+                cacheVolumes(Arrays.asList(maven, npm)).
+                build();
+
+        assertThat(config.getCacheVolumes()).containsExactly(maven, npm);
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                DockerImageConfig.newBuilder("test", Node.EMPTY_OBJECT).
+                        cacheVolumes(Arrays.asList(maven, new CacheVolume("maven", "/other"))).
+                        build());
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> new CacheVolume(null, "/target"));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> new CacheVolume("name", null));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> new CacheVolume("", "/target"));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new CacheVolume("invalid/name", "/target"));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> new CacheVolume("name", " "));
+    }
+
+    @Test
+    public void spreadPlacement() {
+        DockerImageConfig config = DockerImageConfig.newBuilder("test", Node.EMPTY_OBJECT).build();
+
+        assertThat(config.isSpreadPlacement()).isFalse();
+
+        config = DockerImageConfig.newBuilder("test", Node.EMPTY_OBJECT).spreadPlacement(true).build();
+
+        assertThat(config.isSpreadPlacement()).isTrue();
+    }
+
     @Test
     public void fromValidConfigMap() {
         Map<String, String> params = new HashMap<>();
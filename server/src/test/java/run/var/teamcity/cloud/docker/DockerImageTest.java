@@ -0,0 +1,116 @@
+package run.var.teamcity.cloud.docker;
+
+import jetbrains.buildServer.clouds.InstanceStatus;
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.client.DockerRegistryCredentials;
+import run.var.teamcity.cloud.docker.util.Node;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * {@link DockerImage} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class DockerImageTest {
+
+    @Test
+    public void statusCounters() {
+        DockerImage image = createImage(-1);
+
+        assertThat(image.getInstanceCountByStatus()).isEmpty();
+
+        DockerInstance instance1 = image.createInstance();
+        DockerInstance instance2 = image.createInstance();
+
+        assertThat(image.getInstanceCount(InstanceStatus.UNKNOWN)).isEqualTo(2);
+
+        start(instance1);
+        instance2.setStatus(InstanceStatus.SCHEDULED_TO_START);
+
+        assertThat(image.getInstanceCountByStatus()).containsOnly(entry(InstanceStatus.RUNNING, 1),
+                entry(InstanceStatus.SCHEDULED_TO_START, 1));
+
+        instance2.setStatus(InstanceStatus.STARTING);
+        instance2.setStatus(InstanceStatus.RUNNING);
+
+        assertThat(image.getInstanceCountByStatus()).containsOnly(entry(InstanceStatus.RUNNING, 2));
+
+        instance1.notifyFailure("Test failure", null);
+
+        assertThat(image.getInstanceCountByStatus()).containsOnly(entry(InstanceStatus.RUNNING, 1),
+                entry(InstanceStatus.ERROR, 1));
+
+        image.clearInstanceId(instance1.getUuid());
+
+        assertThat(image.getInstanceCountByStatus()).containsOnly(entry(InstanceStatus.RUNNING, 1));
+
+        // Cleared instances are no longer accounted.
+        instance1.setStatus(InstanceStatus.RESTARTING);
+        instance1.setStatus(InstanceStatus.RUNNING);
+
+        assertThat(image.getInstanceCount(InstanceStatus.RUNNING)).isEqualTo(1);
+
+        image.clearInstanceId(instance1.getUuid());
+        image.clearInstanceId(instance2.getUuid());
+
+        assertThat(image.getInstanceCountByStatus()).isEmpty();
+        assertThat(image.getInstanceCount(InstanceStatus.RUNNING)).isEqualTo(0);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> image.getInstanceCount(null));
+    }
+
+    @Test
+    public void canStartNewInstance() {
+        DockerImage image = createImage(2);
+
+        assertThat(image.canStartNewInstance()).isTrue();
+
+        DockerInstance instance1 = image.createInstance();
+        start(instance1);
+
+        assertThat(image.canStartNewInstance()).isTrue();
+
+        DockerInstance instance2 = image.createInstance();
+
+        assertThat(image.canStartNewInstance()).isFalse();
+
+        start(instance2);
+        instance2.setStatus(InstanceStatus.SCHEDULED_TO_STOP);
+        instance2.setStatus(InstanceStatus.STOPPING);
+        instance2.setStatus(InstanceStatus.STOPPED);
+
+        assertThat(image.canStartNewInstance()).isTrue();
+
+        instance1.notifyFailure("Test failure", null);
+
+        assertThat(image.canStartNewInstance()).isFalse();
+
+        image.clearInstanceId(instance1.getUuid());
+
+        assertThat(image.canStartNewInstance()).isTrue();
+    }
+
+    @Test
+    public void canStartNewInstanceUnlimited() {
+        DockerImage image = createImage(-1);
+
+        for (int i = 0; i < 10; i++) {
+            start(image.createInstance());
+        }
+
+        assertThat(image.canStartNewInstance()).isTrue();
+    }
+
+    private static void start(DockerInstance instance) {
+        instance.setStatus(InstanceStatus.SCHEDULED_TO_START);
+        instance.setStatus(InstanceStatus.STARTING);
+        instance.setStatus(InstanceStatus.RUNNING);
+    }
+
+    private DockerImage createImage(int maxInstanceCount) {
+        return new DockerImage(null, new DockerImageConfig("test", Node.EMPTY_OBJECT, false, false, false,
+                DockerRegistryCredentials.ANONYMOUS, maxInstanceCount, null));
+    }
+}
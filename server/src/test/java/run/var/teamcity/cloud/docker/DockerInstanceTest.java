@@ -1,13 +1,19 @@
 package run.var.teamcity.cloud.docker;
 
+import jetbrains.buildServer.clouds.InstanceStatus;
 import org.junit.Test;
 import run.var.teamcity.cloud.docker.client.DockerRegistryCredentials;
 import run.var.teamcity.cloud.docker.test.TestUtils;
 import run.var.teamcity.cloud.docker.util.Node;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
@@ -167,6 +173,115 @@ public class DockerInstanceTest {
         assertThat(instance.getAgentRuntimeUuid().get()).isEqualTo(TestUtils.TEST_UUID);
     }
 
+    @Test
+    public void statusTransitions() {
+        DockerInstance instance = createInstance();
+
+        assertThat(instance.getStatus()).isEqualTo(InstanceStatus.UNKNOWN);
+
+        instance.setStatus(InstanceStatus.SCHEDULED_TO_START);
+        instance.setStatus(InstanceStatus.STARTING);
+        instance.setStatus(InstanceStatus.RUNNING);
+        instance.setStatus(InstanceStatus.RESTARTING);
+        instance.setStatus(InstanceStatus.RUNNING);
+        instance.setStatus(InstanceStatus.SCHEDULED_TO_STOP);
+        instance.setStatus(InstanceStatus.STOPPING);
+        instance.setStatus(InstanceStatus.STOPPED);
+
+        // Reused instance.
+        instance.setStatus(InstanceStatus.SCHEDULED_TO_START);
+
+        assertThat(instance.getStatus()).isEqualTo(InstanceStatus.SCHEDULED_TO_START);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> instance.setStatus(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> instance.trySetStatus(null));
+    }
+
+    @Test
+    public void illegalStatusTransitions() {
+        DockerInstance instance = createInstance();
+
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() ->
+                instance.setStatus(InstanceStatus.RUNNING));
+        assertThat(instance.trySetStatus(InstanceStatus.STOPPED)).isFalse();
+        assertThat(instance.getStatus()).isEqualTo(InstanceStatus.UNKNOWN);
+
+        instance.setStatus(InstanceStatus.SCHEDULED_TO_START);
+        instance.setStatus(InstanceStatus.STARTING);
+        instance.setStatus(InstanceStatus.RUNNING);
+
+        // Duplicated start request.
+        assertThat(instance.trySetStatus(InstanceStatus.SCHEDULED_TO_START)).isFalse();
+        assertThat(instance.getStatus()).isEqualTo(InstanceStatus.RUNNING);
+
+        instance.setStatus(InstanceStatus.SCHEDULED_TO_STOP);
+
+        assertThat(instance.trySetStatus(InstanceStatus.SCHEDULED_TO_STOP)).isFalse();
+        assertThat(instance.trySetStatus(InstanceStatus.RUNNING)).isFalse();
+    }
+
+    @Test
+    public void notifyFailure() {
+        for (InstanceStatus status : Arrays.asList(InstanceStatus.UNKNOWN, InstanceStatus.SCHEDULED_TO_START,
+                InstanceStatus.STARTING, InstanceStatus.RUNNING, InstanceStatus.ERROR)) {
+            DockerInstance instance = createInstance();
+            for (InstanceStatus transition : Arrays.asList(InstanceStatus.SCHEDULED_TO_START, InstanceStatus.STARTING,
+                    InstanceStatus.RUNNING)) {
+                if (instance.getStatus() == status) {
+                    break;
+                }
+                instance.setStatus(transition);
+            }
+            if (status == InstanceStatus.ERROR) {
+                instance.notifyFailure("First failure", null);
+            }
+
+            Exception failure = new Exception();
+            instance.notifyFailure("Test failure", failure);
+
+            assertThat(instance.getStatus()).isEqualTo(InstanceStatus.ERROR);
+            assertThat(instance.getErrorInfo().getMessage()).isEqualTo("Test failure");
+        }
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                createInstance().notifyFailure(null, null));
+    }
+
+    @Test
+    public void concurrentTransitionsAreDetected() throws InterruptedException {
+        DockerInstance instance = createInstance();
+
+        instance.setStatus(InstanceStatus.SCHEDULED_TO_START);
+
+        int threadCount = 8;
+        AtomicInteger successCount = new AtomicInteger();
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (instance.trySetStatus(InstanceStatus.STARTING)) {
+                    successCount.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        startLatch.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(successCount.get()).isEqualTo(1);
+        assertThat(instance.getStatus()).isEqualTo(InstanceStatus.STARTING);
+    }
+
     private DockerInstance createInstance() {
         return new DockerInstance(new DockerImage(null,
                 new DockerImageConfig("test", Node.EMPTY_OBJECT, false,false, false, DockerRegistryCredentials.ANONYMOUS, 1, null)));
@@ -102,6 +102,45 @@ public class DockerTaskSchedulerTest {
         assertThat(task2b.isSuccessful()).isTrue();
     }
 
+    @Test
+    public void scheduledStatusIsApplied() {
+        scheduler = new DockerTaskScheduler(3, false, Duration.ofSeconds(2));
+
+        InstanceTestTaskDelegator task = new InstanceTestTaskDelegator(instance1, InstanceStatus.SCHEDULED_TO_START);
+
+        instanceLock.lock();
+
+        scheduler.scheduleInstanceTask(task.task);
+
+        waitUntil(task::isRunning);
+
+        assertThat(instance1.getStatus()).isEqualTo(InstanceStatus.SCHEDULED_TO_START);
+
+        instanceLock.unlock();
+    }
+
+    @Test
+    public void conflictingInstanceTaskIsDiscarded() {
+        scheduler = new DockerTaskScheduler(3, false, Duration.ofSeconds(2));
+
+        instance1.setStatus(InstanceStatus.SCHEDULED_TO_START);
+        instance1.setStatus(InstanceStatus.STARTING);
+        instance1.setStatus(InstanceStatus.RUNNING);
+
+        // Instance is already running.
+        InstanceTestTaskDelegator conflictingTask = new InstanceTestTaskDelegator(instance1,
+                InstanceStatus.SCHEDULED_TO_START);
+        InstanceTestTaskDelegator task = new InstanceTestTaskDelegator(instance1, InstanceStatus.SCHEDULED_TO_STOP);
+
+        scheduler.scheduleInstanceTask(conflictingTask.task);
+        scheduler.scheduleInstanceTask(task.task);
+
+        waitUntil(task::isSuccessful);
+
+        assertThat(conflictingTask.executions).isEmpty();
+        assertThat(instance1.getStatus()).isEqualTo(InstanceStatus.SCHEDULED_TO_STOP);
+    }
+
     @Test
     public void clientInstanceTaskPreventInstanceTaskExecution() {
         scheduler = new DockerTaskScheduler(3, false, Duration.ofSeconds(2));
@@ -471,9 +510,13 @@ public class DockerTaskSchedulerTest {
         final DockerInstanceTask task;
 
         InstanceTestTaskDelegator(DockerInstance instance) {
+            this(instance, null);
+        }
+
+        InstanceTestTaskDelegator(DockerInstance instance, InstanceStatus scheduledStatus) {
             super(instanceLock);
 
-            task = new DockerInstanceTask("test", instance, InstanceStatus.SCHEDULED_TO_START) {
+            task = new DockerInstanceTask("test", instance, scheduledStatus) {
                 @Override
                 void callInternal() throws Exception {
                     run(instanceLock);
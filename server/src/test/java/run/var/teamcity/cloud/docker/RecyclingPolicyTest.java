@@ -0,0 +1,71 @@
+package run.var.teamcity.cloud.docker;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.OptionalDouble;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link RecyclingPolicy} test suite.
+ */
+public class RecyclingPolicyTest {
+
+    @Test
+    public void noLimits() {
+        assertThat(RecyclingPolicy.NONE.isNone()).isTrue();
+        assertThat(RecyclingPolicy.NONE.checkLimits(Integer.MAX_VALUE, Duration.ofDays(365),
+                OptionalDouble.of(Double.MAX_VALUE)).isPresent()).isFalse();
+    }
+
+    @Test
+    public void buildCountLimit() {
+        RecyclingPolicy policy = new RecyclingPolicy(3, Duration.ZERO, 0);
+
+        assertThat(policy.isNone()).isFalse();
+        assertThat(policy.checkLimits(2, Duration.ofDays(1), OptionalDouble.empty()).isPresent()).isFalse();
+        assertThat(policy.checkLimits(3, Duration.ZERO, OptionalDouble.empty()).isPresent()).isTrue();
+    }
+
+    @Test
+    public void singleUse() {
+        RecyclingPolicy policy = new RecyclingPolicy(1, Duration.ZERO, 0);
+
+        assertThat(policy.checkLimits(0, Duration.ZERO, OptionalDouble.empty()).isPresent()).isFalse();
+        assertThat(policy.checkLimits(1, Duration.ZERO, OptionalDouble.empty()).isPresent()).isTrue();
+    }
+
+    @Test
+    public void ageLimit() {
+        RecyclingPolicy policy = new RecyclingPolicy(0, Duration.ofMinutes(30), 0);
+
+        assertThat(policy.checkLimits(100, Duration.ofMinutes(29), OptionalDouble.empty()).isPresent()).isFalse();
+        assertThat(policy.checkLimits(0, Duration.ofMinutes(30), OptionalDouble.empty()).isPresent()).isTrue();
+    }
+
+    @Test
+    public void memoryLimit() {
+        RecyclingPolicy policy = new RecyclingPolicy(0, Duration.ZERO, 1024);
+
+        assertThat(policy.checkLimits(0, Duration.ZERO, OptionalDouble.empty()).isPresent()).isFalse();
+        assertThat(policy.checkLimits(0, Duration.ZERO, OptionalDouble.of(1024)).isPresent()).isFalse();
+        assertThat(policy.checkLimits(0, Duration.ZERO, OptionalDouble.of(1025)).isPresent()).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void invalidArguments() {
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new RecyclingPolicy(-1, Duration.ZERO, 0));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new RecyclingPolicy(0, Duration.ofSeconds(-1), 0));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new RecyclingPolicy(0, Duration.ZERO, -1));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                new RecyclingPolicy(0, null, 0));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                RecyclingPolicy.NONE.checkLimits(0, null, OptionalDouble.empty()));
+    }
+}
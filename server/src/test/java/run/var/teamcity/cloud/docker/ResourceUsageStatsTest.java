@@ -0,0 +1,90 @@
+package run.var.teamcity.cloud.docker;
+
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.ResourceUsageStats.Metric;
+import run.var.teamcity.cloud.docker.ResourceUsageStats.Summary;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * {@link ResourceUsageStats} test suite.
+ */
+public class ResourceUsageStatsTest {
+
+    @Test
+    public void summary() {
+        ResourceUsageStats stats = new ResourceUsageStats();
+
+        assertThat(stats.getSummary(Metric.CPU)).isSameAs(Summary.EMPTY);
+
+        for (int i = 1; i <= 100; i++) {
+            stats.record(Metric.CPU, i);
+        }
+
+        Summary summary = stats.getSummary(Metric.CPU);
+
+        assertThat(summary.getCount()).isEqualTo(100);
+        assertThat(summary.getMean()).isEqualTo(50.5);
+        assertThat(summary.getP95()).isEqualTo(95);
+        assertThat(summary.getPeak()).isEqualTo(100);
+
+        // Metrics are independent.
+        assertThat(stats.getSummary(Metric.MEMORY)).isSameAs(Summary.EMPTY);
+    }
+
+    @Test
+    public void latest() {
+        ResourceUsageStats stats = new ResourceUsageStats();
+
+        assertThat(stats.getLatest(Metric.MEMORY).isPresent()).isFalse();
+
+        stats.record(Metric.MEMORY, 42);
+        stats.record(Metric.MEMORY, 24);
+        stats.record(Metric.MEMORY, Double.NaN);
+
+        assertThat(stats.getLatest(Metric.MEMORY).getAsDouble()).isEqualTo(24);
+        assertThat(stats.getLatest(Metric.CPU).isPresent()).isFalse();
+    }
+
+    @Test
+    public void invalidValuesAreIgnored() {
+        ResourceUsageStats stats = new ResourceUsageStats();
+
+        stats.record(Metric.BLOCK_IO, Double.NaN);
+        stats.record(Metric.BLOCK_IO, Double.POSITIVE_INFINITY);
+        stats.record(Metric.BLOCK_IO, -1);
+
+        assertThat(stats.getSummary(Metric.BLOCK_IO)).isSameAs(Summary.EMPTY);
+    }
+
+    @Test
+    public void downsampling() {
+        ResourceUsageStats stats = new ResourceUsageStats(8);
+
+        for (int i = 0; i < 1000; i++) {
+            stats.record(Metric.MEMORY, i);
+        }
+
+        Summary summary = stats.getSummary(Metric.MEMORY);
+
+        // Mean and peak are exact, the percentile is approximated from the whole recording period.
+        assertThat(summary.getCount()).isEqualTo(1000);
+        assertThat(summary.getMean()).isEqualTo(499.5);
+        assertThat(summary.getPeak()).isEqualTo(999);
+        assertThat(summary.getP95()).isCloseTo(950, within(128.0));
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> new ResourceUsageStats(0));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> new ResourceUsageStats(3));
+
+        ResourceUsageStats stats = new ResourceUsageStats();
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> stats.record(null, 1));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> stats.getSummary(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> stats.getLatest(null));
+    }
+}
@@ -5,6 +5,9 @@ import run.var.teamcity.cloud.docker.SwarmDockerClientFacade.TaskRunningState;
 import run.var.teamcity.cloud.docker.client.DockerClient;
 import run.var.teamcity.cloud.docker.client.StdioType;
 import run.var.teamcity.cloud.docker.test.TestDockerClient;
+import run.var.teamcity.cloud.docker.test.TestUtils;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+import run.var.teamcity.cloud.docker.util.EditableNode;
 import run.var.teamcity.cloud.docker.util.Node;
 
 import java.time.Instant;
@@ -293,4 +296,101 @@ public class SwarmDockerClientFacadeTest extends DockerClientFacadeTest {
 
         assertThat(logs.toString()).isEqualTo("txt on stdout, txt on stdin, txt unknown std type");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void spreadPlacement() {
+        SwarmDockerClientFacade facade = new SwarmDockerClientFacade(dockerClient, new SwarmPlacementHelper());
+
+        TestDockerClient.SwarmNode node1 = new TestDockerClient.SwarmNode();
+        TestDockerClient.SwarmNode node2 = new TestDockerClient.SwarmNode();
+
+        dockerClient.node(node1).node(node2);
+
+        TestDockerClient.Service agentService = new TestDockerClient.Service().
+                label(DockerCloudUtils.CLIENT_ID_LABEL, TestUtils.TEST_UUID.toString());
+        agentService.pushTask().node(node1);
+        dockerClient.service(agentService);
+
+        NewAgentHolderInfo agent = facade.createAgent(CreateAgentParameters.from(Node.EMPTY_OBJECT).
+                imageName("resolved-image:latest").
+                spreadPlacement(true));
+
+        TestDockerClient.Service service = dockerClient.getServices().stream().
+                filter(candidate -> candidate.getId().equals(agent.getId())).
+                findFirst().get();
+
+        // The node is only selected when the agent is started.
+        assertThat(service.getConstraints()).isEmpty();
+        assertThat(service.getLabels()).containsEntry(DockerCloudUtils.SPREAD_PLACEMENT_LABEL, "true");
+
+        facade.startAgent(agent.getId());
+
+        assertThat(service.getConstraints()).containsExactly("node.id==" + node2.getId());
+    }
+
+    @Test
+    public void spreadPlacementMustBeReevaluatedOnRestart() {
+        SwarmDockerClientFacade facade = new SwarmDockerClientFacade(dockerClient, new SwarmPlacementHelper());
+
+        TestDockerClient.SwarmNode node1 = new TestDockerClient.SwarmNode();
+        TestDockerClient.SwarmNode node2 = new TestDockerClient.SwarmNode();
+
+        dockerClient.node(node1).node(node2);
+
+        NewAgentHolderInfo agent = facade.createAgent(CreateAgentParameters.from(Node.EMPTY_OBJECT).
+                imageName("resolved-image:latest").
+                spreadPlacement(true));
+
+        TestDockerClient.Service service = dockerClient.getServices().stream().
+                filter(candidate -> candidate.getId().equals(agent.getId())).
+                findFirst().get();
+
+        facade.startAgent(agent.getId());
+
+        assertThat(service.getConstraints()).hasSize(1);
+        String pinned = service.getConstraints().get(0);
+        TestDockerClient.SwarmNode pinnedNode = pinned.equals("node.id==" + node1.getId()) ? node1 : node2;
+        TestDockerClient.SwarmNode otherNode = pinnedNode == node1 ? node2 : node1;
+
+        // The previously selected node is no longer eligible.
+        pinnedNode.availability("drain");
+
+        facade.restartAgent(agent.getId());
+
+        assertThat(service.getConstraints()).containsExactly("node.id==" + otherNode.getId());
+    }
+
+    @Test
+    public void spreadPlacementMustPreserveUserConstraints() {
+        SwarmDockerClientFacade facade = new SwarmDockerClientFacade(dockerClient);
+
+        dockerClient.node(new TestDockerClient.SwarmNode());
+
+        EditableNode spec = Node.EMPTY_OBJECT.editNode();
+        spec.getOrCreateObject("TaskTemplate").
+                getOrCreateObject("Placement").
+                getOrCreateArray("Constraints").
+                add("node.role==worker");
+
+        facade.createAgent(CreateAgentParameters.from(spec.saveNode()).
+                imageName("resolved-image:latest").
+                spreadPlacement(true));
+
+        TestDockerClient.Service service = dockerClient.getServices().get(0);
+
+        assertThat(service.getConstraints()).containsExactly("node.role==worker");
+        assertThat(service.getLabels()).doesNotContainKey(DockerCloudUtils.SPREAD_PLACEMENT_LABEL);
+    }
+
+    @Test
+    public void noPlacementByDefault() {
+        SwarmDockerClientFacade facade = new SwarmDockerClientFacade(dockerClient);
+
+        dockerClient.node(new TestDockerClient.SwarmNode());
+
+        facade.createAgent(CreateAgentParameters.from(Node.EMPTY_OBJECT).
+                imageName("resolved-image:latest"));
+
+        assertThat(dockerClient.getServices().get(0).getConstraints()).isEmpty();
+    }
+}
@@ -1,10 +1,73 @@
 package run.var.teamcity.cloud.docker;
 
 
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.util.EditableNode;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
 public class SwarmDockerImageConfigParserTest extends DockerImageConfigParserTest {
 
+    @Test
+    public void resources() {
+        DockerImageConfigParser parser = createParser();
+        Spec spec = new Spec();
+
+        DockerImageConfig config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.getResources()).isEqualTo(ComputeResources.NONE);
+
+        EditableNode resources = spec.root.getOrCreateObject("AgentHolderSpec").getOrCreateObject("TaskTemplate").
+                getOrCreateObject("Resources");
+        resources.getOrCreateObject("Reservations").
+                put("NanoCPUs", 1_000_000_000L).
+                put("MemoryBytes", 256L * 1024 * 1024);
+
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.getResources()).isEqualTo(new ComputeResources(1_000_000_000L, 256L * 1024 * 1024));
+
+        // Limits take precedence over reservations.
+        resources.getOrCreateObject("Limits").put("MemoryBytes", 1024L * 1024 * 1024);
+
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.getResources()).isEqualTo(new ComputeResources(1_000_000_000L, 1024L * 1024 * 1024));
+    }
+
+    @Test
+    public void cacheVolumesNotSupported() {
+        DockerImageConfigParser parser = createParser();
+        Spec spec = new Spec();
+
+        spec.administration.getOrCreateArray("CacheVolumes").addObject().
+                put("Name", "maven").
+                put("Target", "/root/.m2");
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> parser.fromJSon(spec.root.saveNode(),
+                emptyList()));
+    }
+
+    @Test
+    public void spreadPlacement() {
+        DockerImageConfigParser parser = createParser();
+        Spec spec = new Spec();
+
+        DockerImageConfig config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.isSpreadPlacement()).isFalse();
+
+        spec.administration.put("SpreadPlacement", true);
+
+        config = parser.fromJSon(spec.root.saveNode(), emptyList());
+
+        assertThat(config.isSpreadPlacement()).isTrue();
+    }
+
     @Override
     protected DockerImageConfigParser createParser() {
         return new SwarmDockerImageConfigParser();
     }
-}
\ No newline at end of file
+}
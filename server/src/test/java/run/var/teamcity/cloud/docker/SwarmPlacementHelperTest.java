@@ -0,0 +1,185 @@
+package run.var.teamcity.cloud.docker;
+
+import org.junit.Before;
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.client.DockerAPIVersion;
+import run.var.teamcity.cloud.docker.client.DockerClientConfig;
+import run.var.teamcity.cloud.docker.client.DockerRegistryCredentials;
+import run.var.teamcity.cloud.docker.test.TestDockerClient;
+import run.var.teamcity.cloud.docker.test.TestDockerClient.Service;
+import run.var.teamcity.cloud.docker.test.TestDockerClient.SwarmNode;
+import run.var.teamcity.cloud.docker.test.TestUtils;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link SwarmPlacementHelper} test suite.
+ */
+public class SwarmPlacementHelperTest {
+
+    private TestDockerClient dockerClient;
+
+    @Before
+    public void init() {
+        dockerClient = new TestDockerClient(new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI, DockerAPIVersion
+                .DEFAULT), DockerRegistryCredentials.ANONYMOUS);
+    }
+
+    @Test
+    public void selectLeastLoadedNode() {
+        SwarmNode node1 = new SwarmNode();
+        SwarmNode node2 = new SwarmNode();
+
+        dockerClient.node(node1).node(node2);
+
+        Service service = agentService();
+        service.pushTask().node(node1);
+
+        SwarmPlacementHelper helper = new SwarmPlacementHelper();
+
+        assertThat(helper.selectNode(dockerClient)).isEqualTo(Optional.of(node2.getId()));
+    }
+
+    @Test
+    public void loadMustBeRelativeToCpuCount() {
+        SwarmNode node1 = new SwarmNode().cpus(8);
+        SwarmNode node2 = new SwarmNode().cpus(1);
+
+        dockerClient.node(node1).node(node2);
+
+        Service service = agentService();
+        service.pushTask().node(node1);
+        service.pushTask().node(node1);
+        service.pushTask().node(node2);
+
+        SwarmPlacementHelper helper = new SwarmPlacementHelper();
+
+        assertThat(helper.selectNode(dockerClient)).isEqualTo(Optional.of(node1.getId()));
+    }
+
+    @Test
+    public void ignoreNonAgentTasks() {
+        SwarmNode node1 = new SwarmNode();
+        SwarmNode node2 = new SwarmNode();
+
+        dockerClient.node(node1).node(node2);
+
+        Service otherService = new Service();
+        dockerClient.service(otherService);
+        otherService.pushTask().node(node1);
+        otherService.pushTask().node(node1);
+
+        agentService().pushTask().node(node2);
+
+        SwarmPlacementHelper helper = new SwarmPlacementHelper();
+
+        assertThat(helper.selectNode(dockerClient)).isEqualTo(Optional.of(node1.getId()));
+    }
+
+    @Test
+    public void ignoreNonEligibleNodes() {
+        SwarmNode drained = new SwarmNode().availability("drain");
+        SwarmNode down = new SwarmNode().state("down");
+        SwarmNode loaded = new SwarmNode();
+
+        dockerClient.node(drained).node(down).node(loaded);
+
+        agentService().pushTask().node(loaded);
+
+        SwarmPlacementHelper helper = new SwarmPlacementHelper();
+
+        assertThat(helper.selectNode(dockerClient)).isEqualTo(Optional.of(loaded.getId()));
+    }
+
+    @Test
+    public void noEligibleNode() {
+        SwarmPlacementHelper helper = new SwarmPlacementHelper();
+
+        assertThat(helper.selectNode(dockerClient)).isEmpty();
+
+        dockerClient.node(new SwarmNode().availability("pause"));
+
+        assertThat(helper.selectNode(dockerClient)).isEmpty();
+    }
+
+    @Test
+    public void consecutiveSelectionsMustBeSpread() {
+        SwarmNode node1 = new SwarmNode();
+        SwarmNode node2 = new SwarmNode();
+        SwarmNode node3 = new SwarmNode();
+
+        dockerClient.node(node1).node(node2).node(node3);
+
+        SwarmPlacementHelper helper = new SwarmPlacementHelper();
+
+        // Selected nodes have no task reported yet.
+        List<String> selected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            selected.add(helper.selectNode(dockerClient).get());
+        }
+
+        assertThat(selected).containsOnly(node1.getId(), node2.getId(), node3.getId()).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void selectionsMustBeSharedAcrossManagers() {
+        SwarmNode node1 = new SwarmNode();
+        SwarmNode node2 = new SwarmNode();
+
+        dockerClient.node(node1).node(node2);
+
+        TestDockerClient otherManager = new TestDockerClient(new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI,
+                DockerAPIVersion.DEFAULT), DockerRegistryCredentials.ANONYMOUS);
+        otherManager.node(node1).node(node2);
+
+        SwarmPlacementHelper helper = new SwarmPlacementHelper();
+
+        String first = helper.selectNode(dockerClient).get();
+        String second = helper.selectNode(otherManager).get();
+
+        assertThat(second).isNotEqualTo(first);
+    }
+
+    @Test
+    public void selectionsOfOtherSwarmsMustBeIgnored() {
+        SwarmNode node1 = new SwarmNode();
+        SwarmNode node2 = new SwarmNode();
+
+        dockerClient.node(node1).node(node2);
+
+        TestDockerClient otherSwarm = new TestDockerClient(new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI,
+                DockerAPIVersion.DEFAULT), DockerRegistryCredentials.ANONYMOUS);
+        otherSwarm.node(new SwarmNode());
+
+        SwarmPlacementHelper helper = new SwarmPlacementHelper();
+
+        helper.selectNode(otherSwarm);
+
+        // Ties are broken on the node ID.
+        String expected = node1.getId().compareTo(node2.getId()) < 0 ? node1.getId() : node2.getId();
+        assertThat(helper.selectNode(dockerClient)).isEqualTo(Optional.of(expected));
+    }
+
+    @Test
+    public void defaultInstance() {
+        assertThat(SwarmPlacementHelper.getDefault()).isSameAs(SwarmPlacementHelper.getDefault());
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                new SwarmPlacementHelper().selectNode(null));
+    }
+
+    private Service agentService() {
+        Service service = new Service().label(DockerCloudUtils.CLIENT_ID_LABEL, TestUtils.TEST_UUID.toString());
+        dockerClient.service(service);
+        return service;
+    }
+}
@@ -10,6 +10,7 @@ import run.var.teamcity.cloud.docker.test.TestUtils;
 import run.var.teamcity.cloud.docker.util.LockHandler;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -18,9 +19,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class TestDockerClientFacade implements DockerClientFacade {
@@ -32,13 +35,18 @@ public class TestDockerClientFacade implements DockerClientFacade {
 
     private final Map<String, AgentHolder> agentHolders = new HashMap<>();
     private final List<TerminationInfo> terminationInfos = new ArrayList<>();
+    private final Map<String, VolumeInfo> volumes = new HashMap<>();
 
     private Consumer<AgentHolder> agentConfigurator = null;
+    private Function<String, StreamHandler> logStreamProvider = null;
+    private LogsQuery lastLogsQuery = null;
 
     private DockerRegistryCredentials registryCredentials = DockerRegistryCredentials.ANONYMOUS;
 
     private boolean closed = false;
     private boolean supportsQueryingLogs = true;
+    private boolean deferredTaskIds = false;
+    private DaemonResources daemonResources = new DaemonResources(4, 8L * 1024 * 1024 * 1024);
     private DockerClientException failOnCreateException = null;
     private DockerClientException failOnAccessException = null;
 
@@ -48,6 +56,8 @@ public class TestDockerClientFacade implements DockerClientFacade {
         AgentHolder container = new AgentHolder();
         container.labels.putAll(createAgentParameters.getLabels());
         container.env.putAll(createAgentParameters.getEnv());
+        container.cpuset = createAgentParameters.getCpuset().map(CpusetAllocator.Cpuset::getCpus).orElse(null);
+        container.volumes.putAll(createAgentParameters.getVolumes());
 
         String image = createAgentParameters.getImageName().orElse(createAgentParameters.getAgentHolderSpec().
                 getAsString("Image"));
@@ -92,7 +102,7 @@ public class TestDockerClientFacade implements DockerClientFacade {
                 throw new InvocationFailedException("Container already started: " + agentHolderId);
             }
             agentHolder.running(true);
-            return agentHolder.getTaskId();
+            return deferredTaskIds ? null : agentHolder.getTaskId();
         });
     }
 
@@ -114,7 +124,10 @@ public class TestDockerClientFacade implements DockerClientFacade {
         return lock.call(() -> {
             checkForFailure();
             return agentHolders.values().stream().
-                    filter(container -> valueFilter.equals(container.getLabels().get(labelFilter))).
+                    filter(container -> {
+                        String value = container.getLabels().get(labelFilter);
+                        return value != null && (valueFilter.isEmpty() || valueFilter.equals(value));
+                    }).
                     map(agentHolder -> new AgentHolderInfo(agentHolder.getId(), agentHolder.getTaskId(),
                             agentHolder.getLabels(), "", agentHolder.getName(), Instant.MIN, agentHolder.running)).
                     collect(Collectors.toList());
@@ -151,10 +164,29 @@ public class TestDockerClientFacade implements DockerClientFacade {
         return null;
     }
 
+    @Nonnull
+    @Override
+    public StreamHandler fetchLogs(@Nonnull String agentHolderId, int lineCount, @Nullable Instant since,
+                                   @Nullable Instant until) {
+        lock.run(() -> lastLogsQuery = new LogsQuery(agentHolderId, lineCount, since, until));
+        return streamLogs(agentHolderId);
+    }
+
     @Nonnull
     @Override
     public StreamHandler streamLogs(String containerId) {
-        throw new UnsupportedOperationException("Not implemented yet.");
+        Function<String, StreamHandler> logStreamProvider = lock.call(() -> this.logStreamProvider);
+        if (logStreamProvider == null) {
+            throw new UnsupportedOperationException("Not implemented yet.");
+        }
+        return logStreamProvider.apply(containerId);
+    }
+
+    @Nonnull
+    @Override
+    public StreamHandler followLogs(@Nonnull String agentHolderId, @Nullable Instant since) {
+        lock.run(() -> lastLogsQuery = new LogsQuery(agentHolderId, -1, since, null));
+        return streamLogs(agentHolderId);
     }
 
     @Override
@@ -162,6 +194,56 @@ public class TestDockerClientFacade implements DockerClientFacade {
         return supportsQueryingLogs;
     }
 
+    @Nonnull
+    @Override
+    public DaemonResources getDaemonResources() {
+        return lock.call(() -> {
+            checkForFailure();
+            return daemonResources;
+        });
+    }
+
+    @Nonnull
+    @Override
+    public Optional<ContainerStats> getAgentHolderStats(@Nonnull String agentHolderId) {
+        return lock.call(() -> {
+            checkForFailure();
+            AgentHolder agentHolder = agentHolders.get(agentHolderId);
+            if (agentHolder == null || !agentHolder.running) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(agentHolder.stats);
+        });
+    }
+
+    @Override
+    public void createVolume(@Nonnull String name, @Nonnull Map<String, String> labels) {
+        lock.run(() -> {
+            checkForFailure();
+            volumes.put(name, new VolumeInfo(name, labels, 0));
+        });
+    }
+
+    @Nonnull
+    @Override
+    public List<VolumeInfo> listVolumes(@Nonnull String labelFilter, @Nonnull String valueFilter) {
+        return lock.call(() -> {
+            checkForFailure();
+            return volumes.values().stream().filter(volume -> {
+                String value = volume.getLabels().get(labelFilter);
+                return value != null && (valueFilter.isEmpty() || valueFilter.equals(value));
+            }).collect(Collectors.toList());
+        });
+    }
+
+    @Override
+    public boolean removeVolume(@Nonnull String name) {
+        return lock.call(() -> {
+            checkForFailure();
+            return volumes.remove(name) != null;
+        });
+    }
+
     @Override
     public void close() {
         lock.run(() -> closed = true);
@@ -182,6 +264,15 @@ public class TestDockerClientFacade implements DockerClientFacade {
         return lock.call(() -> new ArrayList<>(agentHolders.values()));
     }
 
+    public List<VolumeInfo> getVolumes() {
+        return lock.call(() -> new ArrayList<>(volumes.values()));
+    }
+
+    public TestDockerClientFacade volume(VolumeInfo volume) {
+        lock.run(() -> volumes.put(volume.getName(), volume));
+        return this;
+    }
+
     public List<TerminationInfo> getTerminationInfos() {
         return lock.call(() -> new ArrayList<>(terminationInfos));
     }
@@ -198,6 +289,18 @@ public class TestDockerClientFacade implements DockerClientFacade {
         lock.run(() -> this.failOnCreateException = failOnCreateException);
     }
 
+    public LogsQuery getLastLogsQuery() {
+        return lock.call(() -> lastLogsQuery);
+    }
+
+    public void setLogStreamProvider(Function<String, StreamHandler> logStreamProvider) {
+        lock.run(() -> this.logStreamProvider = logStreamProvider);
+    }
+
+    public void setDaemonResources(DaemonResources daemonResources) {
+        lock.run(() -> this.daemonResources = daemonResources);
+    }
+
     public void setSupportsQueryingLogs(boolean supportsQueryingLogs) {
         this.supportsQueryingLogs = supportsQueryingLogs;
     }
@@ -225,6 +328,11 @@ public class TestDockerClientFacade implements DockerClientFacade {
         return this;
     }
 
+    public TestDockerClientFacade deferredTaskIds(boolean deferredTaskIds) {
+        lock.run(() -> this.deferredTaskIds = deferredTaskIds);
+        return this;
+    }
+
     public TestDockerClientFacade agentHolder(AgentHolder container) {
         lock.run(() -> agentHolders.put(container.getId(), container));
         return this;
@@ -247,6 +355,9 @@ public class TestDockerClientFacade implements DockerClientFacade {
         private volatile boolean running = false;
         private volatile String name = id;
         private volatile String taskId = TestUtils.createRandomSha256();
+        private volatile ContainerStats stats;
+        private volatile String cpuset;
+        private final Map<String, String> volumes = new ConcurrentHashMap<>();
 
         public String getId() {
             return id;
@@ -264,11 +375,24 @@ public class TestDockerClientFacade implements DockerClientFacade {
             return env;
         }
 
+        public String getCpuset() {
+            return cpuset;
+        }
+
+        public Map<String, String> getVolumes() {
+            return volumes;
+        }
+
         public AgentHolder label(String key, String value) {
             labels.put(key, value);
             return this;
         }
 
+        public AgentHolder stats(ContainerStats stats) {
+            this.stats = stats;
+            return this;
+        }
+
         public AgentHolder running(boolean running) {
             this.running = running;
             return this;
@@ -311,4 +435,34 @@ public class TestDockerClientFacade implements DockerClientFacade {
             return removed;
         }
     }
+
+    public static class LogsQuery {
+        private final String agentHolderId;
+        private final int lineCount;
+        private final Instant since;
+        private final Instant until;
+
+        public LogsQuery(String agentHolderId, int lineCount, Instant since, Instant until) {
+            this.agentHolderId = agentHolderId;
+            this.lineCount = lineCount;
+            this.since = since;
+            this.until = until;
+        }
+
+        public String getAgentHolderId() {
+            return agentHolderId;
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        public Instant getSince() {
+            return since;
+        }
+
+        public Instant getUntil() {
+            return until;
+        }
+    }
 }
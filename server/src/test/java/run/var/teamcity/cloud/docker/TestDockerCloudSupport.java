@@ -6,14 +6,21 @@ import run.var.teamcity.cloud.docker.test.TestDockerClient;
 import run.var.teamcity.cloud.docker.util.Resources;
 
 import javax.annotation.Nonnull;
-import java.util.Optional;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TestDockerCloudSupport implements DockerCloudSupport {
 
     public final static String CODE = "TEST";
 
     private final TestDockerClientFacade clientFacade = new TestDockerClientFacade();
+    private final Map<URI, TestDockerClientFacade> additionalFacades = new ConcurrentHashMap<>();
     private final TestDockerImageConfigParser imageParser = new TestDockerImageConfigParser();
+    private final List<DockerClientConfig> clientConfigs = new CopyOnWriteArrayList<>();
 
     private final TestResourceBundle resourceBundle = new TestResourceBundle(true);
     private final Resources resources = new Resources(resourceBundle);
@@ -41,12 +48,18 @@ public class TestDockerCloudSupport implements DockerCloudSupport {
     @Nonnull
     @Override
     public DockerClientFacade createClientFacade(DockerClientConfig dockerClientConfig) {
-        if (!dockerClientConfig.getInstanceURI().equals(TestDockerClient.TEST_CLIENT_URI)) {
-            throw new IllegalArgumentException("Unsupported URI: " + dockerClientConfig.getInstanceURI());
+        clientConfigs.add(dockerClientConfig);
+        URI instanceURI = dockerClientConfig.getInstanceURI();
+        TestDockerClientFacade additionalFacade = additionalFacades.get(instanceURI);
+        if (additionalFacade == null && !instanceURI.equals(TestDockerClient.TEST_CLIENT_URI)) {
+            throw new IllegalArgumentException("Unsupported URI: " + instanceURI);
         }
         if (facadeCreationFailure != null) {
             throw facadeCreationFailure;
         }
+        if (additionalFacade != null) {
+            return additionalFacade;
+        }
 
         return facadeWrapper != null ? facadeWrapper : clientFacade;
     }
@@ -70,6 +83,14 @@ public class TestDockerCloudSupport implements DockerCloudSupport {
         return clientFacade;
     }
 
+    public List<DockerClientConfig> getClientConfigs() {
+        return new ArrayList<>(clientConfigs);
+    }
+
+    public TestDockerClientFacade additionalFacade(URI instanceURI) {
+        return additionalFacades.computeIfAbsent(instanceURI, uri -> new TestDockerClientFacade());
+    }
+
     public void setFacadeWrapper(DockerClientFacade facadeWrapper) {
         this.facadeWrapper = facadeWrapper;
     }
@@ -5,6 +5,7 @@ import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 
 import java.net.URI;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 /**
@@ -114,4 +115,21 @@ public class DefaultDockerClientTest extends DefaultDockerClientTestBase {
         assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
                 DefaultDockerClient.newInstance(createConfig(URI.create("tcp://127..0.0.1:2375"), false)));
     }
+
+    @Test
+    public void versionRejection() {
+        assertThat(DefaultDockerClient.isVersionRejection("GET /v1.40/containers/json: invocation failed with code " +
+                "400 -- client version 1.40 is too new. Maximum supported API version is 1.39")).isTrue();
+        assertThat(DefaultDockerClient.isVersionRejection("client version 1.11 is too old. Minimum supported API " +
+                "version is 1.12, please upgrade your client to a newer version")).isTrue();
+        assertThat(DefaultDockerClient.isVersionRejection("client is newer than server (client API version: 1.24, " +
+                "server API version: 1.23)")).isTrue();
+        assertThat(DefaultDockerClient.isVersionRejection("API version 1.99 is not supported")).isTrue();
+
+        assertThat(DefaultDockerClient.isVersionRejection("POST /v1.40/containers/create: invocation failed with " +
+                "code 400 -- invalid reference format")).isFalse();
+        assertThat(DefaultDockerClient.isVersionRejection("conflicting options: hostname and the network mode"))
+                .isFalse();
+        assertThat(DefaultDockerClient.isVersionRejection(null)).isFalse();
+    }
 }
@@ -0,0 +1,232 @@
+package run.var.teamcity.cloud.docker.client;
+
+import org.junit.Before;
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.test.TestDockerClient;
+import run.var.teamcity.cloud.docker.test.TestDockerClientFactory;
+import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link DockerClientCache} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class DockerClientCacheTest {
+
+    private TestDockerClientFactory clientFactory;
+    private AtomicInteger creationCount;
+
+    @Before
+    public void init() {
+        creationCount = new AtomicInteger();
+        clientFactory = new TestDockerClientFactory();
+        clientFactory.addConfigurator(client -> {
+            creationCount.incrementAndGet();
+            client.setSupportedAPIVersion(DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+        });
+    }
+
+    @Test
+    public void sharedClient() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        // Small pools are raised to the same minimal size.
+        DockerClient client1 = cache.acquire(createConfig().connectionPoolSize(1));
+        DockerClient client2 = cache.acquire(createConfig().connectionPoolSize(2));
+
+        assertThat(creationCount.get()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+
+        client1.getVersion();
+        client2.getVersion();
+    }
+
+    @Test
+    public void distinctConfigurations() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        cache.acquire(createConfig());
+        cache.acquire(createConfig().usingTls(true));
+        cache.acquire(createConfig().usingTls(true).verifyingHostname(false));
+
+        assertThat(creationCount.get()).isEqualTo(3);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void distinctPoolSizesAndTimeouts() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        cache.acquire(createConfig());
+        cache.acquire(createConfig().connectionPoolSize(1000));
+        cache.acquire(createConfig().connectTimeout(Duration.ofSeconds(1)));
+        cache.acquire(createConfig().transferTimeout(Duration.ZERO));
+
+        assertThat(creationCount.get()).isEqualTo(4);
+        assertThat(cache.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void leaseCannotChangeApiVersion() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        DockerClient client = cache.acquire(createConfig());
+
+        assertThatExceptionOfType(UnsupportedOperationException.class).isThrownBy(() ->
+                client.setApiVersion(DockerAPIVersion.parse("1.0")));
+
+        assertThat(client.getApiVersion()).isEqualTo(DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+    }
+
+    @Test
+    public void closingLeaseDoesNotCloseSharedClient() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        DockerClient client1 = cache.acquire(createConfig());
+        DockerClient client2 = cache.acquire(createConfig());
+
+        TestDockerClient sharedClient = clientFactory.getClient();
+
+        client1.close();
+        // Closing twice must not release the lease twice.
+        client1.close();
+
+        assertThat(sharedClient.isClosed()).isFalse();
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(client1::getVersion);
+
+        client2.getVersion();
+    }
+
+    @Test
+    public void idleEviction() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ZERO);
+
+        DockerClient client = cache.acquire(createConfig());
+
+        TestDockerClient sharedClient = clientFactory.getClient();
+
+        cache.evictIdleClients();
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(sharedClient.isClosed()).isFalse();
+
+        client.close();
+
+        cache.evictIdleClients();
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(sharedClient.isClosed()).isTrue();
+
+        cache.acquire(createConfig());
+
+        assertThat(creationCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void versionRejectionMustRecreateClient() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ZERO);
+
+        DockerClient client = cache.acquire(createConfig());
+        TestDockerClient rejectedClient = clientFactory.getClient();
+
+        clientFactory.invalidateNegotiatedVersion(TestDockerClient.TEST_CLIENT_URI);
+
+        // The lease must switch to a new client.
+        client.getVersion();
+
+        assertThat(creationCount.get()).isEqualTo(2);
+        assertThat(clientFactory.getClient()).isNotSameAs(rejectedClient);
+        assertThat(cache.size()).isEqualTo(1);
+        // Requests may still be ongoing on the rejected client.
+        assertThat(rejectedClient.isClosed()).isFalse();
+
+        client.close();
+        cache.evictIdleClients();
+
+        assertThat(rejectedClient.isClosed()).isTrue();
+        assertThat(clientFactory.getClient().isClosed()).isTrue();
+    }
+
+    @Test
+    public void versionRejectionFromOtherDaemon() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        DockerClient client = cache.acquire(createConfig());
+
+        clientFactory.invalidateNegotiatedVersion(URI.create("tcp://127.0.0.1:2375"));
+
+        client.getVersion();
+
+        assertThat(creationCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void creationFailure() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        // Unsupported URI: the test client factory will reject it.
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                cache.acquire(new DockerClientConfig(URI.create("tcp://127.0.0.1:2375"),
+                        DockerCloudUtils.DOCKER_API_TARGET_VERSION)));
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void creationError() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        clientFactory.addConfigurator(client -> {
+            throw new AssertionError("Simulated failure.");
+        });
+
+        assertThatExceptionOfType(AssertionError.class).isThrownBy(() -> cache.acquire(createConfig()));
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispose() {
+        DockerClientCache cache = new DockerClientCache(clientFactory, Duration.ofMinutes(1));
+
+        DockerClient idleClient = cache.acquire(createConfig());
+        TestDockerClient idleSharedClient = clientFactory.getClient();
+        idleClient.close();
+
+        DockerClient referencedClient = cache.acquire(createConfig().usingTls(true));
+        TestDockerClient referencedSharedClient = clientFactory.getClient();
+
+        cache.dispose();
+
+        assertThat(idleSharedClient.isClosed()).isTrue();
+        assertThat(referencedSharedClient.isClosed()).isFalse();
+
+        referencedClient.getVersion();
+        referencedClient.close();
+
+        assertThat(referencedSharedClient.isClosed()).isTrue();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                new DockerClientCache(null, Duration.ZERO));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                new DockerClientCache(clientFactory, null));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new DockerClientCache(clientFactory, Duration.ofSeconds(-1)));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                new DockerClientCache(clientFactory, Duration.ZERO).acquire(null));
+    }
+
+    private DockerClientConfig createConfig() {
+        return new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI, DockerCloudUtils.DOCKER_API_TARGET_VERSION);
+    }
+}
@@ -5,11 +5,13 @@ import run.var.teamcity.cloud.docker.test.TestDockerClient;
 import run.var.teamcity.cloud.docker.util.DockerCloudUtils;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 /**
  * {@link DockerClientFactory} test suite. This base class tests the simulated docker client with with lenient version
@@ -128,6 +130,42 @@ public class DockerClientFactoryTest {
 
     }
 
+    @Test
+    public void negotiatedVersionCached() {
+        TestFactory clientFactory = new TestFactory(true, Duration.ofMinutes(1));
+
+        DockerClientConfig config = new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI,
+                DockerAPIVersion.DEFAULT);
+
+        clientFactory.fixture = clt -> clt.setSupportedAPIVersion(DockerAPIVersion.parse("9.99"));
+        clientFactory.createClientWithAPINegotiation(config);
+
+        // The daemon would now fail to answer: the cached version must be used.
+        clientFactory.fixture = TestDockerClient::close;
+        TestDockerClient client = (TestDockerClient) clientFactory.createClientWithAPINegotiation(config);
+        assertThat(client.getApiVersion()).isEqualTo(DockerAPIVersion.parse("9.99"));
+
+        clientFactory.invalidateNegotiatedVersion(TestDockerClient.TEST_CLIENT_URI);
+
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() ->
+                clientFactory.createClientWithAPINegotiation(config));
+    }
+
+    @Test
+    public void negotiatedVersionCacheDisabled() {
+        TestFactory clientFactory = createTestFactory();
+
+        DockerClientConfig config = new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI,
+                DockerAPIVersion.DEFAULT);
+
+        clientFactory.fixture = clt -> clt.setSupportedAPIVersion(DockerAPIVersion.parse("9.99"));
+        clientFactory.createClientWithAPINegotiation(config);
+
+        clientFactory.fixture = clt -> clt.setSupportedAPIVersion(DockerAPIVersion.parse("9.98"));
+        TestDockerClient client = (TestDockerClient) clientFactory.createClientWithAPINegotiation(config);
+        assertThat(client.getApiVersion()).isEqualTo(DockerAPIVersion.parse("9.98"));
+    }
+
     protected TestFactory createTestFactory() {
         return new TestFactory(true);
     }
@@ -138,6 +176,11 @@ public class DockerClientFactoryTest {
         protected Consumer<TestDockerClient> fixture;
 
         protected TestFactory(boolean lenientVersionCheck) {
+            this(lenientVersionCheck, Duration.ZERO);
+        }
+
+        protected TestFactory(boolean lenientVersionCheck, Duration negotiationTtl) {
+            super(negotiationTtl);
             this.lenientVersionCheck = lenientVersionCheck;
         }
 
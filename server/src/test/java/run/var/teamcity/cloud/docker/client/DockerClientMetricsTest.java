@@ -0,0 +1,152 @@
+package run.var.teamcity.cloud.docker.client;
+
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.util.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link DockerClientMetrics} test suite.
+ */
+public class DockerClientMetricsTest {
+
+    private static final String ENDPOINT = "tcp://127.0.0.1:2375";
+
+    @Test
+    public void templateRequestSpec() {
+        assertThat(DockerClientMetrics.templateRequestSpec("GET /version")).isEqualTo("GET /version");
+        assertThat(DockerClientMetrics.templateRequestSpec("GET /v1.26/version")).isEqualTo("GET /version");
+        assertThat(DockerClientMetrics.templateRequestSpec("POST /v1.26/containers/create"))
+                .isEqualTo("POST /containers/create");
+        assertThat(DockerClientMetrics.templateRequestSpec("GET /v1.26/containers/json"))
+                .isEqualTo("GET /containers/json");
+        assertThat(DockerClientMetrics.templateRequestSpec("POST /v1.26/containers/4fa6e0f0c678/start"))
+                .isEqualTo("POST /containers/{id}/start");
+        assertThat(DockerClientMetrics.templateRequestSpec("DELETE /v1.26/containers/4fa6e0f0c678"))
+                .isEqualTo("DELETE /containers/{id}");
+        assertThat(DockerClientMetrics.templateRequestSpec("GET /v1.26/images/jetbrains/teamcity-agent/json"))
+                .isEqualTo("GET /images/{id}/json");
+        assertThat(DockerClientMetrics.templateRequestSpec("DELETE /images/jetbrains/teamcity-agent"))
+                .isEqualTo("DELETE /images/{id}");
+        assertThat(DockerClientMetrics.templateRequestSpec("POST /v1.26/services/kbg5x3qxfhvt/update"))
+                .isEqualTo("POST /services/{id}/update");
+        assertThat(DockerClientMetrics.templateRequestSpec("GET /v2/jetbrains/teamcity-agent/tags/list"))
+                .isEqualTo("GET /v2/{name}/tags/list");
+        assertThat(DockerClientMetrics.templateRequestSpec("GET /v2/library/ubuntu/manifests/latest"))
+                .isEqualTo("GET /v2/{name}/manifests/{reference}");
+        assertThat(DockerClientMetrics.templateRequestSpec("GET /token")).isEqualTo("GET /token");
+    }
+
+    @Test
+    public void recordResponse() {
+        DockerClientMetrics metrics = new DockerClientMetrics();
+
+        metrics.recordResponse(ENDPOINT, "POST /v1.26/containers/abc/start", Duration.ofMillis(3), 204, 10);
+        metrics.recordResponse(ENDPOINT, "POST /v1.26/containers/def/start", Duration.ofMillis(3000), 404, 5);
+        metrics.recordBytesReceived(ENDPOINT, "POST /v1.26/containers/def/start", 42);
+
+        List<Node> entries = metrics.toNode().getArrayValues();
+        assertThat(entries).hasSize(1);
+
+        Node entry = entries.get(0);
+        assertThat(entry.getAsString("endpoint")).isEqualTo(ENDPOINT);
+        assertThat(entry.getAsString("request")).isEqualTo("POST /containers/{id}/start");
+        assertThat(entry.getAsLong("count")).isEqualTo(2);
+        assertThat(entry.getAsLong("maxLatencyMs")).isEqualTo(3000);
+        assertThat(entry.getAsLong("bytesSent")).isEqualTo(15);
+        assertThat(entry.getAsLong("bytesReceived")).isEqualTo(42);
+        assertThat(entry.getObject("statusCodes").getAsLong("204")).isEqualTo(1);
+        assertThat(entry.getObject("statusCodes").getAsLong("404")).isEqualTo(1);
+
+        long histogramTotal = entry.getArray("latencyHistogram").getArrayValues().stream()
+                .mapToLong(bucket -> bucket.getAsLong("count"))
+                .sum();
+        assertThat(histogramTotal).isEqualTo(2);
+    }
+
+    @Test
+    public void templateCacheIsBounded() {
+        DockerClientMetrics metrics = new DockerClientMetrics();
+
+        metrics.recordResponse(ENDPOINT, "GET /v1.26/version", Duration.ofMillis(1), 200, 0);
+        metrics.recordResponse(ENDPOINT, "GET /v1.26/version", Duration.ofMillis(1), 200, 0);
+
+        assertThat(metrics.getCachedTemplateCount()).isEqualTo(1);
+
+        for (int i = 0; i < DockerClientMetrics.MAX_CACHED_TEMPLATES * 2; i++) {
+            metrics.recordResponse(ENDPOINT, "POST /v1.26/containers/" + i + "/start", Duration.ofMillis(1), 204, 0);
+        }
+
+        assertThat(metrics.getCachedTemplateCount()).isLessThanOrEqualTo(DockerClientMetrics.MAX_CACHED_TEMPLATES);
+        assertThat(metrics.toNode().getArrayValues()).hasSize(2);
+
+        metrics.reset();
+
+        assertThat(metrics.getCachedTemplateCount()).isZero();
+    }
+
+        @Test
+    public void recordFailure() {
+        DockerClientMetrics metrics = new DockerClientMetrics();
+
+        metrics.recordFailure(ENDPOINT, "GET /version", Duration.ofMillis(1), new RuntimeException(new IOException()));
+
+        Node entry = metrics.toNode().getArrayValues().get(0);
+        assertThat(entry.getAsLong("count")).isEqualTo(1);
+        assertThat(entry.getObject("exceptions").getAsLong("IOException")).isEqualTo(1);
+    }
+
+    @Test
+    public void distinctEndpoints() {
+        DockerClientMetrics metrics = new DockerClientMetrics();
+
+        metrics.recordResponse(ENDPOINT, "GET /version", Duration.ZERO, 200, 0);
+        metrics.recordResponse("unix:///var/run/docker.sock", "GET /version", Duration.ZERO, 200, 0);
+
+        assertThat(metrics.toNode().getArrayValues()).hasSize(2);
+
+        metrics.reset();
+
+        assertThat(metrics.toNode().getArrayValues()).isEmpty();
+    }
+
+    @Test
+    public void meteredInputStream() throws IOException {
+        AtomicLong reported = new AtomicLong(-1);
+        InputStream source = new ByteArrayInputStream(new byte[100]);
+        MeteredInputStream stream = new MeteredInputStream(source, reported::set);
+
+        assertThat(stream.read()).isEqualTo(0);
+        assertThat(stream.read(new byte[50])).isEqualTo(50);
+        assertThat(stream.skip(9)).isEqualTo(9);
+        assertThat(stream.getCount()).isEqualTo(60);
+        assertThat(reported.get()).isEqualTo(-1);
+
+        stream.close();
+        assertThat(reported.get()).isEqualTo(60);
+
+        reported.set(-1);
+        stream.close();
+        assertThat(reported.get()).isEqualTo(-1);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @Test
+    public void invalidArguments() {
+        DockerClientMetrics metrics = new DockerClientMetrics();
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                metrics.recordResponse(null, "GET /version", Duration.ZERO, 200, 0));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                metrics.recordResponse(ENDPOINT, null, Duration.ZERO, 200, 0));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                metrics.recordFailure(ENDPOINT, "GET /version", Duration.ZERO, null));
+    }
+}
@@ -0,0 +1,187 @@
+package run.var.teamcity.cloud.docker.client;
+
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.test.TestInputStream;
+import run.var.teamcity.cloud.docker.test.TestOutputStreamFilter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link StdioFrameReader} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class StdioFrameReaderTest {
+
+    @Test
+    public void demultiplexing() throws IOException {
+        byte[] content = frames(
+                StdioType.STDOUT, "hello",
+                StdioType.STDERR, "world",
+                StdioType.STDIN, "!");
+
+        StdioFrameReader reader = StdioFrameReader.demultiplexing(new ByteArrayInputStream(content), 1024);
+
+        assertThat(collect(reader)).containsExactly("STDOUT:hello", "STDERR:world", "STDIN:!");
+    }
+
+    @Test
+    public void frameLargerThanBuffer() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append(i % 10);
+        }
+        String largeMsg = sb.toString();
+
+        byte[] content = frames(StdioType.STDOUT, largeMsg, StdioType.STDERR, "end");
+
+        StdioFrameReader reader = StdioFrameReader.demultiplexing(new ByteArrayInputStream(content), 16);
+
+        StringBuilder stdout = new StringBuilder();
+        StringBuilder stderr = new StringBuilder();
+        while (reader.next()) {
+            assertThat(reader.getLength()).isLessThanOrEqualTo(16);
+            String txt = new String(reader.getBuffer(), reader.getOffset(), reader.getLength(),
+                    StandardCharsets.UTF_8);
+            (reader.getType() == StdioType.STDOUT ? stdout : stderr).append(txt);
+        }
+
+        assertThat(stdout.toString()).isEqualTo(largeMsg);
+        assertThat(stderr.toString()).isEqualTo("end");
+    }
+
+    @Test
+    public void byteByByteSource() throws IOException {
+        byte[] content = frames(StdioType.STDOUT, "abc", StdioType.STDERR, "def");
+
+        // Source stream returning at most one byte per read.
+        InputStream slowStream = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        StdioFrameReader reader = StdioFrameReader.demultiplexing(slowStream, 8);
+
+        StringBuilder sb = new StringBuilder();
+        while (reader.next()) {
+            sb.append(reader.getType()).append(':').append(new String(reader.getBuffer(), reader.getOffset(),
+                    reader.getLength(), StandardCharsets.UTF_8)).append(' ');
+        }
+
+        assertThat(sb.toString()).isEqualTo("STDOUT:a STDOUT:b STDOUT:c STDERR:d STDERR:e STDERR:f ");
+    }
+
+    @Test
+    public void emptyFramesSkipped() throws IOException {
+        byte[] content = frames(StdioType.STDOUT, "", StdioType.STDERR, "error", StdioType.STDOUT, "");
+
+        StdioFrameReader reader = StdioFrameReader.demultiplexing(new ByteArrayInputStream(content), 1024);
+
+        assertThat(collect(reader)).containsExactly("STDERR:error");
+    }
+
+    @Test
+    public void truncatedStream() throws IOException {
+        byte[] content = frames(StdioType.STDOUT, "hello", StdioType.STDERR, "world");
+
+        // Truncate in the middle of the last frame.
+        byte[] truncated = new byte[content.length - 2];
+        System.arraycopy(content, 0, truncated, 0, truncated.length);
+
+        StdioFrameReader reader = StdioFrameReader.demultiplexing(new ByteArrayInputStream(truncated), 1024);
+        assertThat(collect(reader)).containsExactly("STDOUT:hello", "STDERR:wor");
+        assertThat(reader.next()).isFalse();
+
+        // Truncate in the middle of the header.
+        truncated = new byte[13 + 4];
+        System.arraycopy(content, 0, truncated, 0, truncated.length);
+
+        reader = StdioFrameReader.demultiplexing(new ByteArrayInputStream(truncated), 1024);
+        assertThat(collect(reader)).containsExactly("STDOUT:hello");
+    }
+
+    @Test
+    public void invalidStreamType() {
+        ByteBuffer bb = ByteBuffer.allocate(8);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        bb.putInt(42);
+        bb.order(ByteOrder.BIG_ENDIAN);
+        bb.putInt(0);
+
+        StdioFrameReader reader = StdioFrameReader.demultiplexing(new ByteArrayInputStream(bb.array()), 1024);
+
+        assertThatExceptionOfType(IOException.class).isThrownBy(reader::next);
+    }
+
+    @Test
+    public void fromFragments() throws IOException {
+        CompositeStreamHandler handler = new CompositeStreamHandler(TestInputStream.empty(),
+                TestInputStream.withUTF8String("composite"), TestOutputStreamFilter.dummy());
+
+        StdioFrameReader reader = handler.frameReader();
+
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.getType()).isNull();
+        assertThat(new String(reader.getBuffer(), reader.getOffset(), reader.getLength(), StandardCharsets.UTF_8))
+                .isEqualTo("composite");
+        assertThat(reader.next()).isFalse();
+    }
+
+    @Test
+    public void multiplexedHandlerFrameReader() throws IOException {
+        byte[] content = frames(StdioType.STDOUT, "hello", StdioType.STDERR, "world");
+
+        MultiplexedStreamHandler handler = new MultiplexedStreamHandler(TestInputStream.empty(),
+                new TestInputStream(new ByteArrayInputStream(content)), TestOutputStreamFilter.dummy());
+
+        assertThat(collect(handler.frameReader())).containsExactly("STDOUT:hello", "STDERR:world");
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                StdioFrameReader.demultiplexing(null, 1024));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                StdioFrameReader.fromFragments(null, 1024));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                StdioFrameReader.demultiplexing(new ByteArrayInputStream(new byte[0]), 7));
+    }
+
+    private static List<String> collect(StdioFrameReader reader) throws IOException {
+        List<String> frames = new ArrayList<>();
+        while (reader.next()) {
+            frames.add(reader.getType() + ":" + new String(reader.getBuffer(), reader.getOffset(),
+                    reader.getLength(), StandardCharsets.UTF_8));
+        }
+        return frames;
+    }
+
+    static byte[] frames(Object... typesAndMessages) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < typesAndMessages.length; i += 2) {
+            StdioType type = (StdioType) typesAndMessages[i];
+            byte[] msg = ((String) typesAndMessages[i + 1]).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer bb = ByteBuffer.allocate(8 + msg.length);
+            bb.order(ByteOrder.LITTLE_ENDIAN);
+            bb.putInt((int) type.streamType());
+            bb.order(ByteOrder.BIG_ENDIAN);
+            bb.putInt(msg.length);
+            bb.put(msg);
+            baos.write(bb.array(), 0, bb.capacity());
+        }
+        return baos.toByteArray();
+    }
+}
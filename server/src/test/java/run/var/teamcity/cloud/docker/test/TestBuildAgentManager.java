@@ -46,7 +46,20 @@ public class TestBuildAgentManager implements BuildAgentManager {
 
     @Nullable
     @Override
+    @SuppressWarnings("unchecked")
     public <T extends SBuildAgent> T findAgentById(int agentId, boolean searchUnregistered) {
+        for (TestSBuildAgent agent : registeredAgents) {
+            if (agent.getId() == agentId) {
+                return (T) agent;
+            }
+        }
+        if (searchUnregistered) {
+            for (TestSBuildAgent agent : unregisteredAgents) {
+                if (agent.getId() == agentId) {
+                    return (T) agent;
+                }
+            }
+        }
         return null;
     }
 
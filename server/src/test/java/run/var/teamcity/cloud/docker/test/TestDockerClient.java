@@ -42,6 +42,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -66,6 +67,8 @@ public class TestDockerClient implements DockerClient {
 
     private final Map<String, Container> containers = new HashMap<>();
     private final Map<String, Service> services = new HashMap<>();
+    private final Map<String, Volume> volumes = new HashMap<>();
+    private final Map<String, SwarmNode> nodes = new HashMap<>();
     private final Set<TestImage> registryImages = new HashSet<>();
     private final Set<TestImage> localImages = new HashSet<>();
     private final List<String> containerCreationWarnings = new ArrayList<>();
@@ -160,6 +163,8 @@ public class TestDockerClient implements DockerClient {
             testImg.getEnv().forEach(container::env);
             labels.forEach(container::label);
             env.forEach(container::env);
+            containerSpec.getObject("HostConfig", Node.EMPTY_OBJECT).getArray("Binds", Node.EMPTY_ARRAY).
+                    getArrayValues().forEach(bind -> container.binds.add(bind.getAsString()));
             container.image(testImg);
             containerId = container.getId();
             containers.put(containerId, container);
@@ -205,6 +210,11 @@ public class TestDockerClient implements DockerClient {
                     getObjectValues().forEach((key, node) ->
                     service.label(key, node.getAsString()));
 
+            serviceSpec.getObject("TaskTemplate").
+                    getObject("Placement", Node.EMPTY_OBJECT).
+                    getArray("Constraints", Node.EMPTY_ARRAY).
+                    getArrayValues().forEach(node -> service.constraint(node.getAsString()));
+
             Node containerSpec = serviceSpec.getObject("TaskTemplate").getObject("ContainerSpec");
 
             containerSpec.getArray("Env", Node.EMPTY_ARRAY)
@@ -254,12 +264,21 @@ public class TestDockerClient implements DockerClient {
                     getOrCreateObject("Replicated").
                     put("Replicas", service.replicas.size());
 
-            spec.put("Name", service.getName()).
-                    getOrCreateObject("TaskTemplate").
-                    getOrCreateObject("ContainerSpec").
+            EditableNode labels = spec.getOrCreateObject("Labels");
+            service.labels.forEach(labels::put);
+
+            EditableNode taskTemplate = spec.put("Name", service.getName()).
+                    getOrCreateObject("TaskTemplate");
+
+            taskTemplate.getOrCreateObject("ContainerSpec").
                     put("TTY", service.tty).
                     put("Image", service.image + "@resolved");
 
+            if (!service.constraints.isEmpty()) {
+                EditableNode constraints = taskTemplate.getOrCreateObject("Placement").getOrCreateArray("Constraints");
+                service.constraints.forEach(constraints::add);
+            }
+
             return inspection.saveNode();
         });
     }
@@ -300,6 +319,12 @@ public class TestDockerClient implements DockerClient {
                     service.env(tokens[0], tokens[1]);
                 });
 
+        service.constraints.clear();
+        serviceSpec.getObject("TaskTemplate").
+                getObject("Placement", Node.EMPTY_OBJECT).
+                getArray("Constraints", Node.EMPTY_ARRAY).
+                getArrayValues().forEach(node -> service.constraint(node.getAsString()));
+
         int replicas = serviceSpec.
                 getObject("Mode").
                 getObject("Replicated").
@@ -456,7 +481,8 @@ public class TestDockerClient implements DockerClient {
     @Nonnull
     @Override
     public StreamHandler streamLogs(@Nonnull String containerId, int lineCount, @NotNull Set<StdioType> stdioTypes,
-                                    boolean follow, boolean demuxStdio) {
+                                    boolean follow, boolean demuxStdio, @Nullable Instant since,
+                                    @Nullable Instant until) {
         return lock.call(() -> {
             checkForFailure();
             Container container = containers.get(containerId);
@@ -481,7 +507,7 @@ public class TestDockerClient implements DockerClient {
     @Nonnull
     @Override
     public StreamHandler streamServiceLogs(@Nonnull String serviceId, int lineCount, @Nonnull Set<StdioType>
-            stdioTypes, boolean follow, boolean demuxStream) {
+            stdioTypes, boolean follow, boolean demuxStream, @Nullable Instant since, @Nullable Instant until) {
         return lock.call(() -> {
             checkForFailure();
             Service service = services.get(serviceId);
@@ -564,7 +590,8 @@ public class TestDockerClient implements DockerClient {
                     filter(container -> {
                         for (Map.Entry<String, String> labelFilter : labelFilters.entrySet()) {
                             String labelValue = container.labels.get(labelFilter.getKey());
-                            if (labelValue == null || !labelValue.equals(labelFilter.getValue())) {
+                            if (labelValue == null || (!labelFilter.getValue().isEmpty() &&
+                                    !labelValue.equals(labelFilter.getValue()))) {
                                 return false;
                             }
                         }
@@ -601,7 +628,8 @@ public class TestDockerClient implements DockerClient {
                     filter(service -> {
                         for (Map.Entry<String, String> labelFilter : labelFilters.entrySet()) {
                             String labelValue = service.labels.get(labelFilter.getKey());
-                            if (labelValue == null || !labelValue.equals(labelFilter.getValue())) {
+                            if (labelValue == null || (!labelFilter.getValue().isEmpty() &&
+                                    !labelValue.equals(labelFilter.getValue()))) {
                                 return false;
                             }
                         }
@@ -684,16 +712,172 @@ public class TestDockerClient implements DockerClient {
            EditableNode tasks = Node.EMPTY_ARRAY.editNode();
 
            for (Task replica : service.replicas) {
-               tasks.addObject().
-                       put("ID", replica.id).
-                       getOrCreateObject("Status").
-                       put("State", replica.state);
+               addTask(tasks, service, replica);
            }
 
            return tasks.saveNode();
         });
     }
 
+    @Nonnull
+    @Override
+    public Node listRunningTasks() {
+        waitMillis(300);
+
+        return lock.call(() -> {
+            checkForFailure();
+
+            EditableNode tasks = Node.EMPTY_ARRAY.editNode();
+
+            for (Service service : services.values()) {
+                for (Task replica : service.replicas) {
+                    addTask(tasks, service, replica);
+                }
+            }
+
+            return tasks.saveNode();
+        });
+    }
+
+    private void addTask(EditableNode tasks, Service service, Task task) {
+        EditableNode taskNode = tasks.addObject().
+                put("ID", task.id).
+                put("ServiceID", service.id).
+                put("DesiredState", "running");
+        if (task.nodeId != null) {
+            taskNode.put("NodeID", task.nodeId);
+        }
+        taskNode.getOrCreateObject("Status").
+                put("State", task.state);
+    }
+
+    @Nonnull
+    @Override
+    public Node listNodes() {
+        return lock.call(() -> {
+            checkForFailure();
+
+            EditableNode result = Node.EMPTY_ARRAY.editNode();
+
+            for (SwarmNode node : nodes.values()) {
+                EditableNode nodeNode = result.addObject().
+                        put("ID", node.id);
+                nodeNode.getOrCreateObject("Spec").
+                        put("Availability", node.availability);
+                nodeNode.getOrCreateObject("Status").
+                        put("State", node.state);
+                nodeNode.getOrCreateObject("Description").
+                        getOrCreateObject("Resources").
+                        put("NanoCPUs", node.nanoCpus);
+            }
+
+            return result.saveNode();
+        });
+    }
+
+    @Nonnull
+    @Override
+    public Node getStats(@Nonnull String containerId) {
+        return lock.call(() -> {
+            checkForFailure();
+            Container container = containers.get(containerId);
+            if (container == null) {
+                throw new NotFoundException("No such container: " + containerId);
+            }
+            return container.stats;
+        });
+    }
+
+    @Nonnull
+    @Override
+    public Node createVolume(@Nonnull Node volumeSpec) {
+        return lock.call(() -> {
+            checkForFailure();
+            Volume volume = new Volume(volumeSpec.getAsString("Name", TestUtils.createRandomSha256()));
+            volumeSpec.getObject("Labels", Node.EMPTY_OBJECT).getObjectValues().
+                    forEach((key, value) -> volume.label(key, value.getAsString()));
+            volumes.putIfAbsent(volume.getName(), volume);
+            return toNode(volumes.get(volume.getName())).saveNode();
+        });
+    }
+
+    @Nonnull
+    @Override
+    public Node inspectVolume(@Nonnull String volumeName) {
+        return lock.call(() -> {
+            checkForFailure();
+            Volume volume = volumes.get(volumeName);
+            if (volume == null) {
+                throw new NotFoundException("No such volume: " + volumeName);
+            }
+            return toNode(volume).saveNode();
+        });
+    }
+
+    @Nonnull
+    @Override
+    public Node listVolumesWithLabel(@Nonnull Map<String, String> labelFilters) {
+        return lock.call(() -> {
+            checkForFailure();
+            EditableNode result = Node.EMPTY_OBJECT.editNode();
+            EditableNode volumesNode = result.getOrCreateArray("Volumes");
+            for (Volume volume : volumes.values()) {
+                boolean match = true;
+                for (Map.Entry<String, String> labelFilter : labelFilters.entrySet()) {
+                    String labelValue = volume.labels.get(labelFilter.getKey());
+                    if (labelValue == null || (!labelFilter.getValue().isEmpty() &&
+                            !labelValue.equals(labelFilter.getValue()))) {
+                        match = false;
+                        break;
+                    }
+                }
+                if (match) {
+                    volumesNode.add(toNode(volume).saveNode());
+                }
+            }
+            result.getOrCreateArray("Warnings");
+            return result.saveNode();
+        });
+    }
+
+    @Override
+    public void removeVolume(@Nonnull String volumeName, boolean force) {
+        lock.run(() -> {
+            checkForFailure();
+            if (volumes.remove(volumeName) == null) {
+                throw new NotFoundException("No such volume: " + volumeName);
+            }
+        });
+    }
+
+    @Nonnull
+    @Override
+    public Node getDiskUsage() {
+        return lock.call(() -> {
+            checkForFailure();
+            EditableNode result = Node.EMPTY_OBJECT.editNode();
+            EditableNode volumesNode = result.getOrCreateArray("Volumes");
+            for (Volume volume : volumes.values()) {
+                EditableNode volumeNode = toNode(volume);
+                volumeNode.getOrCreateObject("UsageData").
+                        put("Size", volume.size).
+                        put("RefCount", 0);
+                volumesNode.add(volumeNode.saveNode());
+            }
+            return result.saveNode();
+        });
+    }
+
+    private EditableNode toNode(Volume volume) {
+        EditableNode volumeNode = Node.EMPTY_OBJECT.editNode().
+                put("Name", volume.name).
+                put("Driver", "local").
+                put("CreatedAt", DateTimeFormatter.ISO_INSTANT.format(volume.creationTimestamp));
+        EditableNode labels = volumeNode.getOrCreateObject("Labels");
+        volume.labels.forEach(labels::put);
+        return volumeNode;
+    }
+
     public Set<TestImage> getLocalImages() {
         return new HashSet<>(localImages)   ;
     }
@@ -706,6 +890,14 @@ public class TestDockerClient implements DockerClient {
         return lock.call(() -> new ArrayList<>(services.values()));
     }
 
+    public List<SwarmNode> getNodes() {
+        return lock.call(() -> new ArrayList<>(nodes.values()));
+    }
+
+    public List<Volume> getVolumes() {
+        return lock.call(() -> new ArrayList<>(volumes.values()));
+    }
+
     public boolean isClosed() {
         return lock.call(() -> closed);
     }
@@ -772,6 +964,8 @@ public class TestDockerClient implements DockerClient {
         private volatile TestImage image;
         private volatile boolean running;
         private volatile Instant creationTimestamp = Instant.now();
+        private volatile Node stats = Node.EMPTY_OBJECT;
+        private final List<String> binds = new CopyOnWriteArrayList<>();
 
         public TestImage getImage() {
             return image;
@@ -793,6 +987,10 @@ public class TestDockerClient implements DockerClient {
             return env;
         }
 
+        public List<String> getBinds() {
+            return binds;
+        }
+
         public boolean isRunning() {
             return running;
         }
@@ -832,6 +1030,11 @@ public class TestDockerClient implements DockerClient {
             return this;
         }
 
+        public Container stats(Node stats) {
+            this.stats = stats;
+            return this;
+        }
+
         public TestStreamHandlerFactory getLogStreamHandler() {
             return logStreamHandler;
         }
@@ -843,6 +1046,7 @@ public class TestDockerClient implements DockerClient {
         private final Map<String, String> labels = new ConcurrentHashMap<>();
         private final Map<String, String> env = new ConcurrentHashMap<>();
         private final Deque<Task> replicas = new ConcurrentLinkedDeque<>();
+        private final List<String> constraints = new CopyOnWriteArrayList<>();
         private final TestStreamHandlerFactory logStreamHandler = new TestStreamHandlerFactory(new OutputStream() {
             @Override
             public void write(int b) throws IOException {
@@ -881,6 +1085,15 @@ public class TestDockerClient implements DockerClient {
             return replicas;
         }
 
+        public List<String> getConstraints() {
+            return constraints;
+        }
+
+        public Service constraint(String constraint) {
+            constraints.add(constraint);
+            return this;
+        }
+
         public Service name(String name) {
             this.name = name;
             return this;
@@ -926,9 +1139,72 @@ public class TestDockerClient implements DockerClient {
         }
     }
 
+    public static class Volume {
+
+        private final String name;
+        private final Map<String, String> labels = new ConcurrentHashMap<>();
+        private volatile long size;
+        private volatile Instant creationTimestamp = Instant.now();
+
+        public Volume(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Map<String, String> getLabels() {
+            return labels;
+        }
+
+        public Volume label(String key, String value) {
+            labels.put(key, value);
+            return this;
+        }
+
+        public Volume size(long size) {
+            this.size = size;
+            return this;
+        }
+
+        public Volume creationTimestamp(Instant creationTimestamp) {
+            this.creationTimestamp = creationTimestamp;
+            return this;
+        }
+    }
+
+    public static class SwarmNode {
+
+        private final String id = TestUtils.createRandomSha256();
+        private volatile String availability = "active";
+        private volatile String state = "ready";
+        private volatile long nanoCpus = 1_000_000_000L;
+
+        public String getId() {
+            return id;
+        }
+
+        public SwarmNode availability(String availability) {
+            this.availability = availability;
+            return this;
+        }
+
+        public SwarmNode state(String state) {
+            this.state = state;
+            return this;
+        }
+
+        public SwarmNode cpus(int cpus) {
+            this.nanoCpus = cpus * 1_000_000_000L;
+            return this;
+        }
+    }
+
     public static class Task {
 
         private final String id = TestUtils.createRandomSha256();
+        private volatile String nodeId;
         private volatile String state;
 
         public Task state(String state) {
@@ -936,6 +1212,11 @@ public class TestDockerClient implements DockerClient {
             return this;
         }
 
+        public Task node(SwarmNode node) {
+            this.nodeId = node.getId();
+            return this;
+        }
+
         public String getId() {
             return id;
         }
@@ -950,4 +1231,14 @@ public class TestDockerClient implements DockerClient {
         lock.run(() -> services.put(service.getId(), service));
         return this;
     }
+
+    public TestDockerClient node(SwarmNode node) {
+        lock.run(() -> nodes.put(node.getId(), node));
+        return this;
+    }
+
+    public TestDockerClient volume(Volume volume) {
+        lock.run(() -> volumes.put(volume.getName(), volume));
+        return this;
+    }
 }
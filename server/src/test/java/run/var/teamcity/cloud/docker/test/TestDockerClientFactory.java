@@ -6,6 +6,7 @@ import run.var.teamcity.cloud.docker.client.DockerClientFactory;
 import run.var.teamcity.cloud.docker.client.DockerRegistryCredentials;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.concurrent.locks.ReentrantLock;
@@ -23,6 +24,11 @@ public class TestDockerClientFactory extends DockerClientFactory {
     private TestDockerClient client;
     private DockerRegistryCredentials dockerRegistryCredentials = DockerRegistryCredentials.ANONYMOUS;
 
+    public TestDockerClientFactory() {
+        // Always negotiate, tests may reconfigure the API versions supported by the clients.
+        super(Duration.ZERO);
+    }
+
     @Nonnull
     @Override
     public DockerClient createClient(DockerClientConfig config) {
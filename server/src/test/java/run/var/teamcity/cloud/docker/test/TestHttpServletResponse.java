@@ -3,19 +3,29 @@ package run.var.teamcity.cloud.docker.test;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 @SuppressWarnings("deprecation")
 public class TestHttpServletResponse implements HttpServletResponse {
 
     private int status = 200;
 
+    private String contentType = null;
+
+    private final Map<String, String> headers = new HashMap<>();
+
     private final StringWriter writer = new StringWriter();
 
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
     @Override
     public void addCookie(Cookie cookie) {
         throw new UnsupportedOperationException("Not a real response.");
@@ -73,7 +83,7 @@ public class TestHttpServletResponse implements HttpServletResponse {
 
     @Override
     public void setHeader(String name, String value) {
-        // Do nothing
+        headers.put(name, value);
     }
 
     @Override
@@ -108,7 +118,7 @@ public class TestHttpServletResponse implements HttpServletResponse {
 
     @Override
     public String getHeader(String name) {
-        throw new UnsupportedOperationException("Not a real response.");
+        return headers.get(name);
     }
 
     @Override
@@ -128,12 +138,22 @@ public class TestHttpServletResponse implements HttpServletResponse {
 
     @Override
     public String getContentType() {
-        throw new UnsupportedOperationException("Not a real response.");
+        return contentType;
     }
 
     @Override
     public ServletOutputStream getOutputStream() throws IOException {
-        throw new UnsupportedOperationException("Not a real response.");
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                outputStream.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                outputStream.write(b, off, len);
+            }
+        };
     }
 
     @Override
@@ -153,7 +173,7 @@ public class TestHttpServletResponse implements HttpServletResponse {
 
     @Override
     public void setContentType(String type) {
-        throw new UnsupportedOperationException("Not a real response.");
+        contentType = type;
     }
 
     @Override
@@ -197,6 +217,6 @@ public class TestHttpServletResponse implements HttpServletResponse {
     }
 
     public String getWrittenResponse() {
-        return writer.toString();
+        return writer.toString() + new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
     }
 }
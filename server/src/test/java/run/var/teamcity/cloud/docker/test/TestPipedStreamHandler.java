@@ -0,0 +1,91 @@
+package run.var.teamcity.cloud.docker.test;
+
+import run.var.teamcity.cloud.docker.StreamHandler;
+import run.var.teamcity.cloud.docker.client.StdioFrameReader;
+import run.var.teamcity.cloud.docker.client.StdioInputStream;
+import run.var.teamcity.cloud.docker.client.StdioType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Multiplexed stream handler fed on demand. Frames are pushed from the test thread, and consumed through the
+ * {@link #frameReader() frame reader}.
+ */
+public class TestPipedStreamHandler implements StreamHandler {
+
+    private final PipedInputStream in = new PipedInputStream(64 * 1024);
+    private final PipedOutputStream out;
+    private volatile boolean closed = false;
+
+    public TestPipedStreamHandler() {
+        try {
+            out = new PipedOutputStream(in);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public void push(String text) {
+        push(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void push(byte[] bytes) {
+        // Multiplexed frame header: stream type (little-endian), then frame length (big-endian).
+        byte[] header = new byte[8];
+        header[0] = (byte) StdioType.STDOUT.streamType();
+        header[4] = (byte) (bytes.length >>> 24);
+        header[5] = (byte) (bytes.length >>> 16);
+        header[6] = (byte) (bytes.length >>> 8);
+        header[7] = (byte) bytes.length;
+        try {
+            out.write(header);
+            out.write(bytes);
+            out.flush();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public void end() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Nullable
+    @Override
+    public StdioInputStream getNextStreamFragment() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nonnull
+    @Override
+    public StdioFrameReader frameReader() {
+        return StdioFrameReader.demultiplexing(in, StdioFrameReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Nonnull
+    @Override
+    public OutputStream getOutputStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // Unblock the consumer.
+        end();
+    }
+}
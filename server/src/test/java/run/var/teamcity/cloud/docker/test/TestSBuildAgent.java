@@ -26,16 +26,21 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link AgentDescription} for testing.
  */
 public class TestSBuildAgent implements BuildAgentEx, BuildAgentInit {
 
+    private static final AtomicInteger ID_GENERATOR = new AtomicInteger();
+
+    private int id = ID_GENERATOR.incrementAndGet();
     private String name = "";
     private boolean removable = true;
     private boolean enabled = true;
     private String hostAddress = null;
+    private SRunningBuild runningBuild = null;
 
     private final Map<String, String> availableParameters = new ConcurrentHashMap<>();
     private final Map<String, String> configurationParameters = new ConcurrentHashMap<>();
@@ -133,7 +138,7 @@ public class TestSBuildAgent implements BuildAgentEx, BuildAgentInit {
     @Nullable
     @Override
     public SRunningBuild getRunningBuild() {
-        throw new UnsupportedOperationException("Not a real agent.");
+        return runningBuild;
     }
 
     @Nonnull
@@ -176,7 +181,7 @@ public class TestSBuildAgent implements BuildAgentEx, BuildAgentInit {
 
     @Override
     public int getId() {
-        throw new UnsupportedOperationException("Not a real agent.");
+        return id;
     }
 
     @Override
@@ -191,7 +196,7 @@ public class TestSBuildAgent implements BuildAgentEx, BuildAgentInit {
 
     @Override
     public boolean isEnabled() {
-        throw new UnsupportedOperationException("Not a real agent.");
+        return enabled;
     }
 
     @Override
@@ -342,6 +347,11 @@ public class TestSBuildAgent implements BuildAgentEx, BuildAgentInit {
         return removable;
     }
 
+    public TestSBuildAgent id(int id) {
+        this.id = id;
+        return this;
+    }
+
     public TestSBuildAgent name(String name) {
         this.name = name;
         return this;
@@ -352,6 +362,11 @@ public class TestSBuildAgent implements BuildAgentEx, BuildAgentInit {
         return this;
     }
 
+    public TestSBuildAgent runningBuild(SRunningBuild runningBuild) {
+        this.runningBuild = runningBuild;
+        return this;
+    }
+
     @Override
     public void isLocal(Action<Boolean> action) {
         throw new UnsupportedOperationException("Not a real agent.");
@@ -32,6 +32,7 @@ import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.reflect.Proxy;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Collection;
@@ -412,6 +413,27 @@ public class TestSBuildServer implements SBuildServer {
         return this;
     }
 
+    public TestSBuildServer notifyBuildFinished(SRunningBuild build) {
+        for (BuildServerListener listener : buildListeners) {
+            listener.buildFinished(build);
+        }
+        return this;
+    }
+
+    public static SRunningBuild newRunningBuild(long buildId, SBuildAgent agent) {
+        return (SRunningBuild) Proxy.newProxyInstance(SRunningBuild.class.getClassLoader(),
+                new Class<?>[]{SRunningBuild.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getBuildId":
+                            return buildId;
+                        case "getAgent":
+                            return agent;
+                        default:
+                            throw new UnsupportedOperationException("Not a real build.");
+                    }
+                });
+    }
+
     public void wrapBuildAgentManager(Function<TestBuildAgentManager, BuildAgentManager> wrapper) {
         wrappedBuildAgentManager = wrapper.apply(buildAgentManager);
     }
@@ -218,6 +218,14 @@ public final class TestUtils {
         }
     }
 
+    public static Path tempDirectory() {
+        try {
+            return Files.createTempDirectory("dck_cld_");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public static Node getSampleImageConfigSpec(EditableNode parent, String profileName) {
         parent.getOrCreateObject("Administration").
                 put("Version", 42).
@@ -7,8 +7,11 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -236,6 +239,28 @@ public abstract class AbstractNodeTest<N extends AbstractNode> {
         assertThat(node.getObjectValues().get("child").isNull()).isTrue();
     }
 
+    @Test
+    public void writeTo() throws IOException {
+        AbstractNode<N> node = parentWithChildString("\u00e9");
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                throw new AssertionError("Stream must not be closed.");
+            }
+        };
+
+        node.writeTo(out);
+
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(node.toString());
+        assertThat(out.size()).isEqualTo(node.toString().getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void writeToNullStream() {
+        assertThatExceptionOfType(NullPointerException.class).
+                isThrownBy(() -> emptyNode().writeTo(null));
+    }
+
     protected AbstractNode<N> parentWithChildNull() {
         ObjectNode parent = AbstractNode.OBJECT_MAPPER.createObjectNode();
         parent.putNull("child");
@@ -0,0 +1,120 @@
+package run.var.teamcity.cloud.docker.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link DirectRingBuffer} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class DirectRingBufferTest {
+
+    @Test
+    public void appendWithinCapacity() throws IOException {
+        DirectRingBuffer ring = new DirectRingBuffer(ByteBuffer.allocateDirect(16));
+
+        append(ring, "hello ");
+        append(ring, "world");
+
+        assertThat(ring.size()).isEqualTo(11);
+        assertThat(ring.getDroppedBytes()).isEqualTo(0);
+        assertThat(content(ring)).isEqualTo("hello world");
+        assertThat(new String(ring.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("hello world");
+    }
+
+    @Test
+    public void empty() throws IOException {
+        DirectRingBuffer ring = new DirectRingBuffer(ByteBuffer.allocateDirect(16));
+
+        assertThat(ring.size()).isEqualTo(0);
+        assertThat(content(ring)).isEmpty();
+        assertThat(ring.toByteArray()).isEmpty();
+    }
+
+    @Test
+    public void wrapAround() throws IOException {
+        DirectRingBuffer ring = new DirectRingBuffer(ByteBuffer.allocateDirect(8));
+
+        append(ring, "012345");
+        append(ring, "6789");
+
+        assertThat(ring.size()).isEqualTo(8);
+        assertThat(ring.getDroppedBytes()).isEqualTo(2);
+        assertThat(content(ring)).isEqualTo("23456789");
+        assertThat(new String(ring.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("23456789");
+    }
+
+    @Test
+    public void chunkLargerThanCapacity() throws IOException {
+        DirectRingBuffer ring = new DirectRingBuffer(ByteBuffer.allocateDirect(4));
+
+        append(ring, "ab");
+        append(ring, "0123456789");
+
+        assertThat(ring.getDroppedBytes()).isEqualTo(8);
+        assertThat(content(ring)).isEqualTo("6789");
+    }
+
+    @Test
+    public void heapBuffer() throws IOException {
+        DirectRingBuffer ring = new DirectRingBuffer(ByteBuffer.allocate(4));
+
+        append(ring, "abcdef");
+
+        assertThat(content(ring)).isEqualTo("cdef");
+    }
+
+    @Test
+    public void clearAndRelease() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+        DirectRingBuffer ring = new DirectRingBuffer(buffer);
+
+        append(ring, "0123456789");
+        ring.clear();
+
+        assertThat(ring.size()).isEqualTo(0);
+        assertThat(ring.getDroppedBytes()).isEqualTo(0);
+        assertThat(content(ring)).isEmpty();
+
+        append(ring, "abc");
+
+        ByteBuffer released = ring.release();
+        assertThat(released.capacity()).isEqualTo(8);
+        assertThat(released.isDirect()).isTrue();
+        assertThat(content(new DirectRingBuffer(released))).isEmpty();
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> new DirectRingBuffer(null));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new DirectRingBuffer(ByteBuffer.allocate(0)));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new DirectRingBuffer(ByteBuffer.allocate(4).asReadOnlyBuffer()));
+
+        DirectRingBuffer ring = new DirectRingBuffer(ByteBuffer.allocate(4));
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> ring.append(null, 0, 0));
+        assertThatExceptionOfType(IndexOutOfBoundsException.class).isThrownBy(() ->
+                ring.append(new byte[2], 1, 2));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> ring.writeTo(null));
+    }
+
+    private static void append(DirectRingBuffer ring, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ring.append(bytes, 0, bytes.length);
+    }
+
+    private static String content(DirectRingBuffer ring) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ring.writeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+package run.var.teamcity.cloud.docker.util;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static run.var.teamcity.cloud.docker.test.TestUtils.waitMillis;
+
+/**
+ * {@link LockInstrumentation} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class LockInstrumentationTest {
+
+    @Test
+    public void waitAndHoldTimes() {
+        LockInstrumentation instrumentation = new LockInstrumentation(true, Duration.ofMillis(50));
+        LockHandler lock = LockHandler.newReentrantLock("test", instrumentation);
+
+        lock.run(() -> {});
+        lock.run(() -> {
+            // Nested acquisitions are accounted in the outermost one.
+            lock.run(() -> waitMillis(100));
+        });
+
+        Node stats = instrumentation.toNode().getArrayValues().get(0);
+        assertThat(stats.getAsString("name")).isEqualTo("test");
+        assertThat(stats.getAsLong("acquisitions")).isEqualTo(2);
+        assertThat(stats.getAsLong("maxHoldUs")).isGreaterThanOrEqualTo(100_000);
+        assertThat(stats.getAsLong("totalHoldUs")).isGreaterThanOrEqualTo(stats.getAsLong("maxHoldUs"));
+        assertThat(stats.getAsLong("slowHolds")).isEqualTo(1);
+    }
+
+    @Test
+    public void disabled() {
+        LockInstrumentation instrumentation = new LockInstrumentation(false,
+                LockInstrumentation.DEFAULT_SLOW_HOLD_THRESHOLD);
+        LockHandler lock = LockHandler.newReentrantLock("test", instrumentation);
+
+        lock.run(() -> {});
+
+        assertThat(instrumentation.toNode().getArrayValues()).isEmpty();
+
+        instrumentation.setEnabled(true);
+
+        lock.run(() -> {});
+
+        assertThat(instrumentation.toNode().getArrayValues().get(0).getAsLong("acquisitions")).isEqualTo(1);
+    }
+
+    @Test
+    public void reset() {
+        LockInstrumentation instrumentation = new LockInstrumentation(true,
+                LockInstrumentation.DEFAULT_SLOW_HOLD_THRESHOLD);
+        LockHandler lock = LockHandler.newReentrantLock("test", instrumentation);
+
+        lock.run(() -> {});
+
+        instrumentation.reset();
+
+        assertThat(instrumentation.toNode().getArrayValues()).isEmpty();
+
+        lock.run(() -> {});
+
+        assertThat(instrumentation.toNode().getArrayValues().get(0).getAsLong("acquisitions")).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                new LockInstrumentation(true, null));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new LockInstrumentation(true, Duration.ofMillis(-1)));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                LockHandler.newReentrantLock(null));
+    }
+}
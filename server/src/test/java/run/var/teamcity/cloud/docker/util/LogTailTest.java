@@ -0,0 +1,143 @@
+package run.var.teamcity.cloud.docker.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link LogTail} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class LogTailTest {
+
+    @Test
+    public void plainText() {
+        LogTail tail = new LogTail();
+
+        append(tail, "hello ");
+        append(tail, "world");
+
+        assertThat(tail.toString()).isEqualTo("hello world");
+        assertThat(tail.getTotalBytes()).isEqualTo(11);
+        assertThat(tail.isTruncated()).isFalse();
+    }
+
+    @Test
+    public void empty() {
+        LogTail tail = new LogTail();
+
+        assertThat(tail.toString()).isEmpty();
+        assertThat(tail.getTotalBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void stripEscapeSequences() {
+        LogTail tail = new LogTail();
+
+        append(tail, "\u001B[1;31mred\u001B[0m and \u001B[Kplain");
+
+        assertThat(tail.toString()).isEqualTo("red and plain");
+    }
+
+    @Test
+    public void stripEscapeSequencesSplitAcrossChunks() {
+        LogTail tail = new LogTail();
+
+        append(tail, "a\u001B");
+        append(tail, "[1");
+        append(tail, ";3");
+        append(tail, "2mb\u001B[");
+        append(tail, "0mc");
+
+        assertThat(tail.toString()).isEqualTo("abc");
+    }
+
+    @Test
+    public void keepEscapeCharacterWhenNotAControlSequence() {
+        LogTail tail = new LogTail();
+
+        append(tail, "a\u001B");
+        append(tail, "b\u001B\u001B[0mc");
+
+        assertThat(tail.toString()).isEqualTo("a\u001Bb\u001Bc");
+    }
+
+    @Test
+    public void codepointSplitAcrossChunks() {
+        LogTail tail = new LogTail();
+
+        byte[] bytes = "héllo € 😀".getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            tail.append(new byte[]{b}, 0, 1);
+        }
+
+        assertThat(tail.toString()).isEqualTo("héllo € 😀");
+    }
+
+    @Test
+    public void keepTail() {
+        LogTail tail = new LogTail(8);
+
+        append(tail, "0123");
+        append(tail, "4567");
+        append(tail, "89");
+
+        assertThat(tail.toString()).isEqualTo("23456789");
+        assertThat(tail.getTotalBytes()).isEqualTo(10);
+        assertThat(tail.isTruncated()).isTrue();
+
+        append(tail, "abcdefghijkl");
+
+        assertThat(tail.toString()).isEqualTo("efghijkl");
+    }
+
+    @Test
+    public void truncatedCodepointSkipped() {
+        LogTail tail = new LogTail(4);
+
+        // "€" is encoded on three bytes, only the last two will be retained.
+        append(tail, "a€bc");
+
+        assertThat(tail.toString()).isEqualTo("bc");
+    }
+
+    @Test
+    public void escapeSequencesNotCounted() {
+        LogTail tail = new LogTail(4);
+
+        append(tail, "ab\u001B[1;31;42mcd");
+
+        assertThat(tail.toString()).isEqualTo("abcd");
+        assertThat(tail.isTruncated()).isFalse();
+    }
+
+    @Test
+    public void offsetAndLength() {
+        LogTail tail = new LogTail();
+
+        byte[] bytes = "xxhelloxx".getBytes(StandardCharsets.UTF_8);
+        tail.append(bytes, 2, 5);
+
+        assertThat(tail.toString()).isEqualTo("hello");
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> new LogTail(0));
+
+        LogTail tail = new LogTail();
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> tail.append(null, 0, 0));
+        assertThatExceptionOfType(IndexOutOfBoundsException.class).isThrownBy(() ->
+                tail.append(new byte[4], 2, 3));
+        assertThatExceptionOfType(IndexOutOfBoundsException.class).isThrownBy(() ->
+                tail.append(new byte[4], -1, 1));
+    }
+
+    private static void append(LogTail tail, String txt) {
+        byte[] bytes = txt.getBytes(StandardCharsets.UTF_8);
+        tail.append(bytes, 0, bytes.length);
+    }
+}
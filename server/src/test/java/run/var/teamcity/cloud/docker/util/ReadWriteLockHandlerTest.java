@@ -0,0 +1,84 @@
+package run.var.teamcity.cloud.docker.util;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static run.var.teamcity.cloud.docker.test.TestUtils.callAsync;
+import static run.var.teamcity.cloud.docker.test.TestUtils.waitMillis;
+
+/**
+ * {@link ReadWriteLockHandler} test suite.
+ */
+public class ReadWriteLockHandlerTest {
+
+    @Test(timeout = 5000)
+    public void sharedReadLock() throws Exception {
+        ReadWriteLockHandler lock = ReadWriteLockHandler.newReentrantReadWriteLock();
+
+        CountDownLatch readLocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Boolean> reader = callAsync(() -> lock.read().callInterruptibly(() -> {
+            readLocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            return lock.read().isHeldByCurrentThread();
+        }));
+
+        readLocked.await();
+
+        assertThat(lock.read().isLocked()).isTrue();
+        assertThat(lock.read().isHeldByCurrentThread()).isFalse();
+        assertThat(lock.read().call(() -> true)).isTrue();
+        assertThat(lock.write().tryLock()).isFalse();
+
+        release.countDown();
+
+        assertThat(reader.get()).isTrue();
+        assertThat(lock.read().isLocked()).isFalse();
+    }
+
+    @Test(timeout = 5000)
+    public void exclusiveWriteLock() throws Exception {
+        ReadWriteLockHandler lock = ReadWriteLockHandler.newReentrantReadWriteLock();
+
+        lock.write().lock();
+
+        Future<Boolean> reader = callAsync(() -> lock.read().call(() -> true));
+
+        waitMillis(300);
+
+        assertThat(reader.isDone()).isFalse();
+        assertThat(lock.write().isHeldByCurrentThread()).isTrue();
+
+        // The write lock holder can acquire the read lock.
+        assertThat(lock.read().call(lock.read()::isHeldByCurrentThread)).isTrue();
+
+        lock.write().unlock();
+
+        assertThat(reader.get(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(lock.write().isLocked()).isFalse();
+    }
+
+    @Test
+    public void instrumentation() {
+        LockInstrumentation instrumentation = new LockInstrumentation(true, Duration.ofMinutes(1));
+        ReadWriteLockHandler lock = ReadWriteLockHandler.newReentrantReadWriteLock("test", instrumentation);
+
+        lock.read().run(() -> {});
+        lock.write().run(() -> lock.read().run(() -> {}));
+
+        assertThat(instrumentation.toNode().getArrayValues()).extracting(node -> node.getAsString("name"),
+                node -> node.getAsLong("acquisitions")).containsExactly(tuple("test.read", 2L),
+                tuple("test.write", 1L));
+    }
+}
@@ -0,0 +1,127 @@
+package run.var.teamcity.cloud.docker.util;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static run.var.teamcity.cloud.docker.test.TestUtils.callAsync;
+import static run.var.teamcity.cloud.docker.test.TestUtils.runAsync;
+import static run.var.teamcity.cloud.docker.test.TestUtils.waitMillis;
+
+/**
+ * {@link StampedLockHandler} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class StampedLockHandlerTest {
+
+    @Test
+    public void optimisticRead() {
+        LockInstrumentation instrumentation = new LockInstrumentation(true, Duration.ofMinutes(1));
+        StampedLockHandler lock = StampedLockHandler.newStampedLock("test", instrumentation);
+
+        AtomicInteger invocations = new AtomicInteger();
+
+        assertThat(lock.callOptimistic(invocations::incrementAndGet)).isEqualTo(1);
+        assertThat(lock.read().isLocked()).isFalse();
+
+        Node stats = instrumentation.toNode().getArrayValues().get(0);
+        assertThat(stats.getAsString("name")).isEqualTo("test.read");
+        assertThat(stats.getAsLong("optimisticReads")).isEqualTo(1);
+        assertThat(stats.getAsLong("optimisticReadFailures")).isEqualTo(0);
+        assertThat(stats.getAsLong("acquisitions")).isEqualTo(0);
+    }
+
+    @Test
+    public void optimisticReadInvalidatedByWrite() {
+        StampedLockHandler lock = StampedLockHandler.newStampedLock();
+
+        AtomicInteger invocations = new AtomicInteger();
+
+        int result = lock.callOptimistic(() -> {
+            if (invocations.incrementAndGet() == 1) {
+                // Concurrent modification during the first evaluation.
+                runAsync(() -> lock.write().run(() -> {})).join();
+                return -1;
+            }
+            assertThat(lock.read().isHeldByCurrentThread()).isTrue();
+            return invocations.get();
+        });
+
+        assertThat(result).isEqualTo(2);
+        assertThat(lock.read().isHeldByCurrentThread()).isFalse();
+    }
+
+    @Test
+    public void optimisticReadFailureOnInconsistentState() {
+        StampedLockHandler lock = StampedLockHandler.newStampedLock();
+
+        AtomicInteger invocations = new AtomicInteger();
+
+        int result = lock.callOptimistic(() -> {
+            if (invocations.incrementAndGet() == 1) {
+                runAsync(() -> lock.write().run(() -> {})).join();
+                throw new IllegalStateException("Inconsistent state.");
+            }
+            return invocations.get();
+        });
+
+        assertThat(result).isEqualTo(2);
+
+        // Failures on a consistent state are propagated.
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() -> lock.callOptimistic(() -> {
+            throw new IllegalStateException("Test failure.");
+        }));
+    }
+
+    @Test
+    public void optimisticReadFromWriteLockHolder() {
+        StampedLockHandler lock = StampedLockHandler.newStampedLock();
+
+        assertThat(lock.write().call(() -> lock.callOptimistic(() -> 42))).isEqualTo(42);
+    }
+
+    @Test(timeout = 5000)
+    public void exclusiveWriteLock() throws Exception {
+        StampedLockHandler lock = StampedLockHandler.newStampedLock();
+
+        lock.write().lock();
+
+        assertThat(lock.write().isLocked()).isTrue();
+        assertThat(lock.write().isHeldByCurrentThread()).isTrue();
+
+        Future<Integer> reader = callAsync(() -> lock.callOptimistic(() -> 42));
+
+        waitMillis(300);
+
+        assertThat(reader.isDone()).isFalse();
+
+        assertThat(callAsync(() -> lock.write().isHeldByCurrentThread()).get()).isFalse();
+
+        lock.write().unlock();
+
+        assertThat(reader.get(1, TimeUnit.SECONDS)).isEqualTo(42);
+        assertThat(lock.write().isLocked()).isFalse();
+    }
+
+    @Test
+    public void releaseFromNonHolder() {
+        StampedLockHandler lock = StampedLockHandler.newStampedLock();
+
+        assertThatExceptionOfType(IllegalMonitorStateException.class).isThrownBy(lock.write()::unlock);
+        assertThatExceptionOfType(IllegalMonitorStateException.class).isThrownBy(lock.read()::unlock);
+    }
+
+    @Test
+    public void invalidArguments() {
+        StampedLockHandler lock = StampedLockHandler.newStampedLock();
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> lock.callOptimistic(null));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                StampedLockHandler.newStampedLock(null));
+    }
+}
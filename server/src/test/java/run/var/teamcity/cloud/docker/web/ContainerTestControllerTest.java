@@ -7,7 +7,10 @@ import run.var.teamcity.cloud.docker.DockerImageConfig;
 import run.var.teamcity.cloud.docker.DockerImageConfigBuilder;
 import run.var.teamcity.cloud.docker.TestDockerCloudSupport;
 import run.var.teamcity.cloud.docker.TestDockerCloudSupportRegistry;
+import run.var.teamcity.cloud.docker.TestDockerClientFacade.LogsQuery;
 import run.var.teamcity.cloud.docker.TestDockerImageConfigParser;
+import run.var.teamcity.cloud.docker.client.StdioType;
+import run.var.teamcity.cloud.docker.client.TestStreamHandlerFactory;
 import run.var.teamcity.cloud.docker.test.TestHttpServletRequest;
 import run.var.teamcity.cloud.docker.test.TestHttpServletResponse;
 import run.var.teamcity.cloud.docker.test.TestPluginDescriptor;
@@ -23,6 +26,8 @@ import run.var.teamcity.cloud.docker.web.TestAgentHolderStatusMsg.Phase;
 import run.var.teamcity.cloud.docker.web.TestAgentHolderStatusMsg.Status;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
 import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -144,6 +149,120 @@ public class ContainerTestControllerTest {
         assertThat(responseNode).isEqualTo(Node.EMPTY_OBJECT);
     }
 
+    @Test
+    public void logsActionMustNotBePosted() {
+        ContainerTestController ctrl = createController();
+
+        request.parameter("action", Action.CREATE.name());
+        ctrl.doPost(request, response, responseNode);
+
+        request.
+                parameter("action", Action.LOGS.name()).
+                parameter("testUuid", TestUtils.TEST_UUID.toString());
+
+        resetResponse();
+
+        ctrl.doPost(request, response, responseNode);
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+        assertThat(responseNode.toString()).doesNotContain("logs");
+    }
+
+    @Test
+    public void streamLogs() {
+        ContainerTestController ctrl = createController();
+
+        request.parameter("action", Action.CREATE.name());
+        ctrl.doPost(request, response, responseNode);
+
+        testMgr.setLogStreamHandler(new TestStreamHandlerFactory(new ByteArrayOutputStream()).
+                fragment("\u001B[1mhello ", StdioType.STDOUT).
+                fragment("world\u001B[0m", StdioType.STDERR).
+                multiplexedStreamHandler());
+
+        request.
+                parameter("action", Action.LOGS.name()).
+                parameter("testUuid", TestUtils.TEST_UUID.toString()).
+                parameter("tail", "42").
+                parameter("since", "2017-12-01T10:15:30Z").
+                parameter("until", "1512123330.5");
+
+        resetResponse();
+
+        ctrl.doGet(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(response.getContentType()).isEqualTo("text/plain;charset=UTF-8");
+        assertThat(response.getWrittenResponse()).isEqualTo("hello world");
+
+        LogsQuery query = testMgr.getLastLogsQuery();
+        assertThat(query.getLineCount()).isEqualTo(42);
+        assertThat(query.getSince()).isEqualTo(Instant.parse("2017-12-01T10:15:30Z"));
+        assertThat(query.getUntil()).isEqualTo(Instant.parse("2017-12-01T10:15:30.500Z"));
+    }
+
+    @Test
+    public void streamLogsDefaultParameters() {
+        ContainerTestController ctrl = createController();
+
+        request.parameter("action", Action.CREATE.name());
+        ctrl.doPost(request, response, responseNode);
+
+        testMgr.setLogStreamHandler(new TestStreamHandlerFactory(new ByteArrayOutputStream()).
+                multiplexedStreamHandler());
+
+        request.
+                parameter("action", Action.LOGS.name()).
+                parameter("testUuid", TestUtils.TEST_UUID.toString());
+
+        resetResponse();
+
+        ctrl.doGet(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(response.getWrittenResponse()).isEmpty();
+
+        LogsQuery query = testMgr.getLastLogsQuery();
+        assertThat(query.getLineCount()).isEqualTo(-1);
+        assertThat(query.getSince()).isNull();
+        assertThat(query.getUntil()).isNull();
+    }
+
+    @Test
+    public void streamLogsInvalidQueries() {
+        ContainerTestController ctrl = createController();
+
+        request.parameter("action", Action.CREATE.name());
+        ctrl.doPost(request, response, responseNode);
+
+        request.parameter("testUuid", TestUtils.TEST_UUID.toString());
+
+        // Not a GET action.
+        assertBadLogsRequest(ctrl, "action", Action.QUERY.name());
+
+        request.parameter("action", Action.LOGS.name());
+
+        assertBadLogsRequest(ctrl, "tail", "0");
+        request.parameter("tail", "all");
+        assertBadLogsRequest(ctrl, "since", "yesterday");
+        request.parameter("since", "2017-12-01T10:15:30Z");
+        assertBadLogsRequest(ctrl, "until", "2017-12-01T10:15:29Z");
+        request.parameter("until", "2017-12-01T10:15:31Z");
+        assertBadLogsRequest(ctrl, "testUuid", "not a uuid");
+
+        assertThat(testMgr.getLastLogsQuery()).isNull();
+    }
+
+    private void assertBadLogsRequest(ContainerTestController ctrl, String paramName, String paramValue) {
+        resetResponse();
+        request.parameter(paramName, paramValue);
+
+        ctrl.doGet(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_BAD_REQUEST);
+        assertThat(response.getWrittenResponse()).isNotEmpty();
+    }
+
     @Test
     public void invalidQueries() {
         ContainerTestController ctrl = createController();
@@ -0,0 +1,358 @@
+package run.var.teamcity.cloud.docker.web;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import run.var.teamcity.cloud.docker.TestDockerCloudSupport;
+import run.var.teamcity.cloud.docker.client.DockerAPIVersion;
+import run.var.teamcity.cloud.docker.client.DockerClientConfig;
+import run.var.teamcity.cloud.docker.test.TestDockerClient;
+import run.var.teamcity.cloud.docker.test.TestPipedStreamHandler;
+import run.var.teamcity.cloud.docker.test.TestUtils;
+
+import javax.annotation.Nonnull;
+import javax.websocket.CloseReason;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * {@link LogsBroadcaster} test suite.
+ */
+@SuppressWarnings("ConstantConditions")
+public class LogsBroadcasterTest {
+
+    private ExecutorService upstreamExecutor;
+    private ScheduledExecutorService scheduler;
+    private TestDockerCloudSupport cloudSupport;
+    private ContainerTestReference testRef;
+    private List<TestPipedStreamHandler> streamHandlers;
+
+    @Before
+    public void init() {
+        upstreamExecutor = Executors.newCachedThreadPool();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        cloudSupport = new TestDockerCloudSupport();
+        streamHandlers = new CopyOnWriteArrayList<>();
+        cloudSupport.getClientFacade().setLogStreamProvider(containerId -> {
+            TestPipedStreamHandler handler = new TestPipedStreamHandler();
+            streamHandlers.add(handler);
+            return handler;
+        });
+        testRef = ContainerTestReference.newTestReference(cloudSupport, TestUtils.TEST_UUID,
+                new DockerClientConfig(TestDockerClient.TEST_CLIENT_URI, DockerAPIVersion.DEFAULT))
+                .registerContainer("container_id");
+    }
+
+    @After
+    public void tearDown() {
+        upstreamExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void singleUpstreamStreamShared() {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 1024);
+
+        TestSubscriber subscriber1 = new TestSubscriber();
+        TestSubscriber subscriber2 = new TestSubscriber();
+
+        broadcaster.subscribe(testRef, subscriber1);
+        broadcaster.subscribe(testRef, subscriber2);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        streamHandlers.get(0).push("hello");
+
+        TestUtils.waitUntil(() -> subscriber1.getText().equals("hello") && subscriber2.getText().equals("hello"));
+
+        TestUtils.waitMillis(200);
+
+        assertThat(streamHandlers).hasSize(1);
+        assertThat(broadcaster.getChannelCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void initialTail() {
+        LogsBroadcaster broadcaster = createBroadcaster(8, 1024);
+
+        TestSubscriber subscriber1 = new TestSubscriber();
+        broadcaster.subscribe(testRef, subscriber1);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        streamHandlers.get(0).push("0123456");
+        TestUtils.waitUntil(() -> subscriber1.getText().equals("0123456"));
+        streamHandlers.get(0).push("789");
+        TestUtils.waitUntil(() -> subscriber1.getText().equals("0123456789"));
+
+        TestSubscriber subscriber2 = new TestSubscriber();
+        broadcaster.subscribe(testRef, subscriber2);
+
+        TestUtils.waitUntil(() -> subscriber2.getText().equals("789"));
+
+        streamHandlers.get(0).push("abc");
+
+        TestUtils.waitUntil(() -> subscriber2.getText().equals("789abc"));
+    }
+
+    @Test
+    public void framesCoalesced() {
+        LogsBroadcaster broadcaster = new LogsBroadcaster(upstreamExecutor, scheduler, Duration.ofMillis(500),
+                1024, 1024);
+
+        TestSubscriber subscriber = new TestSubscriber();
+        broadcaster.subscribe(testRef, subscriber);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        TestPipedStreamHandler handler = streamHandlers.get(0);
+        handler.push("a");
+        handler.push("b");
+        handler.push("c");
+
+        TestUtils.waitUntil(() -> subscriber.getText().equals("abc"));
+
+        assertThat(subscriber.getMessages()).containsExactly("abc");
+    }
+
+    @Test
+    public void codepointsSplitAcrossFrames() {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 1024);
+
+        TestSubscriber subscriber = new TestSubscriber();
+        broadcaster.subscribe(testRef, subscriber);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        byte[] bytes = "héllo €".getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            streamHandlers.get(0).push(new byte[]{b});
+        }
+
+        TestUtils.waitUntil(() -> subscriber.getText().equals("héllo €"));
+    }
+
+    @Test
+    public void incompleteCodepointAtEndOfStream() {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 1024);
+
+        TestSubscriber subscriber = new TestSubscriber();
+        broadcaster.subscribe(testRef, subscriber);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        byte[] bytes = "€".getBytes(StandardCharsets.UTF_8);
+        streamHandlers.get(0).push("abc");
+        streamHandlers.get(0).push(new byte[]{bytes[0], bytes[1]});
+        streamHandlers.get(0).end();
+
+        TestUtils.waitUntil(() -> subscriber.getCloseReason() != null);
+
+        assertThat(subscriber.getText()).isEqualTo("abc\uFFFD");
+    }
+
+    @Test
+    public void subscribersNotInvokedWhileLocked() throws InterruptedException {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 1024);
+
+        CountDownLatch sendStarted = new CountDownLatch(1);
+        CountDownLatch sendReleased = new CountDownLatch(1);
+        TestSubscriber blockingSubscriber = new TestSubscriber() {
+            @Override
+            public void send(@Nonnull String text, @Nonnull Consumer<Throwable> completionHandler) {
+                sendStarted.countDown();
+                try {
+                    sendReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(text, completionHandler);
+            }
+        };
+        TestSubscriber subscriber = new TestSubscriber();
+
+        broadcaster.subscribe(testRef, blockingSubscriber);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        streamHandlers.get(0).push("hello");
+
+        assertThat(sendStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // The broadcaster remains fully available while a subscriber is blocked.
+        broadcaster.subscribe(testRef, subscriber);
+        TestUtils.waitUntil(() -> subscriber.getText().equals("hello"));
+        assertThat(broadcaster.getChannelCount()).isEqualTo(1);
+
+        sendReleased.countDown();
+
+        TestUtils.waitUntil(() -> blockingSubscriber.getText().equals("hello"));
+    }
+
+    @Test
+    public void dispose() {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 1024);
+
+        TestSubscriber subscriber = new TestSubscriber();
+        broadcaster.subscribe(testRef, subscriber);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        broadcaster.dispose();
+
+        assertThat(streamHandlers.get(0).isClosed()).isTrue();
+        assertThat(subscriber.getCloseReason().getCloseCode()).isEqualTo(CloseReason.CloseCodes.GOING_AWAY);
+        assertThat(broadcaster.getChannelCount()).isEqualTo(0);
+        assertThat(upstreamExecutor.isShutdown()).isTrue();
+        assertThat(scheduler.isShutdown()).isTrue();
+
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() ->
+                broadcaster.subscribe(testRef, new TestSubscriber()));
+
+        // Has no effect.
+        broadcaster.dispose();
+    }
+
+    @Test
+    public void slowSubscriberDropped() {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 8);
+
+        TestSubscriber slowSubscriber = new TestSubscriber().manualCompletion();
+        TestSubscriber subscriber = new TestSubscriber();
+
+        broadcaster.subscribe(testRef, slowSubscriber);
+        broadcaster.subscribe(testRef, subscriber);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        TestPipedStreamHandler handler = streamHandlers.get(0);
+        handler.push("0123");
+        TestUtils.waitUntil(() -> subscriber.getText().equals("0123"));
+        handler.push("4567");
+        TestUtils.waitUntil(() -> subscriber.getText().equals("01234567"));
+        handler.push("89ab");
+        TestUtils.waitUntil(() -> subscriber.getText().equals("0123456789ab"));
+        handler.push("cdef");
+        TestUtils.waitUntil(() -> subscriber.getText().equals("0123456789abcdef"));
+
+        TestUtils.waitUntil(() -> slowSubscriber.getCloseReason() != null);
+
+        assertThat(slowSubscriber.getCloseReason().getCloseCode()).isEqualTo(CloseReason.CloseCodes.TRY_AGAIN_LATER);
+        assertThat(slowSubscriber.getMessages()).containsExactly("0123");
+        assertThat(subscriber.getCloseReason()).isNull();
+        assertThat(handler.isClosed()).isFalse();
+    }
+
+    @Test
+    public void upstreamClosedWhenLastSubscriberGone() {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 1024);
+
+        LogsBroadcaster.Subscription subscription1 = broadcaster.subscribe(testRef, new TestSubscriber());
+        LogsBroadcaster.Subscription subscription2 = broadcaster.subscribe(testRef, new TestSubscriber());
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        subscription1.cancel();
+
+        TestUtils.waitMillis(200);
+        assertThat(streamHandlers.get(0).isClosed()).isFalse();
+
+        subscription2.cancel();
+
+        TestUtils.waitUntil(() -> streamHandlers.get(0).isClosed());
+        assertThat(broadcaster.getChannelCount()).isEqualTo(0);
+
+        broadcaster.subscribe(testRef, new TestSubscriber());
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 2);
+    }
+
+    @Test
+    public void subscribersClosedWhenUpstreamEnds() {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 1024);
+
+        TestSubscriber subscriber = new TestSubscriber();
+        broadcaster.subscribe(testRef, subscriber);
+
+        TestUtils.waitUntil(() -> streamHandlers.size() == 1);
+
+        streamHandlers.get(0).push("bye");
+        streamHandlers.get(0).end();
+
+        TestUtils.waitUntil(() -> subscriber.getCloseReason() != null);
+
+        assertThat(subscriber.getText()).isEqualTo("bye");
+        assertThat(subscriber.getCloseReason().getCloseCode()).isEqualTo(CloseReason.CloseCodes.NORMAL_CLOSURE);
+        assertThat(broadcaster.getChannelCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void invalidArguments() {
+        LogsBroadcaster broadcaster = createBroadcaster(1024, 1024);
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                broadcaster.subscribe(null, new TestSubscriber()));
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() ->
+                broadcaster.subscribe(testRef, null));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                broadcaster.subscribe(ContainerTestReference.newTestReference(cloudSupport, TestUtils.TEST_UUID,
+                        testRef.getClientConfig()), new TestSubscriber()));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new LogsBroadcaster(upstreamExecutor, scheduler, Duration.ofMillis(-1), 1, 1));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                new LogsBroadcaster(upstreamExecutor, scheduler, Duration.ZERO, 0, 1));
+    }
+
+    private LogsBroadcaster createBroadcaster(int tailSize, int maxPendingSize) {
+        return new LogsBroadcaster(upstreamExecutor, scheduler, Duration.ofMillis(10), tailSize, maxPendingSize);
+    }
+
+    private static class TestSubscriber implements LogsBroadcaster.LogsSubscriber {
+
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private volatile boolean manualCompletion = false;
+        private volatile CloseReason closeReason;
+
+        TestSubscriber manualCompletion() {
+            manualCompletion = true;
+            return this;
+        }
+
+        @Override
+        public void send(@Nonnull String text, @Nonnull Consumer<Throwable> completionHandler) {
+            messages.add(text);
+            if (!manualCompletion) {
+                completionHandler.accept(null);
+            }
+        }
+
+        @Override
+        public void close(@Nonnull CloseReason reason) {
+            closeReason = reason;
+        }
+
+        List<String> getMessages() {
+            return new ArrayList<>(messages);
+        }
+
+        String getText() {
+            return String.join("", messages);
+        }
+
+        CloseReason getCloseReason() {
+            return closeReason;
+        }
+    }
+}
@@ -2,20 +2,28 @@ package run.var.teamcity.cloud.docker.web;
 
 import run.var.teamcity.cloud.docker.DockerCloudClientConfig;
 import run.var.teamcity.cloud.docker.DockerImageConfig;
+import run.var.teamcity.cloud.docker.StreamHandler;
+import run.var.teamcity.cloud.docker.TestDockerClientFacade;
 import run.var.teamcity.cloud.docker.test.TestUtils;
 import run.var.teamcity.cloud.docker.web.TestAgentHolderStatusMsg.Phase;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.Optional;
 import java.util.UUID;
 
 public class TestAgentHolderTestManager implements AgentHolderTestManager {
 
+    private final static String DUMMY_CONTAINER_ID = "dummy_container_id";
+
     private DockerCloudClientConfig clientConfig;
     private DockerImageConfig imageConfig;
     private AgentHolderTestListener listener;
     private Phase involvedPhase = null;
+    private StreamHandler logStreamHandler = null;
+    private TestDockerClientFacade.LogsQuery lastLogsQuery = null;
 
     @Nonnull
     @Override
@@ -35,8 +43,14 @@ public class TestAgentHolderTestManager implements AgentHolderTestManager {
 
     @Nonnull
     @Override
-    public String getLogs(@Nonnull UUID testUuid) {
-        throw new UnsupportedOperationException("Not implemented yet.");
+    public StreamHandler fetchLogs(@Nonnull UUID testUuid, int lineCount, @Nullable Instant since,
+                                   @Nullable Instant until) {
+        checkUuid(testUuid);
+        if (logStreamHandler == null) {
+            throw new UnsupportedOperationException("Not implemented yet.");
+        }
+        lastLogsQuery = new TestDockerClientFacade.LogsQuery(DUMMY_CONTAINER_ID, lineCount, since, until);
+        return logStreamHandler;
     }
 
     @Override
@@ -56,7 +70,7 @@ public class TestAgentHolderTestManager implements AgentHolderTestManager {
     public Optional<TestAgentHolderStatusMsg> retrieveStatus(UUID testUuid) {
         checkUuid(testUuid);
         return Optional.of(new TestAgentHolderStatusMsg(testUuid, Phase.CREATE, TestAgentHolderStatusMsg.Status.PENDING,
-                "Dummy status", "dummy_container_id", null, false, null,
+                "Dummy status", DUMMY_CONTAINER_ID, null, false, null,
                 Collections.emptyList()));
     }
 
@@ -83,6 +97,14 @@ public class TestAgentHolderTestManager implements AgentHolderTestManager {
         return listener;
     }
 
+    public void setLogStreamHandler(StreamHandler logStreamHandler) {
+        this.logStreamHandler = logStreamHandler;
+    }
+
+    public TestDockerClientFacade.LogsQuery getLastLogsQuery() {
+        return lastLogsQuery;
+    }
+
     public Phase getInvolvedPhase() {
         return involvedPhase;
     }
@@ -154,4 +154,21 @@ public class WebUtilsTest {
 
         assertThat(WebUtils.isAuthorizedToRunContainerTests(session)).isFalse();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void isAuthorizedToViewDiagnostics() {
+        assertThat(WebUtils.isAuthorizedToViewDiagnostics(null)).isFalse();
+
+        TestSUser user = new TestSUser();
+
+        assertThat(WebUtils.isAuthorizedToViewDiagnostics(user)).isFalse();
+
+        user.addProjectPermission("Foo", Permission.START_STOP_CLOUD_AGENT);
+
+        assertThat(WebUtils.isAuthorizedToViewDiagnostics(user)).isFalse();
+
+        user.addProjectPermission("Foo", Permission.MANAGE_AGENT_CLOUDS);
+
+        assertThat(WebUtils.isAuthorizedToViewDiagnostics(user)).isTrue();
+    }
+}